@@ -0,0 +1,238 @@
+package org.krytonspace.carrent.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation processor generating the accessor of each model, see ModelAccessor.
+ *
+ * The properties of a model are found by ModelIntrospector, and become columns in declaration order.
+ * Accessors are only generated for concrete models.
+ *
+ * This processor only depends on the compiler API: it is compiled before the rest of the project.
+ */
+@SupportedAnnotationTypes(ModelIntrospector.MODEL_FIELD)
+public class ModelAccessorProcessor extends AbstractProcessor {
+
+    private static final String ACCESSOR = "org.krytonspace.carrent.utils.ModelAccessor";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> models = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element field : roundEnv.getElementsAnnotatedWith(annotation)) {
+                models.add((TypeElement) field.getEnclosingElement());
+            }
+        }
+
+        // Models declaring no field of their own are found through their base type.
+        for (TypeElement model : new ArrayList<>(models)) {
+            models.addAll(ModelIntrospector.subTypes(model).values());
+        }
+
+        for (TypeElement model : models) {
+            // Abstract models are never shown in tables.
+            if (model.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+
+            try {
+                writeAccessor(model, ModelIntrospector.properties(model));
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Could not write accessor: " + e.getMessage(), model);
+            } catch (IllegalArgumentException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), model);
+            }
+        }
+
+        return false;
+    }
+
+    private void writeAccessor(TypeElement model, List<ModelProperty> properties) throws IOException {
+        String name = model.getSimpleName().toString();
+        String qualifiedName = model.getQualifiedName() + "Accessor";
+        String packageName = processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+
+        try (PrintWriter out = new PrintWriter(
+                processingEnv.getFiler().createSourceFile(qualifiedName, model).openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("import " + ACCESSOR + ";");
+            out.println();
+            out.println("/**");
+            out.println(" * Accessor of the " + name + " columns, generated from its @ModelField fields.");
+            out.println(" */");
+            out.println("public final class " + name + "Accessor extends ModelAccessor<" + name + "> {");
+            out.println();
+
+            for (int i = 0; i < properties.size(); i++) {
+                ModelProperty p = properties.get(i);
+                out.println("    /**");
+                out.println("     * Column of the \"" + p.displayName + "\" field.");
+                out.println("     */");
+                out.println("    public static final int " + p.constantName() + " = " + i + ";");
+                out.println();
+            }
+
+            out.println("    public " + name + "Accessor() {");
+            out.println("        super(new String[] {" + join(properties, Column.PROPERTY) + "},");
+            out.println("                new String[] {" + join(properties, Column.NAME) + "},");
+            out.println("                new Class<?>[] {" + join(properties, Column.TYPE) + "});");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public Object get(" + name + " model, int column) {");
+            out.println("        switch (column) {");
+            for (ModelProperty p : properties) {
+                out.println("            case " + p.constantName() + ":");
+                out.println("                return model." + p.getter + "();");
+            }
+            out.println("            default:");
+            out.println("                throw new IndexOutOfBoundsException(\"No column \" + column);");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public void set(" + name + " model, int column, Object value) {");
+            out.println("        switch (column) {");
+            for (ModelProperty p : properties) {
+                out.println("            case " + p.constantName() + ":");
+                out.println("                model." + p.setter + "((" + boxed(p) + ") value);");
+                out.println("                break;");
+            }
+            out.println("            default:");
+            out.println("                throw new IndexOutOfBoundsException(\"No column \" + column);");
+            out.println("        }");
+            out.println("    }");
+
+            List<ModelProperty> ints = new ArrayList<>();
+            for (ModelProperty p : properties) {
+                // Dates held as day counts can be read and written as such.
+                if (p.kind == ModelProperty.Kind.INT || p.kind == ModelProperty.Kind.EPOCH_DAY) {
+                    ints.add(p);
+                }
+            }
+
+            if (!ints.isEmpty()) {
+                out.println();
+                out.println("    @Override");
+                out.println("    public int getInt(" + name + " model, int column) {");
+                out.println("        switch (column) {");
+                for (ModelProperty p : ints) {
+                    out.println("            case " + p.constantName() + ":");
+                    out.println("                return model." + (p.kind == ModelProperty.Kind.EPOCH_DAY ?
+                            p.epochDayGetter() : p.getter) + "();");
+                }
+                out.println("            default:");
+                out.println("                return super.getInt(model, column);");
+                out.println("        }");
+                out.println("    }");
+                out.println();
+
+                out.println("    @Override");
+                out.println("    public void setInt(" + name + " model, int column, int value) {");
+                out.println("        switch (column) {");
+                for (ModelProperty p : ints) {
+                    out.println("            case " + p.constantName() + ":");
+                    out.println("                model." + (p.kind == ModelProperty.Kind.EPOCH_DAY ?
+                            p.epochDaySetter() : p.setter) + "(value);");
+                    out.println("                break;");
+                }
+                out.println("            default:");
+                out.println("                super.setInt(model, column, value);");
+                out.println("        }");
+                out.println("    }");
+            }
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public " + name + " copy(" + name + " model) {");
+            out.println("        " + name + " copy = new " + name + "(model.getInternalId());");
+            for (ModelProperty p : properties) {
+                switch (p.kind) {
+                    case EPOCH_DAY:
+                        out.println("        copy." + p.epochDaySetter() + "(model." + p.epochDayGetter() + "());");
+                        break;
+                    case DATE:
+                        // Dates are mutable.
+                        out.println("        copy." + p.setter + "(model." + p.getter + "() == null ? null : " +
+                                "new java.util.Date(model." + p.getter + "().getTime()));");
+                        break;
+                    default:
+                        out.println("        copy." + p.setter + "(model." + p.getter + "());");
+                        break;
+                }
+            }
+            out.println("        return copy;");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private enum Column {
+        PROPERTY, NAME, TYPE
+    }
+
+    private static String join(List<ModelProperty> properties, Column column) {
+        StringBuilder sb = new StringBuilder();
+        for (ModelProperty p : properties) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+
+            switch (column) {
+                case PROPERTY:
+                    sb.append('"').append(ModelIntrospector.escape(p.name)).append('"');
+                    break;
+                case NAME:
+                    sb.append('"').append(ModelIntrospector.escape(p.displayName)).append('"');
+                    break;
+                default:
+                    sb.append(p.type).append(".class");
+                    break;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Type to cast column values to before calling the setter.
+     */
+    private static String boxed(ModelProperty p) {
+        switch (p.kind) {
+            case INT:
+                return "Integer";
+            case LONG:
+                return "Long";
+            case BOOLEAN:
+                return "Boolean";
+            case DOUBLE:
+                return "Double";
+            default:
+                return p.type;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.krytonspace.carrent.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Annotation processor generating the JSON codec of each model, see JsonCodecs.
+ *
+ * The properties of a model are found by ModelIntrospector. Dates are written as timestamps,
+ * or as strings if the field is annotated with @JsonFormat.
+ *
+ * Abstract models annotated with @JsonSubTypes get a codec writing the type name of each model
+ * before its properties, as @JsonTypeInfo asks, and reading models with the codec of their type.
+ *
+ * This processor only depends on the compiler API: it is compiled before the rest of the project.
+ */
+@SupportedAnnotationTypes(ModelIntrospector.MODEL_FIELD)
+public class ModelCodecProcessor extends AbstractProcessor {
+
+    private static final String CODECS = "JsonCodecs";
+    private static final String CODEC = "JsonCodec";
+    private static final String CODECS_PACKAGE = "org.krytonspace.carrent.database.json";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> models = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element field : roundEnv.getElementsAnnotatedWith(annotation)) {
+                models.add((TypeElement) field.getEnclosingElement());
+            }
+        }
+
+        // Models declaring no field of their own are found through their base type.
+        for (TypeElement model : new ArrayList<>(models)) {
+            models.addAll(ModelIntrospector.subTypes(model).values());
+        }
+
+        for (TypeElement model : models) {
+            try {
+                if (!ModelIntrospector.subTypes(model).isEmpty()) {
+                    writePolymorphicCodec(model);
+                } else if (!model.getModifiers().contains(Modifier.ABSTRACT)) {
+                    writeCodec(model, jacksonOrder(ModelIntrospector.properties(model)));
+                }
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Could not write codec: " + e.getMessage(), model);
+            } catch (IllegalArgumentException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), model);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Write the codec of a concrete model.
+     */
+    private void writeCodec(TypeElement model, List<ModelProperty> properties) throws IOException {
+        String name = model.getSimpleName().toString();
+        try (PrintWriter out = open(model, false)) {
+            out.println("/**");
+            out.println(" * JSON codec of " + name + ", generated from its @ModelField fields.");
+            out.println(" */");
+            out.println("public final class " + name + "Codec implements " + CODEC + "<" + name + "> {");
+            out.println();
+
+            for (ModelProperty p : properties) {
+                if ((p.kind == ModelProperty.Kind.DATE || p.kind == ModelProperty.Kind.EPOCH_DAY) &&
+                        p.pattern != null) {
+                    out.println("    private static final java.time.format.DateTimeFormatter " + formatConstant(p) +
+                            " = " + CODECS + ".dateFormat(\"" + ModelIntrospector.escape(p.pattern) + "\");");
+                    out.println();
+                }
+            }
+
+            out.println("    @Override");
+            out.println("    public " + name + " read(JsonParser parser) throws IOException {");
+            out.println("        " + name + " model = new " + name + "();");
+            out.println("        " + CODECS + ".enterObject(parser);");
+            out.println("        readProperties(parser, model);");
+            out.println("        return model;");
+            out.println("    }");
+            out.println();
+
+            out.println("    /**");
+            out.println("     * Read properties up to the end of the object.");
+            out.println("     * @param parser The parser, positioned on a property name or on the object end");
+            out.println("     * @param model The model to fill");
+            out.println("     * @throws IOException if a property could not be read, or is unknown");
+            out.println("     */");
+            out.println("    public void readProperties(JsonParser parser, " + name + " model) throws IOException {");
+            out.println("        for (JsonToken token = parser.currentToken(); token != JsonToken.END_OBJECT; " +
+                    "token = parser.nextToken()) {");
+            out.println("            if (token != JsonToken.FIELD_NAME) {");
+            out.println("                throw new JsonParseException(parser, \"Expected a property, got \" + token);");
+            out.println("            }");
+            out.println();
+            out.println("            String name = parser.getCurrentName();");
+            out.println("            parser.nextToken();");
+            out.println("            switch (name) {");
+            for (ModelProperty p : properties) {
+                out.println("                case \"" + ModelIntrospector.escape(p.name) + "\":");
+                out.println("                    model." + (p.kind == ModelProperty.Kind.EPOCH_DAY ?
+                        p.epochDaySetter() : p.setter) + "(" + readExpression(p) + ");");
+                out.println("                    break;");
+            }
+            out.println("                default:");
+            out.println("                    throw " + CODECS + ".unknownProperty(parser, " + name + ".class, name);");
+            out.println("            }");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public void write(JsonGenerator generator, " + name + " model) throws IOException {");
+            out.println("        generator.writeStartObject();");
+            out.println("        writeProperties(generator, model);");
+            out.println("        generator.writeEndObject();");
+            out.println("    }");
+            out.println();
+
+            out.println("    /**");
+            out.println("     * Write the properties of a model, without the enclosing object.");
+            out.println("     * @param generator The generator to write to");
+            out.println("     * @param model The model to write");
+            out.println("     * @throws IOException if a property could not be written");
+            out.println("     */");
+            out.println("    public void writeProperties(JsonGenerator generator, " + name + " model) throws IOException {");
+            for (ModelProperty p : properties) {
+                printWrite(out, p);
+            }
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    /**
+     * Write the codec of an abstract model, dispatching on the type name.
+     */
+    private void writePolymorphicCodec(TypeElement model) throws IOException {
+        String name = model.getSimpleName().toString();
+        String typeProperty = ModelIntrospector.typeProperty(model);
+        Map<String, TypeElement> subTypes = ModelIntrospector.subTypes(model);
+
+        try (PrintWriter out = open(model, true)) {
+            out.println("/**");
+            out.println(" * JSON codec of " + name + ", generated from its subtypes.");
+            out.println(" * The type name of each model is written before its properties, as \"" +
+                    ModelIntrospector.escape(typeProperty) + "\".");
+            out.println(" */");
+            out.println("public final class " + name + "Codec implements " + CODEC + "<" + name + "> {");
+            out.println();
+
+            for (TypeElement subType : subTypes.values()) {
+                String sub = nameIn(model, subType);
+                out.println("    private final " + sub + "Codec " + codecField(subType) + " = new " + sub + "Codec();");
+            }
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public " + name + " read(JsonParser parser) throws IOException {");
+            out.println("        " + CODECS + ".enterObject(parser);");
+            out.println("        // The type usually comes first: otherwise, keep what comes before for later.");
+            out.println("        TokenBuffer skipped = " + CODECS + ".bufferUntil(parser, \"" +
+                    ModelIntrospector.escape(typeProperty) + "\");");
+            out.println("        if (parser.currentToken() != JsonToken.FIELD_NAME) {");
+            out.println("            throw " + CODECS + ".unknownType(parser, " + name + ".class, null);");
+            out.println("        }");
+            out.println();
+            out.println("        parser.nextToken();");
+            out.println("        String type = " + CODECS + ".readString(parser);");
+            out.println("        parser.nextToken();");
+            out.println("        switch (type == null ? \"\" : type) {");
+            for (Map.Entry<String, TypeElement> e : subTypes.entrySet()) {
+                String sub = nameIn(model, e.getValue());
+                String codec = codecField(e.getValue());
+                out.println("            case \"" + ModelIntrospector.escape(e.getKey()) + "\": {");
+                out.println("                " + sub + " model = new " + sub + "();");
+                out.println("                if (skipped != null) {");
+                out.println("                    " + codec + ".readProperties(" + CODECS + ".replay(skipped), model);");
+                out.println("                }");
+                out.println("                " + codec + ".readProperties(parser, model);");
+                out.println("                return model;");
+                out.println("            }");
+            }
+            out.println("            default:");
+            out.println("                throw " + CODECS + ".unknownType(parser, " + name + ".class, type);");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+
+            out.println("    @Override");
+            out.println("    public void write(JsonGenerator generator, " + name + " model) throws IOException {");
+            out.println("        generator.writeStartObject();");
+            String keyword = "if";
+            for (Map.Entry<String, TypeElement> e : subTypes.entrySet()) {
+                String sub = nameIn(model, e.getValue());
+                out.println("        " + keyword + " (model instanceof " + sub + ") {");
+                out.println("            generator.writeStringField(\"" + ModelIntrospector.escape(typeProperty) + "\", \"" +
+                        ModelIntrospector.escape(e.getKey()) + "\");");
+                out.println("            " + codecField(e.getValue()) + ".writeProperties(generator, (" + sub + ") model);");
+                keyword = "} else if";
+            }
+            out.println("        } else {");
+            out.println("            throw new JsonGenerationException(\"Unknown type of " + name + ": \" + " +
+                    "model.getClass().getName(), generator);");
+            out.println("        }");
+            out.println("        generator.writeEndObject();");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    /**
+     * Create the source file of a codec, and write its package and imports.
+     */
+    private PrintWriter open(TypeElement model, boolean polymorphic) throws IOException {
+        String qualifiedName = model.getQualifiedName() + "Codec";
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, model).openWriter());
+
+        String packageName = packageOf(model);
+        if (!packageName.isEmpty()) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        if (polymorphic) {
+            out.println("import com.fasterxml.jackson.core.JsonGenerationException;");
+        }
+        out.println("import com.fasterxml.jackson.core.JsonGenerator;");
+        if (!polymorphic) {
+            out.println("import com.fasterxml.jackson.core.JsonParseException;");
+        }
+        out.println("import com.fasterxml.jackson.core.JsonParser;");
+        out.println("import com.fasterxml.jackson.core.JsonToken;");
+        if (polymorphic) {
+            out.println("import com.fasterxml.jackson.databind.util.TokenBuffer;");
+        }
+        out.println("import " + CODECS_PACKAGE + "." + CODEC + ";");
+        out.println("import " + CODECS_PACKAGE + "." + CODECS + ";");
+        out.println();
+        out.println("import java.io.IOException;");
+        out.println();
+
+        return out;
+    }
+
+    private String packageOf(TypeElement type) {
+        return processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    }
+
+    /**
+     * Name of a type in the source of the codec of a model.
+     */
+    private String nameIn(TypeElement model, TypeElement type) {
+        return packageOf(type).equals(packageOf(model)) ?
+                type.getSimpleName().toString() :
+                type.getQualifiedName().toString();
+    }
+
+    /**
+     * Move renamed properties after the others, in the order Jackson writes them.
+     */
+    private static List<ModelProperty> jacksonOrder(List<ModelProperty> properties) {
+        List<ModelProperty> ordered = new ArrayList<>();
+        List<ModelProperty> renamed = new ArrayList<>();
+        for (ModelProperty p : properties) {
+            (p.isRenamed() ? renamed : ordered).add(p);
+        }
+
+        ordered.addAll(renamed);
+        return ordered;
+    }
+
+    private static String codecField(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1) + "Codec";
+    }
+
+    /**
+     * Name of the constant holding the date format of a property.
+     */
+    private static String formatConstant(ModelProperty p) {
+        return p.constantName() + "_FORMAT";
+    }
+
+    private static String readExpression(ModelProperty p) {
+        switch (p.kind) {
+            case INT:
+                return "parser.getValueAsInt()";
+            case LONG:
+                return "parser.getValueAsLong()";
+            case BOOLEAN:
+                return "parser.getValueAsBoolean()";
+            case DOUBLE:
+                return "parser.getValueAsDouble()";
+            case STRING:
+                return CODECS + ".readString(parser)";
+            case DATE:
+                return CODECS + ".readDate(parser, " + (p.pattern == null ? "null" : formatConstant(p)) + ")";
+            case EPOCH_DAY:
+                return CODECS + ".readEpochDay(parser, " + (p.pattern == null ? "null" : formatConstant(p)) + ")";
+            default:
+                return CODECS + ".readEnum(parser, " + p.type + ".class)";
+        }
+    }
+
+    private static void printWrite(PrintWriter out, ModelProperty p) {
+        String value = "model." + p.getter + "()";
+        String field = "\"" + ModelIntrospector.escape(p.name) + "\"";
+        switch (p.kind) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+                out.println("        generator.writeNumberField(" + field + ", " + value + ");");
+                break;
+            case BOOLEAN:
+                out.println("        generator.writeBooleanField(" + field + ", " + value + ");");
+                break;
+            case STRING:
+                out.println("        generator.writeStringField(" + field + ", " + value + ");");
+                break;
+            case DATE:
+                out.println("        generator.writeFieldName(" + field + ");");
+                out.println("        " + CODECS + ".writeDate(generator, " + value + ", " +
+                        (p.pattern == null ? "null" : formatConstant(p)) + ");");
+                break;
+            case EPOCH_DAY:
+                out.println("        generator.writeFieldName(" + field + ");");
+                out.println("        " + CODECS + ".writeEpochDay(generator, model." + p.epochDayGetter() + "(), " +
+                        (p.pattern == null ? "null" : formatConstant(p)) + ");");
+                break;
+            default:
+                out.println("        generator.writeFieldName(" + field + ");");
+                out.println("        " + CODECS + ".writeEnum(generator, " + value + ");");
+                break;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.krytonspace.carrent.codegen;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import java.util.*;
+
+/**
+ * Reading of the model metadata, shared by the processors generating code from it.
+ *
+ * The properties of a model are its fields annotated with @ModelField, including inherited ones.
+ * Each property is named after its field, unless the setter of the field is annotated with
+ * @JsonSetter, and is read and written through the setter and getter of the field.
+ * An int field whose getter returns a Date holds the date as a day count, see ModelProperty.Kind.EPOCH_DAY.
+ */
+final class ModelIntrospector {
+
+    static final String MODEL_FIELD = "org.krytonspace.carrent.utils.ModelField";
+
+    private static final String JSON_SETTER = "com.fasterxml.jackson.annotation.JsonSetter";
+    private static final String JSON_FORMAT = "com.fasterxml.jackson.annotation.JsonFormat";
+    private static final String JSON_SUB_TYPES = "com.fasterxml.jackson.annotation.JsonSubTypes";
+    private static final String JSON_TYPE_INFO = "com.fasterxml.jackson.annotation.JsonTypeInfo";
+
+    /**
+     * Can't create instances of this class.
+     */
+    private ModelIntrospector() {
+
+    }
+
+    /**
+     * Collect the properties of a model, in declaration order, base type fields first.
+     * @param model The model
+     * @return The properties
+     * @throws IllegalArgumentException if a field has no getter or setter, or an unsupported type
+     */
+    static List<ModelProperty> properties(TypeElement model) {
+        Deque<TypeElement> hierarchy = new ArrayDeque<>();
+        for (TypeElement t = model; t != null; t = superclass(t)) {
+            hierarchy.push(t);
+        }
+
+        List<ModelProperty> properties = new ArrayList<>();
+        for (TypeElement t : hierarchy) {
+            for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                AnnotationMirror modelField = annotation(field, MODEL_FIELD);
+                if (modelField != null) {
+                    properties.add(property(model, field, value(modelField, "name")));
+                }
+            }
+        }
+
+        return properties;
+    }
+
+    private static ModelProperty property(TypeElement model, VariableElement field, String displayName) {
+        String fieldName = field.getSimpleName().toString();
+        ExecutableElement setter = method(model, "set" + capitalize(fieldName), 1);
+        if (setter == null) {
+            throw new IllegalArgumentException("No setter for field '" + fieldName + "'");
+        }
+
+        String name = fieldName;
+        AnnotationMirror jsonSetter = annotation(setter, JSON_SETTER);
+        if (jsonSetter != null && !value(jsonSetter, "value").isEmpty()) {
+            name = value(jsonSetter, "value");
+        }
+
+        ExecutableElement getter = method(model, "get" + capitalize(name), 0);
+        if (getter == null) {
+            getter = method(model, "get" + capitalize(fieldName), 0);
+        }
+        if (getter == null) {
+            throw new IllegalArgumentException("No getter for field '" + fieldName + "'");
+        }
+
+        AnnotationMirror format = annotation(field, JSON_FORMAT);
+        String pattern = format == null || value(format, "pattern").isEmpty() ? null : value(format, "pattern");
+
+        TypeMirror type = field.asType();
+        ModelProperty.Kind kind;
+        if (type.getKind() == TypeKind.INT && isClass(getter.getReturnType(), "java.util.Date")) {
+            kind = ModelProperty.Kind.EPOCH_DAY;
+            // Columns hold the dates, as the getter returns them.
+            type = getter.getReturnType();
+        } else if (type.getKind() == TypeKind.INT) {
+            kind = ModelProperty.Kind.INT;
+        } else if (type.getKind() == TypeKind.LONG) {
+            kind = ModelProperty.Kind.LONG;
+        } else if (type.getKind() == TypeKind.BOOLEAN) {
+            kind = ModelProperty.Kind.BOOLEAN;
+        } else if (type.getKind() == TypeKind.DOUBLE) {
+            kind = ModelProperty.Kind.DOUBLE;
+        } else if (isClass(type, "java.lang.String")) {
+            kind = ModelProperty.Kind.STRING;
+        } else if (isClass(type, "java.util.Date")) {
+            kind = ModelProperty.Kind.DATE;
+        } else if (type.getKind() == TypeKind.DECLARED &&
+                ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+            kind = ModelProperty.Kind.ENUM;
+        } else {
+            throw new IllegalArgumentException("Unsupported type of field '" + fieldName + "': " + type);
+        }
+
+        ModelProperty property = new ModelProperty(name, fieldName, displayName, kind, type.toString(),
+                setter.getSimpleName().toString(), getter.getSimpleName().toString(), pattern);
+        if (kind == ModelProperty.Kind.EPOCH_DAY && (method(model, property.epochDayGetter(), 0) == null ||
+                method(model, property.epochDaySetter(), 1) == null)) {
+            throw new IllegalArgumentException("No " + property.epochDayGetter() + " or " +
+                    property.epochDaySetter() + " method for day count field '" + fieldName + "'");
+        }
+
+        return property;
+    }
+
+    /**
+     * Find the subtypes listed by @JsonSubTypes, by type name.
+     * @param model The model
+     * @return The subtypes, empty if the model is not polymorphic
+     */
+    static Map<String, TypeElement> subTypes(TypeElement model) {
+        Map<String, TypeElement> subTypes = new LinkedHashMap<>();
+        AnnotationMirror jsonSubTypes = annotation(model, JSON_SUB_TYPES);
+        if (jsonSubTypes == null) {
+            return subTypes;
+        }
+
+        for (AnnotationValue v : values(jsonSubTypes, "value")) {
+            AnnotationMirror subType = (AnnotationMirror) v.getValue();
+            TypeElement type = (TypeElement) ((DeclaredType) valueOf(subType, "value").getValue()).asElement();
+            String name = value(subType, "name");
+            subTypes.put(name.isEmpty() ? type.getSimpleName().toString() : name, type);
+        }
+
+        return subTypes;
+    }
+
+    /**
+     * Find the property holding the type name of polymorphic models, as set by @JsonTypeInfo.
+     * @param model The model
+     * @return The property name
+     */
+    static String typeProperty(TypeElement model) {
+        AnnotationMirror typeInfo = annotation(model, JSON_TYPE_INFO);
+        String property = typeInfo == null ? "" : value(typeInfo, "property");
+        return property.isEmpty() ? "@type" : property;
+    }
+
+    private static TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    /**
+     * Find a method of a model, including inherited ones.
+     */
+    private static ExecutableElement method(TypeElement model, String name, int parameterCount) {
+        for (TypeElement t = model; t != null; t = superclass(t)) {
+            for (ExecutableElement m : ElementFilter.methodsIn(t.getEnclosedElements())) {
+                if (m.getSimpleName().contentEquals(name) && m.getParameters().size() == parameterCount &&
+                        m.getModifiers().contains(Modifier.PUBLIC)) {
+                    return m;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isClass(TypeMirror type, String name) {
+        return type.getKind() == TypeKind.DECLARED &&
+                ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(name);
+    }
+
+    private static AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror a : element.getAnnotationMirrors()) {
+            if (((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return a;
+            }
+        }
+
+        return null;
+    }
+
+    private static AnnotationValue valueOf(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e :
+                annotation.getElementValues().entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals(name)) {
+                return e.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private static String value(AnnotationMirror annotation, String name) {
+        AnnotationValue value = valueOf(annotation, name);
+        return value == null ? "" : value.getValue().toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<? extends AnnotationValue> values(AnnotationMirror annotation, String name) {
+        AnnotationValue value = valueOf(annotation, name);
+        return value == null ? Collections.emptyList() : (List<? extends AnnotationValue>) value.getValue();
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * Escape a string for a Java string literal.
+     */
+    static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,83 @@
+package org.krytonspace.carrent.codegen;
+
+import java.util.Locale;
+
+/**
+ * A model property, as found by ModelIntrospector.
+ */
+final class ModelProperty {
+
+    /**
+     * Kinds of property values.
+     * EPOCH_DAY properties are dates held as a day count in an int field (see EpochDays): their getter and
+     * setter take a Date, and the day count is read and written through the epochDayGetter() and
+     * epochDaySetter() methods.
+     */
+    enum Kind {
+        INT, LONG, BOOLEAN, DOUBLE, STRING, DATE, EPOCH_DAY, ENUM
+    }
+
+    /**
+     * The property name, as written in files.
+     */
+    final String name;
+    final String fieldName;
+    final String displayName;
+    final Kind kind;
+
+    /**
+     * The source name of the property type.
+     */
+    final String type;
+    final String setter;
+    final String getter;
+
+    /**
+     * The pattern of dates written as strings, or null to write timestamps.
+     */
+    final String pattern;
+
+    ModelProperty(String name, String fieldName, String displayName, Kind kind, String type,
+                  String setter, String getter, String pattern) {
+        this.name = name;
+        this.fieldName = fieldName;
+        this.displayName = displayName;
+        this.kind = kind;
+        this.type = type;
+        this.setter = setter;
+        this.getter = getter;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Check if the property was renamed from its field.
+     * @return true if the property is not named after its field
+     */
+    boolean isRenamed() {
+        return !name.equals(fieldName);
+    }
+
+    /**
+     * Get the name of the method reading the day count of an EPOCH_DAY property.
+     * @return The getter name, derived from the field name
+     */
+    String epochDayGetter() {
+        return "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1) + "EpochDay";
+    }
+
+    /**
+     * Get the name of the method writing the day count of an EPOCH_DAY property.
+     * @return The setter name, derived from the field name
+     */
+    String epochDaySetter() {
+        return "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1) + "EpochDay";
+    }
+
+    /**
+     * Get a constant name derived from the property name.
+     * @return The property name in upper case, words separated by underscores
+     */
+    String constantName() {
+        return name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+    }
+}
@@ -8,13 +8,30 @@ import org.krytonspace.carrent.database.*;
 import org.krytonspace.carrent.database.exceptions.LoaderNotFoundException;
 import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
 import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.database.journal.Journal;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
 import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.VehicleModel;
+import org.krytonspace.carrent.models.offheap.OffHeapModels;
+import org.krytonspace.carrent.models.offheap.RecordArena;
 
 import javax.swing.*;
-import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.filechooser.FileFilter;
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Main holder of application state. Each change to the database must be done
@@ -36,13 +53,51 @@ public class DatabaseController implements ModelListener {
     private final ClientModelController clientController;
 
     /**
-     * This flag indicates unsaved changes.
+     * This holds the unsaved changes, model by model.
      */
-    private boolean dirty;
+    private ChangeSet changes;
     /**
      * This holds the last file the controller has loaded.
      */
     private File lastLoadedFile;
+    /**
+     * This holds the file the working database has last been loaded from or saved to as a whole,
+     * i.e. the file which only needs the unsaved changes to be up to date.
+     */
+    private File syncedFile;
+    /**
+     * This holds the journal of the synced file, unless its handler saves changes by itself.
+     */
+    private Journal journal;
+    /**
+     * This holds the snapshots of the file the working database belongs to, or null if it has none yet.
+     */
+    private SnapshotStore snapshots;
+    /**
+     * This holds the changes made since the last snapshot, model by model.
+     */
+    private ChangeSet snapshotChanges;
+    /**
+     * This watches the synced file for changes made by other programs, or is null if files are not watched.
+     */
+    private final DatabaseWatcher watcher;
+    /**
+     * Whether the clients and vehicles of loaded databases are stored off the heap, see OffHeapModels.
+     */
+    private final boolean offHeapModels;
+    /**
+     * This takes snapshots of the file the working database belongs to periodically, or is null if disabled.
+     */
+    private final Timer snapshotTimer;
+
+    /**
+     * The thread writing database files in the background.
+     */
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "database-io");
+        t.setDaemon(true);
+        return t;
+    });
 
     /**
      * Constructor.
@@ -54,8 +109,23 @@ public class DatabaseController implements ModelListener {
         this.contractController = new ContractModelController(model);
         this.vehicleController = new VehicleModelController(model);
         // There is nothing to save.
-        this.dirty = false;
+        this.changes = new ChangeSet();
         this.lastLoadedFile = null;
+        this.syncedFile = null;
+        this.journal = null;
+        this.snapshots = null;
+        this.snapshotChanges = new ChangeSet();
+        // Files are watched unless the "carrent.watchFile" system property is false.
+        this.watcher = Boolean.parseBoolean(System.getProperty("carrent.watchFile", "true")) ?
+                new DatabaseWatcher(this) : null;
+        // Clients and vehicles stay on the heap unless the "carrent.offHeapModels" system property is true.
+        this.offHeapModels = Boolean.getBoolean("carrent.offHeapModels");
+
+        // Snapshots are only taken periodically if the "carrent.snapshotInterval" system property sets
+        // the minutes between two, once a file is loaded or saved, see scheduleSnapshots().
+        int snapshotInterval = Integer.getInteger("carrent.snapshotInterval", 0);
+        this.snapshotTimer = snapshotInterval > 0 ?
+                new Timer((int) TimeUnit.MINUTES.toMillis(snapshotInterval), e -> takePeriodicSnapshot()) : null;
 
         // The main controller should be notified upon model addition/removal/edition.
         clientController.addModelListener(this);
@@ -72,13 +142,33 @@ public class DatabaseController implements ModelListener {
         chooser.setAcceptAllFileFilterUsed(false);
         chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
         for (String ext : DatabaseHandlers.extensionsSupported()) {
-            chooser.addChoosableFileFilter(
-                    new FileNameExtensionFilter(ext.toUpperCase() + " files", ext));
+            chooser.addChoosableFileFilter(extensionFilter(ext));
         }
 
         return chooser;
     }
 
+    /**
+     * Create a file filter accepting the files with an extension, which may have several parts (e.g. "json.gz").
+     * @param ext The extension, without the leading dot
+     * @return The filter
+     */
+    private static FileFilter extensionFilter(String ext) {
+        String suffix = "." + ext.toLowerCase();
+
+        return new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory() || f.getName().toLowerCase().endsWith(suffix);
+            }
+
+            @Override
+            public String getDescription() {
+                return ext.toUpperCase() + " files";
+            }
+        };
+    }
+
     /**
      * Load a database from a file.
      * @param f The file to read data from
@@ -93,10 +183,107 @@ public class DatabaseController implements ModelListener {
 
         // Get a handler for this file
         DatabaseHandler db = DatabaseHandlers.getHandlerForFile(f.getAbsolutePath());
+        boolean watched = watcher != null && DatabaseWatcher.canWatch(db);
+        if (watched && db instanceof BinaryDatabase) {
+            ((BinaryDatabase) db).setIndexing(true);
+        }
         // Load the database using this handler
         model = db.load();
+        // Index the file as loaded, to tell the changes other programs make to it later.
+        ModelIndex index = null;
+        if (watched) {
+            index = db instanceof BinaryDatabase ? ((BinaryDatabase) db).getLastIndex() : ModelIndex.of(model);
+        }
+
+        // Bring the snapshot up to date with the changes saved since, unless the file has been rewritten
+        // by another program meanwhile: its journal then no longer applies to it.
+        Journal loadedJournal = Journal.of(db, f);
+        boolean staleJournal = false;
+        if (loadedJournal != null) {
+            try {
+                staleJournal = loadedJournal.setAsideStale();
+                loadedJournal.cutTornEnd();
+                loadedJournal.replay(model);
+            } catch (IOException e) {
+                throw new LoadingFailedException("Could not replay the journal of '" + f.getName() + "': " +
+                        e.getMessage());
+            }
+        }
+        journal = loadedJournal;
+        RecordArena arena = moveOffHeap();
+        syncedFile = f.getAbsoluteFile();
+        changes = new ChangeSet();
+        // The next snapshot is a complete one.
+        snapshots = new SnapshotStore(f);
+        snapshotChanges = new ChangeSet();
+        scheduleSnapshots();
+        if (watched) {
+            watcher.watch(syncedFile, index);
+        } else if (watcher != null) {
+            watcher.stop();
+        }
+
+        attachModel();
+
+        // Report load statistics for file based handlers.
+        String status = db instanceof FileDatabase ? ((FileDatabase) db).getLastLoadSummary().toString() :
+                "Loaded '" + f.getName() + "'";
+        if (staleJournal) {
+            status += ", journal of an earlier version of the file set aside";
+        }
+        reportStatus(status, arena);
+
+        // Cache the loaded file.
+        lastLoadedFile = f;
+    }
+
+    /**
+     * Move the clients and vehicles of the working database off the heap, if enabled.
+     * This must be done before the models are referenced anywhere else.
+     * @return The arena holding their fields, or null if they stay on the heap
+     */
+    private RecordArena moveOffHeap() {
+        return offHeapModels ? OffHeapModels.moveOffHeap(model) : null;
+    }
+
+    /**
+     * Notify all listeners of what the controller has done, or failed to do in the background.
+     * Must be called on the event dispatch thread.
+     * @param status A line describing it to the user
+     * @param arena The arena the working database has been moved into, or null
+     */
+    void reportStatus(String status, RecordArena arena) {
+        String line = arena == null ? status :
+                status + ", clients and vehicles moved off the heap (" + arena.getUsedBytes() / 1024 + " KiB)";
+        for (DatabaseListener ev : listeners) {
+            ev.onStatusChanged(line);
+        }
+    }
+
+    /**
+     * Report the problems the saves of a handler have run into without failing, on the event dispatch thread.
+     * @param db The handler
+     */
+    private void reportSaveProblems(DatabaseHandler db) {
+        if (db instanceof FileDatabase) {
+            reportProblems(((FileDatabase) db).takeSaveProblems());
+        }
+    }
 
-        // Attach the new model to each sub-controller
+    /**
+     * Report the problems a background task has run into without failing, on the event dispatch thread.
+     * @param problems The descriptions of the problems, possibly empty
+     */
+    private void reportProblems(List<String> problems) {
+        if (!problems.isEmpty()) {
+            SwingUtilities.invokeLater(() -> reportStatus(String.join("; ", problems), null));
+        }
+    }
+
+    /**
+     * Attach the working database to each sub-controller, and notify listeners it has been loaded.
+     */
+    private void attachModel() {
         contractController.setModel(model);
         vehicleController.setModel(model);
         clientController.setModel(model);
@@ -105,9 +292,6 @@ public class DatabaseController implements ModelListener {
         for (DatabaseListener ev : listeners) {
             ev.onDatabaseLoaded();
         }
-
-        // Cache the loaded file.
-        lastLoadedFile = f;
     }
 
     /**
@@ -117,18 +301,430 @@ public class DatabaseController implements ModelListener {
      * @throws WritingFailedException if the file could not be written
      */
     public void saveModelToFile(File f) throws LoaderNotFoundException, WritingFailedException {
+        SaveTask task = prepareSave(f);
+
+        // Notify all listeners
+        for (DatabaseListener ev : listeners) {
+            ev.onDatabaseSaving();
+        }
+
+        // Wait for the I/O thread, so that saves never overlap.
+        try {
+            runOnIoThread(task).join();
+        } catch (CompletionException e) {
+            saveFailed(task, f);
+            if (e.getCause() instanceof WritingFailedException) {
+                throw (WritingFailedException) e.getCause();
+            }
+            throw new WritingFailedException("Could not save to '" + f.getName() + "': " + e.getCause());
+        }
+
+        // Notify all listeners
+        for (DatabaseListener ev : listeners) {
+            ev.onDatabaseSaved();
+        }
+    }
+
+    /**
+     * Save the working database to a file, on the I/O thread.
+     * The database is saved as it is when this method is called: it can be changed
+     * while the file is written, and changes made meanwhile are left for the next save.
+     * Listeners are notified on the event dispatch thread once the file has been written.
+     * @param f The file to write data to
+     * @return A future completed once the file has been written, or exceptionally
+     *         with a WritingFailedException if it could not be
+     * @throws LoaderNotFoundException if a suitable loader could not be found
+     */
+    public CompletableFuture<Void> saveModelToFileAsync(File f) throws LoaderNotFoundException {
+        SaveTask task = prepareSave(f);
+
+        // Notify all listeners
+        for (DatabaseListener ev : listeners) {
+            ev.onDatabaseSaving();
+        }
+
+        return runOnIoThread(task).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                saveFailed(task, f);
+                return;
+            }
+
+            // Notify all listeners
+            for (DatabaseListener ev : listeners) {
+                ev.onDatabaseSaved();
+            }
+        }));
+    }
+
+    /**
+     * Snapshot the working database, and prepare the writing of the snapshot to a file.
+     * Upon return, the working database is considered saved.
+     * @param f The file to write data to
+     * @return The task writing the file
+     * @throws LoaderNotFoundException if a suitable loader could not be found
+     */
+    private SaveTask prepareSave(File f) throws LoaderNotFoundException {
         // Get a handler for this file
         DatabaseHandler db = DatabaseHandlers.getHandlerForFile(f.getAbsolutePath());
-        // Save the database using this handler
-        db.save(model);
+        // Mark as clean: changes from now on belong to the next save.
+        ChangeSet saved = changes;
+        ChangeSet savedState = saved.snapshot();
+        changes = new ChangeSet();
 
+        if (f.getAbsoluteFile().equals(syncedFile)) {
+            boolean watched = watcher != null && DatabaseWatcher.canWatch(db);
+            if (watched) {
+                watcher.beginWrite();
+            }
+
+            if (db instanceof IncrementalDatabaseHandler) {
+                // Only rewrite what has changed.
+                DatabaseModel snapshot = model.snapshot();
+                IncrementalDatabaseHandler incremental = (IncrementalDatabaseHandler) db;
+                return new SaveTask(saved, snapshot, false, watched) {
+                    @Override
+                    void run() throws WritingFailedException {
+                        incremental.saveChanges(snapshot, savedState);
+                        reportSaveProblems(db);
+                    }
+                };
+            }
+
+            // Only append the changes to the journal, and fold it into the file once it has grown too large.
+            // The file is then written by the same task, so that the watcher expects it.
+            Journal current = journal;
+            DatabaseModel compacted = current.needsCompaction() ? model.snapshot() : null;
+            return new SaveTask(saved, compacted, false, watched) {
+                @Override
+                void run() throws WritingFailedException {
+                    current.commit(savedState);
+                    if (compacted != null) {
+                        current.compact(db, compacted);
+                        reportSaveProblems(db);
+                    }
+                }
+            };
+        }
+
+        // Edits made while the file is written must not show in it.
+        DatabaseModel snapshot = model.snapshot();
+
+        // Save the whole database using this handler: the file then starts a new journal,
+        // which records the changes made from now on.
+        syncedFile = f.getAbsoluteFile();
+        Journal next = Journal.of(db, f);
+        journal = next;
+        // Snapshots belong to the file: a new file starts with a complete snapshot.
+        if (snapshots == null || !snapshots.getDatabaseFile().equals(syncedFile)) {
+            snapshots = new SnapshotStore(f);
+            snapshotChanges = new ChangeSet();
+            scheduleSnapshots();
+        }
+        // The file is indexed once written.
+        boolean watched = watcher != null && DatabaseWatcher.canWatch(db);
+        if (watched) {
+            watcher.beginWrite();
+            watcher.watch(syncedFile, null);
+        } else if (watcher != null) {
+            watcher.stop();
+        }
+
+        return new SaveTask(saved, snapshot, true, watched) {
+            @Override
+            void run() throws WritingFailedException {
+                db.save(snapshot);
+                if (next != null) {
+                    next.reset();
+                }
+                reportSaveProblems(db);
+            }
+        };
+    }
+
+    /**
+     * Run a save on the I/O thread.
+     * @param task The save
+     * @return A future completed once the save is done
+     */
+    private CompletableFuture<Void> runOnIoThread(SaveTask task) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (WritingFailedException e) {
+                throw new CompletionException(e);
+            } finally {
+                if (task.snapshot != null) {
+                    task.snapshot.release();
+                }
+                if (task.watched) {
+                    watcher.endWrite();
+                }
+            }
+        }, ioExecutor);
+    }
+
+    /**
+     * Restore the state of the controller after a save has failed.
+     * @param task The failed save
+     */
+    private void saveFailed(SaveTask task, File f) {
+        // The changes are still unsaved, under the ones made since.
+        task.changes.putAll(changes);
+        changes = task.changes;
+        // Without a file to start from, the next save will write the whole database.
+        if (task.fullSave && f.getAbsoluteFile().equals(syncedFile)) {
+            syncedFile = null;
+            journal = null;
+            if (watcher != null) {
+                watcher.stop();
+            }
+        }
+
+        for (DatabaseListener ev : listeners) {
+            ev.onDatabaseChanged();
+        }
+    }
+
+    /**
+     * Take a snapshot of the working database, on the I/O thread.
+     * Only the changes made since the last snapshot are written, see SnapshotStore.
+     * The database is snapshot as it is when this method is called.
+     * @return A future completed with the snapshot once it has been written, or exceptionally
+     *         with a WritingFailedException if it could not be
+     */
+    public CompletableFuture<Snapshot> takeSnapshotAsync() {
+        CompletableFuture<Snapshot> future = new CompletableFuture<>();
+        if (snapshots == null) {
+            future.completeExceptionally(new WritingFailedException(
+                    "The database must be saved to a file before taking snapshots."));
+            return future;
+        }
+
+        SnapshotStore store = snapshots;
+        // Neither the database nor the changes are copied: the store only reads the IDs of the changes,
+        // and the models as they are now from the snapshot, see DatabaseModel.snapshot().
+        DatabaseModel snapshot = model.snapshot();
+        ChangeSet changed = snapshotChanges;
+        snapshotChanges = new ChangeSet();
+
+        ioExecutor.execute(() -> {
+            try {
+                future.complete(store.take(snapshot, changed));
+                reportProblems(store.getLastProblems());
+            } catch (WritingFailedException | RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                snapshot.release();
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Start taking periodic snapshots of the file the working database now belongs to, if enabled:
+     * the first one is taken a whole interval later.
+     */
+    private void scheduleSnapshots() {
+        if (snapshotTimer != null) {
+            snapshotTimer.restart();
+        }
+    }
+
+    /**
+     * Stop taking periodic snapshots and watching the synced file, e.g. before quitting.
+     * Saves already started are still written.
+     */
+    public void close() {
+        if (snapshotTimer != null) {
+            snapshotTimer.stop();
+        }
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    /**
+     * Take a snapshot if the database has changed since the last one.
+     */
+    private void takePeriodicSnapshot() {
+        if (snapshots == null || snapshotChanges.isEmpty()) {
+            return;
+        }
+
+        takeSnapshotAsync().whenComplete((snapshot, error) -> {
+            if (error != null) {
+                SwingUtilities.invokeLater(() -> reportStatus(error.getMessage(), null));
+            }
+        });
+    }
+
+    /**
+     * List the snapshots of the file the working database belongs to.
+     * @return The snapshots, newest first
+     */
+    public List<Snapshot> listSnapshots() {
+        return snapshots == null ? Collections.emptyList() : snapshots.list();
+    }
+
+    /**
+     * Replace the working database with a snapshot.
+     * The restored database is unsaved: the next save writes it as a whole.
+     * @param snapshot The snapshot to restore, as listed by listSnapshots()
+     * @throws LoadingFailedException if the snapshot could not be read
+     */
+    public void restoreSnapshot(Snapshot snapshot) throws LoadingFailedException {
         // Notify all listeners
         for (DatabaseListener ev : listeners) {
-            ev.onDatabaseSaved();
+            ev.onDatabaseLoading();
+        }
+
+        // Wait for the I/O thread, which may be writing to the snapshots.
+        SnapshotStore store = snapshots;
+        CompletableFuture<DatabaseModel> restored = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.restore(snapshot);
+            } catch (LoadingFailedException e) {
+                throw new CompletionException(e);
+            }
+        }, ioExecutor);
+
+        try {
+            model = restored.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof LoadingFailedException) {
+                throw (LoadingFailedException) e.getCause();
+            }
+            throw new LoadingFailedException("Could not restore snapshot '" + snapshot + "': " + e.getCause());
+        }
+        RecordArena arena = moveOffHeap();
+
+        // The file does not hold the restored database anymore.
+        syncedFile = null;
+        journal = null;
+        if (watcher != null) {
+            watcher.stop();
         }
+        changes = new ChangeSet();
+        model.getRegisteredClients().forEach(changes::put);
+        model.getRegisteredVehicles().forEach(changes::put);
+        model.getRegisteredContracts().forEach(changes::put);
+        // The next snapshot is built upon the restored one.
+        snapshotChanges = new ChangeSet();
+
+        attachModel();
+        reportStatus("Restored snapshot '" + snapshot + "'", arena);
 
-        // Mark as clean
-        dirty = false;
+        for (DatabaseListener ev : listeners) {
+            ev.onDatabaseChanged();
+        }
+    }
+
+    /**
+     * Apply changes made elsewhere to the working database, e.g. read from another file.
+     * Changed models are updated in place, and listeners are notified model by model as for edits:
+     * the changes are unsaved.
+     * @param patch The new state of each changed model by ID, null for removed ones
+     */
+    public void applyChanges(ChangeSet patch) {
+        clientController.applyClientChanges(patch.getClientChanges());
+        vehicleController.applyVehicleChanges(patch.getVehicleChanges());
+        contractController.applyContractChanges(patch.getContractChanges());
+    }
+
+    /**
+     * Merge the changes another program has made to the synced file into the working database, see
+     * DatabaseWatcher. Models with unsaved changes keep them: their state found in the file is left out,
+     * and overwritten by the next save. Merged models are not unsaved; they still belong to the next snapshot.
+     * The journal of the file is folded into the unsaved changes, see foldJournal().
+     * @param f The changed file
+     * @param merged The changes read from the file
+     */
+    void mergeFileChanges(File f, ChangeSet merged) {
+        if (!f.equals(syncedFile)) {
+            return;
+        }
+
+        ChangeSet unsaved = changes;
+        ChangeSet applied = merged.without(unsaved);
+        int kept = merged.size() - applied.size();
+
+        applyChanges(applied);
+        String status = "Merged " + applied.size() + " changes of '" + f.getName() + "'";
+        if (kept > 0) {
+            status += ", kept " + kept + " unsaved changes of the same entries over the file's";
+        }
+        reportStatus(status, null);
+        // Listeners record the changes first. A save started meanwhile has taken the set they were recorded in.
+        SwingUtilities.invokeLater(() -> {
+            unsaved.forget(applied);
+            changes.forget(applied);
+        });
+        foldJournal(f, merged);
+    }
+
+    /**
+     * Fold the journal of the synced file into the unsaved changes, once another program has rewritten the file:
+     * the journal applies to the file as it was, and must not be replayed over the new one.
+     * The changes it holds are saved again by the next save, unless the file holds newer states.
+     * @param f The rewritten file
+     * @param merged The changes read from the file
+     */
+    private void foldJournal(File f, ChangeSet merged) {
+        if (journal == null) {
+            return;
+        }
+
+        // Saves in progress may still append to the journal: wait for them.
+        Journal stale = journal;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                ChangeSet journaled = stale.read();
+                stale.reset();
+                return journaled;
+            } catch (IOException | WritingFailedException e) {
+                throw new CompletionException(e);
+            }
+        }, ioExecutor).whenComplete((journaled, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                reportStatus("Could not fold the journal of '" + f.getName() + "': " +
+                        error.getCause().getMessage(), null);
+                return;
+            }
+
+            journaled.forget(merged);
+            markUnsaved(journaled.getClientChanges(), model.getRegisteredClients(), ClientModel.class);
+            markUnsaved(journaled.getVehicleChanges(), model.getRegisteredVehicles(), VehicleModel.class);
+            markUnsaved(journaled.getContractChanges(), model.getRegisteredContracts(), ContractModel.class);
+
+            if (!journaled.isEmpty()) {
+                for (DatabaseListener ev : listeners) {
+                    ev.onDatabaseChanged();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Mark models as unsaved, in their current state.
+     * @param changed The changed models by ID
+     * @param registered The registered models of this type
+     * @param type The model type
+     */
+    private <T extends Model> void markUnsaved(Map<String, T> changed, List<T> registered, Class<T> type) {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        Set<String> removed = new HashSet<>(changed.keySet());
+        for (T m : registered) {
+            if (removed.remove(m.getId())) {
+                changes.put(m);
+            }
+        }
+        for (String id : removed) {
+            changes.remove(type, id);
+        }
     }
 
     /**
@@ -136,7 +732,7 @@ public class DatabaseController implements ModelListener {
      * @return true if some changes are unsaved, false otherwise
      */
     public boolean hasUnsavedChanges() {
-        return dirty;
+        return !changes.isEmpty();
     }
 
     /**
@@ -171,6 +767,14 @@ public class DatabaseController implements ModelListener {
         return contractController;
     }
 
+    /**
+     * Getter
+     * @return The watcher of the synced file, or null if files are not watched
+     */
+    DatabaseWatcher getWatcher() {
+        return watcher;
+    }
+
     /**
      * Add a new listener for listening to database events.
      * @param e The listener to add
@@ -193,7 +797,20 @@ public class DatabaseController implements ModelListener {
             ev.onDatabaseChanged();
         }
         // New changes detected !
-        dirty = true;
+        changes.put(e.getModel());
+        snapshotChanges.put(e.getModel());
+    }
+
+    @Override
+    public void onModelsAdded(List<? extends Model> models) {
+        for (DatabaseListener ev : listeners) {
+            ev.onDatabaseChanged();
+        }
+        // New changes detected !
+        for (Model m : models) {
+            changes.put(m);
+            snapshotChanges.put(m);
+        }
     }
 
     @Override
@@ -202,7 +819,8 @@ public class DatabaseController implements ModelListener {
             ev.onDatabaseChanged();
         }
         // New changes detected !
-        dirty = true;
+        changes.remove(e.getModel());
+        snapshotChanges.remove(e.getModel());
     }
 
     @Override
@@ -211,6 +829,32 @@ public class DatabaseController implements ModelListener {
             ev.onDatabaseChanged();
         }
         // New changes detected !
-        dirty = true;
+        changes.put(e.getModel());
+        snapshotChanges.put(e.getModel());
+    }
+
+    /**
+     * The writing of a database snapshot to a file.
+     */
+    private abstract static class SaveTask {
+        private final ChangeSet changes;
+        /**
+         * The snapshot written, released once it has been, or null.
+         */
+        private final DatabaseModel snapshot;
+        private final boolean fullSave;
+        /**
+         * Whether the file is watched, and must be indexed again once written.
+         */
+        private final boolean watched;
+
+        private SaveTask(ChangeSet changes, DatabaseModel snapshot, boolean fullSave, boolean watched) {
+            this.changes = changes;
+            this.snapshot = snapshot;
+            this.fullSave = fullSave;
+            this.watched = watched;
+        }
+
+        abstract void run() throws WritingFailedException;
     }
 }
@@ -0,0 +1,287 @@
+package org.krytonspace.carrent.controllers;
+
+import org.krytonspace.carrent.database.*;
+import org.krytonspace.carrent.database.exceptions.LoaderNotFoundException;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Watches the file the working database is synced with, and merges the changes other programs make to it
+ * into the working database, see DatabaseController.
+ *
+ * The directory of the file is watched for changes. Once the file has not changed for a moment, and if its size
+ * or modification time differ from the known ones, it is read: binary databases through
+ * BinaryDatabase.readChanges(), which only decodes the blocks which have changed, other formats as a whole.
+ * The models read are compared with the index of the file as it was (see ModelIndex), and only the differences
+ * are merged, on the event dispatch thread.
+ *
+ * The controller tells the watcher when it writes the file itself, so that its own saves are indexed instead
+ * of being merged back. Segmented and paged databases, spread over several files, are not watched.
+ */
+class DatabaseWatcher {
+
+    /**
+     * Milliseconds the file must be left unchanged for before it is read.
+     */
+    private static final long SETTLE_DELAY = 500;
+
+    private final DatabaseController controller;
+
+    /**
+     * The thread reading the file.
+     */
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "database-watcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The watched file and what is known of it, or null if no file is watched.
+     */
+    private final AtomicReference<Target> target = new AtomicReference<>();
+    /**
+     * The number of writes of the file by the controller in progress.
+     */
+    private final AtomicInteger writes = new AtomicInteger();
+    private WatchService service;
+    private ScheduledFuture<?> pendingCheck;
+
+    /**
+     * Constructor.
+     * @param controller The controller to merge changes into
+     */
+    DatabaseWatcher(DatabaseController controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Check if the files of a database handler can be watched.
+     * @param handler The handler
+     * @return true if the handler reads a single file
+     */
+    static boolean canWatch(DatabaseHandler handler) {
+        return handler instanceof BinaryDatabase ||
+                (handler instanceof FileDatabase && !(handler instanceof IncrementalDatabaseHandler));
+    }
+
+    /**
+     * Watch a file, instead of the one watched so far.
+     * @param f The file
+     * @param index The index of the file as it was loaded, or null to index the file once it is not written
+     */
+    void watch(File f, ModelIndex index) {
+        stop();
+
+        File file = f.getAbsoluteFile();
+        target.set(new Target(file, index, file.length(), file.lastModified()));
+
+        try {
+            WatchService s = file.toPath().getFileSystem().newWatchService();
+            file.getParentFile().toPath().register(s,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            service = s;
+
+            Thread events = new Thread(() -> poll(s, file.getName()), "database-watcher-events");
+            events.setDaemon(true);
+            events.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            report("Could not watch '" + file.getName() + "': " + e.getMessage());
+        }
+
+        if (index == null) {
+            schedule();
+        }
+    }
+
+    /**
+     * Stop watching the file.
+     */
+    void stop() {
+        target.set(null);
+
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                // The service is unusable anyway.
+            }
+            service = null;
+        }
+    }
+
+    /**
+     * Notify that the controller is about to write the watched file.
+     */
+    void beginWrite() {
+        writes.incrementAndGet();
+    }
+
+    /**
+     * Notify that the controller has written the watched file, successfully or not.
+     */
+    void endWrite() {
+        Target t = target.get();
+        if (t != null && (t.file.length() != t.size || t.file.lastModified() != t.modified)) {
+            // The file holds what the controller wrote: index it again rather than merge it.
+            target.compareAndSet(t, new Target(t.file, null, 0, 0));
+        }
+
+        if (writes.decrementAndGet() == 0) {
+            schedule();
+        }
+    }
+
+    /**
+     * Check the file at once, instead of once it has been left unchanged for a moment, and wait for the check.
+     * Changes found are merged afterwards, on the event dispatch thread.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void checkNow() throws InterruptedException {
+        synchronized (this) {
+            if (pendingCheck != null) {
+                pendingCheck.cancel(false);
+                pendingCheck = null;
+            }
+        }
+
+        try {
+            worker.submit(this::check).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not check the watched file", e.getCause());
+        }
+    }
+
+    /**
+     * Wait for changes of the file, until the watch service is closed.
+     */
+    private void poll(WatchService s, String fileName) {
+        try {
+            while (true) {
+                WatchKey key = s.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                            fileName.equals(String.valueOf(event.context()))) {
+                        schedule();
+                    }
+                }
+
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // No longer watched.
+        }
+    }
+
+    /**
+     * Check the file once it has been left unchanged for a moment.
+     */
+    private synchronized void schedule() {
+        if (pendingCheck != null) {
+            pendingCheck.cancel(false);
+        }
+        pendingCheck = worker.schedule(this::check, SETTLE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read the changes of the file, on the worker thread, and merge them into the working database.
+     */
+    private void check() {
+        Target t = target.get();
+        if (t == null || writes.get() > 0 || !t.file.exists()) {
+            return;
+        }
+
+        long size = t.file.length();
+        long modified = t.file.lastModified();
+        if (t.index != null && size == t.size && modified == t.modified) {
+            return;
+        }
+
+        ModelIndex index;
+        ChangeSet merged = null;
+        try {
+            DatabaseHandler handler = DatabaseHandlers.getHandlerForFile(t.file.getPath());
+            if (handler instanceof BinaryDatabase) {
+                BinaryDatabase binary = (BinaryDatabase) handler;
+                if (t.index == null) {
+                    binary.setIndexing(true);
+                    binary.load();
+                } else {
+                    merged = binary.readChanges(t.index);
+                }
+                index = binary.getLastIndex();
+                if (!binary.getSkippedParts().isEmpty()) {
+                    report("Skipped corrupt " + String.join(", ", binary.getSkippedParts()) + " of '" +
+                            t.file.getName() + "'");
+                }
+            } else {
+                DatabaseModel model = handler.load();
+                index = ModelIndex.of(model);
+                if (t.index != null) {
+                    merged = index.changesSince(t.index, model);
+                }
+            }
+        } catch (LoaderNotFoundException | LoadingFailedException | RuntimeException e) {
+            // The file may still be written: the next change of the file tries again.
+            report("Could not read the changes of '" + t.file.getName() + "': " + e.getMessage());
+            return;
+        }
+
+        // The file may have been saved by the controller, or left, meanwhile.
+        if (!target.compareAndSet(t, new Target(t.file, index, size, modified))) {
+            return;
+        }
+
+        if (merged != null && !merged.isEmpty()) {
+            ChangeSet changes = merged;
+            SwingUtilities.invokeLater(() -> controller.mergeFileChanges(t.file, changes));
+        }
+    }
+
+    /**
+     * Report a problem to the user through the controller, on the event dispatch thread.
+     * @param problem The description of the problem
+     */
+    private void report(String problem) {
+        SwingUtilities.invokeLater(() -> controller.reportStatus(problem, null));
+    }
+
+    /**
+     * A watched file, and what is known of it.
+     */
+    private static final class Target {
+        private final File file;
+        /**
+         * The index of the file as last read, or null if it must be indexed again.
+         */
+        private final ModelIndex index;
+        private final long size;
+        private final long modified;
+
+        private Target(File file, ModelIndex index, long size, long modified) {
+            this.file = file;
+            this.index = index;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.krytonspace.carrent.controllers.csv;
+
+import org.krytonspace.carrent.controllers.utils.Requirements;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+
+/**
+ * Export of models to a CSV file, which can be imported again by CsvImporter.
+ *
+ * The header names the columns after the model properties. Dates are written the way the user types them,
+ * and enums by constant name. Rows are written as the models are iterated, without copying them.
+ * @param <T> The model type
+ */
+public final class CsvExporter<T extends Model> {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Kinds of column values, which are not written the same way.
+     */
+    private static final int INT = 0;
+    private static final int DATE = 1;
+    private static final int OTHER = 2;
+
+    private final ModelAccessor<T> accessor;
+    private final int[] kinds;
+
+    /**
+     * Constructor.
+     * @param modelClass The model type
+     */
+    public CsvExporter(Class<T> modelClass) {
+        this.accessor = ModelAccessor.forModel(modelClass);
+        this.kinds = new int[accessor.getColumnCount()];
+
+        for (int i = 0; i < kinds.length; i++) {
+            Class<?> type = accessor.getColumnType(i);
+            kinds[i] = type == int.class ? INT : Date.class.isAssignableFrom(type) ? DATE : OTHER;
+        }
+    }
+
+    /**
+     * Export models to a file.
+     * @param models The models to export
+     * @param target The file to write to
+     * @return The number of models written
+     * @throws IOException if the file could not be written
+     */
+    public int exportFile(Iterable<? extends T> models, File target) throws IOException {
+        int count = 0;
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(target.toPath()), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            StringBuilder record = new StringBuilder();
+            for (int i = 0; i < kinds.length; i++) {
+                CsvFormat.appendField(record, accessor.getPropertyName(i), i == 0);
+            }
+            writer.append(record).append('\n');
+
+            for (T model : models) {
+                record.setLength(0);
+                appendRecord(record, model);
+                writer.append(record).append('\n');
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private void appendRecord(StringBuilder record, T model) {
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case INT:
+                    if (i > 0) {
+                        record.append(',');
+                    }
+                    // No boxing, nor quoting.
+                    record.append(accessor.getInt(model, i));
+                    break;
+                case DATE:
+                    Date date = (Date) accessor.get(model, i);
+                    CsvFormat.appendField(record, date == null ? null : Requirements.formatDate(date), i == 0);
+                    break;
+                default:
+                    Object value = accessor.get(model, i);
+                    CsvFormat.appendField(record, value == null ? null : value instanceof Enum ?
+                            ((Enum<?>) value).name() : value.toString(), i == 0);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.krytonspace.carrent.controllers.csv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reading and writing of CSV records, as described by RFC 4180: fields are separated by commas,
+ * and quoted when they hold commas, quotes or line breaks.
+ */
+public final class CsvFormat {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    /**
+     * Can't create instances of this class.
+     */
+    private CsvFormat() {
+
+    }
+
+    /**
+     * Read the next record, which may span several lines if a quoted field holds line breaks.
+     * @param reader The reader to read from
+     * @return The record, without its trailing line break, or null at the end of the input
+     * @throws IOException if the input could not be read
+     */
+    public static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null || countQuotes(line) % 2 == 0) {
+            return line;
+        }
+
+        // A quoted field is still open: the record goes on with the next line.
+        StringBuilder record = new StringBuilder(line);
+        int quotes = countQuotes(line);
+        while (quotes % 2 != 0 && (line = reader.readLine()) != null) {
+            record.append('\n').append(line);
+            quotes += countQuotes(line);
+        }
+
+        return record.toString();
+    }
+
+    /**
+     * Split a record into its fields, unquoting them.
+     * @param record The record
+     * @return The fields
+     */
+    public static String[] split(String record) {
+        List<String> fields = new ArrayList<>();
+        int length = record.length();
+        int i = 0;
+
+        while (true) {
+            int end;
+            if (i < length && record.charAt(i) == QUOTE) {
+                StringBuilder field = new StringBuilder();
+                i++;
+                while (i < length) {
+                    char c = record.charAt(i++);
+                    if (c != QUOTE) {
+                        field.append(c);
+                    } else if (i < length && record.charAt(i) == QUOTE) {
+                        // Escaped quote
+                        field.append(QUOTE);
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                fields.add(field.toString());
+                end = record.indexOf(SEPARATOR, i);
+            } else {
+                // Unquoted fields are taken as they are.
+                end = record.indexOf(SEPARATOR, i);
+                fields.add(end < 0 ? record.substring(i) : record.substring(i, end));
+            }
+
+            if (end < 0) {
+                return fields.toArray(new String[fields.size()]);
+            }
+            i = end + 1;
+        }
+    }
+
+    /**
+     * Append a field to a record, quoting it if needed.
+     * @param record The record
+     * @param field The field value, or null for an empty field
+     * @param first true if this is the first field of the record
+     */
+    public static void appendField(StringBuilder record, String field, boolean first) {
+        if (!first) {
+            record.append(SEPARATOR);
+        }
+        if (field == null) {
+            return;
+        }
+
+        if (!needsQuotes(field)) {
+            record.append(field);
+            return;
+        }
+
+        record.append(QUOTE);
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == QUOTE) {
+                record.append(QUOTE);
+            }
+            record.append(c);
+        }
+        record.append(QUOTE);
+    }
+
+    private static boolean needsQuotes(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int countQuotes(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == QUOTE) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,370 @@
+package org.krytonspace.carrent.controllers.csv;
+
+import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
+import org.krytonspace.carrent.controllers.model.ClientController;
+import org.krytonspace.carrent.controllers.model.VehicleController;
+import org.krytonspace.carrent.models.BikeModel;
+import org.krytonspace.carrent.models.CarModel;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.ModelFactory;
+import org.krytonspace.carrent.models.PlaneModel;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import javax.swing.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Import of models from a CSV file, with the same checks as models added by the user.
+ *
+ * The file starts with a header naming the columns after the model properties, as written by CsvExporter.
+ * Every property but the ID is required, in any order; other columns are ignored, and IDs are generated.
+ *
+ * Rows are read in chunks, which are checked on several threads while the next ones are read.
+ * Chunks are then registered in file order, one batch per chunk, through the controllers.
+ * Rows which do not pass the checks are written to a rejects file, with the reason of the rejection.
+ * @param <T> The model type
+ */
+public final class CsvImporter<T extends Model> {
+
+    /**
+     * The number of rows checked by a task.
+     */
+    private static final int CHUNK_SIZE = 8192;
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of chunks read ahead of the registration, per thread.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Threads checking rows.
+     */
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "csv-import-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final Class<T> modelClass;
+    private final ModelAccessor<T> accessor;
+    private final RowParser<T> parser;
+    private final Consumer<List<T>> registrar;
+
+    /**
+     * Constructor.
+     * @param modelClass The model type
+     * @param parser The creation of a model from the values of its columns, ID excepted
+     * @param registrar The registration of a batch of models
+     */
+    private CsvImporter(Class<T> modelClass, RowParser<T> parser, Consumer<List<T>> registrar) {
+        this.modelClass = modelClass;
+        this.accessor = ModelAccessor.forModel(modelClass);
+        this.parser = parser;
+        this.registrar = registrar;
+    }
+
+    /**
+     * Create an importer of clients.
+     * @param controller The controller registering the clients
+     * @return The importer
+     */
+    public static CsvImporter<ClientModel> forClients(ClientController controller) {
+        return new CsvImporter<>(ClientModel.class,
+                v -> controller.createClient(v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8]),
+                controller::addClients);
+    }
+
+    /**
+     * Create an importer of cars.
+     * @param controller The controller registering the cars
+     * @return The importer
+     */
+    public static CsvImporter<CarModel> forCars(VehicleController controller) {
+        return new CsvImporter<>(CarModel.class,
+                v -> controller.createCar(v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7]),
+                controller::addVehicles);
+    }
+
+    /**
+     * Create an importer of bikes.
+     * @param controller The controller registering the bikes
+     * @return The importer
+     */
+    public static CsvImporter<BikeModel> forBikes(VehicleController controller) {
+        return new CsvImporter<>(BikeModel.class,
+                v -> controller.createBike(v[0], v[1], v[2], v[3], v[4], v[5], v[6]),
+                controller::addVehicles);
+    }
+
+    /**
+     * Create an importer of planes.
+     * @param controller The controller registering the planes
+     * @return The importer
+     */
+    public static CsvImporter<PlaneModel> forPlanes(VehicleController controller) {
+        return new CsvImporter<>(PlaneModel.class,
+                v -> controller.createPlane(v[0], v[1], v[2], v[3], v[4], v[5], v[6]),
+                controller::addVehicles);
+    }
+
+    /**
+     * Import the models of a file. Must not be called from the event dispatch thread, which registers the models.
+     * @param source The file to import
+     * @param rejects The file to write rejected rows to, only created if some rows are rejected
+     * @return The import statistics
+     * @throws IOException if a file could not be read or written
+     * @throws InvalidDataException if the file header lacks a required column
+     */
+    public ImportSummary importFile(File source, File rejects) throws IOException, InvalidDataException {
+        long start = System.nanoTime();
+
+        // Rejected rows of a previous import must not be taken for those of this one.
+        Files.deleteIfExists(rejects.toPath());
+
+        Deque<Future<Chunk<T>>> pending = new ArrayDeque<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(source.toPath()), StandardCharsets.UTF_8), BUFFER_SIZE);
+             RejectsWriter rejectsWriter = new RejectsWriter(rejects)) {
+            String header = CsvFormat.readRecord(reader);
+            if (header == null) {
+                throw new InvalidDataException("'" + source.getName() + "' is empty.");
+            }
+            String[] names = CsvFormat.split(header);
+            int[] columns = mapColumns(names, source);
+            rejectsWriter.setHeader(header);
+
+            int rowCount = 0;
+            int rejectedCount = 0;
+
+            String[] rows;
+            while ((rows = readChunk(reader)) != null) {
+                rowCount += rows.length;
+
+                // IDs are reserved in file order, whatever the order the chunks are checked in.
+                ModelFactory.Reservation reservation = ModelFactory.reserveIds(rows.length,
+                        Collections.<Class<? extends Model>>singleton(modelClass));
+                String[] chunkRows = rows;
+                pending.add(WORKERS.submit(() -> parseChunk(chunkRows, names.length, columns, reservation)));
+
+                if (pending.size() >= THREAD_COUNT * CHUNKS_PER_THREAD) {
+                    rejectedCount += register(pending.poll(), rejectsWriter);
+                }
+            }
+            while (!pending.isEmpty()) {
+                rejectedCount += register(pending.poll(), rejectsWriter);
+            }
+
+            return new ImportSummary(source.getName(), rowCount, rejectedCount, rejects, System.nanoTime() - start);
+        } finally {
+            // Stop checking the chunks left if the import has failed.
+            for (Future<Chunk<T>> chunk : pending) {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Find the column of each required property.
+     * @param names The column names, from the file header
+     * @param source The imported file
+     * @return The index of the column holding each property, ID excepted, in the order of the model columns
+     * @throws InvalidDataException if a required column is missing
+     */
+    private int[] mapColumns(String[] names, File source) throws InvalidDataException {
+        List<String> header = Arrays.asList(names);
+        int[] columns = new int[accessor.getColumnCount() - 1];
+
+        for (int i = 1; i < accessor.getColumnCount(); i++) {
+            String property = accessor.getPropertyName(i);
+            int column = header.indexOf(property);
+            if (column < 0) {
+                throw new InvalidDataException("Column '" + property + "' is missing from '" + source.getName() + "'.");
+            }
+            columns[i - 1] = column;
+        }
+
+        return columns;
+    }
+
+    /**
+     * Read the next rows.
+     * @param reader The reader to read from
+     * @return At most CHUNK_SIZE rows, or null at the end of the file
+     * @throws IOException if the file could not be read
+     */
+    private static String[] readChunk(BufferedReader reader) throws IOException {
+        List<String> rows = new ArrayList<>(CHUNK_SIZE);
+        String row;
+        while (rows.size() < CHUNK_SIZE && (row = CsvFormat.readRecord(reader)) != null) {
+            if (!row.isEmpty()) {
+                rows.add(row);
+            }
+        }
+
+        return rows.isEmpty() ? null : rows.toArray(new String[0]);
+    }
+
+    /**
+     * Check rows and create their models, on a worker thread.
+     * @param rows The rows
+     * @param fieldCount The number of fields of each row
+     * @param columns The column of each required property
+     * @param reservation The IDs of the models
+     * @return The models created, and the rejected rows
+     */
+    private Chunk<T> parseChunk(String[] rows, int fieldCount, int[] columns, ModelFactory.Reservation reservation) {
+        Chunk<T> chunk = new Chunk<>(rows.length);
+        String[] values = new String[columns.length];
+
+        reservation.activate();
+        try {
+            for (String row : rows) {
+                String[] fields = CsvFormat.split(row);
+                if (fields.length != fieldCount) {
+                    chunk.reject(row, "Expected " + fieldCount + " fields, got " + fields.length + ".");
+                    continue;
+                }
+
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = fields[columns[i]];
+                }
+
+                try {
+                    chunk.models.add(parser.parse(values));
+                } catch (InvalidDataException e) {
+                    chunk.reject(row, e.getMessage());
+                }
+            }
+        } finally {
+            ModelFactory.Reservation.deactivate();
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Register the models of a chunk on the event dispatch thread, once checked, and write its rejected rows.
+     * @param pending The chunk being checked
+     * @param rejectsWriter The writer of rejected rows
+     * @return The number of rejected rows
+     * @throws IOException if the chunk could not be checked, or the rejected rows could not be written
+     */
+    private int register(Future<Chunk<T>> pending, RejectsWriter rejectsWriter) throws IOException {
+        try {
+            Chunk<T> chunk = pending.get();
+            if (!chunk.models.isEmpty()) {
+                SwingUtilities.invokeAndWait(() -> registrar.accept(chunk.models));
+            }
+            for (String rejected : chunk.rejected) {
+                rejectsWriter.write(rejected);
+            }
+
+            return chunk.rejected.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted.");
+        } catch (ExecutionException | InvocationTargetException e) {
+            throw new IOException("Import failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Creation of a model from the values of its columns.
+     * @param <T> The model type
+     */
+    @FunctionalInterface
+    private interface RowParser<T> {
+        /**
+         * Check the values and create the model.
+         * @param values The values of the model columns, ID excepted
+         * @return The model
+         * @throws InvalidDataException if a value is invalid
+         */
+        T parse(String[] values) throws InvalidDataException;
+    }
+
+    /**
+     * The outcome of the checks of a chunk of rows.
+     * @param <T> The model type
+     */
+    private static class Chunk<T> {
+        private final List<T> models;
+        private final List<String> rejected = new ArrayList<>();
+
+        private Chunk(int size) {
+            this.models = new ArrayList<>(size);
+        }
+
+        private void reject(String row, String reason) {
+            StringBuilder record = new StringBuilder(row);
+            CsvFormat.appendField(record, reason, false);
+            rejected.add(record.toString());
+        }
+    }
+
+    /**
+     * Writer of the rejects file, created on the first rejected row.
+     */
+    private static class RejectsWriter implements AutoCloseable {
+        private final File file;
+        private String header;
+        private Writer writer;
+
+        private RejectsWriter(File file) {
+            this.file = file;
+        }
+
+        private void setHeader(String header) {
+            StringBuilder record = new StringBuilder(header);
+            CsvFormat.appendField(record, "rejection", false);
+            this.header = record.toString();
+        }
+
+        private void write(String record) throws IOException {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), BUFFER_SIZE);
+                writer.write(header);
+                writer.write('\n');
+            }
+            writer.write(record);
+            writer.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.krytonspace.carrent.controllers.csv;
+
+import java.io.File;
+
+/**
+ * Bean class holding statistics about an import of a CSV file.
+ */
+public class ImportSummary {
+    private final String fileName;
+    private final int rowCount;
+    private final int rejectedCount;
+    private final File rejectsFile;
+    private final long elapsedNanos;
+
+    /**
+     * Constructor.
+     * @param fileName The name of the imported file
+     * @param rowCount The number of rows read, header excluded
+     * @param rejectedCount The number of rows rejected
+     * @param rejectsFile The file the rejected rows have been written to
+     * @param elapsedNanos The time spent importing, in nanoseconds
+     */
+    public ImportSummary(String fileName, int rowCount, int rejectedCount, File rejectsFile, long elapsedNanos) {
+        this.fileName = fileName;
+        this.rowCount = rowCount;
+        this.rejectedCount = rejectedCount;
+        this.rejectsFile = rejectsFile;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Getter
+     * @return The name of the imported file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Getter
+     * @return The number of rows read
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Getter
+     * @return The number of rows registered
+     */
+    public int getImportedCount() {
+        return rowCount - rejectedCount;
+    }
+
+    /**
+     * Getter
+     * @return The number of rows rejected
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Getter
+     * @return The file holding the rejected rows, which only exists if some rows have been rejected
+     */
+    public File getRejectsFile() {
+        return rejectsFile;
+    }
+
+    /**
+     * Getter
+     * @return The import duration, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Compute the import throughput.
+     * @return The number of rows read per second
+     */
+    public double getRowsPerSecond() {
+        if (elapsedNanos == 0) {
+            return 0;
+        }
+
+        return rowCount * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        String summary = String.format("Imported '%s': %d of %d rows in %.1f ms (%.0f rows/s)",
+                fileName,
+                getImportedCount(),
+                rowCount,
+                elapsedNanos / 1e6,
+                getRowsPerSecond());
+        if (rejectedCount > 0) {
+            summary += String.format(", %d rejected (see '%s')", rejectedCount, rejectsFile.getName());
+        }
+
+        return summary;
+    }
+}
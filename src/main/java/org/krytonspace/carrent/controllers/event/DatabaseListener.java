@@ -19,6 +19,19 @@ public interface DatabaseListener {
      */
     void onDatabaseLoaded();
 
+    /**
+     * This method is called before the working database is saved, possibly in the background.
+     */
+    default void onDatabaseSaving() {
+    }
+
+    /**
+     * This method is called when the controller reports what it has done, e.g. how a database has been loaded.
+     * @param status A line describing it to the user
+     */
+    default void onStatusChanged(String status) {
+    }
+
     /**
      * This method is called after the working database has been saved.
      */
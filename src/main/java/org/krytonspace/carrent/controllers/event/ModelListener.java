@@ -1,5 +1,9 @@
 package org.krytonspace.carrent.controllers.event;
 
+import org.krytonspace.carrent.models.Model;
+
+import java.util.List;
+
 /**
  * Callback interface for actions that has to do with models.
  */
@@ -10,6 +14,17 @@ public interface ModelListener {
      */
     void onModelAdded(ModelEvent e);
 
+    /**
+     * This method is called after models are created and added to the database at once, e.g. by an import.
+     * By default, it is the same as a call to onModelAdded() for each model.
+     * @param models The models added
+     */
+    default void onModelsAdded(List<? extends Model> models) {
+        for (Model m : models) {
+            onModelAdded(new ModelEvent(m));
+        }
+    }
+
     /**
      * This method is called before a model is removed from the database.
      * @param e The model event
@@ -4,10 +4,17 @@ import org.krytonspace.carrent.controllers.event.ModelEvent;
 import org.krytonspace.carrent.controllers.event.ModelListener;
 import org.krytonspace.carrent.models.DatabaseModel;
 import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.utils.ModelAccessor;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Base class for a model controller.
@@ -40,6 +47,70 @@ public abstract class BaseModelController {
         this.model = model;
     }
 
+    /**
+     * Apply changes made elsewhere, e.g. to the database file, to the registered models of a type,
+     * notifying listeners model by model. Changed models are updated in place, so that references to them
+     * stay valid; a model whose type has changed is replaced.
+     * @param registered The registered models of the type
+     * @param changes The new state of each changed model by ID, null for removed ones
+     * @param retain The action to run on a registered model before it is updated
+     * @param apply The registration of new models and unregistration of removed ones, in a single pass
+     * @param <T> The model type
+     */
+    protected <T extends Model> void applyChanges(List<T> registered, Map<String, ? extends T> changes,
+                                                  Consumer<T> retain, Consumer<Map<String, T>> apply) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Map<String, T> replaced = new LinkedHashMap<>();
+        List<T> added = new ArrayList<>();
+        Set<String> found = new HashSet<>();
+
+        for (T m : registered) {
+            if (!changes.containsKey(m.getId())) {
+                continue;
+            }
+
+            found.add(m.getId());
+            T state = changes.get(m.getId());
+            if (state != null && ModelAccessor.forModel(state.getClass()) == ModelAccessor.forModel(m.getClass())) {
+                retain.accept(m);
+                copyFields(state, m);
+                fireModelEdited(m);
+            } else {
+                fireModelRemoving(m);
+                replaced.put(m.getId(), state);
+                if (state != null) {
+                    added.add(state);
+                }
+            }
+        }
+
+        for (Map.Entry<String, ? extends T> change : changes.entrySet()) {
+            if (change.getValue() != null && !found.contains(change.getKey())) {
+                replaced.put(change.getKey(), change.getValue());
+                added.add(change.getValue());
+            }
+        }
+
+        apply.accept(replaced);
+        if (!added.isEmpty()) {
+            fireModelsAdded(added);
+        }
+    }
+
+    /**
+     * Copy every field of a model into another one with the same accessor.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void copyFields(T source, T target) {
+        ModelAccessor<T> accessor = ModelAccessor.forModel((Class<T>) target.getClass());
+        for (int i = 0; i < accessor.getColumnCount(); i++) {
+            accessor.set(target, i, accessor.get(source, i));
+        }
+    }
+
     /**
      * Notify all listeners that a model has been added to the database.
      * @param m The model that has been added
@@ -52,6 +123,18 @@ public abstract class BaseModelController {
         });
     }
 
+    /**
+     * Notify all listeners that models have been added to the database, at once.
+     * @param models The models that have been added
+     */
+    protected void fireModelsAdded(List<? extends Model> models) {
+        SwingUtilities.invokeLater(() -> {
+            for (ModelListener l : listeners) {
+                l.onModelsAdded(models);
+            }
+        });
+    }
+
     /**
      * Notify all listeners that a model has been edited.
      * @param m The model that has been edited
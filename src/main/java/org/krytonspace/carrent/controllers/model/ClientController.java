@@ -4,6 +4,7 @@ import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
 import org.krytonspace.carrent.models.ClientModel;
 
 import java.util.Date;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -35,6 +36,39 @@ public interface ClientController {
             String phoneNumber
     ) throws InvalidDataException;
 
+    /**
+     * Check for correct input values and create a client, without registering it.
+     * Unlike other methods, this one can be called from any thread.
+     * @param lastName The client's last name
+     * @param firstName The client's first name
+     * @param birthDate The client's birth date
+     * @param address The client's address
+     * @param postalCode The client's postal code
+     * @param city The client's city
+     * @param licenses The client's licenses
+     * @param emailAddress The client's email address
+     * @param phoneNumber The client's phone number
+     * @return The new client
+     * @throws InvalidDataException when an input value is invalid
+     */
+    ClientModel createClient(
+            String lastName,
+            String firstName,
+            String birthDate,
+            String address,
+            String postalCode,
+            String city,
+            String licenses,
+            String emailAddress,
+            String phoneNumber
+    ) throws InvalidDataException;
+
+    /**
+     * Commit the addition of clients created by createClient(), and notify all listeners at once.
+     * @param clients The clients to register
+     */
+    void addClients(List<ClientModel> clients);
+
     /**
      * Check for a correct input value, edit the client's last name and notify all listeners.
      * @param model The model to edit
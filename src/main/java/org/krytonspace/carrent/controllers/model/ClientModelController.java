@@ -4,9 +4,12 @@ import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
 import org.krytonspace.carrent.controllers.utils.Requirements;
 import org.krytonspace.carrent.models.ClientModel;
 import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.utils.StringPool;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
@@ -26,6 +29,20 @@ public class ClientModelController extends BaseModelController implements Client
     public void addClient(String lastName, String firstName, String birthDate, String address, String postalCode,
                           String city, String licenses, String emailAddress, String phoneNumber)
             throws InvalidDataException {
+        ClientModel newModel = createClient(lastName, firstName, birthDate, address, postalCode,
+                city, licenses, emailAddress, phoneNumber);
+
+        // Actual registration
+        model.registerClient(newModel);
+
+        // Notify listeners
+        fireModelAdded(newModel);
+    }
+
+    @Override
+    public ClientModel createClient(String lastName, String firstName, String birthDate, String address,
+                                    String postalCode, String city, String licenses, String emailAddress,
+                                    String phoneNumber) throws InvalidDataException {
         // Checks
         Requirements.nonEmpty(lastName, firstName, address, city, licenses);
         Requirements.validPostalCode(postalCode);
@@ -47,19 +64,24 @@ public class ClientModelController extends BaseModelController implements Client
         newModel.setLicenses(licenses.trim());
         newModel.setEmailAddress(emailAddress.trim());
         newModel.setPhoneNumber(phoneNumber.trim());
+        newModel.canonicalizeStrings(StringPool.getShared());
 
         generateId(newModel);
 
-        // Actual registration
-        model.registerClient(newModel);
+        return newModel;
+    }
 
-        // Notify listeners
-        fireModelAdded(newModel);
+    @Override
+    public void addClients(List<ClientModel> clients) {
+        model.registerClients(clients);
+
+        fireModelsAdded(clients);
     }
 
     @Override
     public void editClientLastName(ClientModel model, String value) throws InvalidDataException {
         Requirements.nonEmpty(value);
+        this.model.willEdit(model);
         model.setLastName(value);
 
         fireModelEdited(model);
@@ -68,6 +90,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientFirstName(ClientModel model, String value) throws InvalidDataException {
         Requirements.nonEmpty(value);
+        this.model.willEdit(model);
         model.setFirstName(value);
 
         fireModelEdited(model);
@@ -76,6 +99,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientBirthDate(ClientModel model, Date value) throws InvalidDataException {
         Requirements.nonNull(value);
+        this.model.willEdit(model);
         model.setBirthDate(value);
 
         fireModelEdited(model);
@@ -84,6 +108,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientAddress(ClientModel model, String value) throws InvalidDataException {
         Requirements.nonEmpty(value);
+        this.model.willEdit(model);
         model.setAddress(value);
 
         fireModelEdited(model);
@@ -92,6 +117,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientPostalCode(ClientModel model, String value) throws InvalidDataException {
         Requirements.validPostalCode(value);
+        this.model.willEdit(model);
         model.setPostalCode(value);
 
         fireModelEdited(model);
@@ -100,6 +126,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientCity(ClientModel model, String value) throws InvalidDataException {
         Requirements.nonEmpty(value);
+        this.model.willEdit(model);
         model.setCity(value);
 
         fireModelEdited(model);
@@ -108,6 +135,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientLicenses(ClientModel model, String value) throws InvalidDataException {
         Requirements.nonEmpty(value);
+        this.model.willEdit(model);
         model.setLicenses(value);
 
         fireModelEdited(model);
@@ -116,6 +144,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientEmailAddress(ClientModel model, String value) throws InvalidDataException {
         Requirements.mailAddress(value);
+        this.model.willEdit(model);
         model.setEmailAddress(value);
 
         fireModelEdited(model);
@@ -124,6 +153,7 @@ public class ClientModelController extends BaseModelController implements Client
     @Override
     public void editClientPhoneNumber(ClientModel model, String value) throws InvalidDataException {
         Requirements.phoneNumber(value);
+        this.model.willEdit(model);
         model.setPhoneNumber(value);
 
         fireModelEdited(model);
@@ -141,6 +171,19 @@ public class ClientModelController extends BaseModelController implements Client
         model.unregisterClient(clientId);
     }
 
+    /**
+     * Apply changes made elsewhere to the registered clients, see BaseModelController.applyChanges().
+     * @param changes The new state of each changed client by ID, null for removed ones
+     */
+    public void applyClientChanges(Map<String, ClientModel> changes) {
+        for (ClientModel c : changes.values()) {
+            if (c != null) {
+                c.canonicalizeStrings(StringPool.getShared());
+            }
+        }
+        applyChanges(model.getRegisteredClients(), changes, model::willEdit, model::applyClientChanges);
+    }
+
     @Override
     public int clientCount() {
         return model.getRegisteredClients().size();
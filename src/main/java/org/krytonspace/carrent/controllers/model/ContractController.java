@@ -4,6 +4,7 @@ import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
 import org.krytonspace.carrent.models.ContractModel;
 
 import java.util.Date;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -83,6 +84,14 @@ public interface ContractController {
      */
     Stream<ContractModel> query();
 
+    /**
+     * Get the registered contracts, in registration order.
+     * Unlike query(), contracts loaded on demand are only read when accessed.
+     *
+     * @return An unmodifiable view of the contracts
+     */
+    List<ContractModel> list();
+
     /**
      * Check if the specified contract ID denotes a registered contract.
      * @param contractId The contract to check
@@ -7,6 +7,8 @@ import org.krytonspace.carrent.models.DatabaseModel;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public class ContractModelController extends BaseModelController implements ContractController {
@@ -44,6 +46,7 @@ public class ContractModelController extends BaseModelController implements Cont
 
     @Override
     public void editContractDateBegin(ContractModel model, Date value) throws InvalidDataException {
+        this.model.willEdit(model);
         model.setBegin(value);
 
         fireModelEdited(model);
@@ -51,6 +54,7 @@ public class ContractModelController extends BaseModelController implements Cont
 
     @Override
     public void editContractDateEnd(ContractModel model, Date value) throws InvalidDataException {
+        this.model.willEdit(model);
         model.setEnd(value);
 
         fireModelEdited(model);
@@ -59,6 +63,7 @@ public class ContractModelController extends BaseModelController implements Cont
     @Override
     public void editContractPlannedMileage(ContractModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setPlannedMileage(value);
 
         fireModelEdited(model);
@@ -67,6 +72,7 @@ public class ContractModelController extends BaseModelController implements Cont
     @Override
     public void editContractPlannedPrice(ContractModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setPlannedPrice(value);
 
         fireModelEdited(model);
@@ -83,6 +89,14 @@ public class ContractModelController extends BaseModelController implements Cont
         model.unregisterContract(contractId);
     }
 
+    /**
+     * Apply changes made elsewhere to the registered contracts, see BaseModelController.applyChanges().
+     * @param changes The new state of each changed contract by ID, null for removed ones
+     */
+    public void applyContractChanges(Map<String, ContractModel> changes) {
+        applyChanges(model.getRegisteredContracts(), changes, model::willEdit, model::applyContractChanges);
+    }
+
     @Override
     public int contractCount() {
         return model.getRegisteredContracts().size();
@@ -93,6 +107,11 @@ public class ContractModelController extends BaseModelController implements Cont
         return model.getRegisteredContracts().stream();
     }
 
+    @Override
+    public List<ContractModel> list() {
+        return model.getRegisteredContracts();
+    }
+
     private void assertExistence(String contractId) throws InvalidDataException {
         if (!contractExists(contractId)) {
             throw new InvalidDataException("Contract '" + contractId + "' could not be found in database.");
@@ -6,6 +6,7 @@ import org.krytonspace.carrent.models.CarModel;
 import org.krytonspace.carrent.models.PlaneModel;
 import org.krytonspace.carrent.models.VehicleModel;
 
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -78,6 +79,84 @@ public interface VehicleController {
             String engines
     ) throws InvalidDataException;
 
+    /**
+     * Check for correct input values and create a car, without registering it.
+     * Unlike other methods, this one can be called from any thread.
+     * @param brand The car brand
+     * @param model The car model
+     * @param condition The car condition
+     * @param rentPrice The car rent price per day
+     * @param maxSpeed The car maximal speed
+     * @param mileage The car mileage
+     * @param power The car power
+     * @param seats The car seat count
+     * @return The new car
+     * @throws InvalidDataException when an input value is invalid
+     */
+    CarModel createCar(
+            String brand,
+            String model,
+            String condition,
+            String rentPrice,
+            String maxSpeed,
+            String mileage,
+            String power,
+            String seats
+    ) throws InvalidDataException;
+
+    /**
+     * Check for correct input values and create a bike, without registering it.
+     * Unlike other methods, this one can be called from any thread.
+     * @param brand The bike brand
+     * @param model The bike model
+     * @param condition The bike condition
+     * @param rentPrice The bike rent price per day
+     * @param maxSpeed The bike maximal speed
+     * @param mileage The bike mileage
+     * @param power The bike power
+     * @return The new bike
+     * @throws InvalidDataException when an input value is invalid
+     */
+    BikeModel createBike(
+            String brand,
+            String model,
+            String condition,
+            String rentPrice,
+            String maxSpeed,
+            String mileage,
+            String power
+    ) throws InvalidDataException;
+
+    /**
+     * Check for correct input values and create a plane, without registering it.
+     * Unlike other methods, this one can be called from any thread.
+     * @param brand The plane brand
+     * @param model The plane model
+     * @param condition The plane condition
+     * @param rentPrice The plane rent price per day
+     * @param maxSpeed The plane maximal speed
+     * @param hoursFlown The number of hours the plane has flown
+     * @param engines The plane engine count
+     * @return The new plane
+     * @throws InvalidDataException when an input value is invalid
+     */
+    PlaneModel createPlane(
+            String brand,
+            String model,
+            String condition,
+            String rentPrice,
+            String maxSpeed,
+            String hoursFlown,
+            String engines
+    ) throws InvalidDataException;
+
+    /**
+     * Commit the addition of vehicles created by createCar(), createBike() or createPlane(),
+     * and notify all listeners at once.
+     * @param vehicles The vehicles to register
+     */
+    void addVehicles(List<? extends VehicleModel> vehicles);
+
     /**
      * Checks for a correct input value, edit the vehicle brand and notify all listeners.
      * @param model The model to edit
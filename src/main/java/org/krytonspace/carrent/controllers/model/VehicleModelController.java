@@ -3,7 +3,10 @@ package org.krytonspace.carrent.controllers.model;
 import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
 import org.krytonspace.carrent.controllers.utils.Requirements;
 import org.krytonspace.carrent.models.*;
+import org.krytonspace.carrent.utils.StringPool;
 
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public class VehicleModelController extends BaseModelController implements VehicleController {
@@ -15,6 +18,37 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void addCar(String brand, String model, String condition, String rentPrice,
                        String maxSpeed, String mileage, String power, String seats) throws InvalidDataException {
+        CarModel newCar = createCar(brand, model, condition, rentPrice, maxSpeed, mileage, power, seats);
+
+        this.model.registerVehicle(newCar);
+
+        fireModelAdded(newCar);
+    }
+
+    @Override
+    public void addBike(String brand, String model, String condition, String rentPrice,
+                        String maxSpeed, String mileage, String power) throws InvalidDataException {
+        BikeModel newBike = createBike(brand, model, condition, rentPrice, maxSpeed, mileage, power);
+
+        this.model.registerVehicle(newBike);
+
+        fireModelAdded(newBike);
+    }
+
+    @Override
+    public void addPlane(String brand, String model, String condition, String rentPrice,
+                         String maxSpeed, String hoursFlown, String engines) throws InvalidDataException {
+        PlaneModel newPlane = createPlane(brand, model, condition, rentPrice, maxSpeed, hoursFlown, engines);
+
+        this.model.registerVehicle(newPlane);
+
+        fireModelAdded(newPlane);
+    }
+
+    @Override
+    public CarModel createCar(String brand, String model, String condition, String rentPrice,
+                              String maxSpeed, String mileage, String power, String seats)
+            throws InvalidDataException {
         CarModel newCar = new CarModel();
         populateVehicleData(newCar, brand, model, condition, rentPrice, maxSpeed);
 
@@ -28,14 +62,12 @@ public class VehicleModelController extends BaseModelController implements Vehic
 
         generateId(newCar);
 
-        this.model.registerVehicle(newCar);
-
-        fireModelAdded(newCar);
+        return newCar;
     }
 
     @Override
-    public void addBike(String brand, String model, String condition, String rentPrice,
-                        String maxSpeed, String mileage, String power) throws InvalidDataException {
+    public BikeModel createBike(String brand, String model, String condition, String rentPrice,
+                                String maxSpeed, String mileage, String power) throws InvalidDataException {
         BikeModel newBike = new BikeModel();
         populateVehicleData(newBike, brand, model, condition, rentPrice, maxSpeed);
 
@@ -47,14 +79,12 @@ public class VehicleModelController extends BaseModelController implements Vehic
 
         generateId(newBike);
 
-        this.model.registerVehicle(newBike);
-
-        fireModelAdded(newBike);
+        return newBike;
     }
 
     @Override
-    public void addPlane(String brand, String model, String condition, String rentPrice,
-                         String maxSpeed, String hoursFlown, String engines) throws InvalidDataException {
+    public PlaneModel createPlane(String brand, String model, String condition, String rentPrice,
+                                  String maxSpeed, String hoursFlown, String engines) throws InvalidDataException {
         PlaneModel newPlane = new PlaneModel();
         populateVehicleData(newPlane, brand, model, condition, rentPrice, maxSpeed);
 
@@ -66,14 +96,20 @@ public class VehicleModelController extends BaseModelController implements Vehic
 
         generateId(newPlane);
 
-        this.model.registerVehicle(newPlane);
+        return newPlane;
+    }
 
-        fireModelAdded(newPlane);
+    @Override
+    public void addVehicles(List<? extends VehicleModel> vehicles) {
+        this.model.registerVehicles(vehicles);
+
+        fireModelsAdded(vehicles);
     }
 
     @Override
     public void editVehicleBrand(VehicleModel model, String value) throws InvalidDataException {
         Requirements.nonEmpty(value);
+        this.model.willEdit(model);
         model.setBrand(value);
         fireModelEdited(model);
     }
@@ -81,6 +117,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editVehicleModel(VehicleModel model, String value) throws InvalidDataException {
         Requirements.nonEmpty(value);
+        this.model.willEdit(model);
         model.setModel(value);
         fireModelEdited(model);
     }
@@ -88,6 +125,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editVehicleCondition(VehicleModel model, VehicleModel.Condition value) throws InvalidDataException {
         Requirements.nonNull(value);
+        this.model.willEdit(model);
         model.setCondition(value);
 
         fireModelEdited(model);
@@ -96,6 +134,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editVehicleRentPrice(VehicleModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setRentPricePerDay(value);
 
         fireModelEdited(model);
@@ -104,6 +143,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editVehicleMaxSpeed(VehicleModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setMaxSpeed(value);
 
         fireModelEdited(model);
@@ -112,6 +152,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editCarMileage(CarModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setMileage(value);
 
         fireModelEdited(model);
@@ -120,6 +161,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editCarPower(CarModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setPower(value);
         fireModelEdited(model);
     }
@@ -127,6 +169,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editCarSeatCount(CarModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setSeatCount(value);
 
         fireModelEdited(model);
@@ -135,6 +178,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editBikeMileage(BikeModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setMileage(value);
 
         fireModelEdited(model);
@@ -143,6 +187,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editBikePower(BikeModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setPower(value);
 
         fireModelEdited(model);
@@ -151,6 +196,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editPlaneHoursFlown(PlaneModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setHoursFlown(value);
 
         fireModelEdited(model);
@@ -159,6 +205,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
     @Override
     public void editPlaneEngineCount(PlaneModel model, int value) throws InvalidDataException {
         Requirements.positive(value);
+        this.model.willEdit(model);
         model.setEngineCount(value);
 
         fireModelEdited(model);
@@ -175,6 +222,19 @@ public class VehicleModelController extends BaseModelController implements Vehic
         model.unregisterVehicle(vehicleId);
     }
 
+    /**
+     * Apply changes made elsewhere to the registered vehicles, see BaseModelController.applyChanges().
+     * @param changes The new state of each changed vehicle by ID, null for removed ones
+     */
+    public void applyVehicleChanges(Map<String, VehicleModel> changes) {
+        for (VehicleModel v : changes.values()) {
+            if (v != null) {
+                v.canonicalizeStrings(StringPool.getShared());
+            }
+        }
+        applyChanges(model.getRegisteredVehicles(), changes, model::willEdit, model::applyVehicleChanges);
+    }
+
     @Override
     public int vehicleCount() {
         return model.getRegisteredVehicles().size();
@@ -206,7 +266,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
                                      String condition, String rentPrice, String maxSpeed)
             throws InvalidDataException {
         Requirements.nonEmpty(brand, model, condition);
-        VehicleModel.Condition validCondition = VehicleModel.Condition.valueOf(condition);
+        VehicleModel.Condition validCondition = Requirements.validateEnum(VehicleModel.Condition.class, condition);
         int validRentPrice = Requirements.validatePositiveNumber(rentPrice);
         int validMaxSpeed = Requirements.validatePositiveNumber(maxSpeed);
 
@@ -215,6 +275,7 @@ public class VehicleModelController extends BaseModelController implements Vehic
         newVehicle.setCondition(validCondition);
         newVehicle.setRentPricePerDay(validRentPrice);
         newVehicle.setMaxSpeed(validMaxSpeed);
+        newVehicle.canonicalizeStrings(StringPool.getShared());
     }
 
     private void generateId(VehicleModel model) {
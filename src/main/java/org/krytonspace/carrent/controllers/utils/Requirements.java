@@ -14,7 +14,12 @@ import java.util.regex.Pattern;
  */
 public final class Requirements {
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd/MM/yyyy");
+    /**
+     * The format of dates typed by the user. Formats are not thread-safe: each thread has its own,
+     * so that rows can be checked in parallel.
+     */
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("dd/MM/yyyy"));
     private static final Pattern PHONE_NUMBER_PATTERN = Pattern.compile("([0-9]{2}\\s*){5}");
     private static final Pattern MAIL_ADDRESS_PATTERN = Pattern.compile("\\S+@\\S+\\.[a-z]{2,4}");
 
@@ -26,12 +31,24 @@ public final class Requirements {
 
     public static Date validateDate(String pattern) throws InvalidDataException {
         try {
-            return DATE_FORMAT.parse(pattern.trim());
+            return DATE_FORMAT.get().parse(pattern.trim());
         } catch (ParseException e) {
             throw new InvalidDataException("'" + pattern + "' is not a valid date.");
         }
     }
 
+    public static String formatDate(Date date) {
+        return DATE_FORMAT.get().format(date);
+    }
+
+    public static <E extends Enum<E>> E validateEnum(Class<E> type, String raw) throws InvalidDataException {
+        try {
+            return Enum.valueOf(type, raw.trim());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidDataException("'" + raw + "' is not a valid " + type.getSimpleName().toLowerCase() + ".");
+        }
+    }
+
     public static void validPostalCode(String raw) throws InvalidDataException {
         try {
             int postalCode = Integer.parseInt(raw.trim());
@@ -0,0 +1,628 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.binary.*;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.ModelFactory;
+import org.krytonspace.carrent.models.VehicleModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Class implementing database reading/writing with a compact binary format.
+ *
+ * Layout of a file:
+ * <ul>
+ *     <li>the magic bytes "CRDB", followed by a format version byte</li>
+ *     <li>the dictionary section, holding the string dictionary as its only record, see StringDictionary</li>
+ *     <li>the clients, vehicles and contracts sections, whose records are written by BinaryModelWriter</li>
+ * </ul>
+ * Sections are cut into blocks checked by a CRC-32C, see ChecksummedSectionWriter. On load, blocks are
+ * checked and decoded on a thread pool while the next ones are read. A corrupt block fails the load,
+ * unless corrupt blocks are skipped: the other blocks are then loaded, and the records of the corrupt ones
+ * are lost once the database is saved again. Corrupt blocks are skipped by setting the
+ * "carrent.skipCorruptBlocks" system property to true, or with setSkipCorruptBlocks().
+ *
+ * Files of the first version of the format, without sections nor checksums, are still read:
+ * the records simply follow the string dictionary, each type of records after its count.
+ *
+ * Loads can index the file block by block, see ModelIndex, so that the changes made to it later by another
+ * program are read without decoding the blocks which have not changed, see readChanges().
+ */
+public class BinaryDatabase extends FileDatabase {
+
+    private static final byte[] MAGIC = "CRDB".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 2;
+    private static final int UNCHECKED_VERSION = 1;
+
+    /**
+     * The size sections are cut into blocks at.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of blocks read ahead of the registration, per thread.
+     */
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private static final String DICTIONARY = "dictionary";
+    private static final String CLIENTS = "clients";
+    private static final String VEHICLES = "vehicles";
+    private static final String CONTRACTS = "contracts";
+
+
+    /**
+     * Threads checking and decoding blocks.
+     */
+    private static final ExecutorService LOADERS = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "block-loader-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Whether a corrupt block is skipped on load, instead of failing the load.
+     */
+    private boolean skipCorruptBlocks;
+
+    /**
+     * Number of records lost in the corrupt blocks skipped by the last load.
+     */
+    private int skippedRecordCount;
+
+    /**
+     * The corrupt parts of the file skipped by the last load.
+     */
+    private final List<String> skippedParts = new ArrayList<>();
+
+    /**
+     * Whether loads index the file.
+     */
+    private boolean indexing;
+
+    /**
+     * The index of the file built by the last load or readChanges(), or null.
+     */
+    private ModelIndex lastIndex;
+
+    public BinaryDatabase(String binaryFileName) {
+        super(binaryFileName);
+        skipCorruptBlocks = Boolean.getBoolean("carrent.skipCorruptBlocks");
+    }
+
+    /**
+     * Getter
+     * @return true if corrupt blocks are skipped on load, false if they fail the load
+     */
+    public boolean isSkipCorruptBlocks() {
+        return skipCorruptBlocks;
+    }
+
+    /**
+     * Setter
+     * @param skipCorruptBlocks true to skip corrupt blocks on load, false to fail the load
+     */
+    public void setSkipCorruptBlocks(boolean skipCorruptBlocks) {
+        this.skipCorruptBlocks = skipCorruptBlocks;
+    }
+
+    /**
+     * Getter
+     * @return The number of records lost in the corrupt blocks skipped by the last load
+     */
+    public int getSkippedRecordCount() {
+        return skippedRecordCount;
+    }
+
+    /**
+     * Getter
+     * @return The descriptions of the corrupt parts of the file skipped by the last load or readChanges()
+     */
+    public List<String> getSkippedParts() {
+        return new ArrayList<>(skippedParts);
+    }
+
+    @Override
+    protected List<String> skippedParts() {
+        return getSkippedParts();
+    }
+
+    /**
+     * Getter
+     * @return true if loads index the file
+     */
+    public boolean isIndexing() {
+        return indexing;
+    }
+
+    /**
+     * Setter
+     * @param indexing true to index the file on load, see getLastIndex()
+     */
+    public void setIndexing(boolean indexing) {
+        this.indexing = indexing;
+    }
+
+    /**
+     * Getter
+     * @return The index of the file built by the last load or readChanges(), or null if the last load did not
+     *         index the file
+     */
+    public ModelIndex getLastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * Read the models changed in the file since it was indexed, by a load or a previous call, and index it again.
+     * Blocks found unchanged in the index are not decoded. Strings being numbered in order of appearance,
+     * changes appended to the file, e.g. new contracts, only need its last blocks to be decoded, while a change
+     * near its beginning renumbers the strings after it, and the blocks referring to them are decoded.
+     * @param previous The index of the file as it was
+     * @return The changes made to the file since
+     * @throws LoadingFailedException if the file could not be read
+     */
+    public ChangeSet readChanges(ModelIndex previous) throws LoadingFailedException {
+        if (!file.exists()) {
+            throw new LoadingFailedException("File '" + file.getName() + "' does not exist");
+        }
+
+        DatabaseModel decoded = new DatabaseModel();
+        try (InputStream in = openForReading()) {
+            read(in, decoded, previous);
+        } catch (IOException e) {
+            throw new LoadingFailedException("Could not read '" + file.getName() + "' file: " + e.getMessage());
+        }
+
+        return lastIndex.changesSince(previous, decoded);
+    }
+
+    @Override
+    protected DatabaseModel parse(InputStream in) throws IOException, LoadingFailedException {
+        DatabaseModel model = new DatabaseModel();
+        read(in, model, null);
+
+        return model;
+    }
+
+    /**
+     * Read the file, and index it if loads index it or an older index is given.
+     * @param in The file content
+     * @param model The database to register the decoded models into
+     * @param previous An older index of the file, whose blocks are not decoded again, or null
+     * @throws IOException if the file could not be read
+     * @throws LoadingFailedException if the file is corrupt
+     */
+    private void read(InputStream in, DatabaseModel model, ModelIndex previous)
+            throws IOException, LoadingFailedException {
+        BinaryDecoder decoder = new BinaryDecoder(in, BUFFER_SIZE);
+        boolean indexed = indexing || previous != null;
+        skippedRecordCount = 0;
+        skippedParts.clear();
+        lastIndex = null;
+
+        if (readHeader(decoder) == UNCHECKED_VERSION) {
+            parseUnchecked(decoder, model);
+            if (indexed) {
+                lastIndex = ModelIndex.of(model);
+            }
+            return;
+        }
+
+        ChecksummedSectionReader sections = new ChecksummedSectionReader(decoder);
+        String[] strings = readDictionary(sections);
+        ReadContext context = new ReadContext(strings, previous, indexed ? new ModelIndex.Builder(strings) : null);
+
+        readSection(sections, context, CLIENTS, ClientModel.class,
+                BinaryModelReader::readClient, model::registerClient);
+        readSection(sections, context, VEHICLES, VehicleModel.class,
+                BinaryModelReader::readVehicle, model::registerVehicle);
+        readSection(sections, context, CONTRACTS, ContractModel.class,
+                BinaryModelReader::readContract, model::registerContract);
+
+        if (context.index != null) {
+            lastIndex = context.index.build();
+        }
+    }
+
+    @Override
+    protected void write(DatabaseModel model, OutputStream out) throws IOException, WritingFailedException {
+        BinaryEncoder encoder = new BinaryEncoder(out, BUFFER_SIZE);
+        StringDictionary dictionary = BinaryModelWriter.buildDictionary(model);
+        ChecksummedSectionWriter sections = new ChecksummedSectionWriter(encoder, BLOCK_SIZE);
+        BinaryModelWriter writer = new BinaryModelWriter(sections.getRecords(), dictionary);
+
+        encoder.writeBytes(MAGIC, 0, MAGIC.length);
+        encoder.writeByte(VERSION);
+
+        sections.beginSection(1);
+        dictionary.write(sections.getRecords());
+        sections.endRecord();
+        sections.endSection();
+
+        List<ClientModel> clients = model.getRegisteredClients();
+        sections.beginSection(clients.size());
+        for (ClientModel c : clients) {
+            writer.writeClient(c);
+            sections.endRecord();
+        }
+        sections.endSection();
+
+        List<VehicleModel> vehicles = model.getRegisteredVehicles();
+        sections.beginSection(vehicles.size());
+        for (VehicleModel v : vehicles) {
+            writer.writeVehicle(v);
+            sections.endRecord();
+        }
+        sections.endSection();
+
+        List<ContractModel> contracts = model.getRegisteredContracts();
+        sections.beginSection(contracts.size());
+        for (ContractModel c : contracts) {
+            writer.writeContract(c);
+            sections.endRecord();
+        }
+        sections.endSection();
+
+        encoder.flush();
+    }
+
+    /**
+     * Check the checksums of the database file, without decoding any record.
+     * Blocks are checked on a thread pool while the next ones are read.
+     * @return The outcome of the verification, listing the corrupt parts of the file
+     */
+    public VerificationReport verify() {
+        long start = System.nanoTime();
+        List<String> problems = new ArrayList<>();
+        Deque<PendingBlock<Boolean>> pending = new ArrayDeque<>();
+        int blockCount = 0;
+
+        if (!file.exists()) {
+            problems.add("File does not exist");
+            return new VerificationReport(file.getName(), true, 0, problems, System.nanoTime() - start);
+        }
+
+        try (InputStream in = openForReading()) {
+            BinaryDecoder decoder = new BinaryDecoder(in, BUFFER_SIZE);
+            if (readHeader(decoder) == UNCHECKED_VERSION) {
+                return new VerificationReport(file.getName(), false, 0, problems, System.nanoTime() - start);
+            }
+
+            ChecksummedSectionReader sections = new ChecksummedSectionReader(decoder);
+            for (String section : Arrays.asList(DICTIONARY, CLIENTS, VEHICLES, CONTRACTS)) {
+                sections.beginSection(section);
+
+                ChecksummedSectionReader.Block block;
+                while ((block = sections.nextBlock()) != null) {
+                    blockCount++;
+                    pending.add(new PendingBlock<>(block, LOADERS.submit(block::isValid)));
+
+                    if (pending.size() > THREAD_COUNT * BLOCKS_PER_THREAD) {
+                        checkBlock(pending.poll(), problems);
+                    }
+                }
+
+                if (!sections.endSection()) {
+                    problems.add("Corrupt trailer of the " + section + " section");
+                }
+            }
+            while (!pending.isEmpty()) {
+                checkBlock(pending.poll(), problems);
+            }
+        } catch (IOException | LoadingFailedException e) {
+            // The rest of the file can not be found.
+            problems.add(e.getMessage() != null ? e.getMessage() : e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            problems.add("Verification interrupted");
+        } catch (ExecutionException e) {
+            problems.add("Could not verify: " + e.getCause());
+        } finally {
+            for (PendingBlock<Boolean> p : pending) {
+                p.result.cancel(true);
+            }
+        }
+
+        return new VerificationReport(file.getName(), true, blockCount, problems, System.nanoTime() - start);
+    }
+
+    private static void checkBlock(PendingBlock<Boolean> pending, List<String> problems)
+            throws InterruptedException, ExecutionException {
+        if (!pending.result.get()) {
+            problems.add("Corrupt " + pending.block);
+        }
+    }
+
+    /**
+     * Read the magic bytes and the format version.
+     * @return The format version
+     */
+    private int readHeader(BinaryDecoder decoder) throws IOException, LoadingFailedException {
+        byte[] magic = new byte[MAGIC.length];
+        decoder.readBytes(magic, 0, magic.length);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new LoadingFailedException("Could not parse model as binary: '" + file.getName() +
+                    "' is not a binary database");
+        }
+
+        int version = decoder.readByte();
+        if (version != VERSION && version != UNCHECKED_VERSION) {
+            throw new LoadingFailedException("Could not parse model as binary: unsupported format version " +
+                    version);
+        }
+
+        return version;
+    }
+
+    /**
+     * Read the records of a file of the first version of the format.
+     */
+    private static void parseUnchecked(BinaryDecoder decoder, DatabaseModel model) throws IOException {
+        BinaryModelReader reader = new BinaryModelReader(decoder, StringDictionary.read(decoder));
+
+        for (int i = readCount(decoder); i > 0; i--) {
+            model.registerClient(reader.readClient());
+        }
+        for (int i = readCount(decoder); i > 0; i--) {
+            model.registerVehicle(reader.readVehicle());
+        }
+        for (int i = readCount(decoder); i > 0; i--) {
+            model.registerContract(reader.readContract());
+        }
+    }
+
+    /**
+     * Read the string dictionary, which no record can be decoded without: it is never skipped.
+     */
+    private String[] readDictionary(ChecksummedSectionReader sections) throws IOException, LoadingFailedException {
+        if (sections.beginSection(DICTIONARY) != 1) {
+            throw new IOException("Malformed dictionary section");
+        }
+
+        ChecksummedSectionReader.Block block = sections.nextBlock();
+        if (!block.isValid()) {
+            throw new LoadingFailedException("Could not parse model as binary: the string dictionary of '" +
+                    file.getName() + "' is corrupt");
+        }
+        String[] strings = StringDictionary.read(block.openRecords());
+
+        if (!sections.endSection()) {
+            corrupt("the trailer of the " + DICTIONARY + " section", 0);
+        }
+
+        return strings;
+    }
+
+    /**
+     * Read the records of a section, block by block.
+     * A few blocks are checked and decoded ahead while the previous ones are registered; the records of each block
+     * are given IDs once decoded, in file order, so that models keep the file order. Blocks found in the older index
+     * are not decoded.
+     * @param sections The reader of the sections
+     * @param context The state of the file read
+     * @param section The section name
+     * @param type The base type of the records
+     * @param recordReader The decoding of a record
+     * @param sink The action to run on each record read, in file order
+     * @param <T> The record type
+     * @throws IOException if the file could not be read
+     * @throws LoadingFailedException if a block is corrupt, and corrupt blocks are not skipped
+     */
+    private <T extends Model> void readSection(ChecksummedSectionReader sections, ReadContext context,
+                                               String section, Class<? extends Model> type,
+                                               RecordReader<T> recordReader, Consumer<T> sink)
+            throws IOException, LoadingFailedException {
+        Deque<PendingBlock<DecodedBlock<T>>> pending = new ArrayDeque<>();
+        sections.beginSection(section);
+
+        try {
+            ChecksummedSectionReader.Block block;
+            while ((block = sections.nextBlock()) != null) {
+                ChecksummedSectionReader.Block records = block;
+                long key = ModelIndex.key(records.getChecksum(), records.getLength());
+                ModelIndex.Block known = context.previous == null ? null :
+                        context.previous.find(type, key, context.stableReferences);
+
+                if (known != null) {
+                    pending.add(new PendingBlock<>(records, CompletableFuture.completedFuture(
+                            new DecodedBlock<>(Collections.emptyList(), known))));
+                } else {
+                    boolean indexed = context.index != null;
+                    pending.add(new PendingBlock<>(records, LOADERS.submit(
+                            () -> readBlock(records, context.strings, recordReader, key, indexed))));
+                }
+
+                if (pending.size() > THREAD_COUNT * BLOCKS_PER_THREAD) {
+                    register(pending.poll(), type, sink, context.index);
+                }
+            }
+            while (!pending.isEmpty()) {
+                register(pending.poll(), type, sink, context.index);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading blocks");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Could not decode block: " + cause, cause);
+        } finally {
+            // Stop decoding the blocks left if the load has failed.
+            for (PendingBlock<DecodedBlock<T>> p : pending) {
+                p.result.cancel(true);
+            }
+        }
+
+        if (!sections.endSection()) {
+            corrupt("the trailer of the " + section + " section", 0);
+        }
+    }
+
+    /**
+     * Check and decode the records of a block, on a loader thread, and index them if needed.
+     * Their IDs are deferred, see register().
+     * @return The records, or null if the block is corrupt
+     */
+    private static <T extends Model> DecodedBlock<T> readBlock(ChecksummedSectionReader.Block block,
+                                                               String[] strings, RecordReader<T> recordReader,
+                                                               long key, boolean indexed) throws IOException {
+        if (!block.isValid()) {
+            return null;
+        }
+
+        List<T> records = new ArrayList<>(block.getRecordCount());
+        BinaryModelReader reader = new BinaryModelReader(block.openRecords(), strings);
+
+        ModelFactory.deferIds();
+        try {
+            for (int i = block.getRecordCount(); i > 0; i--) {
+                records.add(recordReader.read(reader));
+            }
+        } finally {
+            ModelFactory.Reservation.deactivate();
+        }
+
+        return new DecodedBlock<>(records, indexed ? ModelIndex.Block.of(key, reader.getMaxReference(), records) :
+                null);
+    }
+
+    private <T extends Model> void register(PendingBlock<DecodedBlock<T>> pending, Class<? extends Model> type,
+                                            Consumer<T> sink, ModelIndex.Builder index)
+            throws InterruptedException, ExecutionException, LoadingFailedException {
+        DecodedBlock<T> decoded = pending.result.get();
+        if (decoded == null) {
+            corrupt(pending.block.toString(), pending.block.getRecordCount());
+            return;
+        }
+
+        // Blocks are registered in file order: records get the IDs of each type in file order.
+        ModelFactory.assignIds(decoded.records);
+        decoded.records.forEach(sink);
+        if (index != null) {
+            index.add(type, decoded.indexed);
+        }
+    }
+
+    /**
+     * Report a corrupt part of the file: skip it if corrupt blocks are skipped, fail the load otherwise.
+     * @param part The description of the corrupt part
+     * @param recordCount The number of records lost with it
+     * @throws LoadingFailedException if corrupt blocks are not skipped
+     */
+    private void corrupt(String part, int recordCount) throws LoadingFailedException {
+        if (!skipCorruptBlocks) {
+            throw new LoadingFailedException("Could not parse model as binary: " + part + " of '" +
+                    file.getName() + "' is corrupt");
+        }
+
+        skippedParts.add(part);
+        skippedRecordCount += recordCount;
+    }
+
+    private static int readCount(BinaryDecoder decoder) throws IOException {
+        int count = decoder.readVarInt();
+        if (count < 0) {
+            throw new IOException("Malformed record count");
+        }
+
+        return count;
+    }
+
+    /**
+     * Decoding of a record.
+     * @param <T> The record type
+     */
+    @FunctionalInterface
+    private interface RecordReader<T> {
+        T read(BinaryModelReader reader) throws IOException;
+    }
+
+    /**
+     * The state of a file read.
+     */
+    private static final class ReadContext {
+        private final String[] strings;
+        /**
+         * The older index whose blocks are not decoded again, or null.
+         */
+        private final ModelIndex previous;
+        /**
+         * The number of leading strings of the dictionary which have not changed since the older index.
+         */
+        private final int stableReferences;
+        /**
+         * The index being built, or null if the file is not indexed.
+         */
+        private final ModelIndex.Builder index;
+
+        private ReadContext(String[] strings, ModelIndex previous, ModelIndex.Builder index) {
+            this.strings = strings;
+            this.previous = previous;
+            this.stableReferences = previous != null ? previous.stableReferences(strings) : 0;
+            this.index = index;
+        }
+    }
+
+    /**
+     * The records of a block, decoded or found in an older index.
+     * @param <T> The record type
+     */
+    private static final class DecodedBlock<T> {
+        private final List<T> records;
+        /**
+         * The index of the block, or null if the file is not indexed.
+         */
+        private final ModelIndex.Block indexed;
+
+        private DecodedBlock(List<T> records, ModelIndex.Block indexed) {
+            this.records = records;
+            this.indexed = indexed;
+        }
+    }
+
+    /**
+     * A block being checked on a loader thread.
+     * @param <T> The outcome of the check
+     */
+    private static final class PendingBlock<T> {
+        private final ChecksummedSectionReader.Block block;
+        private final Future<T> result;
+
+        private PendingBlock(ChecksummedSectionReader.Block block, Future<T> result) {
+            this.block = block;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.krytonspace.carrent.database;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access reader of a block compressed container, see BlockCompressedOutputStream.
+ *
+ * The index is read on opening. Reading from any position of the content then only
+ * inflates the blocks from the one holding that position.
+ */
+public class BlockCompressedFile implements Closeable {
+
+    private final FileChannel channel;
+
+    /**
+     * Container offset, compressed size and uncompressed size of each block.
+     */
+    private final long[] offsets;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+
+    /**
+     * Content offset of each block, plus the content length.
+     */
+    private final long[] starts;
+
+    /**
+     * Constructor.
+     * @param file The container to read
+     * @throws IOException if the file is not a valid container
+     */
+    public BlockCompressedFile(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(0, BlockCompressedOutputStream.MAGIC.length + 1);
+            ByteBuffer trailer = read(size - BlockCompressedOutputStream.TRAILER_SIZE,
+                    BlockCompressedOutputStream.TRAILER_SIZE);
+
+            byte[] magic = new byte[BlockCompressedOutputStream.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, BlockCompressedOutputStream.MAGIC)) {
+                throw new IOException("'" + file.getName() + "' is not a block compressed file");
+            }
+            if (header.get() != BlockCompressedOutputStream.VERSION) {
+                throw new IOException("Unsupported block compressed file version");
+            }
+
+            long indexOffset = trailer.getLong();
+            trailer.get(magic);
+            if (!Arrays.equals(magic, BlockCompressedOutputStream.MAGIC) || indexOffset < 0 || indexOffset > size) {
+                throw new IOException("'" + file.getName() + "' is truncated");
+            }
+
+            int blockCount = read(indexOffset, 4).getInt();
+            if (blockCount < 0 || (long) blockCount * BlockCompressedOutputStream.INDEX_ENTRY_SIZE > size) {
+                throw new IOException("'" + file.getName() + "' has a malformed index");
+            }
+            ByteBuffer index = read(indexOffset + 4, blockCount * BlockCompressedOutputStream.INDEX_ENTRY_SIZE);
+
+            offsets = new long[blockCount];
+            compressedSizes = new int[blockCount];
+            sizes = new int[blockCount];
+            starts = new long[blockCount + 1];
+            for (int i = 0; i < blockCount; i++) {
+                offsets[i] = index.getLong();
+                compressedSizes[i] = index.getInt();
+                sizes[i] = index.getInt();
+                starts[i + 1] = starts[i] + sizes[i];
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Getter
+     * @return The uncompressed length of the content
+     */
+    public long length() {
+        return starts[starts.length - 1];
+    }
+
+    /**
+     * Open a stream over the content.
+     * Closing the stream does not close this file.
+     * @param position The position in the content to start reading at
+     * @return A stream over the content from this position
+     */
+    public InputStream openStream(long position) {
+        return new BlockInputStream(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Find the block holding a position of the content.
+     * @param position A position in the content
+     * @return The block number, or the block count past the end of the content
+     */
+    private int blockAt(long position) {
+        int found = Arrays.binarySearch(starts, position);
+        int block = found >= 0 ? found : -found - 2;
+        // Skip empty blocks, and stop at the end.
+        while (block < sizes.length && starts[block + 1] <= position) {
+            block++;
+        }
+
+        return block;
+    }
+
+    /**
+     * Inflate a block.
+     * @param block The block number
+     * @return The block content
+     * @throws IOException if the block could not be read or is corrupted
+     */
+    private byte[] inflate(int block) throws IOException {
+        ByteBuffer compressed = read(offsets[block], compressedSizes[block]);
+        byte[] content = new byte[sizes[block]];
+        Inflater inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(compressed.array(), 0, compressedSizes[block]);
+            int length = 0;
+            while (length < content.length) {
+                int n = inflater.inflate(content, length, content.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Block " + block + " is truncated");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + block + " is corrupted: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        return content;
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > channel.size()) {
+            throw new EOFException("Read past the end of the file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Read past the end of the file");
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Stream inflating blocks one after the other.
+     */
+    private class BlockInputStream extends InputStream {
+        private int nextBlock;
+        private byte[] current;
+        private int offset;
+
+        private BlockInputStream(long position) {
+            this.nextBlock = blockAt(position);
+            this.current = null;
+            this.offset = nextBlock < sizes.length ? (int) (position - starts[nextBlock]) : 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureBlock()) {
+                return -1;
+            }
+
+            return current[offset++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureBlock()) {
+                return -1;
+            }
+
+            int n = Math.min(len, current.length - offset);
+            System.arraycopy(current, offset, b, off, n);
+            offset += n;
+
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.length - offset;
+        }
+
+        private boolean ensureBlock() throws IOException {
+            while (current == null || offset == current.length) {
+                if (nextBlock >= sizes.length) {
+                    return false;
+                }
+
+                int skip = current == null ? offset : 0;
+                current = inflate(nextBlock++);
+                offset = skip;
+            }
+
+            return true;
+        }
+    }
+}
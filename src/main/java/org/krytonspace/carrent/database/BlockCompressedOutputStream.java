@@ -0,0 +1,179 @@
+package org.krytonspace.carrent.database;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream writing a block compressed container.
+ *
+ * Content is cut into blocks of a fixed uncompressed size, and each block is deflated
+ * on its own, so that any part of the content can be read back by inflating a single
+ * block, see BlockCompressedFile.
+ *
+ * Layout of a container:
+ * <ul>
+ *     <li>the magic bytes "CRBZ", followed by a format version byte</li>
+ *     <li>the blocks, each one raw deflate data</li>
+ *     <li>the index: the block count (4 bytes), then for each block its offset in the container (8 bytes),
+ *     its compressed size and its uncompressed size (4 bytes each)</li>
+ *     <li>the trailer: the index offset (8 bytes), followed by the magic bytes again</li>
+ * </ul>
+ * Numbers are big-endian.
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+    static final byte[] MAGIC = "CRBZ".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final int TRAILER_SIZE = 8 + 4;
+
+    /**
+     * Default uncompressed size of a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private final OutputStream out;
+    private final Deflater deflater;
+
+    /**
+     * The block being filled.
+     */
+    private final byte[] block;
+    private int blockLength;
+
+    /**
+     * Buffer receiving compressed data.
+     */
+    private byte[] compressed;
+
+    /**
+     * The index, growing as blocks are written.
+     */
+    private ByteBuffer index;
+    private int blockCount;
+
+    /**
+     * Number of bytes written to the underlying stream.
+     */
+    private long position;
+
+    private boolean finished;
+
+    /**
+     * Constructor.
+     * @param out The stream to write the container to, which is not closed by this stream
+     * @param blockSize The uncompressed size of a block
+     * @throws IOException if the header could not be written
+     */
+    public BlockCompressedOutputStream(OutputStream out, int blockSize) throws IOException {
+        this.out = out;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        this.block = new byte[blockSize];
+        this.blockLength = 0;
+        this.compressed = new byte[blockSize + blockSize / 8 + 64];
+        this.index = ByteBuffer.allocate(64 * INDEX_ENTRY_SIZE);
+        this.blockCount = 0;
+        this.position = 0;
+        this.finished = false;
+
+        out.write(MAGIC);
+        out.write(VERSION);
+        position = MAGIC.length + 1;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == block.length) {
+            writeBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (blockLength == block.length) {
+                writeBlock();
+            }
+
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write the last block, the index and the trailer. The underlying stream is left open.
+     * @throws IOException if the container could not be written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        if (blockLength > 0) {
+            writeBlock();
+        }
+
+        long indexOffset = position;
+        ByteBuffer count = ByteBuffer.allocate(4).putInt(0, blockCount);
+        out.write(count.array());
+        out.write(index.array(), 0, index.position());
+
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        trailer.putLong(indexOffset);
+        trailer.put(MAGIC);
+        out.write(trailer.array());
+
+        deflater.end();
+        finished = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Blocks are only written once full: flushing a partial block would break the block size.
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, compressedLength);
+                compressed = larger;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        out.write(compressed, 0, compressedLength);
+
+        if (!index.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(index.capacity() * 2);
+            index.flip();
+            larger.put(index);
+            index = larger;
+        }
+        index.putLong(position);
+        index.putInt(compressedLength);
+        index.putInt(blockLength);
+
+        position += compressedLength;
+        blockCount++;
+        blockLength = 0;
+    }
+}
@@ -0,0 +1,152 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.models.*;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The set of models changed in a database since it was last saved.
+ *
+ * Changes are kept by model ID, one map per model type: the value is the changed model,
+ * or null if the model has been removed. Only the last change of a model is kept.
+ */
+public class ChangeSet {
+    private final Map<String, ClientModel> clients = new LinkedHashMap<>();
+    private final Map<String, VehicleModel> vehicles = new LinkedHashMap<>();
+    private final Map<String, ContractModel> contracts = new LinkedHashMap<>();
+
+    /**
+     * Record that a model has been added or edited.
+     * @param m The model
+     */
+    public void put(Model m) {
+        record(m.getClass(), m.getId(), m);
+    }
+
+    /**
+     * Record that a model has been removed.
+     * @param m The model
+     */
+    public void remove(Model m) {
+        record(m.getClass(), m.getId(), null);
+    }
+
+    /**
+     * Record that a model has been removed, knowing only its ID.
+     * @param type The model type, or a base type of it
+     * @param id The model ID
+     */
+    public void remove(Class<? extends Model> type, String id) {
+        record(type, id, null);
+    }
+
+    /**
+     * Record the changes of a more recent change set on top of this one.
+     * @param newer The more recent changes
+     */
+    public void putAll(ChangeSet newer) {
+        clients.putAll(newer.clients);
+        vehicles.putAll(newer.vehicles);
+        contracts.putAll(newer.contracts);
+    }
+
+    /**
+     * Forget the changes of the models changed in another change set, e.g. once their state has been
+     * found in the file the database is saved to.
+     * @param other The changes to forget
+     */
+    public void forget(ChangeSet other) {
+        clients.keySet().removeAll(other.clients.keySet());
+        vehicles.keySet().removeAll(other.vehicles.keySet());
+        contracts.keySet().removeAll(other.contracts.keySet());
+    }
+
+    /**
+     * Create a copy of this change set without the changes of the models changed in another one.
+     * Models are shared.
+     * @param other The changes to leave out
+     * @return The copy
+     */
+    public ChangeSet without(ChangeSet other) {
+        ChangeSet rest = new ChangeSet();
+        rest.putAll(this);
+        rest.forget(other);
+
+        return rest;
+    }
+
+    /**
+     * Create a deep copy of this change set: the changed models are copied as they are now,
+     * see ModelAccessor.copy().
+     * @return The copy
+     */
+    public ChangeSet snapshot() {
+        ChangeSet copy = new ChangeSet();
+        copyAll(clients, copy.clients);
+        copyAll(vehicles, copy.vehicles);
+        copyAll(contracts, copy.contracts);
+
+        return copy;
+    }
+
+    private static <T> void copyAll(Map<String, T> from, Map<String, T> to) {
+        for (Map.Entry<String, T> change : from.entrySet()) {
+            to.put(change.getKey(), change.getValue() == null ? null : ModelAccessor.copyOf(change.getValue()));
+        }
+    }
+
+    /**
+     * Check if there are changes.
+     * @return true if nothing has changed
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Count the changes.
+     * @return The number of changed models
+     */
+    public int size() {
+        return clients.size() + vehicles.size() + contracts.size();
+    }
+
+    /**
+     * Getter
+     * @return The changed clients by ID, null for removed ones
+     */
+    public Map<String, ClientModel> getClientChanges() {
+        return Collections.unmodifiableMap(clients);
+    }
+
+    /**
+     * Getter
+     * @return The changed vehicles by ID, null for removed ones
+     */
+    public Map<String, VehicleModel> getVehicleChanges() {
+        return Collections.unmodifiableMap(vehicles);
+    }
+
+    /**
+     * Getter
+     * @return The changed contracts by ID, null for removed ones
+     */
+    public Map<String, ContractModel> getContractChanges() {
+        return Collections.unmodifiableMap(contracts);
+    }
+
+    private void record(Class<? extends Model> type, String id, Model state) {
+        if (ClientModel.class.isAssignableFrom(type)) {
+            clients.put(id, (ClientModel) state);
+        } else if (VehicleModel.class.isAssignableFrom(type)) {
+            vehicles.put(id, (VehicleModel) state);
+        } else if (ContractModel.class.isAssignableFrom(type)) {
+            contracts.put(id, (ContractModel) state);
+        } else {
+            throw new IllegalArgumentException("Unsupported model: " + type.getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.exceptions.LoaderNotFoundException;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.database.journal.Journal;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+
+/**
+ * Command line tool converting a database file from one supported format to another.
+ * The source is read as the application opens it, journal included, see Journal.load().
+ * The formats are deduced from the file extensions, e.g.:
+ *
+ * {@code java -cp CarRent.jar org.krytonspace.carrent.database.DatabaseConverter agency.json agency.crdb}
+ */
+public final class DatabaseConverter {
+
+    /**
+     * Can't create instances of this class.
+     */
+    private DatabaseConverter() {
+
+    }
+
+    /**
+     * Convert a database file.
+     * @param source The file to read from
+     * @param target The file to write to
+     * @throws LoaderNotFoundException if one of the files has an unsupported format
+     * @throws LoadingFailedException if the source file could not be loaded
+     * @throws WritingFailedException if the target file could not be written
+     */
+    public static void convert(String source, String target)
+            throws LoaderNotFoundException, LoadingFailedException, WritingFailedException {
+        DatabaseHandler in = DatabaseHandlers.getHandlerForFile(source);
+        DatabaseHandler out = DatabaseHandlers.getHandlerForFile(target);
+
+        DatabaseModel model = Journal.load(in, new File(source));
+        out.save(model);
+    }
+
+    /**
+     * The tool entry point.
+     * @param args The source and target files
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: DatabaseConverter <source file> <target file>");
+            System.err.println("Supported formats: " + DatabaseHandlers.extensionsSupported());
+            System.exit(2);
+        }
+
+        try {
+            convert(args[0], args[1]);
+        } catch (LoaderNotFoundException | LoadingFailedException | WritingFailedException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
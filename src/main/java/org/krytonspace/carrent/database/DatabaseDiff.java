@@ -0,0 +1,179 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.exceptions.LoaderNotFoundException;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.journal.Journal;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between two databases, entry by entry, e.g. the files of two agencies to reconcile.
+ *
+ * Entries are matched by ID, and compared by a hash of their content, see ModelAccessor.contentHash().
+ * Comparing files only keeps the IDs and hashes of the first database while the second one is read, and
+ * the entries of the second database which differ from the first: the file formats do not matter, and
+ * memory is bounded by the size of the largest database.
+ *
+ * A diff is a patch: applying getChanges() to the first database, e.g. with DatabaseController.applyChanges(),
+ * makes it hold the same entries as the second one. It can be computed from the command line, e.g.:
+ *
+ * {@code java -cp CarRent.jar org.krytonspace.carrent.database.DatabaseDiff north.crdb south.json}
+ *
+ * which lists the added (+), removed (-) and changed (~) entries of the second file. The exit status is 0 if
+ * both files hold the same entries, 1 otherwise.
+ */
+public class DatabaseDiff {
+    private final List<Model> added = new ArrayList<>();
+    private final List<Model> changed = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private final ChangeSet changes = new ChangeSet();
+
+    /**
+     * Constructor.
+     * Use compare() instead.
+     */
+    private DatabaseDiff() {
+
+    }
+
+    /**
+     * Compare two database files, whatever their formats.
+     * Files are read as the application opens them, journal included, see Journal.load().
+     * @param firstFileName The first file
+     * @param secondFileName The second file
+     * @return The differences of the second database from the first one
+     * @throws LoaderNotFoundException if a file has no suitable loader
+     * @throws LoadingFailedException if a file could not be loaded
+     */
+    public static DatabaseDiff compare(String firstFileName, String secondFileName)
+            throws LoaderNotFoundException, LoadingFailedException {
+        DatabaseHandler first = DatabaseHandlers.getHandlerForFile(firstFileName);
+        DatabaseHandler second = DatabaseHandlers.getHandlerForFile(secondFileName);
+
+        // The first database can be collected once hashed.
+        ModelIndex before = ModelIndex.of(Journal.load(first, new File(firstFileName)));
+
+        return compare(before, Journal.load(second, new File(secondFileName)));
+    }
+
+    /**
+     * Compare two databases.
+     * @param first The first database
+     * @param second The second database
+     * @return The differences of the second database from the first one
+     */
+    public static DatabaseDiff compare(DatabaseModel first, DatabaseModel second) {
+        return compare(ModelIndex.of(first), second);
+    }
+
+    private static DatabaseDiff compare(ModelIndex before, DatabaseModel after) {
+        DatabaseDiff diff = new DatabaseDiff();
+
+        ModelIndex.of(after).compare(before, after, new ModelIndex.DiffListener() {
+            @Override
+            public void onModelAdded(Model m) {
+                diff.added.add(m);
+                diff.changes.put(m);
+            }
+
+            @Override
+            public void onModelChanged(Model m) {
+                diff.changed.add(m);
+                diff.changes.put(m);
+            }
+
+            @Override
+            public void onModelRemoved(Class<? extends Model> type, String id) {
+                diff.removed.add(id);
+                diff.changes.remove(type, id);
+            }
+        });
+
+        return diff;
+    }
+
+    /**
+     * Getter
+     * @return The entries only in the second database
+     */
+    public List<Model> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * Getter
+     * @return The entries of the second database which differ in the first one
+     */
+    public List<Model> getChanged() {
+        return Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * Getter
+     * @return The IDs of the entries only in the first database
+     */
+    public List<String> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Getter
+     * @return The changes turning the first database into the second one
+     */
+    public ChangeSet getChanges() {
+        return changes;
+    }
+
+    /**
+     * Check if there are differences.
+     * @return true if both databases hold the same entries
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return added.size() + " added, " + removed.size() + " removed, " + changed.size() + " changed";
+    }
+
+    /**
+     * The tool entry point.
+     * @param args The files to compare
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: DatabaseDiff <first database file> <second database file>");
+            System.exit(2);
+        }
+
+        DatabaseDiff diff;
+        try {
+            diff = compare(args[0], args[1]);
+        } catch (LoaderNotFoundException | LoadingFailedException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (Model m : diff.added) {
+            out.append("+ ").append(m.getId()).append('\n');
+        }
+        for (String id : diff.removed) {
+            out.append("- ").append(id).append('\n');
+        }
+        for (Model m : diff.changed) {
+            out.append("~ ").append(m.getId()).append('\n');
+        }
+        System.out.print(out);
+        System.out.println(diff);
+
+        System.exit(diff.isEmpty() ? 0 : 1);
+    }
+}
@@ -19,10 +19,12 @@ public final class DatabaseHandlers {
 
     /**
      * Get a list of supported file extensions.
-     * @return Supported extensions
+     * JSON, XML and binary files can also be compressed with GZIP, by appending ".gz" to their name:
+     * their extensions are listed with the ".gz" suffix too.
+     * @return Supported extensions, without the leading dot
      */
     public static List<String> extensionsSupported() {
-        return Arrays.asList("json", "xml");
+        return Arrays.asList("json", "json.gz", "xml", "xml.gz", "crdb", "crdb.gz", "crdz", "crseg", "crpg", "crlsm");
     }
 
     /**
@@ -32,13 +34,37 @@ public final class DatabaseHandlers {
      * @throws LoaderNotFoundException if no suitable loader was found for this file
      */
     public static DatabaseHandler getHandlerForFile(String file) throws LoaderNotFoundException {
-        String ext = file.substring(file.lastIndexOf('.') + 1);
+        String name = file;
+        FileDatabase.Compression compression = FileDatabase.Compression.NONE;
+        if (name.toLowerCase().endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+            compression = FileDatabase.Compression.GZIP;
+        }
+
+        String ext = name.substring(name.lastIndexOf('.') + 1);
+        FileDatabase handler;
         if (ext.equalsIgnoreCase("json")) {
-            return new JsonDatabase(file);
+            handler = new JsonDatabase(file);
         } else if (ext.equalsIgnoreCase("xml")) {
-            return new XmlDatabase(file);
+            handler = new XmlDatabase(file);
+        } else if (ext.equalsIgnoreCase("crdb")) {
+            handler = new BinaryDatabase(file);
+        } else if (ext.equalsIgnoreCase("crdz") && compression == FileDatabase.Compression.NONE) {
+            // Binary database in a block compressed container.
+            handler = new BinaryDatabase(file);
+            compression = FileDatabase.Compression.BLOCKS;
+        } else if (ext.equalsIgnoreCase("crseg") && compression == FileDatabase.Compression.NONE) {
+            return new SegmentedDatabase(file);
+        } else if (ext.equalsIgnoreCase("crpg") && compression == FileDatabase.Compression.NONE) {
+            return new PagedDatabase(file);
+        } else if (ext.equalsIgnoreCase("crlsm") && compression == FileDatabase.Compression.NONE) {
+            return new LsmDatabase(file);
         } else {
-            throw new LoaderNotFoundException("Could not find a compatible loader: unknown file format: " + ext);
+            throw new LoaderNotFoundException("Could not find a compatible loader: unknown file format: " +
+                    ext + (compression == FileDatabase.Compression.GZIP ? ".gz" : ""));
         }
+
+        handler.setCompression(compression);
+        return handler;
     }
 }
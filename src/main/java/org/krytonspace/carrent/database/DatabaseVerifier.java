@@ -0,0 +1,104 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.exceptions.LoaderNotFoundException;
+import org.krytonspace.carrent.database.journal.Journal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Command line tool checking the integrity of binary database files, without loading them, e.g.:
+ *
+ * {@code java -cp CarRent.jar org.krytonspace.carrent.database.DatabaseVerifier agencies/*.crdb}
+ *
+ * The journal next to each file, holding the changes saved since, is checked as well.
+ * Files are verified a few at a time, and reported in the order they are given.
+ * The exit status is 0 if every file is intact, 1 otherwise.
+ */
+public final class DatabaseVerifier {
+
+    /**
+     * Can't create instances of this class.
+     */
+    private DatabaseVerifier() {
+
+    }
+
+    /**
+     * Verify a database file.
+     * @param fileName The file to verify
+     * @return The outcome of the verification
+     * @throws LoaderNotFoundException if the file is not a binary database, the only format carrying checksums
+     */
+    public static VerificationReport verify(String fileName) throws LoaderNotFoundException {
+        DatabaseHandler handler = DatabaseHandlers.getHandlerForFile(fileName);
+        if (!(handler instanceof BinaryDatabase)) {
+            throw new LoaderNotFoundException("'" + fileName + "' can not be verified: only binary databases " +
+                    "(.crdb, .crdz, .crlsm) carry checksums");
+        }
+
+        VerificationReport report = ((BinaryDatabase) handler).verify();
+        Journal journal = Journal.of(handler, new File(fileName));
+        List<String> journalProblems = journal == null ? new ArrayList<>() : journal.verify();
+        if (journalProblems.isEmpty()) {
+            return report;
+        }
+
+        List<String> problems = new ArrayList<>(report.getProblems());
+        problems.addAll(journalProblems);
+        return new VerificationReport(report.getFileName(), report.isChecksummed(), report.getBlockCount(), problems,
+                report.getElapsedNanos());
+    }
+
+    /**
+     * The tool entry point.
+     * @param args The files to verify
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: DatabaseVerifier <database file>...");
+            System.exit(2);
+        }
+
+        ExecutorService verifiers = Executors.newFixedThreadPool(
+                Math.min(args.length, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "verifier-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        List<Future<VerificationReport>> reports = new ArrayList<>();
+        for (String fileName : args) {
+            reports.add(verifiers.submit(() -> verify(fileName)));
+        }
+
+        boolean valid = true;
+        for (Future<VerificationReport> report : reports) {
+            try {
+                VerificationReport r = report.get();
+                System.out.println(r);
+                valid &= r.isValid();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.exit(1);
+            } catch (ExecutionException e) {
+                System.out.println(e.getCause().getMessage());
+                valid = false;
+            }
+        }
+
+        System.exit(valid ? 0 : 1);
+    }
+}
@@ -3,25 +3,100 @@ package org.krytonspace.carrent.database;
 import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
 import org.krytonspace.carrent.database.exceptions.WritingFailedException;
 import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.utils.StringPool;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Base class implementing a handler based on a file.
  */
 public abstract class FileDatabase implements DatabaseHandler {
 
+    /**
+     * Size of the buffers used to stream the database file.
+     */
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The ways a database file can be read.
+     */
+    public enum ReadMode {
+        /**
+         * Read the file through a buffered stream.
+         */
+        STREAM,
+        /**
+         * Map the file in memory, and parse bytes straight from the page cache.
+         */
+        MAPPED
+    }
+
+    /**
+     * The ways a database file can be compressed.
+     */
+    public enum Compression {
+        /**
+         * The file is not compressed.
+         */
+        NONE,
+        /**
+         * The whole file is a GZIP stream.
+         */
+        GZIP,
+        /**
+         * The file is cut into blocks compressed on their own, see BlockCompressedOutputStream.
+         */
+        BLOCKS
+    }
+
     /**
      * The database file.
      */
     protected File file;
 
+    /**
+     * How the file is read on load.
+     */
+    private ReadMode readMode;
+
+    /**
+     * How the file is compressed.
+     */
+    private Compression compression;
+
+    /**
+     * Statistics about the last successful load.
+     */
+    private LoadSummary lastLoadSummary;
+
+    /**
+     * The problems saves ran into without failing, since they were last taken.
+     */
+    private final List<String> saveProblems = new ArrayList<>();
+
     /**
      * Constructor.
      * @param fileName The file to read from/write to
      */
     public FileDatabase(String fileName) {
         this.file = new File(fileName);
+        // Windows locks mapped files until the mapping is garbage collected,
+        // which would prevent from saving over a database that was just loaded.
+        this.readMode = System.getProperty("os.name", "").startsWith("Windows") ? ReadMode.STREAM : ReadMode.MAPPED;
+        this.compression = Compression.NONE;
     }
 
     @Override
@@ -30,61 +105,320 @@ public abstract class FileDatabase implements DatabaseHandler {
             throw new LoadingFailedException("File '" + file.getName() + "' does not exist");
         }
 
-        return parse(readFully());
+        LoadSummary.resetPeakHeapUsage();
+        long start = System.nanoTime();
+        DatabaseModel model;
+
+        try (InputStream in = openForReading()) {
+            model = parse(in);
+        } catch (IOException e) {
+            throw new LoadingFailedException("Could not read '" + file.getName() + "' file: " + e.getMessage());
+        }
+
+        // Drop the copies of the strings repeated from model to model.
+        StringPool pool = StringPool.getShared();
+        long savedBefore = pool.getSavedBytes();
+        model.canonicalizeStrings(pool);
+
+        lastLoadSummary = new LoadSummary(file.getName(),
+                contentLength(),
+                System.nanoTime() - start,
+                LoadSummary.peakHeapUsage(),
+                pool.getSavedBytes() - savedBefore,
+                pool.size(),
+                skippedParts());
+
+        return model;
     }
 
+    /**
+     * Save the database without ever leaving a partially written file behind.
+     *
+     * The database is written to a temporary file next to the database file, forced to disk,
+     * and then moved over the database file in a single atomic step. The previous version
+     * of the database file is kept as a backup.
+     */
     @Override
     public void save(DatabaseModel model) throws WritingFailedException {
-        writeFully(dump(model));
+        replaceFile(out -> write(model, out));
     }
 
     /**
-     * Read a file completely in memory.
-     * @return The file contents
-     * @throws LoadingFailedException if the file could not be read
+     * Replace the content of the database file atomically, keeping the previous version as a backup.
+     * @param content The new content
+     * @throws WritingFailedException if the file could not be written
      */
-    private String readFully() throws LoadingFailedException {
-        StringBuilder sb = new StringBuilder();
+    protected void replaceFile(Content content) throws WritingFailedException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path directory = target.getParent();
+        Path temp = null;
+
+        try {
+            // Same directory, so that the final move never crosses file systems.
+            // The file is created like any other, to get the usual permissions.
+            temp = directory.resolve("." + file.getName() + "." +
+                    Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))){
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+                writeCompressed(content, out);
+                out.flush();
+                channel.force(true);
             }
-        } catch (IOException e) {
-            throw new LoadingFailedException("Could not read '" + file.getName() + "' file: " + e.getMessage());
+
+            if (Files.exists(target)) {
+                keepBackup(target);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+
+            forceDirectory(directory);
+        } catch (IOException | UncheckedIOException e) {
+            IOException left = deleteTemporary(temp);
+            throw new WritingFailedException("Could not write '" + file.getName() + "' file: " + e.getMessage() +
+                    (left == null ? "" : ", and its temporary file could not be deleted: " + left.getMessage()));
+        } catch (RuntimeException e) {
+            IOException left = deleteTemporary(temp);
+            if (left != null) {
+                e.addSuppressed(left);
+            }
+            throw e;
         }
+    }
 
-        return sb.toString();
+    /**
+     * Delete the temporary file of a write which has failed.
+     * @param temp The temporary file, or null if there is none left
+     * @return The failure to delete it, or null
+     */
+    private static IOException deleteTemporary(Path temp) {
+        if (temp != null) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                return e;
+            }
+        }
+
+        return null;
     }
 
     /**
-     * Write a file completely from memory.
-     * @param raw The file contents
-     * @throws WritingFailedException if the file could not be written
+     * Getter
+     * @return The file holding the previous version of the database, after a save
+     */
+    public File getBackupFile() {
+        return new File(file.getAbsolutePath() + ".bak");
+    }
+
+    /**
+     * Keep the current database file as the backup.
+     * A hard link is enough, since the database file is replaced and not rewritten;
+     * the file is copied where links are not supported.
+     * @param target The database file
+     * @throws IOException if the backup could not be made
+     */
+    private void keepBackup(Path target) throws IOException {
+        Path backup = getBackupFile().toPath();
+        Files.deleteIfExists(backup);
+
+        try {
+            Files.createLink(backup, target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(target, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    /**
+     * Force a directory entry change to disk, where the platform allows it.
+     * @param directory The directory
+     * @throws IOException if the directory could be opened, but not forced to disk
      */
-    private void writeFully(String raw) throws WritingFailedException {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))){
-            bw.write(raw);
-            bw.flush();
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
         } catch (IOException e) {
-            throw new WritingFailedException("Could not write '" + file.getName() + "' file: " + e.getMessage());
+            // Directories cannot be opened on some platforms (e.g. Windows): the move is still done.
+            return;
+        }
+
+        try (FileChannel opened = channel) {
+            opened.force(true);
+        }
+    }
+
+    /**
+     * Getter
+     * @return How the file is compressed
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Setter
+     * @param compression How the file should be compressed
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Getter
+     * @return How the file is read on load
+     */
+    public ReadMode getReadMode() {
+        return readMode;
+    }
+
+    /**
+     * Setter
+     * @param readMode How the file should be read on load
+     */
+    public void setReadMode(ReadMode readMode) {
+        this.readMode = readMode;
+    }
+
+    /**
+     * Open the database file, according to the read mode.
+     * @return A stream over the file content
+     * @throws IOException if the file could not be opened
+     */
+    protected InputStream openForReading() throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(openForReading(file), BUFFER_SIZE);
+            case BLOCKS:
+                BlockCompressedFile blocks = new BlockCompressedFile(file);
+                return new FilterInputStream(blocks.openStream(0)) {
+                    @Override
+                    public void close() throws IOException {
+                        blocks.close();
+                    }
+                };
+            default:
+                return openForReading(file);
         }
     }
 
     /**
-     * Parse the content into a database model.
-     * @param raw The file content to transform
+     * Write content to a file, compressed according to the compression of the database file.
+     * @param content The content to write
+     * @param out A buffered stream over the file
+     * @throws IOException if the file could not be written
+     * @throws WritingFailedException if the content could not be produced
+     */
+    private void writeCompressed(Content content, OutputStream out) throws IOException, WritingFailedException {
+        switch (compression) {
+            case GZIP:
+                GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+                content.writeTo(gzip);
+                gzip.finish();
+                break;
+            case BLOCKS:
+                BlockCompressedOutputStream blocks =
+                        new BlockCompressedOutputStream(out, BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE);
+                content.writeTo(blocks);
+                blocks.finish();
+                break;
+            default:
+                content.writeTo(out);
+                break;
+        }
+    }
+
+    /**
+     * Open a file, according to the read mode.
+     * @param f The file to open
+     * @return A stream over the file content
+     * @throws IOException if the file could not be opened
+     */
+    protected InputStream openForReading(File f) throws IOException {
+        if (readMode == ReadMode.MAPPED) {
+            return new MappedFileInputStream(f);
+        }
+
+        return new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE);
+    }
+
+    /**
+     * Get the size of what the last load has read.
+     * @return The size of the database file, in bytes
+     */
+    protected long contentLength() {
+        return file.length();
+    }
+
+    /**
+     * Get the parts of the file the last load has skipped, e.g. because they were corrupt.
+     * @return The descriptions of the skipped parts, empty if the whole file has been read
+     */
+    protected List<String> skippedParts() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Getter
+     * @return Statistics about the last load, or null if nothing has been loaded yet
+     */
+    public LoadSummary getLastLoadSummary() {
+        return lastLoadSummary;
+    }
+
+    /**
+     * Take the problems saves have run into without failing since they were last taken, e.g. leftover files
+     * which could not be deleted.
+     * @return The descriptions of the problems, empty if none
+     */
+    public List<String> takeSaveProblems() {
+        List<String> problems = new ArrayList<>(saveProblems);
+        saveProblems.clear();
+
+        return problems;
+    }
+
+    /**
+     * Record a problem the current save runs into without failing, see takeSaveProblems().
+     * @param problem The description of the problem
+     */
+    protected void saveProblem(String problem) {
+        saveProblems.add(problem);
+    }
+
+    /**
+     * Parse the file content into a database model, as it is read.
+     * @param in A buffered or memory mapped stream over the file content
      * @return The new database
+     * @throws IOException if the file could not be read
      * @throws LoadingFailedException if the content is not a valid database dump
      */
-    protected abstract DatabaseModel parse(String raw) throws LoadingFailedException;
+    protected abstract DatabaseModel parse(InputStream in) throws IOException, LoadingFailedException;
 
     /**
-     * Dump the database model to a string representation, that can be saved to a file.
-     * @param model The database to dump
-     * @return The string representation of the database
+     * Write the database model to the file, one model at a time.
+     * @param model The database to write
+     * @param out A buffered stream over a temporary file
+     * @throws IOException if the file could not be written
      * @throws WritingFailedException if the database could not be dumped
      */
-    protected abstract String dump(DatabaseModel model) throws WritingFailedException;
+    protected abstract void write(DatabaseModel model, OutputStream out) throws IOException, WritingFailedException;
+
+    /**
+     * The content of a database file.
+     */
+    protected interface Content {
+        /**
+         * Write the content to a file.
+         * @param out A buffered stream over a temporary file
+         * @throws IOException if the file could not be written
+         * @throws WritingFailedException if the content could not be produced
+         */
+        void writeTo(OutputStream out) throws IOException, WritingFailedException;
+    }
 }
@@ -0,0 +1,17 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+/**
+ * Interface denoting a database handler able to save only what has changed.
+ */
+public interface IncrementalDatabaseHandler extends DatabaseHandler {
+    /**
+     * Save the changes made to a database since it was last loaded or saved by this handler's storage.
+     * @param model The database to save
+     * @param changes The models changed since the last load or save
+     * @throws WritingFailedException if the loader could not save the changes
+     */
+    void saveChanges(DatabaseModel model, ChangeSet changes) throws WritingFailedException;
+}
@@ -1,29 +1,110 @@
 package org.krytonspace.carrent.database;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
 import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.database.json.JsonArraySplitter;
+import org.krytonspace.carrent.database.json.JsonCodec;
+import org.krytonspace.carrent.database.json.JsonCodecs;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
 import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.ModelFactory;
+import org.krytonspace.carrent.models.VehicleModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Class implementing database reading/writing with JSON.
+ *
+ * Models are read and written with the codecs generated at compile time, see JsonCodecs,
+ * or bound by Jackson if there are none. On load, the elements of each array are parsed in parallel,
+ * see JsonArraySplitter.
  */
 public class JsonDatabase extends FileDatabase {
 
-    private final ObjectMapper jsonParser;
+    private static final ObjectMapper MAPPER = createMapper();
+
+    /**
+     * Codecs reading and writing a single model as an array element.
+     */
+    private static final JsonCodec<ClientModel> CLIENT_CODEC = JsonCodecs.forModel(ClientModel.class, MAPPER);
+    private static final JsonCodec<VehicleModel> VEHICLE_CODEC = JsonCodecs.forModel(VehicleModel.class, MAPPER);
+    private static final JsonCodec<ContractModel> CONTRACT_CODEC = JsonCodecs.forModel(ContractModel.class, MAPPER);
+
+    /**
+     * The size array elements are split at, to be parsed in parallel.
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    /**
+     * The number of chunks parsed ahead of the registration, per thread.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * Threads parsing chunks.
+     */
+    private static final ForkJoinPool PARSERS = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     public JsonDatabase(String jsonFileName) {
         super(jsonFileName);
-        jsonParser = new ObjectMapper();
+    }
+
+    /**
+     * Create the mapper shared by every handler. Mappers are thread safe once configured.
+     */
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        // Models are written one by one into the same generator: let the buffers decide when to flush.
+        mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        // The file handler owns the underlying stream.
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        return mapper;
     }
 
     @Override
-    protected DatabaseModel parse(String raw) throws LoadingFailedException {
-        DatabaseModel model;
+    protected DatabaseModel parse(InputStream in) throws IOException, LoadingFailedException {
+        DatabaseModel model = new DatabaseModel();
+        JsonArraySplitter splitter = new JsonArraySplitter(in, CHUNK_SIZE);
 
         try {
-            model = jsonParser.readValue(raw, DatabaseModel.class);
+            // Each section is an array: its elements are split into chunks, parsed in parallel
+            // and registered in file order, so that the whole document never sits in memory.
+            String section;
+            while ((section = splitter.nextSection()) != null) {
+                switch (section) {
+                    case "clients":
+                        readSection(splitter, CLIENT_CODEC, model::registerClient);
+                        break;
+                    case "vehicles":
+                        readSection(splitter, VEHICLE_CODEC, model::registerVehicle);
+                        break;
+                    case "contracts":
+                        readSection(splitter, CONTRACT_CODEC, model::registerContract);
+                        break;
+                    default:
+                        throw new LoadingFailedException("Could not parse model as JSON: unknown section '" +
+                                section + "'");
+                }
+            }
         } catch (JsonProcessingException e) {
             throw new LoadingFailedException("Could not parse model as JSON: " + e.getMessage());
         }
@@ -32,15 +113,150 @@ public class JsonDatabase extends FileDatabase {
     }
 
     @Override
-    protected String dump(DatabaseModel model) throws WritingFailedException {
-        String raw;
-
-        try {
-            raw = jsonParser.writeValueAsString(model);
+    protected void write(DatabaseModel model, OutputStream out) throws IOException, WritingFailedException {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            writeArray(generator, "clients", model.getRegisteredClients(), CLIENT_CODEC);
+            writeArray(generator, "vehicles", model.getRegisteredVehicles(), VEHICLE_CODEC);
+            writeArray(generator, "contracts", model.getRegisteredContracts(), CONTRACT_CODEC);
+            generator.writeEndObject();
         } catch (JsonProcessingException e) {
             throw new WritingFailedException("Could not dump model as JSON: " + e.getMessage());
         }
+    }
+
+    /**
+     * Read the elements of a section, chunk by chunk.
+     * A few chunks are parsed ahead while the previous ones are registered; the models of each chunk
+     * are given IDs once parsed, in file order, so that models keep the file order.
+     * @param splitter The splitter, positioned on the section
+     * @param codec The codec to read elements with
+     * @param sink The action to run on each element read, in file order
+     * @param <T> The element type
+     * @throws IOException if the content could not be read
+     * @throws LoadingFailedException if the content is not a valid section
+     */
+    private static <T extends Model> void readSection(JsonArraySplitter splitter, JsonCodec<T> codec,
+                                                      Consumer<T> sink)
+            throws IOException, LoadingFailedException {
+        Deque<Future<List<T>>> pending = new ArrayDeque<>();
+
+        try {
+            JsonArraySplitter.Chunk chunk;
+            while ((chunk = splitter.nextChunk()) != null) {
+                JsonArraySplitter.Chunk elements = chunk;
+                pending.add(PARSERS.submit(() -> readChunk(elements, codec)));
+
+                if (pending.size() > PARSERS.getParallelism() * CHUNKS_PER_THREAD) {
+                    register(pending.poll().get(), sink);
+                }
+            }
+            while (!pending.isEmpty()) {
+                register(pending.poll().get(), sink);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing JSON");
+        } catch (ExecutionException e) {
+            // The pool wraps the checked exceptions of tasks.
+            Throwable cause = e.getCause();
+            while (cause instanceof RuntimeException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof LoadingFailedException) {
+                throw (LoadingFailedException) cause;
+            }
+            throw new LoadingFailedException("Could not parse model as JSON: " + cause);
+        } finally {
+            // Stop parsing the chunks left if the section is invalid.
+            for (Future<List<T>> chunk : pending) {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Parse the elements of a chunk, on a worker thread. Their IDs are deferred, see register().
+     * @param chunk The chunk
+     * @param codec The codec to read elements with
+     * @param <T> The element type
+     * @return The elements, in file order
+     * @throws IOException if the content could not be read
+     * @throws LoadingFailedException if the chunk is not a valid array
+     */
+    private static <T extends Model> List<T> readChunk(JsonArraySplitter.Chunk chunk, JsonCodec<T> codec)
+            throws IOException, LoadingFailedException {
+        List<T> models = new ArrayList<>(chunk.getCount());
+
+        ModelFactory.deferIds();
+        try (JsonParser parser = MAPPER.getFactory().createParser(chunk.getData(), 0, chunk.getLength())) {
+            parser.nextToken();
+            readArray(parser, codec, models::add);
+        } finally {
+            ModelFactory.Reservation.deactivate();
+        }
+
+        return models;
+    }
+
+    /**
+     * Give IDs to the models of a parsed chunk, and register them.
+     * Chunks are registered in file order: models get the IDs of each type in file order.
+     * @param models The models of the chunk, in file order
+     * @param sink The action to run on each model
+     * @param <T> The model type
+     */
+    private static <T extends Model> void register(List<T> models, Consumer<T> sink) {
+        ModelFactory.assignIds(models);
+        models.forEach(sink);
+    }
 
-        return raw;
+    /**
+     * Read each element of the array the parser is positioned on.
+     * @param parser The parser, positioned on the array start
+     * @param codec The codec to read elements with
+     * @param sink The action to run on each element read
+     * @param <T> The element type
+     * @throws IOException if the content could not be read
+     * @throws LoadingFailedException if the current value is not an array
+     */
+    private static <T> void readArray(JsonParser parser, JsonCodec<T> codec, Consumer<T> sink)
+            throws IOException, LoadingFailedException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new LoadingFailedException("Could not parse model as JSON: '" +
+                    parser.getCurrentName() + "' must be an array");
+        }
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new LoadingFailedException("Could not parse model as JSON: unexpected end of file");
+            }
+            sink.accept(codec.read(parser));
+        }
+    }
+
+    /**
+     * Write a list of models as an array field, one element at a time.
+     * @param generator The generator to write to
+     * @param name The array field name
+     * @param models The models to write
+     * @param codec The codec to write each model with
+     * @param <T> The element type
+     * @throws IOException if the content could not be written
+     */
+    private static <T> void writeArray(JsonGenerator generator, String name, List<T> models, JsonCodec<T> codec)
+            throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (T m : models) {
+            codec.write(generator, m);
+        }
+        generator.writeEndArray();
     }
 }
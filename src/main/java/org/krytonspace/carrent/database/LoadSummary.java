@@ -0,0 +1,167 @@
+package org.krytonspace.carrent.database;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bean class holding statistics about the last load of a database file.
+ */
+public class LoadSummary {
+    private final String fileName;
+    private final long bytesRead;
+    private final long elapsedNanos;
+    private final long peakHeapBytes;
+    private final long pooledBytes;
+    private final int pooledStrings;
+    private final List<String> skippedParts;
+
+    /**
+     * Constructor.
+     * @param fileName The name of the loaded file
+     * @param bytesRead The number of bytes read from disk
+     * @param elapsedNanos The time spent loading, in nanoseconds
+     * @param peakHeapBytes The peak heap usage observed while loading
+     * @param pooledBytes The estimated heap freed by sharing strings through the StringPool
+     * @param pooledStrings The number of distinct strings in the pool after loading
+     */
+    public LoadSummary(String fileName, long bytesRead, long elapsedNanos, long peakHeapBytes,
+                       long pooledBytes, int pooledStrings) {
+        this(fileName, bytesRead, elapsedNanos, peakHeapBytes, pooledBytes, pooledStrings,
+                Collections.<String>emptyList());
+    }
+
+    /**
+     * Constructor.
+     * @param fileName The name of the loaded file
+     * @param bytesRead The number of bytes read from disk
+     * @param elapsedNanos The time spent loading, in nanoseconds
+     * @param peakHeapBytes The peak heap usage observed while loading
+     * @param pooledBytes The estimated heap freed by sharing strings through the StringPool
+     * @param pooledStrings The number of distinct strings in the pool after loading
+     * @param skippedParts The descriptions of the parts of the file skipped because they were corrupt
+     */
+    public LoadSummary(String fileName, long bytesRead, long elapsedNanos, long peakHeapBytes,
+                       long pooledBytes, int pooledStrings, List<String> skippedParts) {
+        this.fileName = fileName;
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = elapsedNanos;
+        this.peakHeapBytes = peakHeapBytes;
+        this.pooledBytes = pooledBytes;
+        this.pooledStrings = pooledStrings;
+        this.skippedParts = Collections.unmodifiableList(skippedParts);
+    }
+
+    /**
+     * Reset the peak usage of every heap memory pool, so that the next call
+     * to peakHeapUsage() only reflects what happened since.
+     */
+    public static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sum the peak usage of every heap memory pool.
+     * @return The peak heap usage in bytes, since the last reset
+     */
+    public static long peakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        return peak;
+    }
+
+    /**
+     * Getter
+     * @return The name of the loaded file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Getter
+     * @return The number of bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Getter
+     * @return The load duration, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Getter
+     * @return The peak heap usage while loading, in bytes
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * Getter
+     * @return The estimated heap freed by sharing strings through the StringPool, in bytes
+     */
+    public long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Getter
+     * @return The number of distinct strings in the pool after loading
+     */
+    public int getPooledStrings() {
+        return pooledStrings;
+    }
+
+    /**
+     * Getter
+     * @return The descriptions of the parts of the file skipped because they were corrupt, empty if none was
+     */
+    public List<String> getSkippedParts() {
+        return skippedParts;
+    }
+
+    /**
+     * Compute the read throughput.
+     * @return The number of bytes read per second
+     */
+    public double getBytesPerSecond() {
+        if (elapsedNanos == 0) {
+            return 0;
+        }
+
+        return bytesRead * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        String summary = String.format("Loaded '%s': %d bytes in %.1f ms (%.2f MB/s), peak heap %.1f MB, " +
+                        "%.1f MB of strings shared (%d pooled)",
+                fileName,
+                bytesRead,
+                elapsedNanos / 1e6,
+                getBytesPerSecond() / (1024 * 1024),
+                peakHeapBytes / (1024.0 * 1024.0),
+                pooledBytes / (1024.0 * 1024.0),
+                pooledStrings);
+
+        return skippedParts.isEmpty() ? summary :
+                summary + ", skipped corrupt " + String.join(", ", skippedParts);
+    }
+}
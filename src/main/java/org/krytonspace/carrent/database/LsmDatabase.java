@@ -0,0 +1,98 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.database.lsm.ContractStore;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Class implementing database reading/writing with the contracts in a log-structured store,
+ * so that registering contracts never rewrites the database.
+ *
+ * The database file holds the clients and vehicles in the binary format, see BinaryDatabase,
+ * and is only replaced when they change. The contracts are held by a ContractStore in the
+ * directory named after the database file, with the ".contracts" suffix: saving changes
+ * appends the changed contracts to its log.
+ */
+public class LsmDatabase extends BinaryDatabase implements IncrementalDatabaseHandler {
+
+    public LsmDatabase(String lsmFileName) {
+        super(lsmFileName);
+    }
+
+    @Override
+    protected DatabaseModel parse(InputStream in) throws IOException, LoadingFailedException {
+        DatabaseModel model = super.parse(in);
+        openStore().scan(model::registerContract);
+
+        return model;
+    }
+
+    @Override
+    protected void write(DatabaseModel model, OutputStream out) throws IOException, WritingFailedException {
+        ContractStore store = openStore();
+        store.replaceAll(model.getRegisteredContracts());
+        store.takeProblems().forEach(this::saveProblem);
+        super.write(withoutContracts(model), out);
+    }
+
+    @Override
+    public void saveChanges(DatabaseModel model, ChangeSet changes) throws WritingFailedException {
+        if (!file.exists()) {
+            save(model);
+            return;
+        }
+
+        if (!changes.getClientChanges().isEmpty() || !changes.getVehicleChanges().isEmpty()) {
+            DatabaseModel main = withoutContracts(model);
+            replaceFile(out -> super.write(main, out));
+        }
+
+        try {
+            ContractStore store = openStore();
+            store.apply(changes.getContractChanges());
+            // Including those of the merges run in the background since the last save.
+            store.takeProblems().forEach(this::saveProblem);
+        } catch (IOException e) {
+            throw new WritingFailedException("Could not write '" + getStoreDirectory().getName() +
+                    "' store: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected long contentLength() {
+        try {
+            return super.contentLength() + openStore().size();
+        } catch (IOException e) {
+            return super.contentLength();
+        }
+    }
+
+    /**
+     * Getter
+     * @return The directory of the contract store
+     */
+    public File getStoreDirectory() {
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".contracts");
+    }
+
+    private ContractStore openStore() throws IOException {
+        return ContractStore.open(getStoreDirectory());
+    }
+
+    /**
+     * Create a copy of a database without its contracts, which are kept by the store.
+     */
+    private static DatabaseModel withoutContracts(DatabaseModel model) {
+        DatabaseModel copy = model.copy();
+        copy.setContractStorage(new ArrayList<>());
+
+        return copy;
+    }
+}
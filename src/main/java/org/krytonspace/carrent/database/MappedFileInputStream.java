@@ -0,0 +1,119 @@
+package org.krytonspace.carrent.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Input stream reading a file through memory mappings rather than read calls.
+ *
+ * The file is mapped by windows, since a single mapping can't exceed 2 GB.
+ * Bytes are served straight from the page cache: nothing is decoded, and no
+ * intermediate copy is made besides the one into the caller's array.
+ */
+public class MappedFileInputStream extends InputStream {
+
+    /**
+     * Size of a mapping window.
+     */
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * The current window, and its offset in the file.
+     */
+    private MappedByteBuffer window;
+    private long windowOffset;
+
+    /**
+     * Constructor.
+     * @param file The file to read
+     * @throws IOException if the file could not be opened
+     */
+    public MappedFileInputStream(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = null;
+        this.windowOffset = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && ensureWindow()) {
+            int step = (int) Math.min(n - skipped, window.remaining());
+            window.position(window.position() + step);
+            skipped += step;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long remaining = size - position();
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Get the number of bytes read so far.
+     * @return The current position in the file
+     */
+    public long position() {
+        return window == null ? 0 : windowOffset + window.position();
+    }
+
+    /**
+     * Make sure the current window has bytes left, mapping the next one if needed.
+     * @return false if the end of the file has been reached
+     * @throws IOException if the next window could not be mapped
+     */
+    private boolean ensureWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+
+        long next = window == null ? 0 : windowOffset + window.capacity();
+        if (next >= size) {
+            return false;
+        }
+
+        windowOffset = next;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(WINDOW_SIZE, size - next));
+        return true;
+    }
+}
@@ -0,0 +1,317 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.VehicleModel;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Index of the models of a database file, telling what has changed in the file since it was indexed
+ * without keeping a copy of its models.
+ *
+ * The index holds the ID and a content hash of each model (see ModelAccessor.contentHash()), grouped by blocks
+ * of the file. Blocks of binary databases are known by their checksum and length: a block found again in a
+ * newer version of the file does not need to be decoded, see BinaryDatabase.readChanges(). Other files are
+ * indexed as a single block per model type, which is always decoded.
+ */
+public class ModelIndex {
+
+    /**
+     * The key of blocks which are never found again.
+     */
+    static final long UNKNOWN_BLOCK = -1;
+
+    private final String[] strings;
+    private final Map<Class<? extends Model>, List<Block>> blocks;
+
+    /**
+     * Constructor.
+     * @param strings The string dictionary of the file, or null if it has none
+     * @param blocks The blocks of each model type, in file order
+     */
+    ModelIndex(String[] strings, Map<Class<? extends Model>, List<Block>> blocks) {
+        this.strings = strings;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Index a database as a single block per model type.
+     * @param model The database, as read from its file
+     * @return The index
+     */
+    public static ModelIndex of(DatabaseModel model) {
+        Map<Class<? extends Model>, List<Block>> blocks = new LinkedHashMap<>();
+        blocks.put(ClientModel.class, Collections.singletonList(Block.of(UNKNOWN_BLOCK, -1,
+                model.getRegisteredClients())));
+        blocks.put(VehicleModel.class, Collections.singletonList(Block.of(UNKNOWN_BLOCK, -1,
+                model.getRegisteredVehicles())));
+        blocks.put(ContractModel.class, Collections.singletonList(Block.of(UNKNOWN_BLOCK, -1,
+                model.getRegisteredContracts())));
+
+        return new ModelIndex(null, blocks);
+    }
+
+    /**
+     * Getter
+     * @return The number of models indexed
+     */
+    public int size() {
+        int size = 0;
+        for (List<Block> section : blocks.values()) {
+            for (Block b : section) {
+                size += b.ids.length;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Find what has changed since an older index of the same file.
+     * @param previous The older index
+     * @param decoded The models of the blocks of this index which are not in the older one, in file order
+     * @return The changes: the new state of the added and changed models, and the IDs of the removed ones
+     */
+    public ChangeSet changesSince(ModelIndex previous, DatabaseModel decoded) {
+        ChangeSet changes = new ChangeSet();
+        compare(previous, decoded, new DiffListener() {
+            @Override
+            public void onModelAdded(Model m) {
+                changes.put(m);
+            }
+
+            @Override
+            public void onModelChanged(Model m) {
+                changes.put(m);
+            }
+
+            @Override
+            public void onModelRemoved(Class<? extends Model> type, String id) {
+                changes.remove(type, id);
+            }
+        });
+
+        return changes;
+    }
+
+    /**
+     * Compare this index with an older one, model by model.
+     * @param previous The older index
+     * @param decoded The models of the blocks of this index which are not in the older one, in file order
+     * @param listener The listener told about each difference: models in the blocks of this index first,
+     *                 in order, then the removed ones
+     */
+    public void compare(ModelIndex previous, DatabaseModel decoded, DiffListener listener) {
+        diff(previous, ClientModel.class, decoded.getRegisteredClients(), listener);
+        diff(previous, VehicleModel.class, decoded.getRegisteredVehicles(), listener);
+        diff(previous, ContractModel.class, decoded.getRegisteredContracts(), listener);
+    }
+
+    private void diff(ModelIndex previous, Class<? extends Model> type, List<? extends Model> decoded,
+                      DiffListener listener) {
+        Map<String, Long> before = new HashMap<>();
+        Set<Block> known = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Block b : previous.getBlocks(type)) {
+            known.add(b);
+            for (int i = 0; i < b.ids.length; i++) {
+                before.put(b.ids[i], b.hashes[i]);
+            }
+        }
+
+        Iterator<? extends Model> records = decoded.iterator();
+        for (Block b : getBlocks(type)) {
+            if (known.contains(b)) {
+                for (String id : b.ids) {
+                    before.remove(id);
+                }
+                continue;
+            }
+
+            for (int i = 0; i < b.ids.length; i++) {
+                Model m = records.next();
+                Long hash = before.remove(b.ids[i]);
+                if (hash == null) {
+                    listener.onModelAdded(m);
+                } else if (hash != b.hashes[i]) {
+                    listener.onModelChanged(m);
+                }
+            }
+        }
+
+        // What is left is not in the file anymore.
+        for (String id : before.keySet()) {
+            listener.onModelRemoved(type, id);
+        }
+    }
+
+    /**
+     * Getter
+     * @return The string dictionary of the file, or null if it has none
+     */
+    String[] getStrings() {
+        return strings;
+    }
+
+    /**
+     * Getter
+     * @param type The model type
+     * @return The blocks holding the models of the type, in file order
+     */
+    List<Block> getBlocks(Class<? extends Model> type) {
+        List<Block> section = blocks.get(type);
+        return section != null ? section : Collections.emptyList();
+    }
+
+    /**
+     * Find a block which can be reused as is in a newer version of the file.
+     * @param type The model type
+     * @param key The key of the block in the newer version
+     * @param stableReferences The number of leading strings of the dictionary which are the same in both versions
+     * @return The block, or null if it is not known or refers to strings which have changed
+     */
+    Block find(Class<? extends Model> type, long key, int stableReferences) {
+        if (key == UNKNOWN_BLOCK) {
+            return null;
+        }
+
+        for (Block b : getBlocks(type)) {
+            if (b.key == key && b.maxReference < stableReferences) {
+                return b;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Count the leading strings which are the same in the dictionary of this index and another one.
+     * @param other The other dictionary
+     * @return The number of strings, 0 if this index has no dictionary
+     */
+    int stableReferences(String[] other) {
+        if (strings == null) {
+            return 0;
+        }
+
+        int count = 0;
+        int max = Math.min(strings.length, other.length);
+        while (count < max && Objects.equals(strings[count], other[count])) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Build the key of a block of a binary database.
+     * @param checksum The checksum of the block payload
+     * @param length The length of the block payload
+     * @return The key
+     */
+    static long key(int checksum, int length) {
+        return ((long) checksum << 32) | (length & 0xffffffffL);
+    }
+
+    /**
+     * Listener of the differences found between two indexes, see compare().
+     */
+    public interface DiffListener {
+
+        /**
+         * A model is only in the newer index.
+         * @param m The model
+         */
+        void onModelAdded(Model m);
+
+        /**
+         * A model has changed since the older index.
+         * @param m The model, as in the newer index
+         */
+        void onModelChanged(Model m);
+
+        /**
+         * A model is only in the older index.
+         * @param type The base type of the model
+         * @param id The model ID
+         */
+        void onModelRemoved(Class<? extends Model> type, String id);
+    }
+
+    /**
+     * The models of a block of a file, by ID and content hash.
+     */
+    static final class Block {
+        private final long key;
+        private final int maxReference;
+        private final String[] ids;
+        private final long[] hashes;
+
+        private Block(long key, int maxReference, String[] ids, long[] hashes) {
+            this.key = key;
+            this.maxReference = maxReference;
+            this.ids = ids;
+            this.hashes = hashes;
+        }
+
+        /**
+         * Index the models of a block.
+         * @param key The key of the block, or UNKNOWN_BLOCK
+         * @param maxReference The highest string reference of the block, or -1
+         * @param models The models of the block, in file order
+         * @return The block
+         */
+        static Block of(long key, int maxReference, List<? extends Model> models) {
+            String[] ids = new String[models.size()];
+            long[] hashes = new long[models.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Model m = models.get(i);
+                ids[i] = m.getId();
+                hashes[i] = ModelAccessor.contentHash(m);
+            }
+
+            return new Block(key, maxReference, ids, hashes);
+        }
+    }
+
+    /**
+     * Builder of an index, block by block in file order.
+     */
+    static final class Builder {
+        private final String[] strings;
+        private final Map<Class<? extends Model>, List<Block>> blocks = new LinkedHashMap<>();
+
+        /**
+         * Constructor.
+         * @param strings The string dictionary of the file, or null if it has none
+         */
+        Builder(String[] strings) {
+            this.strings = strings;
+        }
+
+        /**
+         * Add a block.
+         * @param type The model type of the block
+         * @param block The block
+         */
+        void add(Class<? extends Model> type, Block block) {
+            blocks.computeIfAbsent(type, t -> new ArrayList<>()).add(block);
+        }
+
+        ModelIndex build() {
+            return new ModelIndex(strings, blocks);
+        }
+    }
+}
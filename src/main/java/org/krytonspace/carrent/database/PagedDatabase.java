@@ -0,0 +1,487 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.binary.*;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.database.paged.BPlusTree;
+import org.krytonspace.carrent.database.paged.BufferPool;
+import org.krytonspace.carrent.database.paged.PagedFile;
+import org.krytonspace.carrent.database.paged.RecordLog;
+import org.krytonspace.carrent.models.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Class implementing database reading/writing as a file of fixed-size pages, so that saving
+ * changes only writes the pages they touch.
+ *
+ * Models are stored as records in data pages, see RecordLog, and each model type has a B+tree
+ * mapping model IDs to the position of their record, see BPlusTree. Saving changes appends the
+ * new records and updates the trees through a bounded buffer pool, then commits the changed pages
+ * at once through the write-ahead log of the file, see PagedFile. Once more than half of the file
+ * holds old records, the file is written anew.
+ *
+ * Each record holds its model type and a sequence number, which keeps the order of the models:
+ * a changed model keeps its number, new models get the next one.
+ *
+ * Layout of the file:
+ * <ul>
+ *     <li>a header page: the magic bytes "CRPG", a format version byte, the root page of the
+ *     clients, vehicles and contracts trees (4 bytes each), the last data page (4 bytes),
+ *     the next sequence number (8 bytes) and the size of old records (8 bytes)</li>
+ *     <li>data and tree pages, in any order</li>
+ * </ul>
+ *
+ * Layout of a record: the model type, the sequence number, a string dictionary and the model
+ * in the binary record format.
+ */
+public class PagedDatabase extends FileDatabase implements IncrementalDatabaseHandler {
+
+    private static final byte[] MAGIC = "CRPG".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private static final int KIND_CLIENT = 1;
+    private static final int KIND_VEHICLE = 2;
+    private static final int KIND_CONTRACT = 3;
+
+    public PagedDatabase(String pagedFileName) {
+        super(pagedFileName);
+    }
+
+    @Override
+    public DatabaseModel load() throws LoadingFailedException {
+        // Finish the last save if it was interrupted while committing.
+        if (file.exists()) {
+            try {
+                PagedFile.recover(file);
+            } catch (IOException e) {
+                throw new LoadingFailedException("Could not recover '" + file.getName() + "' file: " +
+                        e.getMessage());
+            }
+        }
+
+        return super.load();
+    }
+
+    /**
+     * Read every page in file order, then register the models of the records the trees point to,
+     * in sequence order.
+     */
+    @Override
+    protected DatabaseModel parse(InputStream in) throws IOException, LoadingFailedException {
+        ByteBuffer page = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        if (!readPage(in, page)) {
+            throw new LoadingFailedException("Could not parse model as pages: '" + file.getName() +
+                    "' is empty");
+        }
+        Header header = Header.read(page, file);
+
+        List<ByteBuffer> dataPages = new ArrayList<>();
+        List<Integer> dataPageNumbers = new ArrayList<>();
+        LongList live = new LongList();
+
+        int pageCount = 1;
+        while (readPage(in, page)) {
+            switch (page.get(0)) {
+                case RecordLog.DATA:
+                    dataPages.add(ByteBuffer.wrap(page.array().clone()));
+                    dataPageNumbers.add(pageCount);
+                    break;
+                case BPlusTree.LEAF:
+                    BPlusTree.forEachValue(page, live::add);
+                    break;
+                default:
+                    // Internal tree pages, and pages left empty.
+                    break;
+            }
+            pageCount++;
+        }
+
+        for (int root : header.roots) {
+            if (root >= pageCount) {
+                throw new LoadingFailedException("Could not parse model as pages: '" + file.getName() +
+                        "' is truncated");
+            }
+        }
+
+        // Only the records found in the trees are current.
+        long[] positions = live.toSortedArray();
+        int found = 0;
+        List<List<long[]>> kinds = Arrays.asList(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+        for (int i = 0; i < dataPages.size(); i++) {
+            ByteBuffer data = dataPages.get(i);
+            int used = data.getShort(1) & 0xFFFF;
+            long base = (long) dataPageNumbers.get(i) * PagedFile.PAGE_SIZE;
+
+            for (int offset = RecordLog.HEADER_SIZE; offset < used; ) {
+                int length = data.getShort(offset) & 0xFFFF;
+                if (Arrays.binarySearch(positions, base + offset) >= 0) {
+                    found++;
+                    int kind = data.get(offset + 2);
+                    if (kind < KIND_CLIENT || kind > KIND_CONTRACT) {
+                        throw new LoadingFailedException("Could not parse model as pages: unknown record type " +
+                                kind);
+                    }
+                    long seq = new BinaryDecoder(new ByteArrayInputStream(data.array(), offset + 3, length - 1),
+                            16).readVarLong();
+                    kinds.get(kind - 1).add(new long[] { seq, i, offset });
+                }
+                offset += 2 + length;
+            }
+        }
+
+        if (found != positions.length) {
+            throw new LoadingFailedException("Could not parse model as pages: " + (positions.length - found) +
+                    " records of '" + file.getName() + "' are missing");
+        }
+
+        DatabaseModel model = new DatabaseModel();
+        for (List<long[]> records : kinds) {
+            records.sort(Comparator.comparingLong(r -> r[0]));
+            for (long[] r : records) {
+                byte[] record = RecordLog.read(dataPages.get((int) r[1]), (int) r[2]);
+                register(model, decode(record));
+            }
+        }
+
+        return model;
+    }
+
+    /**
+     * Write the file sequentially: header, data pages, then the trees built bottom up.
+     */
+    @Override
+    protected void write(DatabaseModel model, OutputStream out) throws IOException, WritingFailedException {
+        List<List<? extends Model>> sections = Arrays.asList(
+                model.getRegisteredClients(),
+                model.getRegisteredVehicles(),
+                model.getRegisteredContracts());
+
+        // Place records first, to know where the trees go.
+        long end = 0;
+        long seq = 0;
+        List<long[]> positions = new ArrayList<>();
+        for (int k = 0; k < sections.size(); k++) {
+            List<? extends Model> models = sections.get(k);
+            long[] sectionPositions = new long[models.size()];
+            for (int i = 0; i < models.size(); i++) {
+                byte[] record = encode(k + 1, seq++, models.get(i));
+                if (record.length > RecordLog.MAX_RECORD_SIZE) {
+                    throw new WritingFailedException("Could not dump model as pages: '" + models.get(i).getId() +
+                            "' is too large");
+                }
+                sectionPositions[i] = RecordLog.place(end, record.length);
+                end = sectionPositions[i] + 2 + record.length;
+            }
+            positions.add(sectionPositions);
+        }
+
+        int lastDataPage = end == 0 ? 0 : (int) ((end - 1) / PagedFile.PAGE_SIZE);
+        int nextPage = lastDataPage + 1;
+
+        Header header = new Header();
+        header.tail = end == 0 ? -1 : lastDataPage;
+        header.nextSeq = seq;
+        List<ByteBuffer> treePages = new ArrayList<>();
+        for (int k = 0; k < sections.size(); k++) {
+            List<ByteBuffer> pages = buildTree(sections.get(k), positions.get(k), nextPage);
+            header.roots[k] = nextPage + pages.size() - 1;
+            nextPage += pages.size();
+            treePages.addAll(pages);
+        }
+
+        ByteBuffer page = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        header.write(page);
+        out.write(page.array());
+
+        // Data pages, filled the same way as when placed.
+        Arrays.fill(page.array(), (byte) 0);
+        int current = 1;
+        end = 0;
+        seq = 0;
+        for (int k = 0; k < sections.size(); k++) {
+            for (Model m : sections.get(k)) {
+                byte[] record = encode(k + 1, seq++, m);
+                long position = RecordLog.place(end, record.length);
+                int number = (int) (position / PagedFile.PAGE_SIZE);
+                if (number != current) {
+                    out.write(page.array());
+                    Arrays.fill(page.array(), (byte) 0);
+                    current = number;
+                }
+                RecordLog.write(page, (int) (position % PagedFile.PAGE_SIZE), record);
+                end = position + 2 + record.length;
+            }
+        }
+        if (end != 0) {
+            out.write(page.array());
+        }
+
+        for (ByteBuffer treePage : treePages) {
+            out.write(treePage.array());
+        }
+    }
+
+    @Override
+    public void saveChanges(DatabaseModel model, ChangeSet changes) throws WritingFailedException {
+        if (!file.exists()) {
+            save(model);
+            return;
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Header header;
+        try {
+            // The backup may be a link to this very file, which is about to be changed in place.
+            File backup = getBackupFile();
+            if (backup.exists() && Files.isSameFile(backup.toPath(), file.toPath())) {
+                Files.delete(backup.toPath());
+            }
+
+            try (PagedFile paged = new PagedFile(file)) {
+                BufferPool pool = new BufferPool(paged, BufferPool.DEFAULT_CAPACITY);
+
+                ByteBuffer headerPage = pool.pin(0);
+                try {
+                    header = Header.read(headerPage, file);
+                } finally {
+                    pool.unpin(0, false);
+                }
+
+                RecordLog records = new RecordLog(pool, header.tail);
+                header.roots[0] = apply(KIND_CLIENT, changes.getClientChanges(), header, pool, records);
+                header.roots[1] = apply(KIND_VEHICLE, changes.getVehicleChanges(), header, pool, records);
+                header.roots[2] = apply(KIND_CONTRACT, changes.getContractChanges(), header, pool, records);
+                header.tail = records.getTail();
+
+                headerPage = pool.pin(0);
+                header.write(headerPage);
+                pool.unpin(0, true);
+
+                pool.flush();
+                paged.commit();
+            }
+        } catch (IOException | LoadingFailedException e) {
+            throw new WritingFailedException("Could not write '" + file.getName() + "' file: " + e.getMessage());
+        }
+
+        // Get rid of old records once they take more room than current ones.
+        if (header.oldRecordBytes * 2 > file.length()) {
+            save(model);
+        }
+    }
+
+    /**
+     * Apply the changes to the models of a type.
+     * @return The new root page of the tree
+     */
+    private static int apply(int kind, Map<String, ? extends Model> changes, Header header,
+                             BufferPool pool, RecordLog records) throws IOException {
+        BPlusTree tree = new BPlusTree(pool, header.roots[kind - 1]);
+
+        for (Map.Entry<String, ? extends Model> change : changes.entrySet()) {
+            String id = change.getKey();
+            Model m = change.getValue();
+
+            long previous = m == null ? tree.remove(id) : tree.get(id);
+            long seq = header.nextSeq;
+            if (previous >= 0) {
+                byte[] old = records.read(previous);
+                header.oldRecordBytes += 2 + old.length;
+                seq = readSeq(old);
+            }
+
+            if (m != null) {
+                if (previous < 0) {
+                    header.nextSeq++;
+                }
+                tree.put(id, records.append(encode(kind, seq, m)));
+            }
+        }
+
+        return tree.getRoot();
+    }
+
+    /**
+     * Build the tree of a section, once its records are placed.
+     */
+    private static List<ByteBuffer> buildTree(List<? extends Model> models, long[] positions, int firstPage)
+            throws IOException {
+        Integer[] order = new Integer[models.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> models.get(i).getId()));
+
+        List<String> keys = new ArrayList<>(order.length);
+        List<Long> values = new ArrayList<>(order.length);
+        for (int i : order) {
+            keys.add(models.get(i).getId());
+            values.add(positions[i]);
+        }
+
+        return BPlusTree.build(keys, values, firstPage);
+    }
+
+    private static byte[] encode(int kind, long seq, Model m) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 256);
+        StringDictionary dictionary = new StringDictionary();
+        BinaryModelWriter writer = new BinaryModelWriter(encoder, dictionary);
+
+        encoder.writeByte(kind);
+        encoder.writeVarLong(seq);
+        switch (kind) {
+            case KIND_CLIENT:
+                BinaryModelWriter.addStrings(dictionary, (ClientModel) m);
+                dictionary.write(encoder);
+                writer.writeClient((ClientModel) m);
+                break;
+            case KIND_VEHICLE:
+                BinaryModelWriter.addStrings(dictionary, (VehicleModel) m);
+                dictionary.write(encoder);
+                writer.writeVehicle((VehicleModel) m);
+                break;
+            default:
+                BinaryModelWriter.addStrings(dictionary, (ContractModel) m);
+                dictionary.write(encoder);
+                writer.writeContract((ContractModel) m);
+                break;
+        }
+
+        encoder.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Model decode(byte[] record) throws IOException {
+        BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(record), record.length);
+        int kind = decoder.readByte();
+        decoder.readVarLong();
+        BinaryModelReader reader = new BinaryModelReader(decoder, StringDictionary.read(decoder));
+
+        switch (kind) {
+            case KIND_CLIENT:
+                return reader.readClient();
+            case KIND_VEHICLE:
+                return reader.readVehicle();
+            default:
+                return reader.readContract();
+        }
+    }
+
+    private static long readSeq(byte[] record) throws IOException {
+        BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(record), 16);
+        decoder.readByte();
+        return decoder.readVarLong();
+    }
+
+    private static void register(DatabaseModel model, Model m) {
+        if (m instanceof ClientModel) {
+            model.registerClient((ClientModel) m);
+        } else if (m instanceof VehicleModel) {
+            model.registerVehicle((VehicleModel) m);
+        } else {
+            model.registerContract((ContractModel) m);
+        }
+    }
+
+    /**
+     * Read the next page of the file.
+     * @return false if the file has ended
+     */
+    private static boolean readPage(InputStream in, ByteBuffer page) throws IOException {
+        byte[] bytes = page.array();
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new IOException("Truncated page");
+            }
+            read += n;
+        }
+
+        page.clear();
+        return true;
+    }
+
+    /**
+     * The header page.
+     */
+    private static class Header {
+        private final int[] roots = new int[3];
+        private int tail;
+        private long nextSeq;
+        private long oldRecordBytes;
+
+        private static Header read(ByteBuffer page, File f) throws LoadingFailedException {
+            byte[] magic = new byte[MAGIC.length];
+            ByteBuffer source = page.duplicate();
+            source.clear();
+            source.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new LoadingFailedException("Could not parse model as pages: '" + f.getName() +
+                        "' is not a paged database file");
+            }
+
+            int version = source.get();
+            if (version != VERSION) {
+                throw new LoadingFailedException("Could not parse model as pages: unsupported format version " +
+                        version);
+            }
+
+            Header header = new Header();
+            for (int i = 0; i < header.roots.length; i++) {
+                header.roots[i] = source.getInt();
+            }
+            header.tail = source.getInt();
+            header.nextSeq = source.getLong();
+            header.oldRecordBytes = source.getLong();
+
+            return header;
+        }
+
+        private void write(ByteBuffer page) {
+            ByteBuffer target = page.duplicate();
+            target.clear();
+            target.put(MAGIC);
+            target.put((byte) VERSION);
+            for (int root : roots) {
+                target.putInt(root);
+            }
+            target.putInt(tail);
+            target.putLong(nextSeq);
+            target.putLong(oldRecordBytes);
+        }
+    }
+
+    /**
+     * Growable list of longs, without boxing.
+     */
+    private static class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,786 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.binary.*;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.models.*;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Class implementing database reading/writing as segments, so that saving changes
+ * only rewrites the segments holding them.
+ *
+ * The database file is a manifest listing, for each model type, the segments holding
+ * its models in order. Segments are files in a directory next to the manifest, named
+ * after it with a ".segments" suffix. Each segment holds a run of consecutive models
+ * in the binary record format, with its own string dictionary.
+ *
+ * Segments are read in parallel, on a thread pool.
+ *
+ * With lazy contracts, only clients and vehicles are read on load: contracts stay on disk,
+ * and their segments are read one at a time when accessed, see LazyModelList. The manifest
+ * then serves as the index of the contracts. Lazy contracts are enabled by setting the
+ * "carrent.lazyContracts" system property to true, or with setLazyContracts().
+ *
+ * Segment files are never overwritten. Changed segments are written to new files,
+ * then the new manifest is swapped in, which commits the save. Segment files referenced
+ * neither by the manifest nor by its backup are deleted afterwards.
+ *
+ * Layout of the manifest:
+ * <ul>
+ *     <li>the magic bytes "CRSM", followed by a format version byte</li>
+ *     <li>the clients, vehicles and contracts sections, each one a segment count followed by,
+ *     for each segment, its number, the ID of its first model and its model count</li>
+ * </ul>
+ *
+ * Layout of a segment: the magic bytes "CRSG", a format version byte,
+ * the string dictionary, the model count and the records.
+ */
+public class SegmentedDatabase extends FileDatabase implements IncrementalDatabaseHandler {
+
+    /**
+     * Number of models written in a new segment.
+     */
+    public static final int SEGMENT_SIZE = 4096;
+
+    private static final byte[] MANIFEST_MAGIC = "CRSM".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEGMENT_MAGIC = "CRSG".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    private static final Section<ClientModel> CLIENTS = new Section<>("clients",
+            Collections.singletonList(ClientModel.class),
+            DatabaseModel::getRegisteredClients,
+            ChangeSet::getClientChanges,
+            BinaryModelWriter::addStrings,
+            BinaryModelWriter::writeClient,
+            BinaryModelReader::readClient);
+    private static final Section<VehicleModel> VEHICLES = new Section<>("vehicles",
+            Arrays.asList(CarModel.class, BikeModel.class, PlaneModel.class),
+            DatabaseModel::getRegisteredVehicles,
+            ChangeSet::getVehicleChanges,
+            BinaryModelWriter::addStrings,
+            BinaryModelWriter::writeVehicle,
+            BinaryModelReader::readVehicle);
+    private static final Section<ContractModel> CONTRACTS = new Section<>("contracts",
+            Collections.singletonList(ContractModel.class),
+            DatabaseModel::getRegisteredContracts,
+            ChangeSet::getContractChanges,
+            BinaryModelWriter::addStrings,
+            BinaryModelWriter::writeContract,
+            BinaryModelReader::readContract);
+
+    /**
+     * Threads reading segments.
+     */
+    private static final ExecutorService LOADERS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "segment-loader-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * The directory holding the segments.
+     */
+    private final File segmentDirectory;
+
+    /**
+     * Number of segment bytes read by the last load.
+     */
+    private long segmentBytesRead;
+
+    /**
+     * Whether contracts are read when accessed, instead of on load.
+     */
+    private boolean lazyContracts;
+
+    public SegmentedDatabase(String manifestFileName) {
+        super(manifestFileName);
+        segmentDirectory = new File(file.getAbsolutePath() + ".segments");
+        lazyContracts = Boolean.getBoolean("carrent.lazyContracts");
+    }
+
+    /**
+     * Getter
+     * @return true if contracts are read when accessed, false if they are read on load
+     */
+    public boolean isLazyContracts() {
+        return lazyContracts;
+    }
+
+    /**
+     * Setter
+     * @param lazyContracts true to read contracts when accessed, false to read them on load
+     */
+    public void setLazyContracts(boolean lazyContracts) {
+        this.lazyContracts = lazyContracts;
+    }
+
+    @Override
+    protected DatabaseModel parse(InputStream in) throws IOException, LoadingFailedException {
+        Manifest manifest = readManifest(in);
+        DatabaseModel model = new DatabaseModel();
+
+        // Every segment is read on its own thread, then models are registered in order.
+        List<Future<List<ClientModel>>> clients = submitSection(CLIENTS, manifest.clients);
+        List<Future<List<VehicleModel>>> vehicles = submitSection(VEHICLES, manifest.vehicles);
+        List<Future<List<ContractModel>>> contracts = lazyContracts ?
+                Collections.emptyList() :
+                submitSection(CONTRACTS, manifest.contracts);
+
+        try {
+            collectSection(clients, model::registerClient);
+            collectSection(vehicles, model::registerVehicle);
+            collectSection(contracts, model::registerContract);
+            if (lazyContracts) {
+                model.setContractStorage(lazySection(CONTRACTS, manifest.contracts));
+            }
+        } finally {
+            for (List<? extends Future<?>> futures : Arrays.asList(clients, vehicles, contracts)) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        segmentBytesRead = 0;
+        for (Segment segment : manifest.segments()) {
+            // Lazy contracts have not been read yet.
+            if (segment.file != null && (!lazyContracts || !manifest.contracts.contains(segment))) {
+                segmentBytesRead += segment.file.length();
+            }
+        }
+
+        return model;
+    }
+
+    @Override
+    protected long contentLength() {
+        return super.contentLength() + segmentBytesRead;
+    }
+
+    @Override
+    public void save(DatabaseModel model) throws WritingFailedException {
+        Manifest manifest = new Manifest();
+
+        try {
+            SegmentNumbers numbers = new SegmentNumbers();
+            manifest.clients = writeAll(CLIENTS, model, numbers);
+            manifest.vehicles = writeAll(VEHICLES, model, numbers);
+            manifest.contracts = isLazyHere(model.getContractStorage()) ?
+                    writeLazy(CONTRACTS, model.getContractStorage(), numbers) :
+                    writeAll(CONTRACTS, model, numbers);
+        } catch (IOException e) {
+            throw new WritingFailedException("Could not write segments of '" + file.getName() + "': " +
+                    e.getMessage());
+        }
+
+        commit(manifest);
+    }
+
+    @Override
+    public void saveChanges(DatabaseModel model, ChangeSet changes) throws WritingFailedException {
+        if (changes.isEmpty() && file.exists()) {
+            return;
+        }
+
+        Manifest previous;
+        try {
+            previous = readManifest(file);
+        } catch (IOException | LoadingFailedException e) {
+            // Nothing to build upon.
+            save(model);
+            return;
+        }
+
+        Manifest manifest = new Manifest();
+
+        try {
+            SegmentNumbers numbers = new SegmentNumbers();
+            manifest.clients = writeChanged(CLIENTS, model, changes, previous.clients, numbers);
+            manifest.vehicles = writeChanged(VEHICLES, model, changes, previous.vehicles, numbers);
+            manifest.contracts = isLazyHere(model.getContractStorage()) ?
+                    writeLazy(CONTRACTS, model.getContractStorage(), numbers) :
+                    writeChanged(CONTRACTS, model, changes, previous.contracts, numbers);
+        } catch (IOException e) {
+            throw new WritingFailedException("Could not write segments of '" + file.getName() + "': " +
+                    e.getMessage());
+        }
+
+        commit(manifest);
+    }
+
+    /**
+     * The manifest is written by commit(), so this is never used.
+     */
+    @Override
+    protected void write(DatabaseModel model, OutputStream out) throws IOException, WritingFailedException {
+        throw new WritingFailedException("Segmented databases are written segment by segment");
+    }
+
+    /**
+     * Swap in a new manifest, and delete the segments which are not referenced anymore.
+     * @param manifest The new manifest
+     * @throws WritingFailedException if the manifest could not be written
+     */
+    private void commit(Manifest manifest) throws WritingFailedException {
+        replaceFile(out -> writeManifest(manifest, out));
+
+        // The backup manifest still references the previous segments: keep them as well.
+        Set<Long> referenced = new HashSet<>();
+        manifest.collectNumbers(referenced);
+        try {
+            readManifest(getBackupFile()).collectNumbers(referenced);
+        } catch (IOException | LoadingFailedException e) {
+            // No usable backup.
+        }
+
+        deleteUnusedSegments(referenced);
+    }
+
+    /**
+     * Delete the backup manifest, and the segments only referenced by it.
+     * @throws IOException if the manifest could not be read, or the backup could not be deleted
+     * @throws LoadingFailedException if the manifest is not valid
+     */
+    void discardBackup() throws IOException, LoadingFailedException {
+        Set<Long> referenced = new HashSet<>();
+        readManifest(file).collectNumbers(referenced);
+
+        Files.deleteIfExists(getBackupFile().toPath());
+        deleteUnusedSegments(referenced);
+    }
+
+    /**
+     * Delete the segment files which are not referenced.
+     * @param referenced The numbers of the segments to keep
+     */
+    private void deleteUnusedSegments(Set<Long> referenced) {
+        File[] files = segmentDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File f : files) {
+            long number = segmentNumber(f);
+            if (number >= 0 && !referenced.contains(number) && !f.delete()) {
+                saveProblem("Could not delete unused segment '" + f.getName() + "'");
+            }
+        }
+    }
+
+    /**
+     * Write every model of a section to new segments.
+     */
+    private <T extends Model> List<Segment> writeAll(Section<T> section, DatabaseModel model,
+                                                     SegmentNumbers numbers) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        writeRun(section, section.models.apply(model), segments, numbers);
+
+        return segments;
+    }
+
+    /**
+     * Rewrite the segments of a section holding changed models, and keep the other ones.
+     *
+     * The models are matched with the previous segments by walking them in order:
+     * models only get appended, replaced in place or removed, so each previous segment
+     * now holds the models from its first one up to the first one of the next segment.
+     * A segment is changed if one of its models is, or if its model count is not the same.
+     * A segment whose first model has been removed merges into the previous one, and both
+     * are rewritten.
+     */
+    private <T extends Model> List<Segment> writeChanged(Section<T> section, DatabaseModel model, ChangeSet changes,
+                                                         List<Segment> previous, SegmentNumbers numbers)
+            throws IOException {
+        Map<String, T> changed = section.changes.apply(changes);
+        if (changed.isEmpty()) {
+            return previous;
+        }
+        if (previous.isEmpty()) {
+            return writeAll(section, model, numbers);
+        }
+
+        Map<String, Integer> firstIds = new HashMap<>();
+        for (int i = 0; i < previous.size(); i++) {
+            firstIds.put(previous.get(i).firstId, i);
+        }
+
+        List<T> models = section.models.apply(model);
+        int[] starts = new int[previous.size() + 1];
+        boolean[] dirty = new boolean[previous.size()];
+        int current = 0;
+
+        for (int i = 0; i < models.size(); i++) {
+            String id = models.get(i).getId();
+            Integer segment = firstIds.get(id);
+            if (segment != null && segment > current) {
+                for (int s = current + 1; s <= segment; s++) {
+                    starts[s] = i;
+                }
+                current = segment;
+            }
+            if (changed.containsKey(id)) {
+                dirty[current] = true;
+            }
+        }
+        for (int s = current + 1; s <= previous.size(); s++) {
+            starts[s] = models.size();
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (int s = 0; s < previous.size(); s++) {
+            List<T> run = models.subList(starts[s], starts[s + 1]);
+
+            if (!dirty[s] && run.size() == previous.get(s).count) {
+                segments.add(previous.get(s));
+                continue;
+            }
+
+            writeRun(section, run, segments, numbers);
+        }
+
+        return segments;
+    }
+
+    /**
+     * Check if a list holds models read lazily from the segments of this database.
+     */
+    private boolean isLazyHere(List<?> models) {
+        return models instanceof LazyModelList &&
+                ((LazyModelList<?>) models).getSource() instanceof SegmentSource &&
+                ((SegmentSource<?>) ((LazyModelList<?>) models).getSource()).directory.equals(segmentDirectory);
+    }
+
+    /**
+     * Write a section whose models are read lazily from the segments of this database.
+     *
+     * Each page of the list is a segment: pages left as they were on disk keep their segment,
+     * without being read. Changed pages, and pages of added models, are written to new segments.
+     * Their segment files must stay until the list is dropped, which holds as long as the list
+     * is only saved to this database: this is why pages still on disk keep their segment,
+     * even after a full save.
+     */
+    private <T extends Model> List<Segment> writeLazy(Section<T> section, List<T> models, SegmentNumbers numbers)
+            throws IOException {
+        LazyModelList<T> list = (LazyModelList<T>) models;
+        SegmentSource<?> source = (SegmentSource<?>) list.getSource();
+        List<Segment> segments = new ArrayList<>();
+        List<T> pending = new ArrayList<>();
+
+        for (LazyModelList.Page<T> page : list.getPages()) {
+            Segment stored = page.isPinned() ? null : source.segments.get(page.getKey());
+            if (stored == null) {
+                // Runs of changed pages are written together, so that small pages do not pile up.
+                pending.addAll(list.getPageContent(page));
+                continue;
+            }
+
+            writeRun(section, pending, segments, numbers);
+            pending.clear();
+            segments.add(stored);
+        }
+        writeRun(section, pending, segments, numbers);
+
+        return segments;
+    }
+
+    /**
+     * Write a run of models to as many new segments as needed.
+     */
+    private <T extends Model> void writeRun(Section<T> section, List<T> run, List<Segment> segments,
+                                            SegmentNumbers numbers) throws IOException {
+        for (int start = 0; start < run.size(); start += SEGMENT_SIZE) {
+            segments.add(writeSegment(section, run.subList(start, Math.min(run.size(), start + SEGMENT_SIZE)),
+                    numbers.next()));
+        }
+    }
+
+    /**
+     * Write models to a new segment file, forced to disk.
+     */
+    private <T extends Model> Segment writeSegment(Section<T> section, List<T> models, long number)
+            throws IOException {
+        if (!segmentDirectory.isDirectory() && !segmentDirectory.mkdirs()) {
+            throw new IOException("Could not create directory '" + segmentDirectory.getName() + "'");
+        }
+
+        StringDictionary dictionary = new StringDictionary();
+        for (T m : models) {
+            section.addStrings.accept(dictionary, m);
+        }
+
+        File segmentFile = segmentFile(section, number);
+        try (FileChannel channel = FileChannel.open(segmentFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+            BinaryEncoder encoder = new BinaryEncoder(out, BUFFER_SIZE);
+            BinaryModelWriter writer = new BinaryModelWriter(encoder, dictionary);
+
+            encoder.writeBytes(SEGMENT_MAGIC, 0, SEGMENT_MAGIC.length);
+            encoder.writeByte(VERSION);
+            dictionary.write(encoder);
+            encoder.writeVarInt(models.size());
+            for (T m : models) {
+                section.writer.write(writer, m);
+            }
+            encoder.flush();
+            out.flush();
+            channel.force(true);
+        }
+
+        Segment segment = new Segment();
+        segment.number = number;
+        segment.firstId = models.get(0).getId();
+        segment.count = models.size();
+
+        return segment;
+    }
+
+    /**
+     * Start reading the segments of a section.
+     * The IDs of the models are deferred: they are given once read, in order, see collectSection().
+     */
+    private <T extends Model> List<Future<List<T>>> submitSection(Section<T> section, List<Segment> segments) {
+        List<Future<List<T>>> futures = new ArrayList<>(segments.size());
+
+        for (Segment segment : segments) {
+            segment.file = segmentFile(section, segment.number);
+
+            futures.add(LOADERS.submit(() -> {
+                ModelFactory.deferIds();
+                try {
+                    return readSegment(section, segment);
+                } finally {
+                    ModelFactory.Reservation.deactivate();
+                }
+            }));
+        }
+
+        return futures;
+    }
+
+    /**
+     * Create a list reading the segments of a section when accessed.
+     * IDs are reserved for each segment, and reused each time it is read. Only single type sections are
+     * read lazily: reserving IDs before reading a segment does not reserve them for types it has no models of.
+     */
+    private <T extends Model> LazyModelList<T> lazySection(Section<T> section, List<Segment> segments) {
+        SegmentSource<T> source = new SegmentSource<>(section);
+        long[] keys = new long[segments.size()];
+        int[] sizes = new int[segments.size()];
+
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            segment.file = segmentFile(section, segment.number);
+            source.segments.put(segment.number, segment);
+            source.ids.put(segment.number, ModelFactory.reserveIds(segment.count, section.modelClasses));
+            keys[i] = segment.number;
+            sizes[i] = segment.count;
+        }
+
+        return new LazyModelList<>(source, keys, sizes);
+    }
+
+    /**
+     * Wait for the segments of a section, and register their models in order, giving them their IDs.
+     */
+    private static <T extends Model> void collectSection(List<Future<List<T>>> futures, Consumer<T> register)
+            throws IOException, LoadingFailedException {
+        for (Future<List<T>> future : futures) {
+            List<T> models;
+            try {
+                models = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LoadingFailedException("Interrupted while loading segments");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof LoadingFailedException) {
+                    throw (LoadingFailedException) cause;
+                }
+                throw new LoadingFailedException("Could not parse model as segments: " + cause);
+            }
+
+            ModelFactory.assignIds(models);
+            models.forEach(register);
+        }
+    }
+
+    /**
+     * Read the models of a segment.
+     */
+    private <T extends Model> List<T> readSegment(Section<T> section, Segment segment)
+            throws IOException, LoadingFailedException {
+        if (!segment.file.exists()) {
+            throw new LoadingFailedException("Could not parse model as segments: missing segment '" +
+                    segment.file.getName() + "'");
+        }
+
+        try (InputStream in = openForReading(segment.file)) {
+            BinaryDecoder decoder = new BinaryDecoder(in, BUFFER_SIZE);
+            checkHeader(decoder, SEGMENT_MAGIC, segment.file);
+
+            BinaryModelReader reader = new BinaryModelReader(decoder, StringDictionary.read(decoder));
+            int count = decoder.readVarInt();
+            if (count != segment.count) {
+                throw new LoadingFailedException("Could not parse model as segments: segment '" +
+                        segment.file.getName() + "' does not match the manifest");
+            }
+
+            List<T> models = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                models.add(section.reader.read(reader));
+            }
+
+            return models;
+        }
+    }
+
+    private Manifest readManifest(File manifestFile) throws IOException, LoadingFailedException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(manifestFile), BUFFER_SIZE)) {
+            return readManifest(in);
+        }
+    }
+
+    private Manifest readManifest(InputStream in) throws IOException, LoadingFailedException {
+        BinaryDecoder decoder = new BinaryDecoder(in, BUFFER_SIZE);
+        checkHeader(decoder, MANIFEST_MAGIC, file);
+
+        Manifest manifest = new Manifest();
+        manifest.clients = readSegments(decoder);
+        manifest.vehicles = readSegments(decoder);
+        manifest.contracts = readSegments(decoder);
+
+        return manifest;
+    }
+
+    private static List<Segment> readSegments(BinaryDecoder decoder) throws IOException {
+        int count = decoder.readVarInt();
+        if (count < 0) {
+            throw new IOException("Malformed segment count");
+        }
+
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Segment segment = new Segment();
+            segment.number = decoder.readVarLong();
+            segment.firstId = decoder.readString();
+            segment.count = decoder.readVarInt();
+            segments.add(segment);
+        }
+
+        return segments;
+    }
+
+    private static void writeManifest(Manifest manifest, OutputStream out) throws IOException {
+        BinaryEncoder encoder = new BinaryEncoder(out, BUFFER_SIZE);
+
+        encoder.writeBytes(MANIFEST_MAGIC, 0, MANIFEST_MAGIC.length);
+        encoder.writeByte(VERSION);
+        writeSegments(encoder, manifest.clients);
+        writeSegments(encoder, manifest.vehicles);
+        writeSegments(encoder, manifest.contracts);
+        encoder.flush();
+    }
+
+    private static void writeSegments(BinaryEncoder encoder, List<Segment> segments) throws IOException {
+        encoder.writeVarInt(segments.size());
+        for (Segment segment : segments) {
+            encoder.writeVarLong(segment.number);
+            encoder.writeString(segment.firstId);
+            encoder.writeVarInt(segment.count);
+        }
+    }
+
+    private static void checkHeader(BinaryDecoder decoder, byte[] expected, File f)
+            throws IOException, LoadingFailedException {
+        byte[] magic = new byte[expected.length];
+        decoder.readBytes(magic, 0, magic.length);
+        if (!Arrays.equals(magic, expected)) {
+            throw new LoadingFailedException("Could not parse model as segments: '" + f.getName() +
+                    "' is not a segmented database file");
+        }
+
+        int version = decoder.readByte();
+        if (version != VERSION) {
+            throw new LoadingFailedException("Could not parse model as segments: unsupported format version " +
+                    version);
+        }
+    }
+
+    private File segmentFile(Section<?> section, long number) {
+        return new File(segmentDirectory, section.name + "-" + number + SEGMENT_EXTENSION);
+    }
+
+    /**
+     * Parse the number of a segment file.
+     * @param f A file of the segment directory
+     * @return The segment number, or -1 if this is not a segment file
+     */
+    private static long segmentNumber(File f) {
+        String name = f.getName();
+        int dash = name.lastIndexOf('-');
+        if (dash < 0 || !name.endsWith(SEGMENT_EXTENSION)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(name.substring(dash + 1, name.length() - SEGMENT_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Numbers for new segments, following every segment file found on disk
+     * so that live segments are never overwritten.
+     */
+    private class SegmentNumbers {
+        private long next;
+
+        private SegmentNumbers() {
+            next = 0;
+            File[] files = segmentDirectory.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    next = Math.max(next, segmentNumber(f) + 1);
+                }
+            }
+        }
+
+        private long next() {
+            return next++;
+        }
+    }
+
+    /**
+     * The list of segments of each section.
+     */
+    private static class Manifest {
+        private List<Segment> clients = new ArrayList<>();
+        private List<Segment> vehicles = new ArrayList<>();
+        private List<Segment> contracts = new ArrayList<>();
+
+        private List<Segment> segments() {
+            List<Segment> segments = new ArrayList<>(clients);
+            segments.addAll(vehicles);
+            segments.addAll(contracts);
+
+            return segments;
+        }
+
+        private void collectNumbers(Set<Long> numbers) {
+            for (Segment segment : segments()) {
+                numbers.add(segment.number);
+            }
+        }
+    }
+
+    /**
+     * A manifest entry.
+     */
+    private static class Segment {
+        private long number;
+        private String firstId;
+        private int count;
+
+        /**
+         * The segment file, once resolved for loading.
+         */
+        private File file;
+    }
+
+    /**
+     * Reader of the segments of a section, for lazily read models. Segments are keyed by number.
+     * @param <T> The model type
+     */
+    private class SegmentSource<T extends Model> implements LazyModelList.PageSource<T> {
+        private final Section<T> section;
+        private final File directory = segmentDirectory;
+        private final Map<Long, Segment> segments = new HashMap<>();
+        private final Map<Long, ModelFactory.Reservation> ids = new HashMap<>();
+
+        private SegmentSource(Section<T> section) {
+            this.section = section;
+        }
+
+        @Override
+        public List<T> readPage(long key) throws IOException {
+            Segment segment = segments.get(key);
+            if (segment == null) {
+                throw new IOException("Unknown segment " + key);
+            }
+
+            ids.get(key).reuse().activate();
+            try {
+                return readSegment(section, segment);
+            } catch (LoadingFailedException e) {
+                throw new IOException(e.getMessage());
+            } finally {
+                ModelFactory.Reservation.deactivate();
+            }
+        }
+    }
+
+    /**
+     * How to handle the models of a section.
+     * @param <T> The model type
+     */
+    private static class Section<T extends Model> {
+        private final String name;
+        private final List<Class<? extends Model>> modelClasses;
+        private final Function<DatabaseModel, List<T>> models;
+        private final Function<ChangeSet, Map<String, T>> changes;
+        private final BiConsumer<StringDictionary, T> addStrings;
+        private final RecordWriter<T> writer;
+        private final RecordReader<T> reader;
+
+        private Section(String name,
+                        List<Class<? extends Model>> modelClasses,
+                        Function<DatabaseModel, List<T>> models,
+                        Function<ChangeSet, Map<String, T>> changes,
+                        BiConsumer<StringDictionary, T> addStrings,
+                        RecordWriter<T> writer,
+                        RecordReader<T> reader) {
+            this.name = name;
+            this.modelClasses = modelClasses;
+            this.models = models;
+            this.changes = changes;
+            this.addStrings = addStrings;
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+
+    private interface RecordWriter<T> {
+        void write(BinaryModelWriter writer, T model) throws IOException;
+    }
+
+    private interface RecordReader<T> {
+        T read(BinaryModelReader reader) throws IOException;
+    }
+}
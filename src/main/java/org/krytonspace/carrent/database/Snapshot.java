@@ -0,0 +1,54 @@
+package org.krytonspace.carrent.database;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Bean class describing a snapshot of a database, see SnapshotStore.
+ */
+public class Snapshot {
+    private final File file;
+    private final Date date;
+
+    /**
+     * Constructor.
+     * @param file The manifest of the snapshot, a segmented database
+     * @param date When the snapshot was taken
+     */
+    public Snapshot(File file, Date date) {
+        this.file = file;
+        this.date = date;
+    }
+
+    /**
+     * Getter
+     * @return The manifest of the snapshot
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Getter
+     * @return When the snapshot was taken
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Snapshot && file.equals(((Snapshot) o).file);
+    }
+
+    @Override
+    public int hashCode() {
+        return file.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(date);
+    }
+}
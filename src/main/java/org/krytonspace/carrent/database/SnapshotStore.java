@@ -0,0 +1,261 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Point-in-time snapshots of a database, stored in a directory next to its file (agency.crdb.snapshots).
+ *
+ * Each snapshot is a segmented database, see SegmentedDatabase. Snapshots are incremental: a snapshot starts
+ * as hard links to the segments of the previous one, and only the segments holding models changed since are
+ * written. Segment files are never overwritten, so that linked segments are shared by snapshots, and deleting
+ * a snapshot only deletes the segments no other snapshot links to. Where links are not supported, segments
+ * are copied instead.
+ *
+ * A snapshot is restored by loading it, which reads its segments in parallel.
+ *
+ * The store remembers the last snapshot taken or restored, which the changes given to take() are relative to.
+ * It is not thread safe.
+ */
+public class SnapshotStore {
+
+    /**
+     * Number of snapshots kept by default, the oldest ones being deleted.
+     */
+    public static final int DEFAULT_KEPT_SNAPSHOTS = 48;
+
+    private static final String PREFIX = "snapshot-";
+    private static final String EXTENSION = ".crseg";
+    private static final String DATE_PATTERN = "yyyyMMdd-HHmmss-SSS";
+
+    private final File databaseFile;
+    private final File directory;
+    private int keptSnapshots;
+
+    /**
+     * The snapshot the next one is built upon, or null if the next one must be complete.
+     */
+    private Snapshot base;
+
+    /**
+     * The problems the last snapshot taken ran into without failing.
+     */
+    private final List<String> lastProblems = new ArrayList<>();
+
+    /**
+     * Constructor.
+     * @param databaseFile The database file the snapshots belong to
+     */
+    public SnapshotStore(File databaseFile) {
+        this.databaseFile = databaseFile.getAbsoluteFile();
+        this.directory = new File(this.databaseFile.getPath() + ".snapshots");
+        this.keptSnapshots = DEFAULT_KEPT_SNAPSHOTS;
+        this.base = null;
+    }
+
+    /**
+     * Getter
+     * @return The database file the snapshots belong to
+     */
+    public File getDatabaseFile() {
+        return databaseFile;
+    }
+
+    /**
+     * Getter
+     * @return The number of snapshots kept
+     */
+    public int getKeptSnapshots() {
+        return keptSnapshots;
+    }
+
+    /**
+     * Setter
+     * @param keptSnapshots The number of snapshots kept, the oldest ones being deleted when a new one is taken
+     */
+    public void setKeptSnapshots(int keptSnapshots) {
+        this.keptSnapshots = Math.max(1, keptSnapshots);
+    }
+
+    /**
+     * List the snapshots of the database.
+     * @return The snapshots, newest first
+     */
+    public List<Snapshot> list() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return snapshots;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN);
+        for (File f : files) {
+            String name = f.getName();
+            if (!name.startsWith(PREFIX) || !name.endsWith(EXTENSION)) {
+                continue;
+            }
+
+            try {
+                snapshots.add(new Snapshot(f, format.parse(
+                        name.substring(PREFIX.length(), name.length() - EXTENSION.length()))));
+            } catch (ParseException e) {
+                // Not a snapshot.
+            }
+        }
+
+        snapshots.sort(Comparator.comparing(Snapshot::getDate).reversed());
+        return snapshots;
+    }
+
+    /**
+     * Getter
+     * @return The problems the last snapshot taken ran into without failing, e.g. old snapshots which could
+     *         not be deleted, empty if none
+     */
+    public List<String> getLastProblems() {
+        return new ArrayList<>(lastProblems);
+    }
+
+    /**
+     * Take a snapshot of a database, then delete the oldest snapshots past the number kept.
+     * @param model The database
+     * @param changes The models changed since the last snapshot taken or restored by this store,
+     *                ignored if there is none
+     * @return The new snapshot
+     * @throws WritingFailedException if the snapshot could not be written
+     */
+    public Snapshot take(DatabaseModel model, ChangeSet changes) throws WritingFailedException {
+        Snapshot previous = base;
+        // Until this one is written, nothing can be built upon.
+        base = null;
+        lastProblems.clear();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new WritingFailedException("Could not create directory '" + directory.getName() + "'");
+        }
+
+        Snapshot snapshot = newSnapshot();
+        SegmentedDatabase target = new SegmentedDatabase(snapshot.getFile().getPath());
+
+        try {
+            if (previous != null && previous.getFile().exists()) {
+                linkSegments(previous, snapshot);
+                Files.copy(previous.getFile().toPath(), snapshot.getFile().toPath());
+                target.saveChanges(model, changes);
+                target.discardBackup();
+                lastProblems.addAll(target.takeSaveProblems());
+            } else {
+                target.save(model);
+            }
+        } catch (IOException | LoadingFailedException | WritingFailedException e) {
+            delete(snapshot);
+            throw new WritingFailedException("Could not take a snapshot of '" + databaseFile.getName() + "': " +
+                    e.getMessage());
+        }
+
+        base = snapshot;
+        prune();
+
+        return snapshot;
+    }
+
+    /**
+     * Restore a snapshot. The next snapshot will be built upon it.
+     * @param snapshot The snapshot
+     * @return The database, as it was when the snapshot was taken
+     * @throws LoadingFailedException if the snapshot could not be read
+     */
+    public DatabaseModel restore(Snapshot snapshot) throws LoadingFailedException {
+        SegmentedDatabase source = new SegmentedDatabase(snapshot.getFile().getPath());
+        // The snapshot may be deleted while the database is open.
+        source.setLazyContracts(false);
+
+        DatabaseModel model = source.load();
+        base = snapshot;
+
+        return model;
+    }
+
+    /**
+     * Delete the oldest snapshots past the number kept. The snapshot the next one is built upon is kept.
+     */
+    private void prune() {
+        List<Snapshot> snapshots = list();
+        for (int i = keptSnapshots; i < snapshots.size(); i++) {
+            if (!snapshots.get(i).equals(base)) {
+                delete(snapshots.get(i));
+            }
+        }
+    }
+
+    private Snapshot newSnapshot() {
+        SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN);
+        long time = System.currentTimeMillis();
+        File file;
+
+        // Names must be unique, and tell the snapshot date.
+        while ((file = new File(directory, PREFIX + format.format(new Date(time)) + EXTENSION)).exists()) {
+            time++;
+        }
+
+        return new Snapshot(file, new Date(time));
+    }
+
+    /**
+     * Link the segments of a snapshot into the segment directory of another one.
+     */
+    private static void linkSegments(Snapshot source, Snapshot target) throws IOException {
+        File sourceSegments = segmentDirectory(source);
+        File targetSegments = segmentDirectory(target);
+        File[] files = sourceSegments.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        if (!targetSegments.mkdirs()) {
+            throw new IOException("Could not create directory '" + targetSegments.getName() + "'");
+        }
+
+        for (File f : files) {
+            Path link = new File(targetSegments, f.getName()).toPath();
+            try {
+                Files.createLink(link, f.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(f.toPath(), link, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    private void delete(Snapshot snapshot) {
+        File segments = segmentDirectory(snapshot);
+        File[] files = segments.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+
+        for (File f : new File[] { segments, snapshot.getFile(), new File(snapshot.getFile().getPath() + ".bak") }) {
+            if (f.exists() && !f.delete()) {
+                lastProblems.add("Could not delete '" + f.getName() + "'");
+            }
+        }
+    }
+
+    private static File segmentDirectory(Snapshot snapshot) {
+        return new File(snapshot.getFile().getPath() + ".segments");
+    }
+}
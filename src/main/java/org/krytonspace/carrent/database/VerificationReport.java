@@ -0,0 +1,96 @@
+package org.krytonspace.carrent.database;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bean class holding the outcome of the verification of a database file, see BinaryDatabase.verify().
+ */
+public class VerificationReport {
+    private final String fileName;
+    private final boolean checksummed;
+    private final int blockCount;
+    private final List<String> problems;
+    private final long elapsedNanos;
+
+    /**
+     * Constructor.
+     * @param fileName The name of the verified file
+     * @param checksummed false if the file format carries no checksums, in which case nothing was checked
+     * @param blockCount The number of blocks checked
+     * @param problems The descriptions of the corrupt parts of the file
+     * @param elapsedNanos The time spent verifying, in nanoseconds
+     */
+    public VerificationReport(String fileName, boolean checksummed, int blockCount, List<String> problems,
+                              long elapsedNanos) {
+        this.fileName = fileName;
+        this.checksummed = checksummed;
+        this.blockCount = blockCount;
+        this.problems = Collections.unmodifiableList(problems);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Getter
+     * @return The name of the verified file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Getter
+     * @return true if the file carries checksums
+     */
+    public boolean isChecksummed() {
+        return checksummed;
+    }
+
+    /**
+     * Getter
+     * @return The number of blocks checked
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Getter
+     * @return The descriptions of the corrupt parts of the file, empty if it is intact
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Getter
+     * @return The verification duration, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Tell if the file is intact, as far as its checksums tell.
+     * @return true if no problem was found
+     */
+    public boolean isValid() {
+        return problems.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (!problems.isEmpty()) {
+            StringBuilder sb = new StringBuilder(String.format("'%s': CORRUPT", fileName));
+            for (String problem : problems) {
+                sb.append(System.lineSeparator()).append("    ").append(problem);
+            }
+            return sb.toString();
+        }
+        if (!checksummed) {
+            return String.format("'%s': no checksums to verify, save it again to add them", fileName);
+        }
+
+        return String.format("'%s': OK, %d blocks in %.1f ms", fileName, blockCount, elapsedNanos / 1e6);
+    }
+}
@@ -1,54 +1,288 @@
 package org.krytonspace.carrent.database;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.deser.FromXmlParser;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
 import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.database.json.JsonCodecs;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
 import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.VehicleModel;
+import org.krytonspace.carrent.utils.EpochDays;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Class implementing database reading/writing with XML.
+ *
+ * The document is walked with StAX: only the model currently being
+ * read or written is ever bound to objects, the rest of the document
+ * stays on disk. The layout is the one XmlMapper uses for the whole
+ * database, i.e. each section is a wrapper element holding one element per model:
+ *
+ * {@code <database><clients><clients>...</clients></clients><vehicles>...</vehicles>...</database>}
+ *
+ * Element names inside a section are not checked when reading.
  */
 public class XmlDatabase extends FileDatabase {
 
-    private final XmlMapper xmlMapper;
+    private static final String ROOT = "database";
+
+    private static final XmlMapper XML_MAPPER = createMapper();
+
+    /**
+     * Readers binding a single list element to a model.
+     */
+    private static final ObjectReader CLIENT_READER = XML_MAPPER.readerFor(ClientModel.class);
+    private static final ObjectReader VEHICLE_READER = XML_MAPPER.readerFor(VehicleModel.class);
+    private static final ObjectReader CONTRACT_READER = XML_MAPPER.readerFor(ContractModel.class);
+
+    /**
+     * Writers serializing a single model as a list element.
+     */
+    private static final ObjectWriter CLIENT_WRITER = XML_MAPPER.writerFor(ClientModel.class);
+    private static final ObjectWriter VEHICLE_WRITER = XML_MAPPER.writerFor(VehicleModel.class);
+    private static final ObjectWriter CONTRACT_WRITER = XML_MAPPER.writerFor(ContractModel.class);
 
     public XmlDatabase(String jsonFileName) {
         super(jsonFileName);
-        xmlMapper = new XmlMapper();
+    }
+
+    /**
+     * Create the mapper shared by every handler. Mappers are thread safe once configured.
+     */
+    private static XmlMapper createMapper() {
+        XmlMapper xmlMapper = new XmlMapper();
 
         // Small fix: parse empty XML list tags as empty lists, not 'null'.
         xmlMapper.configOverride(List.class)
                 .setSetterInfo(JsonSetter.Value.forValueNulls(Nulls.AS_EMPTY));
+        // Models are written one by one into the same generator: let the buffers decide when to flush.
+        xmlMapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        // The file handler owns the underlying stream.
+        xmlMapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Every date of the models is a day: write it as the JSON codecs do, whatever the time zone.
+        xmlMapper.registerModule(new SimpleModule()
+                .addSerializer(Date.class, new DaySerializer(null))
+                .addDeserializer(Date.class, new DayDeserializer(null)));
+
+        return xmlMapper;
+    }
+
+    /**
+     * Writes a date of a model as a day, see JsonCodecs.writeEpochDay(): the timestamp of the start of the day in the
+     * system time zone, or the day in the pattern of the property.
+     */
+    static final class DaySerializer extends StdSerializer<Date> implements ContextualSerializer {
+        private final DateTimeFormatter format;
+
+        DaySerializer(DateTimeFormatter format) {
+            super(Date.class);
+            this.format = format;
+        }
+
+        @Override
+        public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) {
+            JsonFormat.Value value = findFormatOverrides(provider, property, Date.class);
+            return value != null && value.hasPattern() ?
+                    new DaySerializer(JsonCodecs.dateFormat(value.getPattern())) : this;
+        }
+
+        @Override
+        public void serialize(Date value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            JsonCodecs.writeEpochDay(generator, EpochDays.fromDate(value), format);
+        }
+    }
+
+    /**
+     * Reads a date of a model as a day, see JsonCodecs.readEpochDay().
+     */
+    static final class DayDeserializer extends StdScalarDeserializer<Date> implements ContextualDeserializer {
+        private final DateTimeFormatter format;
+
+        DayDeserializer(DateTimeFormatter format) {
+            super(Date.class);
+            this.format = format;
+        }
+
+        @Override
+        public JsonDeserializer<?> createContextual(DeserializationContext context, BeanProperty property) {
+            JsonFormat.Value value = findFormatOverrides(context, property, Date.class);
+            return value != null && value.hasPattern() ?
+                    new DayDeserializer(JsonCodecs.dateFormat(value.getPattern())) : this;
+        }
+
+        @Override
+        public Date deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return EpochDays.toDate(JsonCodecs.readEpochDay(parser, format));
+        }
     }
 
     @Override
-    protected DatabaseModel parse(String raw) throws LoadingFailedException {
-        DatabaseModel model;
+    protected DatabaseModel parse(InputStream in) throws IOException, LoadingFailedException {
+        DatabaseModel model = new DatabaseModel();
+        XmlFactory factory = XML_MAPPER.getFactory();
+        XMLStreamReader reader = null;
 
         try {
-            model = xmlMapper.readValue(raw, DatabaseModel.class);
+            reader = factory.getXMLInputFactory().createXMLStreamReader(in);
+
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals(ROOT)) {
+                throw new LoadingFailedException("Could not parse model as XML: the root element must be <" +
+                        ROOT + ">");
+            }
+
+            // Walk each section wrapper.
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                String section = reader.getLocalName();
+
+                switch (section) {
+                    case "clients":
+                        readList(reader, CLIENT_READER, model::registerClient);
+                        break;
+                    case "vehicles":
+                        readList(reader, VEHICLE_READER, model::registerVehicle);
+                        break;
+                    case "contracts":
+                        readList(reader, CONTRACT_READER, model::registerContract);
+                        break;
+                    default:
+                        throw new LoadingFailedException("Could not parse model as XML: unknown section <" +
+                                section + ">");
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new LoadingFailedException("Could not parse model as XML: " + e.getMessage());
         } catch (JsonProcessingException e) {
-            throw new LoadingFailedException("Could not parse model as JSON: " + e.getMessage());
+            throw new LoadingFailedException("Could not parse model as XML: " + e.getMessage());
+        } finally {
+            closeQuietly(reader);
         }
 
         return model;
     }
 
     @Override
-    protected String dump(DatabaseModel model) throws WritingFailedException {
-        String raw;
+    protected void write(DatabaseModel model, OutputStream out) throws IOException, WritingFailedException {
+        XmlFactory factory = XML_MAPPER.getFactory();
+        XMLStreamWriter writer = null;
 
         try {
-            raw = xmlMapper.writeValueAsString(model);
+            writer = factory.getXMLOutputFactory().createXMLStreamWriter(out, "UTF-8");
+
+            // Models are serialized one at a time into a generator over the StAX writer.
+            try (ToXmlGenerator generator = factory.createGenerator(writer)) {
+                generator.setNextName(new QName(ROOT));
+                generator.writeStartObject();
+                writeList(generator, "clients", model.getRegisteredClients(), CLIENT_WRITER);
+                writeList(generator, "vehicles", model.getRegisteredVehicles(), VEHICLE_WRITER);
+                writeList(generator, "contracts", model.getRegisteredContracts(), CONTRACT_WRITER);
+                generator.writeEndObject();
+            }
+
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new WritingFailedException("Could not dump model as XML: " + e.getMessage());
         } catch (JsonProcessingException e) {
-            throw new WritingFailedException("Could not dump model as JSON: " + e.getMessage());
+            throw new WritingFailedException("Could not dump model as XML: " + e.getMessage());
+        } finally {
+            closeQuietly(writer);
         }
+    }
 
-        return raw;
+    /**
+     * Bind each element of the section the reader is positioned on.
+     * On return, the reader is positioned on the section end tag.
+     * @param reader The reader, positioned on the section start tag
+     * @param binder The reader to bind elements with
+     * @param sink The action to run on each bound element
+     * @param <T> The element type
+     * @throws IOException if an element could not be bound
+     * @throws XMLStreamException if the document is malformed
+     */
+    private static <T> void readList(XMLStreamReader reader, ObjectReader binder, Consumer<T> sink)
+            throws IOException, XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            // The parser stops on the element end tag, leaving the rest of the section to us.
+            FromXmlParser parser = XML_MAPPER.getFactory().createParser(reader);
+            sink.accept(binder.readValue(parser));
+        }
+    }
+
+    /**
+     * Write a list of models inside a wrapper element, one element at a time.
+     * Elements are named after their wrapper, like XmlMapper does for wrapped lists.
+     * @param generator The generator to write to
+     * @param name The wrapper and element name
+     * @param models The models to write
+     * @param binder The writer to serialize each model with
+     * @throws IOException if a model could not be written
+     */
+    private static void writeList(ToXmlGenerator generator, String name, List<?> models, ObjectWriter binder)
+            throws IOException {
+        QName qName = new QName(name);
+
+        generator.writeFieldName(name);
+        generator.startWrappedValue(qName, qName);
+        generator.writeStartArray();
+        for (Object m : models) {
+            binder.writeValue(generator, m);
+        }
+        generator.writeEndArray();
+        generator.finishWrappedValue(qName, qName);
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void closeQuietly(XMLStreamWriter writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (XMLStreamException e) {
+                e.printStackTrace();
+            }
+        }
     }
-}
\ No newline at end of file
+}
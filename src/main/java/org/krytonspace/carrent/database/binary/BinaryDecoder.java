@@ -0,0 +1,145 @@
+package org.krytonspace.carrent.database.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Buffered reader of the primitive values written by a BinaryEncoder.
+ */
+public class BinaryDecoder {
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Constructor.
+     * @param in The stream to read from
+     * @param bufferSize The size of the internal buffer
+     */
+    public BinaryDecoder(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Read a single byte.
+     * @return The byte read, between 0 and 255
+     * @throws IOException if the stream could not be read, or ended
+     */
+    public int readByte() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Read exactly the requested number of bytes.
+     * @param bytes The array to fill
+     * @param offset The offset of the first byte to fill
+     * @param length The number of bytes to read
+     * @throws IOException if the stream could not be read, or ended
+     */
+    public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == limit) {
+                fill();
+            }
+            int n = Math.min(length, limit - position);
+            System.arraycopy(buffer, position, bytes, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Read an unsigned variable length integer.
+     * @return The value read
+     * @throws IOException if the stream could not be read, ended, or holds a malformed value
+     */
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Read a signed variable length integer.
+     * @return The value read
+     * @throws IOException if the stream could not be read, ended, or holds a malformed value
+     */
+    public int readSignedVarInt() throws IOException {
+        int raw = readVarInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Read an unsigned variable length long.
+     * @return The value read
+     * @throws IOException if the stream could not be read, ended, or holds a malformed value
+     */
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length long");
+    }
+
+    /**
+     * Read a string written by BinaryEncoder.writeString().
+     * @return The string read
+     * @throws IOException if the stream could not be read, or ended
+     */
+    public String readString() throws IOException {
+        int length = readVarInt();
+        if (length < 0) {
+            throw new IOException("Malformed string length");
+        }
+        if (length <= limit - position) {
+            // Fast path: decode straight from the buffer.
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        // Grown while read, so that a corrupt length fails at the end of the stream instead of being allocated.
+        byte[] bytes = new byte[Math.min(length, buffer.length)];
+        int read = 0;
+        while (read < length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            readBytes(bytes, read, bytes.length - read);
+            read = bytes.length;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            throw new EOFException("Unexpected end of file");
+        }
+        position = 0;
+        limit = n;
+    }
+}
@@ -0,0 +1,130 @@
+package org.krytonspace.carrent.database.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered writer of the primitive values making up a binary database:
+ * single bytes, variable length integers and length-prefixed UTF-8 strings.
+ *
+ * Unsigned varints use 7 bits per byte, least significant group first,
+ * the high bit of each byte telling if another byte follows.
+ * Signed values are zigzag encoded first, so that small negative numbers stay short.
+ */
+public class BinaryEncoder {
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    /**
+     * Constructor.
+     * @param out The stream to write to
+     * @param bufferSize The size of the internal buffer
+     */
+    public BinaryEncoder(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.position = 0;
+    }
+
+    /**
+     * Write a single byte.
+     * @param b The byte to write
+     * @throws IOException if the underlying stream could not be written
+     */
+    public void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    /**
+     * Write raw bytes.
+     * @param bytes The bytes to write
+     * @param offset The offset of the first byte to write
+     * @param length The number of bytes to write
+     * @throws IOException if the underlying stream could not be written
+     */
+    public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    /**
+     * Write an unsigned variable length integer.
+     * @param value The value to write, interpreted as unsigned
+     * @throws IOException if the underlying stream could not be written
+     */
+    public void writeVarInt(int value) throws IOException {
+        if (buffer.length - position < 5) {
+            flushBuffer();
+        }
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Write a signed variable length integer.
+     * @param value The value to write
+     * @throws IOException if the underlying stream could not be written
+     */
+    public void writeSignedVarInt(int value) throws IOException {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Write an unsigned variable length long.
+     * @param value The value to write, interpreted as unsigned
+     * @throws IOException if the underlying stream could not be written
+     */
+    public void writeVarLong(long value) throws IOException {
+        if (buffer.length - position < 10) {
+            flushBuffer();
+        }
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Write a string as its UTF-8 byte count followed by its bytes.
+     * @param value The string to write, must not be null
+     * @throws IOException if the underlying stream could not be written
+     */
+    public void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Push all buffered bytes to the underlying stream, and flush it.
+     * @throws IOException if the underlying stream could not be written
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.krytonspace.carrent.database.binary;
+
+import org.krytonspace.carrent.models.*;
+import org.krytonspace.carrent.utils.EpochDays;
+
+import java.io.IOException;
+
+/**
+ * Reader of models written by a BinaryModelWriter.
+ */
+public class BinaryModelReader {
+
+    private static final VehicleModel.Condition[] CONDITIONS = VehicleModel.Condition.values();
+
+    private final BinaryDecoder decoder;
+    private final String[] strings;
+    private int maxReference;
+
+    /**
+     * Constructor.
+     * @param decoder The decoder to read records from
+     * @param strings The string table the records refer to, as read by StringDictionary.read()
+     */
+    public BinaryModelReader(BinaryDecoder decoder, String[] strings) {
+        this.decoder = decoder;
+        this.strings = strings;
+        this.maxReference = -1;
+    }
+
+    /**
+     * Getter
+     * @return The highest string reference read so far, or -1 if no string has been read
+     */
+    public int getMaxReference() {
+        return maxReference;
+    }
+
+    /**
+     * Read a client record.
+     * @return The client
+     * @throws IOException if the record could not be read
+     */
+    public ClientModel readClient() throws IOException {
+        ClientModel c = new ClientModel();
+
+        c.setId(readString());
+        c.setLastName(readString());
+        c.setFirstName(readString());
+        c.setBirthDateEpochDay(readEpochDay());
+        c.setAddress(readString());
+        c.setPostalCode(readString());
+        c.setCity(readString());
+        c.setLicenses(readString());
+        c.setEmailAddress(readString());
+        c.setPhoneNumber(readString());
+
+        return c;
+    }
+
+    /**
+     * Read a vehicle record.
+     * @return The vehicle, of the type its tag denotes
+     * @throws IOException if the record could not be read
+     */
+    public VehicleModel readVehicle() throws IOException {
+        int tag = decoder.readByte();
+        VehicleModel v;
+
+        switch (tag) {
+            case BinaryModelWriter.TAG_CAR:
+                v = new CarModel();
+                break;
+            case BinaryModelWriter.TAG_BIKE:
+                v = new BikeModel();
+                break;
+            case BinaryModelWriter.TAG_PLANE:
+                v = new PlaneModel();
+                break;
+            default:
+                throw new IOException("Unknown vehicle type tag: " + tag);
+        }
+
+        v.setId(readString());
+        v.setBrand(readString());
+        v.setModel(readString());
+        v.setCondition(readCondition());
+        v.setRentPricePerDay(decoder.readSignedVarInt());
+        v.setMaxSpeed(decoder.readSignedVarInt());
+
+        if (v instanceof CarModel) {
+            CarModel car = (CarModel) v;
+            car.setMileage(decoder.readSignedVarInt());
+            car.setPower(decoder.readSignedVarInt());
+            car.setSeatCount(decoder.readSignedVarInt());
+        } else if (v instanceof BikeModel) {
+            BikeModel bike = (BikeModel) v;
+            bike.setMileage(decoder.readSignedVarInt());
+            bike.setPower(decoder.readSignedVarInt());
+        } else {
+            PlaneModel plane = (PlaneModel) v;
+            plane.setHoursFlown(decoder.readSignedVarInt());
+            plane.setEngineCount(decoder.readSignedVarInt());
+        }
+
+        return v;
+    }
+
+    /**
+     * Read a contract record.
+     * @return The contract
+     * @throws IOException if the record could not be read
+     */
+    public ContractModel readContract() throws IOException {
+        ContractModel c = new ContractModel();
+
+        c.setId(readString());
+        c.setClientId(readString());
+        c.setVehicleId(readString());
+        c.setBeginEpochDay(readEpochDay());
+        c.setEndEpochDay(readEpochDay());
+        c.setPlannedMileage(decoder.readSignedVarInt());
+        c.setPlannedPrice(decoder.readSignedVarInt());
+
+        return c;
+    }
+
+    private String readString() throws IOException {
+        int reference = decoder.readVarInt();
+        if (reference < 0 || reference >= strings.length) {
+            throw new IOException("Invalid string reference: " + reference);
+        }
+        maxReference = Math.max(maxReference, reference);
+
+        return strings[reference];
+    }
+
+    private int readEpochDay() throws IOException {
+        int raw = decoder.readVarInt();
+        if (raw == 0) {
+            return EpochDays.NONE;
+        }
+
+        raw -= 1;
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    private VehicleModel.Condition readCondition() throws IOException {
+        int raw = decoder.readVarInt();
+        if (raw == 0) {
+            return null;
+        }
+        if (raw > CONDITIONS.length) {
+            throw new IOException("Invalid vehicle condition: " + raw);
+        }
+
+        return CONDITIONS[raw - 1];
+    }
+}
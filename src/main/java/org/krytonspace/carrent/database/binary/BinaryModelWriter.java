@@ -0,0 +1,178 @@
+package org.krytonspace.carrent.database.binary;
+
+import org.krytonspace.carrent.models.*;
+import org.krytonspace.carrent.utils.EpochDays;
+
+import java.io.IOException;
+
+/**
+ * Writer of models in the binary record format.
+ *
+ * Every string is written as a reference into a StringDictionary, dates as day counts,
+ * numbers as variable length integers. Vehicles start with a type tag telling which
+ * subclass follows.
+ */
+public class BinaryModelWriter {
+
+    public static final int TAG_CAR = 1;
+    public static final int TAG_BIKE = 2;
+    public static final int TAG_PLANE = 3;
+
+    private final BinaryEncoder encoder;
+    private final StringDictionary dictionary;
+
+    /**
+     * Constructor.
+     * @param encoder The encoder to write records to
+     * @param dictionary A dictionary holding every string of the written models
+     */
+    public BinaryModelWriter(BinaryEncoder encoder, StringDictionary dictionary) {
+        this.encoder = encoder;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Build a dictionary holding every string of a database.
+     * @param model The database to inspect
+     * @return The dictionary
+     */
+    public static StringDictionary buildDictionary(DatabaseModel model) {
+        StringDictionary dictionary = new StringDictionary();
+
+        for (ClientModel c : model.getRegisteredClients()) {
+            addStrings(dictionary, c);
+        }
+        for (VehicleModel v : model.getRegisteredVehicles()) {
+            addStrings(dictionary, v);
+        }
+        for (ContractModel c : model.getRegisteredContracts()) {
+            addStrings(dictionary, c);
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Add every string of a client to a dictionary.
+     * @param dictionary The dictionary to fill
+     * @param c The client
+     */
+    public static void addStrings(StringDictionary dictionary, ClientModel c) {
+        dictionary.add(c.getId());
+        dictionary.add(c.getLastName());
+        dictionary.add(c.getFirstName());
+        dictionary.add(c.getAddress());
+        dictionary.add(c.getPostalCode());
+        dictionary.add(c.getCity());
+        dictionary.add(c.getLicenses());
+        dictionary.add(c.getEmailAddress());
+        dictionary.add(c.getPhoneNumber());
+    }
+
+    /**
+     * Add every string of a vehicle to a dictionary.
+     * @param dictionary The dictionary to fill
+     * @param v The vehicle
+     */
+    public static void addStrings(StringDictionary dictionary, VehicleModel v) {
+        dictionary.add(v.getId());
+        dictionary.add(v.getBrand());
+        dictionary.add(v.getModel());
+    }
+
+    /**
+     * Add every string of a contract to a dictionary.
+     * @param dictionary The dictionary to fill
+     * @param c The contract
+     */
+    public static void addStrings(StringDictionary dictionary, ContractModel c) {
+        dictionary.add(c.getId());
+        dictionary.add(c.getClientId());
+        dictionary.add(c.getVehicleId());
+    }
+
+    /**
+     * Write a client record.
+     * @param c The client to write
+     * @throws IOException if the record could not be written
+     */
+    public void writeClient(ClientModel c) throws IOException {
+        writeString(c.getId());
+        writeString(c.getLastName());
+        writeString(c.getFirstName());
+        writeEpochDay(c.getBirthDateEpochDay());
+        writeString(c.getAddress());
+        writeString(c.getPostalCode());
+        writeString(c.getCity());
+        writeString(c.getLicenses());
+        writeString(c.getEmailAddress());
+        writeString(c.getPhoneNumber());
+    }
+
+    /**
+     * Write a vehicle record, starting with its type tag.
+     * @param v The vehicle to write
+     * @throws IOException if the record could not be written
+     */
+    public void writeVehicle(VehicleModel v) throws IOException {
+        if (v instanceof CarModel) {
+            encoder.writeByte(TAG_CAR);
+        } else if (v instanceof BikeModel) {
+            encoder.writeByte(TAG_BIKE);
+        } else if (v instanceof PlaneModel) {
+            encoder.writeByte(TAG_PLANE);
+        } else {
+            throw new IOException("Unsupported vehicle type: " + v.getClass().getSimpleName());
+        }
+
+        writeString(v.getId());
+        writeString(v.getBrand());
+        writeString(v.getModel());
+        encoder.writeVarInt(v.getCondition() == null ? 0 : v.getCondition().ordinal() + 1);
+        encoder.writeSignedVarInt(v.getRentPricePerDay());
+        encoder.writeSignedVarInt(v.getMaxSpeed());
+
+        if (v instanceof CarModel) {
+            CarModel car = (CarModel) v;
+            encoder.writeSignedVarInt(car.getMileage());
+            encoder.writeSignedVarInt(car.getPower());
+            encoder.writeSignedVarInt(car.getSeatCount());
+        } else if (v instanceof BikeModel) {
+            BikeModel bike = (BikeModel) v;
+            encoder.writeSignedVarInt(bike.getMileage());
+            encoder.writeSignedVarInt(bike.getPower());
+        } else {
+            PlaneModel plane = (PlaneModel) v;
+            encoder.writeSignedVarInt(plane.getHoursFlown());
+            encoder.writeSignedVarInt(plane.getEngineCount());
+        }
+    }
+
+    /**
+     * Write a contract record.
+     * @param c The contract to write
+     * @throws IOException if the record could not be written
+     */
+    public void writeContract(ContractModel c) throws IOException {
+        writeString(c.getId());
+        writeString(c.getClientId());
+        writeString(c.getVehicleId());
+        writeEpochDay(c.getBeginEpochDay());
+        writeEpochDay(c.getEndEpochDay());
+        encoder.writeSignedVarInt(c.getPlannedMileage());
+        encoder.writeSignedVarInt(c.getPlannedPrice());
+    }
+
+    private void writeString(String value) throws IOException {
+        encoder.writeVarInt(dictionary.referenceOf(value));
+    }
+
+    private void writeEpochDay(int day) throws IOException {
+        // 0 denotes a missing date, anything else is a zigzag encoded day count plus one.
+        if (day == EpochDays.NONE) {
+            encoder.writeVarInt(0);
+        } else {
+            encoder.writeVarInt(((day << 1) ^ (day >> 31)) + 1);
+        }
+    }
+}
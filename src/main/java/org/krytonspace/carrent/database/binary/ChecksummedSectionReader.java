@@ -0,0 +1,199 @@
+package org.krytonspace.carrent.database.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.Checksum;
+
+/**
+ * Reader of the sections written by a ChecksummedSectionWriter.
+ *
+ * Headers and trailers are checked as they are read, since the blocks can not be found without them.
+ * Blocks are returned without checking their payload, which is left to the caller: blocks can then be
+ * checked on other threads while the next ones are read, and a corrupt block can be told apart
+ * from the others instead of failing the whole section.
+ */
+public final class ChecksummedSectionReader {
+
+    /**
+     * Size of a block header, in bytes.
+     */
+    static final int BLOCK_HEADER_SIZE = 16;
+
+    private final BinaryDecoder in;
+    private final Checksum checksum = Crc32c.create();
+    private final Checksum sectionChecksum = Crc32c.create();
+    private final byte[] header = new byte[BLOCK_HEADER_SIZE];
+
+    private String section;
+    private int blockCount;
+    private int remaining;
+
+    /**
+     * Constructor.
+     * @param in The decoder to read sections from
+     */
+    public ChecksummedSectionReader(BinaryDecoder in) {
+        this.in = in;
+    }
+
+    /**
+     * Start reading a section.
+     * @param name The section name, for error messages
+     * @return The number of records of the section
+     * @throws IOException if the section header could not be read, or is corrupt
+     */
+    public int beginSection(String name) throws IOException {
+        if (remaining != 0) {
+            throw new IllegalStateException("The previous section is not complete");
+        }
+
+        in.readBytes(header, 0, 8);
+        int recordCount = getInt(header, 0);
+        if (Crc32c.compute(checksum, header, 0, 4) != getInt(header, 4) || recordCount < 0) {
+            throw new IOException("Corrupt header of the " + name + " section");
+        }
+
+        sectionChecksum.reset();
+        sectionChecksum.update(header, 0, 4);
+        section = name;
+        blockCount = 0;
+        remaining = recordCount;
+
+        return recordCount;
+    }
+
+    /**
+     * Read the next block of the current section.
+     * @return The block, whose payload is not checked yet, or null once every record of the section has been read
+     * @throws IOException if the block could not be read, or its header is corrupt
+     */
+    public Block nextBlock() throws IOException {
+        if (remaining == 0) {
+            return null;
+        }
+
+        in.readBytes(header, 0, BLOCK_HEADER_SIZE);
+        int recordCount = getInt(header, 0);
+        int length = getInt(header, 4);
+        if (Crc32c.compute(checksum, header, 0, 12) != getInt(header, 12) ||
+                recordCount <= 0 || recordCount > remaining || length < 0) {
+            throw new IOException("Corrupt header of block " + blockCount + " of the " + section + " section");
+        }
+
+        byte[] payload = new byte[length];
+        in.readBytes(payload, 0, length);
+        sectionChecksum.update(header, 0, BLOCK_HEADER_SIZE);
+        remaining -= recordCount;
+
+        return new Block(section, blockCount++, recordCount, payload, getInt(header, 8));
+    }
+
+    /**
+     * End reading the current section, once every block has been read.
+     * @return true if the section trailer matches the blocks read, false if it is corrupt or blocks are missing
+     * @throws IOException if the trailer could not be read
+     */
+    public boolean endSection() throws IOException {
+        if (remaining != 0) {
+            throw new IllegalStateException(remaining + " records of the section have not been read");
+        }
+
+        in.readBytes(header, 0, 8);
+        putInt(header, 8, blockCount);
+        sectionChecksum.update(header, 8, 4);
+
+        return getInt(header, 0) == blockCount && getInt(header, 4) == (int) sectionChecksum.getValue();
+    }
+
+    static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 |
+                (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * A block of records, as read from the file.
+     */
+    public static final class Block {
+        private final String section;
+        private final int index;
+        private final int recordCount;
+        private final byte[] payload;
+        private final int checksum;
+
+        private Block(String section, int index, int recordCount, byte[] payload, int checksum) {
+            this.section = section;
+            this.index = index;
+            this.recordCount = recordCount;
+            this.payload = payload;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Check the payload against its checksum. Can be called from any thread.
+         * @return true if the payload is intact
+         */
+        public boolean isValid() {
+            return Crc32c.compute(Crc32c.create(), payload, 0, payload.length) == checksum;
+        }
+
+        /**
+         * Create a decoder of the records of the block.
+         * @return A decoder over the payload
+         */
+        public BinaryDecoder openRecords() {
+            return new BinaryDecoder(new ByteArrayInputStream(payload), payload.length);
+        }
+
+        /**
+         * Getter
+         * @return The name of the section of the block
+         */
+        public String getSection() {
+            return section;
+        }
+
+        /**
+         * Getter
+         * @return The position of the block in its section
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Getter
+         * @return The number of records of the block
+         */
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Getter
+         * @return The size of the payload, in bytes
+         */
+        public int getLength() {
+            return payload.length;
+        }
+
+        /**
+         * Getter
+         * @return The checksum of the payload, as written in the block header
+         */
+        public int getChecksum() {
+            return checksum;
+        }
+
+        @Override
+        public String toString() {
+            return "block " + index + " of the " + section + " section (" + recordCount + " records)";
+        }
+    }
+}
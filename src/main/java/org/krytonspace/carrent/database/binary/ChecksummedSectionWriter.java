@@ -0,0 +1,170 @@
+package org.krytonspace.carrent.database.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * Writer of sections of records cut into checksummed blocks, read back by a ChecksummedSectionReader.
+ *
+ * Layout of a section:
+ * <ul>
+ *     <li>a header: the record count and a CRC-32C of it</li>
+ *     <li>blocks, each one a header (its record count, its payload length, a CRC-32C of its payload
+ *     and a CRC-32C of these three values) followed by its payload, the records</li>
+ *     <li>a trailer: the block count and the section checksum, a CRC-32C of the section header,
+ *     of every block header and of the block count</li>
+ * </ul>
+ * Integers of the headers and trailers are written on 4 bytes, big endian.
+ *
+ * A record never spans two blocks: a block is written once its records reach the block size.
+ */
+public final class ChecksummedSectionWriter {
+
+    private final BinaryEncoder out;
+    private final int blockSize;
+    private final BlockBuffer block;
+    private final BinaryEncoder records;
+
+    private final Checksum checksum = Crc32c.create();
+    private final Checksum sectionChecksum = Crc32c.create();
+    private final byte[] header = new byte[ChecksummedSectionReader.BLOCK_HEADER_SIZE];
+
+    private int blockRecords;
+    private int blockCount;
+    private int remaining;
+
+    /**
+     * Constructor.
+     * @param out The encoder to write sections to
+     * @param blockSize The size blocks are cut at, in bytes: a block holds whole records, so it can be larger
+     */
+    public ChecksummedSectionWriter(BinaryEncoder out, int blockSize) {
+        this.out = out;
+        this.blockSize = blockSize;
+        this.block = new BlockBuffer(blockSize + blockSize / 4);
+        this.records = new BinaryEncoder(block, 4096);
+    }
+
+    /**
+     * Getter
+     * @return The encoder to write the records of the current section to
+     */
+    public BinaryEncoder getRecords() {
+        return records;
+    }
+
+    /**
+     * Start a section.
+     * @param recordCount The number of records of the section
+     * @throws IOException if the section header could not be written
+     */
+    public void beginSection(int recordCount) throws IOException {
+        if (remaining != 0) {
+            throw new IllegalStateException("The previous section is not complete");
+        }
+
+        ChecksummedSectionReader.putInt(header, 0, recordCount);
+        ChecksummedSectionReader.putInt(header, 4, Crc32c.compute(checksum, header, 0, 4));
+        out.writeBytes(header, 0, 8);
+
+        sectionChecksum.reset();
+        sectionChecksum.update(header, 0, 4);
+        blockCount = 0;
+        remaining = recordCount;
+    }
+
+    /**
+     * Mark the end of a record written to getRecords(), writing its block once full.
+     * @throws IOException if the block could not be written
+     */
+    public void endRecord() throws IOException {
+        if (remaining == 0) {
+            throw new IllegalStateException("More records than announced");
+        }
+        remaining--;
+        blockRecords++;
+
+        records.flush();
+        if (block.size() >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * End the current section, writing its last block and its trailer.
+     * @throws IOException if the section could not be written
+     */
+    public void endSection() throws IOException {
+        if (remaining != 0) {
+            throw new IllegalStateException(remaining + " records of the section are missing");
+        }
+        if (blockRecords > 0) {
+            writeBlock();
+        }
+
+        ChecksummedSectionReader.putInt(header, 0, blockCount);
+        sectionChecksum.update(header, 0, 4);
+        ChecksummedSectionReader.putInt(header, 4, (int) sectionChecksum.getValue());
+        out.writeBytes(header, 0, 8);
+    }
+
+    private void writeBlock() throws IOException {
+        ChecksummedSectionReader.putInt(header, 0, blockRecords);
+        ChecksummedSectionReader.putInt(header, 4, block.size());
+        ChecksummedSectionReader.putInt(header, 8, Crc32c.compute(checksum, block.bytes(), 0, block.size()));
+        ChecksummedSectionReader.putInt(header, 12, Crc32c.compute(checksum, header, 0, 12));
+
+        out.writeBytes(header, 0, header.length);
+        out.writeBytes(block.bytes(), 0, block.size());
+        sectionChecksum.update(header, 0, header.length);
+
+        blockCount++;
+        blockRecords = 0;
+        block.clear();
+    }
+
+    /**
+     * Growable buffer of the records of a block, exposing its bytes without copying them.
+     */
+    private static final class BlockBuffer extends OutputStream {
+        private byte[] bytes;
+        private int size;
+
+        private BlockBuffer(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(size + len);
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        private byte[] bytes() {
+            return bytes;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+    }
+}
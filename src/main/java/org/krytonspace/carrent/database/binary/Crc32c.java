@@ -0,0 +1,122 @@
+package org.krytonspace.carrent.database.binary;
+
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum, as used by the checksummed blocks of binary databases.
+ *
+ * The JDK only provides it from Java 9 on, as java.util.zip.CRC32C, where it is computed with
+ * dedicated CPU instructions: create() returns it when available, and this table driven
+ * implementation otherwise, so that files written on one JVM can be checked on any other.
+ */
+public final class Crc32c implements Checksum {
+
+    /**
+     * The reversed Castagnoli polynomial.
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * Tables for the slicing-by-8 algorithm: TABLE[k][b] is the CRC of byte b followed by k zero bytes.
+     */
+    private static final int[][] TABLE = createTable();
+
+    private static final Constructor<? extends Checksum> JDK_CRC32C = findJdkImplementation();
+
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * Create a CRC-32C checksum, the fastest one available.
+     * @return A new checksum
+     */
+    public static Checksum create() {
+        if (JDK_CRC32C != null) {
+            try {
+                return JDK_CRC32C.newInstance();
+            } catch (ReflectiveOperationException e) {
+                // Fall back to the table driven implementation.
+            }
+        }
+
+        return new Crc32c();
+    }
+
+    /**
+     * Compute the CRC-32C of bytes at once.
+     * @param checksum A checksum, as returned by create(), which is reset first
+     * @param bytes The bytes
+     * @param offset The offset of the first byte
+     * @param length The number of bytes
+     * @return The checksum value
+     */
+    public static int compute(Checksum checksum, byte[] bytes, int offset, int length) {
+        checksum.reset();
+        checksum.update(bytes, offset, length);
+        return (int) checksum.getValue();
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[0][(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int c = crc;
+        int end = off + len;
+
+        while (end - off >= 8) {
+            c ^= (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+            c = TABLE[7][c & 0xFF] ^ TABLE[6][(c >>> 8) & 0xFF] ^ TABLE[5][(c >>> 16) & 0xFF] ^ TABLE[4][c >>> 24]
+                    ^ TABLE[3][b[off + 4] & 0xFF] ^ TABLE[2][b[off + 5] & 0xFF]
+                    ^ TABLE[1][b[off + 6] & 0xFF] ^ TABLE[0][b[off + 7] & 0xFF];
+            off += 8;
+        }
+        while (off < end) {
+            c = (c >>> 8) ^ TABLE[0][(c ^ b[off++]) & 0xFF];
+        }
+
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    private static int[][] createTable() {
+        int[][] table = new int[8][256];
+
+        for (int b = 0; b < 256; b++) {
+            int c = b;
+            for (int i = 0; i < 8; i++) {
+                c = (c & 1) != 0 ? (c >>> 1) ^ POLYNOMIAL : c >>> 1;
+            }
+            table[0][b] = c;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int b = 0; b < 256; b++) {
+                int c = table[k - 1][b];
+                table[k][b] = (c >>> 8) ^ table[0][c & 0xFF];
+            }
+        }
+
+        return table;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Constructor<? extends Checksum> findJdkImplementation() {
+        try {
+            return (Constructor<? extends Checksum>) Class.forName("java.util.zip.CRC32C").getConstructor();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Java 8
+            return null;
+        }
+    }
+}
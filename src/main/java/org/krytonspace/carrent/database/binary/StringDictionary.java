@@ -0,0 +1,89 @@
+package org.krytonspace.carrent.database.binary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the distinct strings of a binary database.
+ * Models reference strings by their index in this table, so that each distinct
+ * value (city, brand, client ID used by contracts...) is stored once per file.
+ *
+ * Reference 0 denotes a null string, reference n the (n - 1)-th string of the table.
+ */
+public class StringDictionary {
+
+    private final Map<String, Integer> references = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Add a string to the dictionary, if not already present.
+     * @param value The string to add, ignored if null
+     */
+    public void add(String value) {
+        if (value != null && !references.containsKey(value)) {
+            strings.add(value);
+            references.put(value, strings.size());
+        }
+    }
+
+    /**
+     * Get the reference of a string.
+     * @param value A string previously added, or null
+     * @return The string reference
+     */
+    public int referenceOf(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        Integer reference = references.get(value);
+        if (reference == null) {
+            throw new IllegalArgumentException("'" + value + "' is not part of the dictionary");
+        }
+
+        return reference;
+    }
+
+    /**
+     * Get the number of distinct strings.
+     * @return The dictionary size
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Write the whole table.
+     * @param encoder The encoder to write to
+     * @throws IOException if the table could not be written
+     */
+    public void write(BinaryEncoder encoder) throws IOException {
+        encoder.writeVarInt(strings.size());
+        for (String s : strings) {
+            encoder.writeString(s);
+        }
+    }
+
+    /**
+     * Read a table written by write(), as an array usable by a BinaryModelReader.
+     * @param decoder The decoder to read from
+     * @return The strings, indexed by reference (index 0 holds null)
+     * @throws IOException if the table could not be read
+     */
+    public static String[] read(BinaryDecoder decoder) throws IOException {
+        int count = decoder.readVarInt();
+        if (count < 0) {
+            throw new IOException("Malformed string dictionary");
+        }
+
+        String[] table = new String[count + 1];
+        for (int i = 1; i <= count; i++) {
+            table[i] = decoder.readString();
+        }
+
+        return table;
+    }
+}
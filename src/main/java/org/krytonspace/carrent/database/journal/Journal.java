@@ -0,0 +1,636 @@
+package org.krytonspace.carrent.database.journal;
+
+import org.krytonspace.carrent.database.ChangeSet;
+import org.krytonspace.carrent.database.DatabaseHandler;
+import org.krytonspace.carrent.database.IncrementalDatabaseHandler;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.database.binary.*;
+import org.krytonspace.carrent.database.exceptions.WritingFailedException;
+import org.krytonspace.carrent.models.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made to a database since its last full save (the snapshot).
+ *
+ * The changes made since the last save are appended to the journal file next to the database file
+ * on commit, i.e. when the user saves. Loading a database
+ * then means loading the snapshot and replaying its journal.
+ *
+ * A journal file starts with a header identifying the version of the database file it applies to: its length,
+ * its modification time and a CRC32 of its first and last 64 KiB, taken when the journal is started. A journal
+ * whose header does not match the database file, e.g. because another program rewrote the file while the
+ * application was closed, is not replayed: the application sets it aside, see setAsideStale().
+ *
+ * Each journal entry is framed as its length, a CRC32 of its content and its content:
+ * an operation (put or remove), the model kind and either the whole model in the
+ * binary record format, or the ID of the removed model. Entries are full states,
+ * so replaying them is idempotent. A torn entry at the end of the file, left by a crash
+ * while appending, is detected by its checksum: reading stops there, and the application cuts it off
+ * before appending to the file again, see cutTornEnd(). Reading never changes the journal files.
+ *
+ * Once the journal grows past a threshold, the next save folds it into a fresh snapshot, see compact():
+ * the journal file is first moved aside, and the old journal is deleted once the snapshot is on disk.
+ * Compaction runs on the thread saving the database, like any other write of the snapshot file.
+ */
+public class Journal {
+
+    /**
+     * Size past which the journal is folded into a new snapshot.
+     */
+    public static final long COMPACTION_THRESHOLD = 4L * 1024 * 1024;
+
+    private static final int OP_PUT = 1;
+    private static final int OP_REMOVE = 2;
+
+    private static final int KIND_CLIENT = 1;
+    private static final int KIND_VEHICLE = 2;
+    private static final int KIND_CONTRACT = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] MAGIC = "CRJL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 8 + 8 + 4;
+    /**
+     * The number of bytes at each end of the database file covered by the checksum of the header.
+     */
+    private static final int IDENTITY_SPAN = 64 * 1024;
+
+    private final File databaseFile;
+    private final File journalFile;
+    private final File previousJournalFile;
+    private final File staleJournalFile;
+
+    /**
+     * Constructor.
+     * @param databaseFile The snapshot file this journal belongs to
+     */
+    public Journal(File databaseFile) {
+        this.databaseFile = databaseFile.getAbsoluteFile();
+        this.journalFile = new File(this.databaseFile.getPath() + ".journal");
+        this.previousJournalFile = new File(this.databaseFile.getPath() + ".journal.old");
+        this.staleJournalFile = new File(this.databaseFile.getPath() + ".journal.stale");
+    }
+
+    /**
+     * Get the journal of a database file, as the application keeps it.
+     * @param handler The handler of the database file
+     * @param databaseFile The database file
+     * @return The journal, or null if the handler saves changes by itself
+     */
+    public static Journal of(DatabaseHandler handler, File databaseFile) {
+        return handler instanceof IncrementalDatabaseHandler ? null : new Journal(databaseFile);
+    }
+
+    /**
+     * Load a database file as the application does: the snapshot, brought up to date with its journal.
+     * Tools reading database files must load them this way, or miss the changes saved since the last full save.
+     * @param handler The handler of the database file
+     * @param databaseFile The database file
+     * @return The database
+     * @throws LoadingFailedException if the database file or its journal could not be read
+     */
+    public static DatabaseModel load(DatabaseHandler handler, File databaseFile) throws LoadingFailedException {
+        DatabaseModel model = handler.load();
+
+        Journal journal = of(handler, databaseFile);
+        if (journal != null) {
+            try {
+                journal.replay(model);
+            } catch (IOException e) {
+                throw new LoadingFailedException("Could not replay the journal of '" + databaseFile.getName() +
+                        "': " + e.getMessage());
+            }
+        }
+
+        return model;
+    }
+
+    /**
+     * Check if this journal belongs to a database file.
+     * @param file A database file
+     * @return true if the file is the snapshot of this journal
+     */
+    public boolean isFor(File file) {
+        return databaseFile.equals(file.getAbsoluteFile());
+    }
+
+    /**
+     * Append changes to the journal file, and force them to disk.
+     * A new journal file is started with the identity of the database file as it is now.
+     * @param changes The changes made since the last commit
+     * @throws WritingFailedException if the journal could not be written
+     */
+    public synchronized void commit(ChangeSet changes) throws WritingFailedException {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        long committedLength = journalFile.length();
+        try {
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            if (committedLength == 0) {
+                frames.write(header(identify(databaseFile)));
+            }
+            BinaryEncoder encoder = new BinaryEncoder(frames, BUFFER_SIZE);
+            CRC32 crc = new CRC32();
+
+            for (Map.Entry<String, ClientModel> change : changes.getClientChanges().entrySet()) {
+                writeFrame(encoder, crc, encode(KIND_CLIENT, change.getKey(), change.getValue()));
+            }
+            for (Map.Entry<String, VehicleModel> change : changes.getVehicleChanges().entrySet()) {
+                writeFrame(encoder, crc, encode(KIND_VEHICLE, change.getKey(), change.getValue()));
+            }
+            for (Map.Entry<String, ContractModel> change : changes.getContractChanges().entrySet()) {
+                writeFrame(encoder, crc, encode(KIND_CONTRACT, change.getKey(), change.getValue()));
+            }
+            encoder.flush();
+
+            try (FileChannel channel = FileChannel.open(journalFile.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(frames.toByteArray());
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    // Leave no partial entry for the next commit to append after.
+                    channel.truncate(committedLength);
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            throw new WritingFailedException("Could not write journal '" + journalFile.getName() + "': " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Apply the journal to a freshly loaded snapshot.
+     * Journal files started for another version of the database file are left out, without being changed.
+     * @param model The snapshot
+     * @return true if the whole journal has been replayed, false if stale journal files have been left out
+     * @throws IOException if the journal could not be read
+     */
+    public synchronized boolean replay(DatabaseModel model) throws IOException {
+        Map<String, ClientModel> clients = new LinkedHashMap<>();
+        Map<String, VehicleModel> vehicles = new LinkedHashMap<>();
+        Map<String, ContractModel> contracts = new LinkedHashMap<>();
+        byte[] identity = identify(databaseFile);
+        boolean complete = true;
+
+        // An old journal left by an interrupted compaction comes first.
+        for (File file : Arrays.asList(previousJournalFile, journalFile)) {
+            if (isStale(file, identity)) {
+                complete = false;
+            } else {
+                readValidEntries(file, clients, vehicles, contracts);
+            }
+        }
+
+        model.applyClientChanges(clients);
+        model.applyVehicleChanges(vehicles);
+        model.applyContractChanges(contracts);
+
+        return complete;
+    }
+
+    /**
+     * Move the journal files started for another version of the database file aside, as the ".journal.stale"
+     * file, so that changes are not appended to them and they are never replayed. The file is kept for
+     * inspection, replacing the one set aside before, if any.
+     * @return true if a stale journal file has been set aside
+     * @throws IOException if a journal file could not be read or moved
+     */
+    public synchronized boolean setAsideStale() throws IOException {
+        byte[] identity = identify(databaseFile);
+        boolean stale = false;
+
+        for (File file : Arrays.asList(previousJournalFile, journalFile)) {
+            if (isStale(file, identity)) {
+                Files.move(file.toPath(), staleJournalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                stale = true;
+            }
+        }
+
+        return stale;
+    }
+
+    /**
+     * Cut off a torn entry at the end of the journal file, left by a crash while appending, so that the
+     * entries appended next can be read. Only the application appending to the journal calls it.
+     * @throws IOException if the journal file could not be read or truncated
+     */
+    public synchronized void cutTornEnd() throws IOException {
+        if (!journalFile.exists() || isStale(journalFile, identify(databaseFile))) {
+            return;
+        }
+
+        long validLength = readValidEntries(journalFile, new LinkedHashMap<>(), new LinkedHashMap<>(),
+                new LinkedHashMap<>());
+        if (journalFile.length() > validLength) {
+            try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    /**
+     * Read the changes held by the journal, whichever version of the database file it has been started for.
+     * @return The changes, in the order they apply
+     * @throws IOException if the journal could not be read
+     */
+    public synchronized ChangeSet read() throws IOException {
+        Map<String, ClientModel> clients = new LinkedHashMap<>();
+        Map<String, VehicleModel> vehicles = new LinkedHashMap<>();
+        Map<String, ContractModel> contracts = new LinkedHashMap<>();
+
+        readValidEntries(previousJournalFile, clients, vehicles, contracts);
+        readValidEntries(journalFile, clients, vehicles, contracts);
+
+        ChangeSet changes = new ChangeSet();
+        collect(changes, ClientModel.class, clients);
+        collect(changes, VehicleModel.class, vehicles);
+        collect(changes, ContractModel.class, contracts);
+
+        return changes;
+    }
+
+    private static void collect(ChangeSet changes, Class<? extends Model> type, Map<String, ? extends Model> entries) {
+        for (Map.Entry<String, ? extends Model> entry : entries.entrySet()) {
+            if (entry.getValue() == null) {
+                changes.remove(type, entry.getKey());
+            } else {
+                changes.put(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get the size of the journal.
+     * @return The size of the journal files, in bytes
+     */
+    public long size() {
+        return journalFile.length() + previousJournalFile.length();
+    }
+
+    /**
+     * Delete the journal, after the whole database has been saved as a new snapshot.
+     * @throws WritingFailedException if the journal files could not be deleted
+     */
+    public synchronized void reset() throws WritingFailedException {
+        try {
+            Files.deleteIfExists(journalFile.toPath());
+            Files.deleteIfExists(previousJournalFile.toPath());
+        } catch (IOException e) {
+            throw new WritingFailedException("Could not delete journal '" + journalFile.getName() + "': " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Check if the journal has grown past the threshold, and should be folded into a new snapshot.
+     * @return true if the journal should be compacted
+     */
+    public boolean needsCompaction() {
+        return size() >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Fold the journal into a new snapshot.
+     * The snapshot file is written by the calling thread: callers watching it must expect the write.
+     * @param handler The handler writing the snapshot file
+     * @param snapshot The database to write, holding every committed change, which must not change while
+     *                 it is written
+     * @throws WritingFailedException if the snapshot could not be written, the journal is then kept
+     */
+    public synchronized void compact(DatabaseHandler handler, DatabaseModel snapshot) throws WritingFailedException {
+        try {
+            // Move the journal aside, unless an interrupted compaction already did:
+            // the old journal then still holds older changes, and the current one must be kept.
+            if (!previousJournalFile.exists()) {
+                Files.move(journalFile.toPath(), previousJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new WritingFailedException("Could not move journal '" + journalFile.getName() + "' aside: " +
+                    e.getMessage());
+        }
+
+        // On failure, the old journal is kept, and will be replayed on next load.
+        handler.save(snapshot);
+        reset();
+    }
+
+    /**
+     * Check the entries of the journal, without changing the journal files.
+     * A torn entry at the end of a file is not a problem: the application cuts it off when it next opens the file.
+     * @return The problems found, empty if the journal is intact
+     */
+    public synchronized List<String> verify() {
+        List<String> problems = new ArrayList<>();
+        for (File file : Arrays.asList(previousJournalFile, journalFile)) {
+            Map<String, ClientModel> clients = new LinkedHashMap<>();
+            Map<String, VehicleModel> vehicles = new LinkedHashMap<>();
+            Map<String, ContractModel> contracts = new LinkedHashMap<>();
+
+            try {
+                if (isStale(file, identify(databaseFile))) {
+                    problems.add("Journal '" + file.getName() + "' belongs to another version of '" +
+                            databaseFile.getName() + "', and is not replayed");
+                    continue;
+                }
+                long validLength = readValidEntries(file, clients, vehicles, contracts);
+                if (validLength < file.length() && !isTornEnd(file, validLength)) {
+                    problems.add("Corrupt entry at offset " + validLength + " of journal '" + file.getName() + "'");
+                }
+            } catch (IOException e) {
+                problems.add("Unreadable journal '" + file.getName() + "': " + e.getMessage());
+            }
+        }
+
+        return problems;
+    }
+
+    /**
+     * Read the entries of a journal file into change sets, up to the first torn or corrupt one.
+     * @return The length of the valid entries
+     */
+    private static long readValidEntries(File file,
+                                         Map<String, ClientModel> clients,
+                                         Map<String, VehicleModel> vehicles,
+                                         Map<String, ContractModel> contracts) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        long validLength = HEADER_SIZE;
+        long fileLength = file.length();
+        CRC32 crc = new CRC32();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            // Entries follow the header.
+            if (readHeader(in) == null) {
+                return 0;
+            }
+            BinaryDecoder decoder = new BinaryDecoder(in, BUFFER_SIZE);
+
+            while (true) {
+                byte[] entry;
+                int checksum;
+
+                try {
+                    int length = decoder.readVarInt();
+                    // A length running past the end of the file is garbage: a torn or corrupt entry.
+                    if (length < 0 || length > fileLength - validLength - varIntSize(length) - 4) {
+                        break;
+                    }
+                    checksum = readInt(decoder);
+                    entry = new byte[length];
+                    decoder.readBytes(entry, 0, length);
+                } catch (EOFException e) {
+                    break;
+                } catch (IOException e) {
+                    // A malformed length: a torn entry.
+                    break;
+                }
+
+                crc.reset();
+                crc.update(entry, 0, entry.length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                decode(entry, clients, vehicles, contracts);
+                validLength += varIntSize(entry.length) + 4 + entry.length;
+            }
+        }
+
+        return validLength;
+    }
+
+    /**
+     * Check if the invalid part of a journal file is a single entry cut short by a crash while appending,
+     * rather than a corrupt entry followed by others.
+     */
+    private static boolean isTornEnd(File file, long validLength) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            long skipped = 0;
+            while (skipped < validLength) {
+                long n = in.skip(validLength - skipped);
+                if (n <= 0) {
+                    return true;
+                }
+                skipped += n;
+            }
+
+            BinaryDecoder decoder = new BinaryDecoder(in, BUFFER_SIZE);
+            try {
+                int length = decoder.readVarInt();
+                // The entry reaches the end of the file, or beyond.
+                return validLength + varIntSize(length) + 4 + length >= file.length();
+            } catch (IOException e) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Check if a journal file exists and has been started for another version of the database file.
+     * @param file The journal file
+     * @param identity The identity of the database file as it is now
+     * @return true if the file holds no valid header, or the header of another version
+     */
+    private static boolean isStale(File file, byte[] identity) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return false;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            return !Arrays.equals(readHeader(in), identity);
+        }
+    }
+
+    /**
+     * Compute the identity of a database file: its length, its modification time, and a CRC32 of its ends.
+     */
+    private static byte[] identify(File file) throws IOException {
+        ByteBuffer identity = ByteBuffer.allocate(8 + 8 + 4);
+        identity.putLong(file.length());
+        identity.putLong(file.lastModified());
+
+        CRC32 crc = new CRC32();
+        if (file.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                byte[] span = new byte[(int) Math.min(IDENTITY_SPAN, raf.length())];
+                raf.readFully(span);
+                crc.update(span, 0, span.length);
+                raf.seek(Math.max(0, raf.length() - span.length));
+                raf.readFully(span);
+                crc.update(span, 0, span.length);
+            }
+        }
+        identity.putInt((int) crc.getValue());
+
+        return identity.array();
+    }
+
+    private static byte[] header(byte[] identity) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.put((byte) VERSION);
+        header.put(identity);
+
+        return header.array();
+    }
+
+    /**
+     * Read the header of a journal file.
+     * @return The identity of the database file it has been started for, or null if the header is not valid
+     */
+    private static byte[] readHeader(InputStream in) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int read = 0;
+        while (read < header.length) {
+            int n = in.read(header, read, header.length - read);
+            if (n < 0) {
+                return null;
+            }
+            read += n;
+        }
+
+        if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || header[MAGIC.length] != VERSION) {
+            return null;
+        }
+
+        return Arrays.copyOfRange(header, MAGIC.length + 1, HEADER_SIZE);
+    }
+
+    private static void writeFrame(BinaryEncoder encoder, CRC32 crc, byte[] entry) throws IOException {
+        crc.reset();
+        crc.update(entry, 0, entry.length);
+
+        encoder.writeVarInt(entry.length);
+        writeInt(encoder, (int) crc.getValue());
+        encoder.writeBytes(entry, 0, entry.length);
+    }
+
+    private static byte[] encode(int kind, String id, Model m) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 256);
+
+        encoder.writeByte(m == null ? OP_REMOVE : OP_PUT);
+        encoder.writeByte(kind);
+
+        if (m == null) {
+            encoder.writeString(id);
+        } else {
+            // Each entry carries its own small dictionary.
+            StringDictionary dictionary = new StringDictionary();
+            BinaryModelWriter writer = new BinaryModelWriter(encoder, dictionary);
+
+            switch (kind) {
+                case KIND_CLIENT:
+                    BinaryModelWriter.addStrings(dictionary, (ClientModel) m);
+                    dictionary.write(encoder);
+                    writer.writeClient((ClientModel) m);
+                    break;
+                case KIND_VEHICLE:
+                    BinaryModelWriter.addStrings(dictionary, (VehicleModel) m);
+                    dictionary.write(encoder);
+                    writer.writeVehicle((VehicleModel) m);
+                    break;
+                default:
+                    BinaryModelWriter.addStrings(dictionary, (ContractModel) m);
+                    dictionary.write(encoder);
+                    writer.writeContract((ContractModel) m);
+                    break;
+            }
+        }
+
+        encoder.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void decode(byte[] entry,
+                               Map<String, ClientModel> clients,
+                               Map<String, VehicleModel> vehicles,
+                               Map<String, ContractModel> contracts) throws IOException {
+        BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(entry), entry.length);
+        int op = decoder.readByte();
+        int kind = decoder.readByte();
+
+        if (op == OP_REMOVE) {
+            String id = decoder.readString();
+            switch (kind) {
+                case KIND_CLIENT:
+                    clients.put(id, null);
+                    break;
+                case KIND_VEHICLE:
+                    vehicles.put(id, null);
+                    break;
+                case KIND_CONTRACT:
+                    contracts.put(id, null);
+                    break;
+                default:
+                    throw new IOException("Unknown journal entry kind: " + kind);
+            }
+        } else if (op == OP_PUT) {
+            BinaryModelReader reader = new BinaryModelReader(decoder, StringDictionary.read(decoder));
+            switch (kind) {
+                case KIND_CLIENT:
+                    ClientModel client = reader.readClient();
+                    clients.put(client.getId(), client);
+                    break;
+                case KIND_VEHICLE:
+                    VehicleModel vehicle = reader.readVehicle();
+                    vehicles.put(vehicle.getId(), vehicle);
+                    break;
+                case KIND_CONTRACT:
+                    ContractModel contract = reader.readContract();
+                    contracts.put(contract.getId(), contract);
+                    break;
+                default:
+                    throw new IOException("Unknown journal entry kind: " + kind);
+            }
+        } else {
+            throw new IOException("Unknown journal operation: " + op);
+        }
+    }
+
+    private static void writeInt(BinaryEncoder encoder, int value) throws IOException {
+        encoder.writeByte(value >>> 24);
+        encoder.writeByte(value >>> 16);
+        encoder.writeByte(value >>> 8);
+        encoder.writeByte(value);
+    }
+
+    private static int readInt(BinaryDecoder decoder) throws IOException {
+        return (decoder.readByte() << 24) | (decoder.readByte() << 16) | (decoder.readByte() << 8) | decoder.readByte();
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,292 @@
+package org.krytonspace.carrent.database.json;
+
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splitter of the arrays of a JSON database into chunks of elements, which can then be parsed on their own.
+ *
+ * The root value must be an object whose fields are arrays (or null). The bytes are scanned once, only
+ * keeping track of strings and nesting, to find the commas between the elements of each array: this is
+ * much faster than parsing, so that chunks can be parsed in parallel while the next ones are found.
+ */
+public final class JsonArraySplitter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final int chunkSize;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    /**
+     * true once the root object has been entered.
+     */
+    private boolean started;
+    /**
+     * true while the elements of a section are being split.
+     */
+    private boolean inArray;
+    /**
+     * true until the first chunk of the current section has been found.
+     */
+    private boolean arrayStart;
+
+    /**
+     * Constructor.
+     * @param in The stream to read the database from
+     * @param chunkSize The size chunks are cut at, in bytes: a chunk holds whole elements, so it can be larger
+     */
+    public JsonArraySplitter(InputStream in, int chunkSize) {
+        this.in = in;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Move to the next section of the root object. Chunks left in the current section are skipped.
+     * @return The section name, or null at the end of the root object
+     * @throws IOException if the stream could not be read
+     * @throws LoadingFailedException if the content is not an object of arrays
+     */
+    public String nextSection() throws IOException, LoadingFailedException {
+        while (inArray) {
+            nextChunk();
+        }
+
+        int c = nextNonSpace();
+        if (!started) {
+            if (c != '{') {
+                throw new LoadingFailedException("Could not parse model as JSON: the root value must be an object");
+            }
+            started = true;
+            c = nextNonSpace();
+        } else if (c == ',') {
+            c = nextNonSpace();
+        } else if (c != '}') {
+            throw unexpected(c);
+        }
+
+        if (c == '}') {
+            return null;
+        }
+        if (c != '"') {
+            throw unexpected(c);
+        }
+        String name = readName();
+
+        if (nextNonSpace() != ':') {
+            throw new LoadingFailedException("Could not parse model as JSON: expected ':' after '" + name + "'");
+        }
+
+        c = nextNonSpace();
+        if (c == '[') {
+            inArray = true;
+            arrayStart = true;
+        } else if (c == 'n' && read() == 'u' && read() == 'l' && read() == 'l') {
+            // No elements
+            inArray = false;
+        } else {
+            throw new LoadingFailedException("Could not parse model as JSON: '" + name + "' must be an array");
+        }
+
+        return name;
+    }
+
+    /**
+     * Find the next elements of the current section.
+     * @return A chunk of elements, or null once every element of the section has been found
+     * @throws IOException if the stream could not be read
+     * @throws LoadingFailedException if the file ends before the section
+     */
+    public Chunk nextChunk() throws IOException, LoadingFailedException {
+        if (!inArray) {
+            return null;
+        }
+
+        if (arrayStart) {
+            arrayStart = false;
+            int c = nextNonSpace();
+            if (c == ']') {
+                inArray = false;
+                return null;
+            }
+            position--;
+        }
+
+        byte[] data = new byte[chunkSize + chunkSize / 8];
+        data[0] = '[';
+        int length = 1;
+        int count = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                throw new LoadingFailedException("Could not parse model as JSON: unexpected end of file");
+            }
+
+            int start = position;
+            int end = -1;
+            boolean last = false;
+
+            for (int i = position; i < limit; i++) {
+                byte b = buffer[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}') {
+                    depth--;
+                } else if (b == ']') {
+                    if (depth == 0) {
+                        // End of the section
+                        end = i;
+                        last = true;
+                        break;
+                    }
+                    depth--;
+                } else if (b == ',' && depth == 0) {
+                    count++;
+                    if (length + i - start >= chunkSize) {
+                        end = i;
+                        break;
+                    }
+                }
+            }
+
+            int copyEnd = end < 0 ? limit : end;
+            data = ensureCapacity(data, length + copyEnd - start + 1);
+            System.arraycopy(buffer, start, data, length, copyEnd - start);
+            length += copyEnd - start;
+
+            if (end >= 0) {
+                // Skip the comma or the bracket
+                position = end + 1;
+                data[length++] = ']';
+                if (last) {
+                    count++;
+                    inArray = false;
+                }
+
+                return new Chunk(data, length, count);
+            }
+            position = limit;
+        }
+    }
+
+    /**
+     * Read a field name of the root object, positioned after its opening quote.
+     */
+    private String readName() throws IOException, LoadingFailedException {
+        byte[] name = new byte[32];
+        int length = 0;
+
+        int c;
+        while ((c = read()) != '"') {
+            if (c == '\\') {
+                c = read();
+            }
+            if (c < 0) {
+                throw new LoadingFailedException("Could not parse model as JSON: unexpected end of file");
+            }
+            name = ensureCapacity(name, length + 1);
+            name[length++] = (byte) c;
+        }
+
+        return new String(name, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] ensureCapacity(byte[] data, int capacity) {
+        if (capacity <= data.length) {
+            return data;
+        }
+
+        return Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+    }
+
+    private LoadingFailedException unexpected(int c) {
+        return new LoadingFailedException("Could not parse model as JSON: " +
+                (c < 0 ? "unexpected end of file" : "unexpected character '" + (char) c + "'"));
+    }
+
+    private int nextNonSpace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * Elements of an array, as the bytes of an array holding them only.
+     */
+    public static final class Chunk {
+        private final byte[] data;
+        private final int length;
+        private final int count;
+
+        private Chunk(byte[] data, int length, int count) {
+            this.data = data;
+            this.length = length;
+            this.count = count;
+        }
+
+        /**
+         * Getter
+         * @return The bytes of the chunk: only the first getLength() bytes are used
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Getter
+         * @return The number of bytes used
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Getter
+         * @return The number of elements in the chunk
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.krytonspace.carrent.database.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Reader/writer of a model type as a JSON object.
+ * @param <T> The model type
+ */
+public interface JsonCodec<T> {
+    /**
+     * Read a model.
+     * @param parser The parser, positioned on the object start
+     * @return The model read
+     * @throws IOException if the object could not be read, or is not a valid model
+     */
+    T read(JsonParser parser) throws IOException;
+
+    /**
+     * Write a model.
+     * @param generator The generator to write to
+     * @param model The model to write
+     * @throws IOException if the model could not be written
+     */
+    void write(JsonGenerator generator, T model) throws IOException;
+}
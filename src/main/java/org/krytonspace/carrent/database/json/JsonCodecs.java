@@ -0,0 +1,315 @@
+package org.krytonspace.carrent.database.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.krytonspace.carrent.utils.EpochDays;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+
+/**
+ * Lookup of the JSON codecs of models, and helpers for the generated codecs.
+ *
+ * Codecs are generated at compile time by ModelCodecProcessor, as a class named after the model
+ * with the "Codec" suffix, in the same package. They read and write the same JSON as Jackson
+ * databinding does with the model annotations, without reflection.
+ */
+public final class JsonCodecs {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Can't create instances of this class.
+     */
+    private JsonCodecs() {
+
+    }
+
+    /**
+     * Get the codec of a model type.
+     * @param type The model type
+     * @param mapper The mapper binding the models if no codec has been generated for this type
+     * @param <T> The model type
+     * @return The generated codec of the type, or a codec using databinding
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> forModel(Class<T> type, ObjectMapper mapper) {
+        try {
+            Class<?> codec = Class.forName(type.getName() + "Codec", true, type.getClassLoader());
+            return (JsonCodec<T>) codec.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            return new BoundCodec<>(mapper.readerFor(type), mapper.writerFor(type));
+        }
+    }
+
+    /**
+     * Move past the start of an object.
+     * @param parser The parser, positioned on the object start
+     * @throws IOException if the current value is not an object
+     */
+    public static void enterObject(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected an object, got " + parser.currentToken());
+        }
+        parser.nextToken();
+    }
+
+    /**
+     * Read a string value.
+     * @param parser The parser, positioned on the value
+     * @return The string, or null for a null value
+     * @throws IOException if the value is not a scalar
+     */
+    public static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new JsonParseException(parser, "Expected a string, got " + token);
+        }
+
+        return parser.getValueAsString();
+    }
+
+    /**
+     * Read an enum value, by constant name.
+     * @param parser The parser, positioned on the value
+     * @param type The enum type
+     * @param <E> The enum type
+     * @return The constant, or null for a null value
+     * @throws IOException if the value is not a constant of the enum
+     */
+    public static <E extends Enum<E>> E readEnum(JsonParser parser, Class<E> type) throws IOException {
+        String name = readString(parser);
+        if (name == null) {
+            return null;
+        }
+
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(parser, "'" + name + "' is not a valid " + type.getSimpleName());
+        }
+    }
+
+    /**
+     * Write an enum value, by constant name.
+     * @param generator The generator to write to
+     * @param value The constant, or null
+     * @throws IOException if the value could not be written
+     */
+    public static void writeEnum(JsonGenerator generator, Enum<?> value) throws IOException {
+        generator.writeString(value == null ? null : value.name());
+    }
+
+    /**
+     * Create the format of a date written as a string, in UTC like Jackson does.
+     * @param pattern The date pattern
+     * @return The format
+     */
+    public static DateTimeFormatter dateFormat(String pattern) {
+        return DateTimeFormatter.ofPattern(pattern).withZone(ZoneOffset.UTC);
+    }
+
+    /**
+     * Read a date value: a timestamp, or a string in the given format.
+     * @param parser The parser, positioned on the value
+     * @param format The format of dates written as strings, or null for ISO-8601 strings
+     * @return The date, or null for a null value
+     * @throws IOException if the value is not a date
+     */
+    public static Date readDate(JsonParser parser, DateTimeFormatter format) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return new Date(parser.getLongValue());
+        }
+
+        String text = readString(parser);
+        try {
+            if (format != null) {
+                TemporalAccessor parsed = format.parse(text);
+                if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+                    return Date.from(Instant.from(parsed));
+                }
+
+                // No time of day: the start of the day, in UTC.
+                return new Date(parsed.getLong(ChronoField.EPOCH_DAY) * MILLIS_PER_DAY);
+            }
+            return new StdDateFormat().parse(text);
+        } catch (DateTimeParseException | ParseException e) {
+            throw new JsonParseException(parser, "'" + text + "' is not a valid date");
+        }
+    }
+
+    /**
+     * Write a date value: a timestamp, or a string in the given format.
+     * @param generator The generator to write to
+     * @param value The date, or null
+     * @param format The format to write the date as a string with, or null to write a timestamp
+     * @throws IOException if the value could not be written
+     */
+    public static void writeDate(JsonGenerator generator, Date value, DateTimeFormatter format) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (format == null) {
+            generator.writeNumber(value.getTime());
+        } else {
+            generator.writeString(format.format(value.toInstant()));
+        }
+    }
+
+    /**
+     * Read a date value as a day count, see EpochDays: a timestamp, or a string in the given format.
+     * Dates written without a time of day give the day as written, whatever the time zone.
+     * @param parser The parser, positioned on the value
+     * @param format The format of dates written as strings, or null for ISO-8601 strings
+     * @return The number of days since 1970-01-01, or EpochDays.NONE for a null value
+     * @throws IOException if the value is not a date
+     */
+    public static int readEpochDay(JsonParser parser, DateTimeFormatter format) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return EpochDays.NONE;
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return EpochDays.fromMillis(parser.getLongValue());
+        }
+        if (format == null) {
+            return EpochDays.fromMillis(readDate(parser, null).getTime());
+        }
+
+        String text = readString(parser);
+        try {
+            TemporalAccessor parsed = format.parse(text);
+            if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+                return EpochDays.fromMillis(Instant.from(parsed).toEpochMilli());
+            }
+
+            return (int) parsed.getLong(ChronoField.EPOCH_DAY);
+        } catch (DateTimeParseException e) {
+            throw new JsonParseException(parser, "'" + text + "' is not a valid date");
+        }
+    }
+
+    /**
+     * Write a date held as a day count: the timestamp of the start of the day in the system time zone, see
+     * EpochDays.toMillis(), or the day in the given format.
+     * @param generator The generator to write to
+     * @param epochDay The number of days since 1970-01-01, or EpochDays.NONE
+     * @param format The format to write the date as a string with, or null to write a timestamp
+     * @throws IOException if the value could not be written
+     */
+    public static void writeEpochDay(JsonGenerator generator, int epochDay, DateTimeFormatter format)
+            throws IOException {
+        if (epochDay == EpochDays.NONE) {
+            generator.writeNull();
+        } else if (format == null) {
+            generator.writeNumber(EpochDays.toMillis(epochDay));
+        } else {
+            generator.writeString(format.format(LocalDate.ofEpochDay(epochDay)));
+        }
+    }
+
+    /**
+     * Buffer the properties of an object up to a given one, e.g. those coming before the type
+     * of a polymorphic model.
+     * @param parser The parser, positioned on a property name or on the object end
+     * @param property The property to stop at
+     * @return The buffered properties, or null if there were none
+     * @throws IOException if the properties could not be read
+     */
+    public static TokenBuffer bufferUntil(JsonParser parser, String property) throws IOException {
+        TokenBuffer buffer = null;
+        while (parser.currentToken() == JsonToken.FIELD_NAME && !property.equals(parser.getCurrentName())) {
+            if (buffer == null) {
+                buffer = new TokenBuffer(parser);
+                buffer.writeStartObject();
+            }
+            buffer.copyCurrentStructure(parser);
+            parser.nextToken();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Read buffered properties again.
+     * @param buffer The properties buffered by bufferUntil()
+     * @return A parser positioned on the first property
+     * @throws IOException if the buffer could not be read
+     */
+    public static JsonParser replay(TokenBuffer buffer) throws IOException {
+        buffer.writeEndObject();
+        JsonParser parser = buffer.asParser();
+        parser.nextToken();
+        parser.nextToken();
+
+        return parser;
+    }
+
+    /**
+     * Create the error reporting an unknown property.
+     * @param parser The parser
+     * @param type The model type
+     * @param name The property name
+     * @return The error to throw
+     */
+    public static JsonParseException unknownProperty(JsonParser parser, Class<?> type, String name) {
+        return new JsonParseException(parser, "Unrecognized field \"" + name + "\" of " + type.getSimpleName());
+    }
+
+    /**
+     * Create the error reporting an unknown subtype.
+     * @param parser The parser
+     * @param type The model base type
+     * @param name The subtype name, or null if it was missing
+     * @return The error to throw
+     */
+    public static JsonParseException unknownType(JsonParser parser, Class<?> type, String name) {
+        return new JsonParseException(parser, name == null ?
+                "Missing type of " + type.getSimpleName() :
+                "'" + name + "' is not a known type of " + type.getSimpleName());
+    }
+
+    /**
+     * Codec binding models with Jackson, for types without a generated codec.
+     */
+    private static class BoundCodec<T> implements JsonCodec<T> {
+        private final ObjectReader reader;
+        private final ObjectWriter writer;
+
+        private BoundCodec(ObjectReader reader, ObjectWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        @Override
+        public T read(JsonParser parser) throws IOException {
+            return reader.readValue(parser);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, T model) throws IOException {
+            writer.writeValue(generator, model);
+        }
+    }
+}
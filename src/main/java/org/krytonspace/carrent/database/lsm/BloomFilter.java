@@ -0,0 +1,124 @@
+package org.krytonspace.carrent.database.lsm;
+
+import org.krytonspace.carrent.database.binary.BinaryDecoder;
+import org.krytonspace.carrent.database.binary.BinaryEncoder;
+
+import java.io.IOException;
+
+/**
+ * Set of strings answering "maybe" or "certainly not", in a few bits per string.
+ * With 10 bits and 7 hashes per string, about 1% of the strings not in the set get a "maybe".
+ */
+public class BloomFilter {
+
+    /**
+     * Number of bits per expected string.
+     */
+    public static final int BITS_PER_KEY = 10;
+
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+    private final int hashes;
+
+    /**
+     * Constructor.
+     * @param expectedKeys The number of strings to be added
+     */
+    public BloomFilter(int expectedKeys) {
+        this(new long[(Math.max(64, expectedKeys * BITS_PER_KEY) + 63) / 64], HASHES);
+    }
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Add a string to the set.
+     * @param key The string
+     */
+    public void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % size;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Check if a string may be in the set.
+     * @param key The string
+     * @return false if the string is certainly not in the set, true if it may be
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % size;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the filter.
+     * @param encoder The encoder to write to
+     * @throws IOException if the filter could not be written
+     */
+    public void write(BinaryEncoder encoder) throws IOException {
+        encoder.writeByte(hashes);
+        encoder.writeVarInt(bits.length);
+        for (long word : bits) {
+            encoder.writeVarLong(word);
+        }
+    }
+
+    /**
+     * Read a filter written by write().
+     * @param decoder The decoder to read from
+     * @return The filter
+     * @throws IOException if the filter could not be read
+     */
+    public static BloomFilter read(BinaryDecoder decoder) throws IOException {
+        int hashes = decoder.readByte();
+        int length = decoder.readVarInt();
+        if (length <= 0 || hashes <= 0) {
+            throw new IOException("Malformed bloom filter");
+        }
+
+        long[] bits = new long[length];
+        for (int i = 0; i < length; i++) {
+            bits[i] = decoder.readVarLong();
+        }
+
+        return new BloomFilter(bits, hashes);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the string characters.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        // Final mix, so that both halves depend on every character.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,89 @@
+package org.krytonspace.carrent.database.lsm;
+
+import org.krytonspace.carrent.database.binary.BinaryDecoder;
+import org.krytonspace.carrent.database.binary.BinaryModelReader;
+import org.krytonspace.carrent.models.ContractModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * The state of a contract in the store: the contract, or a tombstone if it has been removed.
+ *
+ * Entries read from runs keep the contract as a record, decoded only when asked for,
+ * so that entries can be merged and sorted without creating the models.
+ */
+public final class ContractEntry {
+    private final String id;
+    private final long seq;
+    private final ContractModel contract;
+    private final byte[] record;
+    private final String[] strings;
+
+    /**
+     * Constructor, for an entry in memory.
+     * @param id The contract ID
+     * @param seq The sequence number of the contract, which orders contracts as registered
+     * @param contract The contract, or null for a tombstone
+     */
+    public ContractEntry(String id, long seq, ContractModel contract) {
+        this.id = id;
+        this.seq = seq;
+        this.contract = contract;
+        this.record = null;
+        this.strings = null;
+    }
+
+    /**
+     * Constructor, for an entry read from a run.
+     * @param id The contract ID
+     * @param seq The sequence number of the contract
+     * @param record The contract in the binary record format, or null for a tombstone
+     * @param strings The dictionary of the record
+     */
+    public ContractEntry(String id, long seq, byte[] record, String[] strings) {
+        this.id = id;
+        this.seq = seq;
+        this.contract = null;
+        this.record = record;
+        this.strings = strings;
+    }
+
+    /**
+     * Getter
+     * @return The contract ID
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Getter
+     * @return The sequence number of the contract
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * Check if the entry records a removal.
+     * @return true if the contract has been removed
+     */
+    public boolean isTombstone() {
+        return contract == null && record == null;
+    }
+
+    /**
+     * Get the contract, decoding it if needed. Each call creates a new model for entries read from runs.
+     * @return The contract, or null for a tombstone
+     * @throws IOException if the record is malformed
+     */
+    public ContractModel getContract() throws IOException {
+        if (record == null) {
+            return contract;
+        }
+
+        BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(record), record.length);
+        return new BinaryModelReader(decoder, strings).readContract();
+    }
+}
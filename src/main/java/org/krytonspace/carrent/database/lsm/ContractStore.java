@@ -0,0 +1,542 @@
+package org.krytonspace.carrent.database.lsm;
+
+import org.krytonspace.carrent.database.binary.*;
+import org.krytonspace.carrent.models.ContractModel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured store of contracts, made for many insertions and few updates.
+ *
+ * Changes go to the memtable, an in-memory map sorted by ID, and to its log on disk, which is
+ * replayed when the store is opened. Once the memtable is full, it is written as a new sorted run,
+ * see SortedRun, and emptied. The store is read as a whole when the database is loaded. A changed
+ * contract is looked up for its sequence number in the memtable, then in the runs from the newest to
+ * the oldest; the bloom filter of each run spares reading the runs which do not hold it.
+ *
+ * Runs are merged in the background once there are more than MAX_RUNS of them: the adjacent runs
+ * holding the fewest bytes are merged into one, so that a lookup never reads more than MAX_RUNS
+ * runs, and large runs are rarely rewritten. Removed contracts are dropped when the oldest run is merged.
+ *
+ * The store is a directory holding the runs, the memtable log and a manifest listing the runs
+ * from the newest to the oldest, replaced atomically when the runs change.
+ *
+ * Every contract has a sequence number, which orders contracts as registered: an updated contract
+ * keeps its number, new contracts get the next one.
+ */
+public class ContractStore {
+
+    /**
+     * Number of entries of a full memtable.
+     */
+    public static final int MEMTABLE_SIZE = 4096;
+
+    /**
+     * Number of runs past which runs are merged.
+     */
+    public static final int MAX_RUNS = 6;
+
+    /**
+     * Number of runs merged at once.
+     */
+    public static final int MERGE_WIDTH = 4;
+
+    private static final byte[] MANIFEST_MAGIC = "CRLM".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final String MANIFEST = "MANIFEST";
+    private static final String LOG = "memtable.log";
+    private static final String RUN_EXTENSION = ".run";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    /**
+     * Stores currently open, by directory: a store is shared by every handler of its database,
+     * so that merges never overlap.
+     */
+    private static final Map<File, ContractStore> OPEN = new HashMap<>();
+
+    /**
+     * Thread merging runs.
+     */
+    private static final ExecutorService MERGER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "contract-run-merge");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final File directory;
+    private final TreeMap<String, ContractEntry> memtable = new TreeMap<>();
+
+    /**
+     * The runs, from the newest to the oldest.
+     */
+    private List<SortedRun> runs = new ArrayList<>();
+
+    private long nextSeq;
+    private long nextRun;
+    private OutputStream log;
+
+    /**
+     * Whether a merge is pending, and the number of times the whole store has been replaced,
+     * which voids a merge started before.
+     */
+    private boolean merging;
+    private int generation;
+
+    /**
+     * The problems run into without failing, since they were last taken.
+     */
+    private final List<String> problems = new ArrayList<>();
+
+    private ContractStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Open a store, creating it if needed.
+     * @param directory The store directory
+     * @return The store, shared with every caller opening the same directory
+     * @throws IOException if the store could not be read
+     */
+    public static synchronized ContractStore open(File directory) throws IOException {
+        File key = directory.getAbsoluteFile();
+        ContractStore store = OPEN.get(key);
+        if (store == null) {
+            store = new ContractStore(key);
+            store.load();
+            OPEN.put(key, store);
+        }
+
+        return store;
+    }
+
+    /**
+     * Getter
+     * @return The number of runs
+     */
+    public synchronized int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Take the problems the store has run into without failing since they were last taken: background merges
+     * which failed, the runs they were merging being kept, and runs which could not be deleted.
+     * @return The descriptions of the problems, empty if none
+     */
+    public synchronized List<String> takeProblems() {
+        List<String> taken = new ArrayList<>(problems);
+        problems.clear();
+
+        return taken;
+    }
+
+    /**
+     * Compute the size of the store on disk.
+     * @return The size of the runs and of the memtable log, in bytes
+     */
+    public synchronized long size() {
+        long size = new File(directory, LOG).length();
+        for (SortedRun run : runs) {
+            size += run.getFile().length();
+        }
+
+        return size;
+    }
+
+    /**
+     * Apply changes, durably.
+     * @param changes The new state of each changed contract, by ID. A null state removes the contract.
+     * @throws IOException if the changes could not be written
+     */
+    public synchronized void apply(Map<String, ContractModel> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<ContractEntry> entries = new ArrayList<>(changes.size());
+        for (Map.Entry<String, ContractModel> change : changes.entrySet()) {
+            ContractEntry previous = find(change.getKey());
+            long seq = previous != null && !previous.isTombstone() ? previous.getSeq() : nextSeq++;
+            entries.add(new ContractEntry(change.getKey(), seq, change.getValue()));
+        }
+
+        appendToLog(entries);
+        for (ContractEntry entry : entries) {
+            memtable.put(entry.getId(), entry);
+        }
+
+        if (memtable.size() >= MEMTABLE_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Read every contract, in sequence order.
+     * @param action The action to run on each contract, created anew
+     * @throws IOException if a run could not be read
+     */
+    public synchronized void scan(Consumer<ContractModel> action) throws IOException {
+        Map<String, ContractEntry> found = new HashMap<>(memtable);
+
+        // Entries of a run are shadowed by the entries of newer runs.
+        for (SortedRun run : runs) {
+            for (ContractEntry entry : run.readAll()) {
+                found.putIfAbsent(entry.getId(), entry);
+            }
+        }
+
+        List<ContractEntry> entries = new ArrayList<>(found.size());
+        for (ContractEntry entry : found.values()) {
+            if (!entry.isTombstone()) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(ContractEntry::getSeq));
+
+        for (ContractEntry entry : entries) {
+            action.accept(entry.getContract());
+        }
+    }
+
+    /**
+     * Replace every contract of the store.
+     * @param contracts The contracts, in registration order
+     * @throws IOException if the store could not be written
+     */
+    public synchronized void replaceAll(List<ContractModel> contracts) throws IOException {
+        List<ContractEntry> entries = new ArrayList<>(contracts.size());
+        for (int i = 0; i < contracts.size(); i++) {
+            ContractModel contract = contracts.get(i);
+            entries.add(new ContractEntry(contract.getId(), i, contract));
+        }
+        entries.sort(Comparator.comparing(ContractEntry::getId));
+
+        List<SortedRun> previous = runs;
+        List<SortedRun> replaced = new ArrayList<>();
+        if (!entries.isEmpty()) {
+            replaced.add(SortedRun.write(newRunFile(), entries));
+        }
+
+        runs = replaced;
+        nextSeq = contracts.size();
+        generation++;
+        writeManifest();
+
+        memtable.clear();
+        resetLog();
+        deleteRuns(previous);
+    }
+
+    /**
+     * Write the memtable as a new run, and empty it.
+     */
+    private void flush() throws IOException {
+        if (memtable.isEmpty()) {
+            return;
+        }
+
+        SortedRun run = SortedRun.write(newRunFile(), new ArrayList<>(memtable.values()));
+        runs.add(0, run);
+        writeManifest();
+
+        memtable.clear();
+        resetLog();
+
+        if (runs.size() > MAX_RUNS && !merging) {
+            merging = true;
+            MERGER.submit(this::merge);
+        }
+    }
+
+    /**
+     * Merge the adjacent runs holding the fewest bytes.
+     */
+    private void merge() {
+        List<SortedRun> window;
+        boolean oldest;
+        int startGeneration;
+        File target;
+
+        synchronized (this) {
+            int best = 0;
+            long bestSize = Long.MAX_VALUE;
+            for (int i = 0; i + MERGE_WIDTH <= runs.size(); i++) {
+                long size = 0;
+                for (SortedRun run : runs.subList(i, i + MERGE_WIDTH)) {
+                    size += run.getFile().length();
+                }
+                if (size < bestSize) {
+                    best = i;
+                    bestSize = size;
+                }
+            }
+
+            window = new ArrayList<>(runs.subList(best, Math.min(runs.size(), best + MERGE_WIDTH)));
+            oldest = best + window.size() == runs.size();
+            startGeneration = generation;
+            target = newRunFile();
+        }
+
+        try {
+            // Older runs first, so that newer entries win.
+            TreeMap<String, ContractEntry> merged = new TreeMap<>();
+            for (int i = window.size() - 1; i >= 0; i--) {
+                for (ContractEntry entry : window.get(i).readAll()) {
+                    merged.put(entry.getId(), entry);
+                }
+            }
+
+            List<ContractEntry> entries = new ArrayList<>(merged.size());
+            for (ContractEntry entry : merged.values()) {
+                // Nothing older can hold a removed contract once the oldest run is merged.
+                if (!oldest || !entry.isTombstone()) {
+                    entries.add(entry);
+                }
+            }
+            SortedRun run = entries.isEmpty() ? null : SortedRun.write(target, entries);
+
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    // The whole store has been replaced meanwhile.
+                    Files.deleteIfExists(target.toPath());
+                } else {
+                    int start = runs.indexOf(window.get(0));
+                    List<SortedRun> next = new ArrayList<>(runs.subList(0, start));
+                    if (run != null) {
+                        next.add(run);
+                    }
+                    next.addAll(runs.subList(start + window.size(), runs.size()));
+                    runs = next;
+                    writeManifest();
+                    deleteRuns(window);
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                problems.add("Could not merge runs of '" + directory.getName() + "': " + e.getMessage());
+            }
+            try {
+                Files.deleteIfExists(target.toPath());
+            } catch (IOException ignored) {
+                // Left for the next load, which deletes unlisted runs.
+            }
+        } finally {
+            synchronized (this) {
+                merging = false;
+                if (runs.size() > MAX_RUNS) {
+                    merging = true;
+                    MERGER.submit(this::merge);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the latest entry of a contract.
+     */
+    private ContractEntry find(String id) throws IOException {
+        ContractEntry entry = memtable.get(id);
+        if (entry != null) {
+            return entry;
+        }
+
+        for (SortedRun run : runs) {
+            entry = run.get(id);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read the manifest, open the runs, delete runs left unlisted by an interrupted merge,
+     * and replay the memtable log.
+     */
+    private void load() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory '" + directory.getName() + "'");
+        }
+
+        File manifest = new File(directory, MANIFEST);
+        Set<String> listed = new HashSet<>();
+        if (manifest.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(manifest), BUFFER_SIZE)) {
+                BinaryDecoder decoder = new BinaryDecoder(in, BUFFER_SIZE);
+                byte[] magic = new byte[MANIFEST_MAGIC.length];
+                decoder.readBytes(magic, 0, magic.length);
+                if (!Arrays.equals(magic, MANIFEST_MAGIC) || decoder.readByte() != VERSION) {
+                    throw new IOException("'" + manifest.getName() + "' is not a contract store manifest");
+                }
+
+                nextSeq = decoder.readVarLong();
+                nextRun = decoder.readVarLong();
+                for (int i = decoder.readVarInt(); i > 0; i--) {
+                    String name = decoder.readString();
+                    runs.add(SortedRun.open(new File(directory, name)));
+                    listed.add(name);
+                }
+            }
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(RUN_EXTENSION) && !listed.contains(f.getName())) {
+                    Files.deleteIfExists(f.toPath());
+                }
+            }
+        }
+
+        replayLog();
+    }
+
+    private void writeManifest() throws IOException {
+        Path target = new File(directory, MANIFEST).toPath();
+        Path temp = new File(directory, MANIFEST + ".tmp").toPath();
+
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+            BinaryEncoder encoder = new BinaryEncoder(out, BUFFER_SIZE);
+            encoder.writeBytes(MANIFEST_MAGIC, 0, MANIFEST_MAGIC.length);
+            encoder.writeByte(VERSION);
+            encoder.writeVarLong(nextSeq);
+            encoder.writeVarLong(nextRun);
+            encoder.writeVarInt(runs.size());
+            for (SortedRun run : runs) {
+                encoder.writeString(run.getFile().getName());
+            }
+            encoder.flush();
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private File newRunFile() {
+        return new File(directory, "run-" + nextRun++ + RUN_EXTENSION);
+    }
+
+    private void deleteRuns(List<SortedRun> deleted) {
+        for (SortedRun run : deleted) {
+            if (!run.getFile().delete()) {
+                problems.add("Could not delete run '" + run.getFile().getName() + "'");
+            }
+        }
+    }
+
+    /**
+     * Append entries to the memtable log, as a single frame forced to disk.
+     * A frame is its length and a CRC32 of its content (4 bytes each), then its content: an entry count, then for
+     * each entry its ID, its sequence number and a contract with its own dictionary, if any.
+     */
+    private void appendToLog(List<ContractEntry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 128);
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 4096);
+        encoder.writeVarInt(entries.size());
+        for (ContractEntry entry : entries) {
+            encoder.writeString(entry.getId());
+            encoder.writeVarLong(entry.getSeq());
+
+            ContractModel contract = entry.getContract();
+            encoder.writeByte(contract == null ? 0 : 1);
+            if (contract != null) {
+                StringDictionary dictionary = new StringDictionary();
+                BinaryModelWriter.addStrings(dictionary, contract);
+                dictionary.write(encoder);
+                new BinaryModelWriter(encoder, dictionary).writeContract(contract);
+            }
+        }
+        encoder.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+
+        File logFile = new File(directory, LOG);
+        try (FileChannel channel = FileChannel.open(logFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+            header.putInt(bytes.size()).putInt((int) crc.getValue()).flip();
+            channel.write(header);
+            bytes.writeTo(Channels.newOutputStream(channel));
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Replay the memtable log, cutting off a torn frame at the end.
+     */
+    private void replayLog() throws IOException {
+        File logFile = new File(directory, LOG);
+        if (!logFile.exists()) {
+            return;
+        }
+
+        byte[] content = Files.readAllBytes(logFile.toPath());
+        ByteBuffer log = ByteBuffer.wrap(content);
+        CRC32 crc = new CRC32();
+
+        while (log.remaining() >= FRAME_HEADER_SIZE) {
+            int start = log.position();
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length < 0 || length > log.remaining()) {
+                log.position(start);
+                break;
+            }
+
+            crc.reset();
+            crc.update(content, log.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                log.position(start);
+                break;
+            }
+
+            BinaryDecoder decoder = new BinaryDecoder(
+                    new ByteArrayInputStream(content, log.position(), length), length);
+            for (int i = decoder.readVarInt(); i > 0; i--) {
+                String id = decoder.readString();
+                long seq = decoder.readVarLong();
+                ContractModel contract = null;
+                if (decoder.readByte() != 0) {
+                    contract = new BinaryModelReader(decoder, StringDictionary.read(decoder)).readContract();
+                }
+                memtable.put(id, new ContractEntry(id, seq, contract));
+                nextSeq = Math.max(nextSeq, seq + 1);
+            }
+            log.position(log.position() + length);
+        }
+
+        // Cut off a frame torn by a crash.
+        long validLength = log.position();
+        if (validLength < content.length) {
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    private void resetLog() throws IOException {
+        Files.deleteIfExists(new File(directory, LOG).toPath());
+    }
+}
@@ -0,0 +1,326 @@
+package org.krytonspace.carrent.database.lsm;
+
+import org.krytonspace.carrent.database.binary.*;
+import org.krytonspace.carrent.models.ContractModel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable file of contract entries sorted by ID.
+ *
+ * Entries are stored in blocks, each one with its own string dictionary, so that a single
+ * block has to be read to find an entry. The footer holds a bloom filter of the IDs,
+ * which spares reading runs which do not hold an ID, and the first ID of each block.
+ *
+ * Layout of a run:
+ * <ul>
+ *     <li>the magic bytes "CRRN", followed by a format version byte</li>
+ *     <li>the blocks: an entry count, the string dictionary, then for each entry its ID, its sequence
+ *     number, the size of its record (0 for a tombstone) and the record</li>
+ *     <li>the footer: the entry count, a period which is always written as unknown (three zero
+ *     fields, left from the first version of the format), the bloom filter, and for each block its first ID, offset and size</li>
+ *     <li>the footer offset (8 bytes), followed by the magic bytes again</li>
+ * </ul>
+ */
+public class SortedRun {
+
+    /**
+     * Number of entries per block.
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private static final byte[] MAGIC = "CRRN".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int TRAILER_SIZE = 8 + 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final int count;
+    private final BloomFilter filter;
+    private final String[] firstIds;
+    private final long[] offsets;
+    private final int[] sizes;
+
+    private SortedRun(File file, int count, BloomFilter filter, String[] firstIds, long[] offsets, int[] sizes) {
+        this.file = file;
+        this.count = count;
+        this.filter = filter;
+        this.firstIds = firstIds;
+        this.offsets = offsets;
+        this.sizes = sizes;
+    }
+
+    /**
+     * Write a run, forced to disk.
+     * @param file The run file, which must not exist
+     * @param entries The entries, sorted by ID
+     * @return The run
+     * @throws IOException if the run could not be written
+     */
+    public static SortedRun write(File file, List<ContractEntry> entries) throws IOException {
+        int blockCount = (entries.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        String[] firstIds = new String[blockCount];
+        long[] offsets = new long[blockCount];
+        int[] sizes = new int[blockCount];
+        BloomFilter filter = new BloomFilter(entries.size());
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+            out.write(MAGIC);
+            out.write(VERSION);
+            long position = MAGIC.length + 1;
+
+            for (int b = 0; b < blockCount; b++) {
+                List<ContractEntry> block = entries.subList(b * BLOCK_SIZE,
+                        Math.min(entries.size(), (b + 1) * BLOCK_SIZE));
+
+                // Contracts are decoded once, for the dictionary and the records.
+                List<ContractModel> contracts = new ArrayList<>(block.size());
+                StringDictionary dictionary = new StringDictionary();
+                for (ContractEntry entry : block) {
+                    ContractModel contract = entry.getContract();
+                    contracts.add(contract);
+                    filter.add(entry.getId());
+                    if (contract == null) {
+                        continue;
+                    }
+
+                    BinaryModelWriter.addStrings(dictionary, contract);
+                }
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE * 64);
+                BinaryEncoder encoder = new BinaryEncoder(bytes, BLOCK_SIZE * 64);
+                encoder.writeVarInt(block.size());
+                dictionary.write(encoder);
+                for (int i = 0; i < block.size(); i++) {
+                    ContractEntry entry = block.get(i);
+                    encoder.writeString(entry.getId());
+                    encoder.writeVarLong(entry.getSeq());
+
+                    if (contracts.get(i) == null) {
+                        encoder.writeVarInt(0);
+                    } else {
+                        byte[] record = encodeRecord(contracts.get(i), dictionary);
+                        encoder.writeVarInt(record.length);
+                        encoder.writeBytes(record, 0, record.length);
+                    }
+                }
+                encoder.flush();
+
+                firstIds[b] = block.get(0).getId();
+                offsets[b] = position;
+                sizes[b] = bytes.size();
+                bytes.writeTo(out);
+                position += bytes.size();
+            }
+
+            ByteArrayOutputStream footer = new ByteArrayOutputStream();
+            BinaryEncoder encoder = new BinaryEncoder(footer, BUFFER_SIZE);
+            encoder.writeVarInt(entries.size());
+            encoder.writeByte(0);
+            encoder.writeVarLong(0);
+            encoder.writeVarLong(0);
+            filter.write(encoder);
+            encoder.writeVarInt(blockCount);
+            for (int b = 0; b < blockCount; b++) {
+                encoder.writeString(firstIds[b]);
+                encoder.writeVarLong(offsets[b]);
+                encoder.writeVarInt(sizes[b]);
+            }
+            encoder.flush();
+            footer.writeTo(out);
+
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            trailer.putLong(position);
+            trailer.put(MAGIC);
+            out.write(trailer.array());
+            out.flush();
+            channel.force(true);
+        }
+
+        return new SortedRun(file, entries.size(), filter, firstIds, offsets, sizes);
+    }
+
+    /**
+     * Open a run, reading its footer.
+     * @param file The run file
+     * @return The run
+     * @throws IOException if the file is not a valid run
+     */
+    public static SortedRun open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = read(channel, 0, MAGIC.length + 1);
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("'" + file.getName() + "' is not a contract run");
+            }
+            if (header.get() != VERSION) {
+                throw new IOException("Unsupported contract run version");
+            }
+
+            long footerOffset = trailer.getLong();
+            trailer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || footerOffset < 0 || footerOffset > size - TRAILER_SIZE) {
+                throw new IOException("'" + file.getName() + "' is truncated");
+            }
+
+            ByteBuffer footer = read(channel, footerOffset, (int) (size - TRAILER_SIZE - footerOffset));
+            BinaryDecoder decoder = new BinaryDecoder(
+                    new ByteArrayInputStream(footer.array(), 0, footer.limit()), BUFFER_SIZE);
+            int count = decoder.readVarInt();
+            // The period, unused.
+            decoder.readByte();
+            decoder.readVarLong();
+            decoder.readVarLong();
+            BloomFilter filter = BloomFilter.read(decoder);
+
+            int blockCount = decoder.readVarInt();
+            if (blockCount < 0 || blockCount > count) {
+                throw new IOException("'" + file.getName() + "' has a malformed footer");
+            }
+            String[] firstIds = new String[blockCount];
+            long[] offsets = new long[blockCount];
+            int[] sizes = new int[blockCount];
+            for (int b = 0; b < blockCount; b++) {
+                firstIds[b] = decoder.readString();
+                offsets[b] = decoder.readVarLong();
+                sizes[b] = decoder.readVarInt();
+            }
+
+            return new SortedRun(file, count, filter, firstIds, offsets, sizes);
+        }
+    }
+
+    /**
+     * Getter
+     * @return The run file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Getter
+     * @return The number of entries
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Find an entry.
+     * @param id The contract ID
+     * @return The entry, or null if the run does not hold it
+     * @throws IOException if the run could not be read
+     */
+    public ContractEntry get(String id) throws IOException {
+        if (!filter.mightContain(id)) {
+            return null;
+        }
+
+        int b = Arrays.binarySearch(firstIds, id);
+        if (b < 0) {
+            b = -b - 2;
+        }
+        if (b < 0) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (ContractEntry entry : readBlock(channel, b)) {
+                if (entry.getId().equals(id)) {
+                    return entry;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read every entry.
+     * @return The entries, sorted by ID
+     * @throws IOException if the run could not be read
+     */
+    public List<ContractEntry> readAll() throws IOException {
+        List<ContractEntry> entries = new ArrayList<>(count);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int b = 0; b < offsets.length; b++) {
+                entries.addAll(readBlock(channel, b));
+            }
+        }
+
+        return entries;
+    }
+
+    private List<ContractEntry> readBlock(FileChannel channel, int b) throws IOException {
+        ByteBuffer block = read(channel, offsets[b], sizes[b]);
+        BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(block.array(), 0, block.limit()),
+                block.limit());
+
+        int size = decoder.readVarInt();
+        if (size < 0 || size > BLOCK_SIZE) {
+            throw new IOException("'" + file.getName() + "' has a malformed block");
+        }
+        String[] strings = StringDictionary.read(decoder);
+
+        List<ContractEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = decoder.readString();
+            long seq = decoder.readVarLong();
+            int length = decoder.readVarInt();
+            if (length < 0 || length > sizes[b]) {
+                throw new IOException("'" + file.getName() + "' has a malformed entry");
+            }
+
+            byte[] record = null;
+            if (length > 0) {
+                record = new byte[length];
+                decoder.readBytes(record, 0, length);
+            }
+            entries.add(new ContractEntry(id, seq, record, strings));
+        }
+
+        return Collections.unmodifiableList(entries);
+    }
+
+    private static byte[] encodeRecord(ContractModel contract, StringDictionary dictionary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 256);
+        new BinaryModelWriter(encoder, dictionary).writeContract(contract);
+        encoder.flush();
+
+        return bytes.toByteArray();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || length < 0 || position + length > channel.size()) {
+            throw new IOException("Unexpected end of file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+}
@@ -0,0 +1,435 @@
+package org.krytonspace.carrent.database.paged;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * B+tree stored in the pages of a paged file, mapping string keys (model IDs) to long values
+ * (record positions).
+ *
+ * Each node is a page. Leaves hold keys with their values, in order, and a link to the next leaf.
+ * Internal nodes hold separator keys and one more child than keys: the keys of the child
+ * following a separator are greater or equal to it. Nodes which outgrow their page are split
+ * in two, and removals never merge nodes: underfull nodes only waste space until the file
+ * is written anew.
+ *
+ * Layout of a node: its type, the key count (2 bytes), the next leaf or first child page (4 bytes),
+ * then for each key its UTF-8 length (2 bytes), its bytes and its value (8 bytes) or child page (4 bytes).
+ */
+public class BPlusTree {
+
+    /**
+     * Maximum size of a key, in bytes, so that a page always holds a few of them.
+     */
+    public static final int MAX_KEY_SIZE = 512;
+
+    /**
+     * Type byte of leaf pages.
+     */
+    public static final int LEAF = 1;
+    /**
+     * Type byte of internal pages.
+     */
+    public static final int INTERNAL = 2;
+
+    private static final int HEADER_SIZE = 1 + 2 + 4;
+
+    private final BufferPool pool;
+    private int root;
+
+    /**
+     * Constructor.
+     * @param pool The pages holding the tree
+     * @param root The root page
+     */
+    public BPlusTree(BufferPool pool, int root) {
+        this.pool = pool;
+        this.root = root;
+    }
+
+    /**
+     * Create an empty tree.
+     * @param pool The pages to hold the tree
+     * @return The tree
+     * @throws IOException if the root page could not be allocated
+     */
+    public static BPlusTree create(BufferPool pool) throws IOException {
+        BPlusTree tree = new BPlusTree(pool, -1);
+        tree.root = tree.allocate(new Node(true));
+
+        return tree;
+    }
+
+    /**
+     * Getter
+     * @return The root page, which changes when the root is split
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * Look a key up.
+     * @param key The key
+     * @return The value of the key, or -1 if it is not in the tree
+     * @throws IOException if a page could not be read
+     */
+    public long get(String key) throws IOException {
+        Node node = read(root);
+        while (!node.leaf) {
+            node = read(node.children.get(childIndex(node, key)));
+        }
+
+        int index = Collections.binarySearch(node.keys, key);
+        return index >= 0 ? node.values.get(index) : -1;
+    }
+
+    /**
+     * Set the value of a key, adding it if needed.
+     * @param key The key
+     * @param value The value, which must not be negative
+     * @throws IOException if a page could not be read or written, or the key is too long
+     */
+    public void put(String key, long value) throws IOException {
+        if (key.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_SIZE) {
+            throw new IOException("Key '" + key + "' is too long");
+        }
+
+        Split split = insert(root, key, value);
+        if (split != null) {
+            Node node = new Node(false);
+            node.children.add(root);
+            node.keys.add(split.key);
+            node.children.add(split.page);
+            root = allocate(node);
+        }
+    }
+
+    /**
+     * Remove a key.
+     * @param key The key
+     * @return The value the key had, or -1 if it was not in the tree
+     * @throws IOException if a page could not be read or written
+     */
+    public long remove(String key) throws IOException {
+        int page = root;
+        Node node = read(page);
+        while (!node.leaf) {
+            page = node.children.get(childIndex(node, key));
+            node = read(page);
+        }
+
+        int index = Collections.binarySearch(node.keys, key);
+        if (index < 0) {
+            return -1;
+        }
+
+        node.keys.remove(index);
+        long value = node.values.remove(index);
+        write(page, node);
+
+        return value;
+    }
+
+    /**
+     * Build the pages of a tree holding sorted keys, leaves first and root last.
+     * Nodes are filled up to their page size.
+     * @param keys The keys, sorted
+     * @param values The value of each key
+     * @param firstPage The page number of the first page built
+     * @return The pages of the tree, to be stored from firstPage on
+     * @throws IOException if a key is too long
+     */
+    public static List<ByteBuffer> build(List<String> keys, List<Long> values, int firstPage) throws IOException {
+        List<ByteBuffer> pages = new ArrayList<>();
+
+        // Leaves, each one linked to the next.
+        List<Node> level = new ArrayList<>();
+        List<String> firstKeys = new ArrayList<>();
+        Node leaf = new Node(true);
+        int size = HEADER_SIZE;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            int entrySize = entrySize(key, true);
+            if (entrySize - 10 > MAX_KEY_SIZE) {
+                throw new IOException("Key '" + key + "' is too long");
+            }
+
+            if (size + entrySize > PagedFile.PAGE_SIZE) {
+                level.add(leaf);
+                firstKeys.add(leaf.keys.get(0));
+                leaf = new Node(true);
+                size = HEADER_SIZE;
+            }
+            leaf.keys.add(key);
+            leaf.values.add(values.get(i));
+            size += entrySize;
+        }
+        level.add(leaf);
+        firstKeys.add(leaf.keys.isEmpty() ? "" : leaf.keys.get(0));
+
+        int levelStart = firstPage;
+        for (int i = 0; i < level.size(); i++) {
+            level.get(i).next = i + 1 < level.size() ? levelStart + i + 1 : -1;
+        }
+
+        // Internal levels, up to a single root.
+        while (level.size() > 1) {
+            for (Node node : level) {
+                pages.add(node.toPage());
+            }
+
+            List<Node> parents = new ArrayList<>();
+            List<String> parentKeys = new ArrayList<>();
+            Node parent = null;
+            for (int i = 0; i < level.size(); i++) {
+                int child = levelStart + i;
+                int entrySize = entrySize(firstKeys.get(i), false);
+                if (parent == null || size + entrySize > PagedFile.PAGE_SIZE) {
+                    parent = new Node(false);
+                    parent.children.add(child);
+                    parents.add(parent);
+                    parentKeys.add(firstKeys.get(i));
+                    size = HEADER_SIZE;
+                    continue;
+                }
+
+                parent.keys.add(firstKeys.get(i));
+                parent.children.add(child);
+                size += entrySize;
+            }
+
+            levelStart += level.size();
+            level = parents;
+            firstKeys = parentKeys;
+        }
+        pages.add(level.get(0).toPage());
+
+        return pages;
+    }
+
+    /**
+     * Run an action on each value of a leaf page, e.g. when the file is read sequentially.
+     * @param page The page content
+     * @param action The action to run
+     * @throws IOException if the page is not a leaf
+     */
+    public static void forEachValue(ByteBuffer page, LongConsumer action) throws IOException {
+        Node node = Node.read(page);
+        if (!node.leaf) {
+            throw new IOException("Not a leaf page");
+        }
+
+        for (long value : node.values) {
+            action.accept(value);
+        }
+    }
+
+    /**
+     * Insert a key in a subtree.
+     * @return The new right sibling of the subtree root if it has been split, null otherwise
+     */
+    private Split insert(int page, String key, long value) throws IOException {
+        Node node = read(page);
+
+        if (node.leaf) {
+            int index = Collections.binarySearch(node.keys, key);
+            if (index >= 0) {
+                node.values.set(index, value);
+            } else {
+                node.keys.add(-index - 1, key);
+                node.values.add(-index - 1, value);
+            }
+        } else {
+            int index = childIndex(node, key);
+            Split split = insert(node.children.get(index), key, value);
+            if (split == null) {
+                return null;
+            }
+            node.keys.add(index, split.key);
+            node.children.add(index + 1, split.page);
+        }
+
+        if (node.size() <= PagedFile.PAGE_SIZE) {
+            write(page, node);
+            return null;
+        }
+
+        // Move the upper half to a new page.
+        int middle = node.keys.size() / 2;
+        Node right = new Node(node.leaf);
+        String separator;
+        if (node.leaf) {
+            right.keys.addAll(node.keys.subList(middle, node.keys.size()));
+            right.values.addAll(node.values.subList(middle, node.values.size()));
+            node.keys.subList(middle, node.keys.size()).clear();
+            node.values.subList(middle, node.values.size()).clear();
+            separator = right.keys.get(0);
+            right.next = node.next;
+        } else {
+            // The middle key moves up.
+            separator = node.keys.get(middle);
+            right.keys.addAll(node.keys.subList(middle + 1, node.keys.size()));
+            right.children.addAll(node.children.subList(middle + 1, node.children.size()));
+            node.keys.subList(middle, node.keys.size()).clear();
+            node.children.subList(middle + 1, node.children.size()).clear();
+        }
+
+        int rightPage = allocate(right);
+        if (node.leaf) {
+            node.next = rightPage;
+        }
+        write(page, node);
+
+        return new Split(separator, rightPage);
+    }
+
+    private static int entrySize(String key, boolean leaf) {
+        return 2 + key.getBytes(StandardCharsets.UTF_8).length + (leaf ? 8 : 4);
+    }
+
+    private static int childIndex(Node node, String key) {
+        int index = Collections.binarySearch(node.keys, key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private Node read(int page) throws IOException {
+        ByteBuffer data = pool.pin(page);
+        try {
+            return Node.read(data);
+        } finally {
+            pool.unpin(page, false);
+        }
+    }
+
+    private void write(int page, Node node) throws IOException {
+        ByteBuffer data = pool.pin(page);
+        try {
+            node.write(data);
+        } finally {
+            pool.unpin(page, true);
+        }
+    }
+
+    private int allocate(Node node) throws IOException {
+        int page = pool.allocate();
+        try {
+            write(page, node);
+        } finally {
+            pool.unpin(page, true);
+        }
+
+        return page;
+    }
+
+    /**
+     * A node, decoded from its page.
+     */
+    private static class Node {
+        private final boolean leaf;
+        private final List<String> keys = new ArrayList<>();
+        private final List<Long> values = new ArrayList<>();
+        private final List<Integer> children = new ArrayList<>();
+        private int next = -1;
+
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        private static Node read(ByteBuffer data) throws IOException {
+            int type = data.get(0);
+            if (type != LEAF && type != INTERNAL) {
+                throw new IOException("Not a tree page");
+            }
+
+            Node node = new Node(type == LEAF);
+            int count = data.getShort(1) & 0xFFFF;
+            int link = data.getInt(3);
+            if (node.leaf) {
+                node.next = link;
+            } else {
+                node.children.add(link);
+            }
+
+            int position = HEADER_SIZE;
+            for (int i = 0; i < count; i++) {
+                int length = data.getShort(position) & 0xFFFF;
+                byte[] key = new byte[length];
+                ByteBuffer source = data.duplicate();
+                source.position(position + 2);
+                source.get(key);
+                node.keys.add(new String(key, StandardCharsets.UTF_8));
+                position += 2 + length;
+
+                if (node.leaf) {
+                    node.values.add(data.getLong(position));
+                    position += 8;
+                } else {
+                    node.children.add(data.getInt(position));
+                    position += 4;
+                }
+            }
+
+            return node;
+        }
+
+        private void write(ByteBuffer data) {
+            ByteBuffer target = data.duplicate();
+            target.clear();
+            target.put((byte) (leaf ? LEAF : INTERNAL));
+            target.putShort((short) keys.size());
+            target.putInt(leaf ? next : children.get(0));
+
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] key = keys.get(i).getBytes(StandardCharsets.UTF_8);
+                target.putShort((short) key.length);
+                target.put(key);
+                if (leaf) {
+                    target.putLong(values.get(i));
+                } else {
+                    target.putInt(children.get(i + 1));
+                }
+            }
+
+            while (target.hasRemaining()) {
+                target.put((byte) 0);
+            }
+        }
+
+        private ByteBuffer toPage() {
+            ByteBuffer page = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+            write(page);
+            return page;
+        }
+
+        /**
+         * Compute the size of the node in a page.
+         */
+        private int size() {
+            int size = HEADER_SIZE;
+            for (String key : keys) {
+                size += entrySize(key, leaf);
+            }
+
+            return size;
+        }
+    }
+
+    /**
+     * The result of a node split.
+     */
+    private static class Split {
+        private final String key;
+        private final int page;
+
+        private Split(String key, int page) {
+            this.key = key;
+            this.page = page;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.krytonspace.carrent.database.paged;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the pages of a paged file.
+ *
+ * Pages are pinned while used, and unpinned once done with, telling whether they were changed.
+ * When a page has to be loaded and every frame is taken, an unpinned page is evicted with the
+ * clock algorithm: frames are swept in a circle, and a page is evicted once the sweep finds it
+ * has not been used since the last pass. Changed pages are written back when evicted or flushed.
+ */
+public class BufferPool {
+
+    /**
+     * Default number of frames, i.e. 4 MB of pages.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final PagedFile file;
+    private final Frame[] frames;
+
+    /**
+     * Frame holding each cached page.
+     */
+    private final Map<Integer, Frame> pages = new HashMap<>();
+
+    private int hand;
+
+    /**
+     * Constructor.
+     * @param file The paged file
+     * @param capacity The maximum number of pages in memory
+     */
+    public BufferPool(PagedFile file, int capacity) {
+        this.file = file;
+        this.frames = new Frame[capacity];
+        this.hand = 0;
+    }
+
+    /**
+     * Getter
+     * @return The paged file
+     */
+    public PagedFile getFile() {
+        return file;
+    }
+
+    /**
+     * Pin a page in memory, loading it if needed.
+     * @param page The page number
+     * @return The page content, which stays valid until the page is unpinned
+     * @throws IOException if the page could not be loaded, or every page is pinned
+     */
+    public ByteBuffer pin(int page) throws IOException {
+        Frame frame = pages.get(page);
+        if (frame == null) {
+            frame = victim();
+            file.read(page, frame.data);
+            frame.page = page;
+            pages.put(page, frame);
+        }
+
+        frame.pins++;
+        frame.referenced = true;
+        return frame.data.duplicate();
+    }
+
+    /**
+     * Add a page at the end of the file, and pin it. The page is filled with zeros.
+     * @return The number of the new page
+     * @throws IOException if every page is pinned
+     */
+    public int allocate() throws IOException {
+        Frame frame = victim();
+        frame.page = file.allocate();
+        frame.data.clear();
+        while (frame.data.hasRemaining()) {
+            frame.data.put((byte) 0);
+        }
+        frame.data.clear();
+        frame.pins = 1;
+        frame.referenced = true;
+        frame.dirty = true;
+        pages.put(frame.page, frame);
+
+        return frame.page;
+    }
+
+    /**
+     * Unpin a page.
+     * @param page The page number
+     * @param dirty true if the page content has been changed
+     */
+    public void unpin(int page, boolean dirty) {
+        Frame frame = pages.get(page);
+        if (frame == null || frame.pins == 0) {
+            throw new IllegalStateException("Page " + page + " is not pinned");
+        }
+
+        frame.pins--;
+        frame.dirty |= dirty;
+    }
+
+    /**
+     * Write every changed page back to the paged file.
+     * @throws IOException if a page could not be written
+     */
+    public void flush() throws IOException {
+        for (Frame frame : frames) {
+            if (frame != null && frame.dirty) {
+                file.write(frame.page, frame.data);
+                frame.dirty = false;
+            }
+        }
+    }
+
+    /**
+     * Forget every page, after the changes to the paged file have been dropped.
+     */
+    public void clear() {
+        pages.clear();
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = null;
+        }
+    }
+
+    /**
+     * Find a free frame, evicting a page if needed.
+     */
+    private Frame victim() throws IOException {
+        // Two full passes: the first one may only clear reference bits.
+        for (int i = 0; i < 2 * frames.length; i++) {
+            int index = hand;
+            hand = (hand + 1) % frames.length;
+
+            Frame frame = frames[index];
+            if (frame == null) {
+                frame = new Frame();
+                frames[index] = frame;
+                return frame;
+            }
+            if (frame.pins > 0) {
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+
+            if (frame.dirty) {
+                file.write(frame.page, frame.data);
+                frame.dirty = false;
+            }
+            pages.remove(frame.page);
+            return frame;
+        }
+
+        throw new IOException("Every page of the buffer pool is pinned");
+    }
+
+    /**
+     * A slot of the pool.
+     */
+    private static class Frame {
+        private final ByteBuffer data = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        private int page = -1;
+        private int pins;
+        private boolean referenced;
+        private boolean dirty;
+    }
+}
@@ -0,0 +1,302 @@
+package org.krytonspace.carrent.database.paged;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * File made of fixed-size pages, updated through a write-ahead log.
+ *
+ * Pages written are not written to the file right away: they are appended to the log,
+ * a file next to the paged file with a ".wal" suffix, and read back from it until committed.
+ * Committing appends a commit record to the log and forces it to disk, then copies the pages
+ * to the file, and empties the log. Opening a file whose log holds a commit record, left by a
+ * crash while copying pages, copies them again; a log without commit record is dropped.
+ * The file thus always holds the pages of the last commit.
+ *
+ * Each log record is a page number, the page content and a CRC32 of both.
+ * The commit record has a page number of -1 and holds the page count.
+ */
+public class PagedFile implements Closeable {
+
+    /**
+     * Size of a page, in bytes.
+     */
+    public static final int PAGE_SIZE = 4096;
+
+    private static final int COMMIT = -1;
+    private static final int RECORD_SIZE = 4 + PAGE_SIZE + 4;
+
+    private final File file;
+    private final File logFile;
+    private final FileChannel channel;
+    private FileChannel log;
+
+    /**
+     * Position in the log of the last image of each page written since the last commit.
+     */
+    private final Map<Integer, Long> written = new HashMap<>();
+
+    private int pageCount;
+
+    /**
+     * Open a paged file, creating it if needed, and recover it from its log.
+     * @param file The file
+     * @throws IOException if the file could not be opened or recovered
+     */
+    public PagedFile(File file) throws IOException {
+        this.file = file;
+        this.logFile = new File(file.getAbsolutePath() + ".wal");
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            recover(channel, logFile);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        this.pageCount = (int) (channel.size() / PAGE_SIZE);
+    }
+
+    /**
+     * Bring a paged file up to date with its log, if it holds a commit, and delete the log.
+     * @param file The file
+     * @throws IOException if the file could not be recovered
+     */
+    public static void recover(File file) throws IOException {
+        File logFile = new File(file.getAbsolutePath() + ".wal");
+        if (!logFile.exists()) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            recover(channel, logFile);
+        }
+    }
+
+    private static void recover(FileChannel channel, File logFile) throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+
+        // Last image of each page, up to the last commit.
+        Map<Integer, Long> committed = new TreeMap<>();
+        Map<Integer, Long> pending = new HashMap<>();
+        long committedPageCount = -1;
+
+        try (FileChannel log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            CRC32 crc = new CRC32();
+
+            for (long position = 0; position + RECORD_SIZE <= log.size(); position += RECORD_SIZE) {
+                record.clear();
+                readFully(log, record, position);
+                crc.reset();
+                crc.update(record.array(), 0, RECORD_SIZE - 4);
+                if ((int) crc.getValue() != record.getInt(RECORD_SIZE - 4)) {
+                    // Torn record: nothing after it was committed.
+                    break;
+                }
+
+                int page = record.getInt(0);
+                if (page == COMMIT) {
+                    committed.putAll(pending);
+                    pending.clear();
+                    committedPageCount = record.getLong(4);
+                } else {
+                    pending.put(page, position);
+                }
+            }
+
+            if (committedPageCount >= 0) {
+                for (Map.Entry<Integer, Long> image : committed.entrySet()) {
+                    copy(log, image.getValue(), channel, image.getKey(), record);
+                }
+                channel.truncate(committedPageCount * PAGE_SIZE);
+                channel.force(true);
+            }
+        }
+
+        Files.delete(logFile.toPath());
+    }
+
+    /**
+     * Getter
+     * @return The number of pages, including pages allocated since the last commit
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Add a page at the end of the file. Its content is undefined until written.
+     * @return The number of the new page
+     */
+    public int allocate() {
+        return pageCount++;
+    }
+
+    /**
+     * Read a page, as last written.
+     * @param page The page number
+     * @param buffer A buffer of PAGE_SIZE bytes to read into
+     * @throws IOException if the page could not be read
+     */
+    public void read(int page, ByteBuffer buffer) throws IOException {
+        if (page < 0 || page >= pageCount) {
+            throw new IOException("Page " + page + " is out of '" + file.getName() + "'");
+        }
+
+        buffer.clear();
+        Long position = written.get(page);
+        if (position != null) {
+            readFully(log, buffer, position + 4);
+        } else if ((long) page * PAGE_SIZE < channel.size()) {
+            readFully(channel, buffer, (long) page * PAGE_SIZE);
+        } else {
+            // Allocated, never written.
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) 0);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Write a page. The page is only written to the file on commit.
+     * @param page The page number
+     * @param buffer The PAGE_SIZE bytes of the page
+     * @throws IOException if the page could not be written to the log
+     */
+    public void write(int page, ByteBuffer buffer) throws IOException {
+        if (page < 0 || page >= pageCount) {
+            throw new IOException("Page " + page + " is out of '" + file.getName() + "'");
+        }
+
+        long position = appendToLog(page, buffer);
+        written.put(page, position);
+    }
+
+    /**
+     * Make the pages written since the last commit part of the file, at once.
+     * @throws IOException if the pages could not be committed
+     */
+    public void commit() throws IOException {
+        if (written.isEmpty() && pageCount == channel.size() / PAGE_SIZE) {
+            return;
+        }
+
+        ByteBuffer commit = ByteBuffer.allocate(PAGE_SIZE);
+        commit.putLong(0, pageCount);
+        appendToLog(COMMIT, commit);
+        log.force(false);
+
+        // From now on, a crash leaves a log which brings the file to the same state.
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        for (Map.Entry<Integer, Long> image : new TreeMap<>(written).entrySet()) {
+            copy(log, image.getValue(), channel, image.getKey(), record);
+        }
+        if (channel.size() < (long) pageCount * PAGE_SIZE) {
+            // Allocated pages never written are left empty.
+            channel.write(ByteBuffer.allocate(1), (long) pageCount * PAGE_SIZE - 1);
+        }
+        channel.force(true);
+
+        written.clear();
+        log.close();
+        log = null;
+        Files.delete(logFile.toPath());
+    }
+
+    /**
+     * Drop the pages written since the last commit.
+     * @throws IOException if the log could not be deleted
+     */
+    public void rollback() throws IOException {
+        written.clear();
+        pageCount = (int) (channel.size() / PAGE_SIZE);
+        if (log != null) {
+            log.close();
+            log = null;
+            Files.delete(logFile.toPath());
+        }
+    }
+
+    /**
+     * Close the file, dropping the pages written since the last commit.
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            rollback();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private long appendToLog(int page, ByteBuffer buffer) throws IOException {
+        if (log == null) {
+            log = FileChannel.open(logFile.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(page);
+        ByteBuffer content = buffer.duplicate();
+        content.clear();
+        record.put(content);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        long position = log.size();
+        while (record.hasRemaining()) {
+            log.write(record, position + record.position());
+        }
+
+        return position;
+    }
+
+    /**
+     * Copy a page image from the log to the file.
+     */
+    private static void copy(FileChannel log, long position, FileChannel channel, int page, ByteBuffer record)
+            throws IOException {
+        record.clear();
+        record.limit(4 + PAGE_SIZE);
+        readFully(log, record, position);
+        record.position(4);
+
+        long target = (long) page * PAGE_SIZE;
+        while (record.hasRemaining()) {
+            channel.write(record, target + record.position() - 4);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+}
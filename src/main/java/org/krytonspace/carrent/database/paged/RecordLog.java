@@ -0,0 +1,178 @@
+package org.krytonspace.carrent.database.paged;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Records stored one after the other in the data pages of a paged file.
+ *
+ * Records are only ever appended, to the last data page or to a new one when it is full:
+ * a changed record is appended anew, and the space of the previous version is left unused
+ * until the file is written anew. A record is located by its position in the file,
+ * i.e. its page number times the page size plus its offset in the page.
+ *
+ * Layout of a data page: its type, the number of bytes used (2 bytes, header included),
+ * then each record as its length (2 bytes) followed by its bytes.
+ */
+public class RecordLog {
+
+    /**
+     * Type byte of data pages.
+     */
+    public static final int DATA = 3;
+
+    /**
+     * Size of the header of a data page.
+     */
+    public static final int HEADER_SIZE = 1 + 2;
+
+    /**
+     * Maximum size of a record, which must fit in a single page.
+     */
+    public static final int MAX_RECORD_SIZE = PagedFile.PAGE_SIZE - HEADER_SIZE - 2;
+
+    private final BufferPool pool;
+
+    /**
+     * The data page records are appended to, or -1 if there is none yet.
+     */
+    private int tail;
+
+    /**
+     * Constructor.
+     * @param pool The pages holding the records
+     * @param tail The last data page, or -1 if there is none yet
+     */
+    public RecordLog(BufferPool pool, int tail) {
+        this.pool = pool;
+        this.tail = tail;
+    }
+
+    /**
+     * Getter
+     * @return The last data page, or -1 if there is none yet
+     */
+    public int getTail() {
+        return tail;
+    }
+
+    /**
+     * Append a record.
+     * @param record The record bytes
+     * @return The position of the record
+     * @throws IOException if the record is too large, or a page could not be read or written
+     */
+    public long append(byte[] record) throws IOException {
+        if (record.length > MAX_RECORD_SIZE) {
+            throw new IOException("Record of " + record.length + " bytes is too large for a page");
+        }
+
+        if (tail >= 0) {
+            ByteBuffer page = pool.pin(tail);
+            int used = page.getShort(1) & 0xFFFF;
+            boolean fits = used + 2 + record.length <= PagedFile.PAGE_SIZE;
+            if (fits) {
+                write(page, used, record);
+            }
+            pool.unpin(tail, fits);
+
+            if (fits) {
+                return (long) tail * PagedFile.PAGE_SIZE + used;
+            }
+        }
+
+        // The new page comes pinned once, and once more to get its content.
+        tail = pool.allocate();
+        ByteBuffer page = pool.pin(tail);
+        try {
+            write(page, HEADER_SIZE, record);
+        } finally {
+            pool.unpin(tail, true);
+            pool.unpin(tail, true);
+        }
+
+        return (long) tail * PagedFile.PAGE_SIZE + HEADER_SIZE;
+    }
+
+    /**
+     * Read a record.
+     * @param position The position of the record
+     * @return The record bytes
+     * @throws IOException if the page could not be read, or holds no record at this position
+     */
+    public byte[] read(long position) throws IOException {
+        int number = (int) (position / PagedFile.PAGE_SIZE);
+        int offset = (int) (position % PagedFile.PAGE_SIZE);
+
+        ByteBuffer page = pool.pin(number);
+        try {
+            return read(page, offset);
+        } finally {
+            pool.unpin(number, false);
+        }
+    }
+
+    /**
+     * Read a record from a data page.
+     * @param page The page content
+     * @param offset The offset of the record in the page
+     * @return The record bytes
+     * @throws IOException if the page holds no record at this offset
+     */
+    public static byte[] read(ByteBuffer page, int offset) throws IOException {
+        int used = page.getShort(1) & 0xFFFF;
+        if (page.get(0) != DATA || offset < HEADER_SIZE || offset + 2 > used) {
+            throw new IOException("No record at offset " + offset);
+        }
+
+        int length = page.getShort(offset) & 0xFFFF;
+        if (offset + 2 + length > used) {
+            throw new IOException("Malformed record at offset " + offset);
+        }
+
+        byte[] record = new byte[length];
+        ByteBuffer source = page.duplicate();
+        source.clear();
+        source.position(offset + 2);
+        source.get(record);
+
+        return record;
+    }
+
+    /**
+     * Compute where a record goes when appended after others, for files written sequentially.
+     * @param end The position following the last record, or 0 for the first record
+     * @param length The size of the record
+     * @return The position of the record, in the page after the last record if it does not fit in it.
+     * The position following the record is that position plus 2 plus the length.
+     */
+    public static long place(long end, int length) {
+        if (end == 0) {
+            // Page 0 is the file header.
+            return PagedFile.PAGE_SIZE + HEADER_SIZE;
+        }
+
+        long page = (end - 1) / PagedFile.PAGE_SIZE;
+        if (end - page * PagedFile.PAGE_SIZE + 2 + length > PagedFile.PAGE_SIZE) {
+            return (page + 1) * PagedFile.PAGE_SIZE + HEADER_SIZE;
+        }
+
+        return end;
+    }
+
+    /**
+     * Write a record in a data page, and update the number of bytes used.
+     * @param page The page content
+     * @param offset The offset of the record in the page
+     * @param record The record bytes
+     */
+    public static void write(ByteBuffer page, int offset, byte[] record) {
+        ByteBuffer target = page.duplicate();
+        target.clear();
+        target.put(0, (byte) DATA);
+        target.putShort(offset, (short) record.length);
+        target.position(offset + 2);
+        target.put(record);
+        target.putShort(1, (short) (offset + 2 + record.length));
+    }
+}
@@ -1,27 +1,37 @@
 package org.krytonspace.carrent.gui;
 
 import org.krytonspace.carrent.controllers.DatabaseController;
+import org.krytonspace.carrent.controllers.csv.CsvExporter;
+import org.krytonspace.carrent.controllers.csv.CsvImporter;
 import org.krytonspace.carrent.controllers.event.DatabaseListener;
 import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
+import org.krytonspace.carrent.database.Snapshot;
 import org.krytonspace.carrent.database.exceptions.LoaderNotFoundException;
 import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
 import org.krytonspace.carrent.database.exceptions.WritingFailedException;
 import org.krytonspace.carrent.gui.dialogs.create.*;
 import org.krytonspace.carrent.gui.dialogs.find.FindModelDialog;
 import org.krytonspace.carrent.gui.tablemodels.*;
+import org.krytonspace.carrent.models.*;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * The application main window.
@@ -37,6 +47,7 @@ public class Window {
     private final JPanel carPanel;
     private final JPanel bikePanel;
     private final JPanel planePanel;
+    private final JLabel statusLine;
 
     private final ClientTableModel clientTableModel;
     private final ContractTableModel contractTableModel;
@@ -59,6 +70,7 @@ public class Window {
         this.carPanel = new JPanel();
         this.bikePanel = new JPanel();
         this.planePanel = new JPanel();
+        this.statusLine = new JLabel(" ");
 
         // Create table models for custom display
 
@@ -105,7 +117,8 @@ public class Window {
         frame.setTitle("Car Rental v1");
         frame.setSize(1024, 760);
         frame.setLocationRelativeTo(null); // Center the frame on the screen
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Closing is confirmed first, see windowClosing().
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         try {
             frame.setIconImage(ImageIO.read(getClass().getResourceAsStream("/icon.png")));
         } catch (IOException e) {
@@ -115,15 +128,10 @@ public class Window {
         frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                if (controller.hasUnsavedChanges()) {
-                    int res = JOptionPane.showConfirmDialog(null,
-                            "The current database has been modified.\n" +
-                                    "Do you want to save your modifications ?",
-                            "Save",
-                            JOptionPane.YES_NO_OPTION);
-                    if (res == JOptionPane.YES_OPTION) {
-                        doSaveDatabase();
-                    }
+                if (confirmQuit()) {
+                    controller.close();
+                    frame.dispose();
+                    System.exit(0);
                 }
             }
         });
@@ -153,6 +161,10 @@ public class Window {
         tabs.addTab("Contracts", contractsPanel);
         tabs.addTab("Vehicles", vehiclePanel);
         frame.add(tabs);
+
+        // What the controller reports, e.g. how the database has been loaded.
+        statusLine.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        frame.add(statusLine, BorderLayout.SOUTH);
     }
 
     /**
@@ -308,6 +320,10 @@ public class Window {
         JMenuItem quit = new JMenuItem("Exit");
         JMenuItem save = new JMenuItem("Save");
         JMenuItem saveAs = new JMenuItem("Save As");
+        JMenuItem importCsv = new JMenuItem("Import CSV");
+        JMenuItem exportCsv = new JMenuItem("Export CSV");
+        JMenuItem takeSnapshot = new JMenuItem("Take Snapshot");
+        JMenuItem restoreSnapshot = new JMenuItem("Restore Snapshot");
 
         // Set the usual shortcuts.
         open.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.CTRL_DOWN_MASK));
@@ -339,22 +355,15 @@ public class Window {
         });
         save.addActionListener(e -> doSaveDatabase());
         saveAs.addActionListener(e -> doSaveToNewDatabase());
+        importCsv.addActionListener(e -> doImportCsv());
+        exportCsv.addActionListener(e -> doExportCsv());
+        takeSnapshot.addActionListener(e -> doTakeSnapshot());
+        restoreSnapshot.addActionListener(e -> doRestoreSnapshot());
         quit.addActionListener(e -> {
-            // Ensure the user did not exit by mistake and prevent from data loss.
-            if (controller.hasUnsavedChanges()) {
-                int res = JOptionPane.showConfirmDialog(null,
-                        "The current database has been modified.\n" +
-                        "Do you want to save your modifications ?",
-                        "Save",
-                        JOptionPane.YES_NO_CANCEL_OPTION);
-                switch (res) {
-                    case JOptionPane.YES_OPTION:
-                        doSaveDatabase();
-                    case JOptionPane.CANCEL_OPTION:
-                        return;
-                }
+            if (confirmQuit()) {
+                controller.close();
+                frame.dispose();
             }
-            frame.dispose();
         });
 
         JMenu edit = new JMenu("Edit");
@@ -391,6 +400,12 @@ public class Window {
         file.add(save);
         file.add(saveAs);
         file.addSeparator();
+        file.add(importCsv);
+        file.add(exportCsv);
+        file.addSeparator();
+        file.add(takeSnapshot);
+        file.add(restoreSnapshot);
+        file.addSeparator();
         file.add(quit);
 
         edit.add(find);
@@ -496,7 +511,8 @@ public class Window {
                             "Save",
                             JOptionPane.YES_NO_OPTION);
                     if (res == JOptionPane.YES_OPTION) {
-                        doSaveDatabase();
+                        // The working database is about to be replaced: wait for the file to be written.
+                        doSaveDatabase().join();
                     }
                 }
             }
@@ -515,6 +531,17 @@ public class Window {
                 frame.getJMenuBar().getMenu(0).getItem(1).setEnabled(false);
             }
 
+            @Override
+            public void onDatabaseSaving() {
+                // Disable the save button until the file is written.
+                frame.getJMenuBar().getMenu(0).getItem(1).setEnabled(false);
+            }
+
+            @Override
+            public void onStatusChanged(String status) {
+                statusLine.setText(status);
+            }
+
             @Override
             public void onDatabaseSaved() {
                 JOptionPane.showMessageDialog(null,
@@ -522,43 +549,276 @@ public class Window {
                         "Information",
                         JOptionPane.INFORMATION_MESSAGE);
 
-                // Disable the save button.
-                frame.getJMenuBar().getMenu(0).getItem(1).setEnabled(false);
+                // Disable the save button, unless the database has changed while it was saved.
+                frame.getJMenuBar().getMenu(0).getItem(1).setEnabled(controller.hasUnsavedChanges());
             }
         });
     }
 
+    /**
+     * Ensure the user does not quit by mistake, and prevent from data loss: offer to save the unsaved changes.
+     * @return true if the application may quit, false if the user cancelled or the changes could not be saved
+     */
+    private boolean confirmQuit() {
+        if (!controller.hasUnsavedChanges()) {
+            return true;
+        }
+
+        int res = JOptionPane.showConfirmDialog(null,
+                "The current database has been modified.\n" +
+                "Do you want to save your modifications ?",
+                "Save",
+                JOptionPane.YES_NO_CANCEL_OPTION);
+        switch (res) {
+            case JOptionPane.YES_OPTION:
+                // Wait for the file to be written, and stay open if it could not be: the error is notified.
+                return doSaveDatabase().join();
+            case JOptionPane.NO_OPTION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Trigger the 'Save As' action.
      * This method will always ask the user for a location in which to save the database.
+     * @return A future completed with true once the database has been saved, false if the save failed or was
+     * abandoned
      */
-    private void doSaveToNewDatabase() {
+    private CompletableFuture<Boolean> doSaveToNewDatabase() {
         JFileChooser chooser = DatabaseController.prepareFileChooser();
 
         int result = chooser.showSaveDialog(frame);
         if (result == JFileChooser.APPROVE_OPTION) {
-            try {
-                controller.saveModelToFile(chooser.getSelectedFile());
-            } catch (LoaderNotFoundException | WritingFailedException ex) {
-                notifyException(ex);
-            }
+            return saveInBackground(chooser.getSelectedFile());
         }
+
+        return CompletableFuture.completedFuture(false);
     }
 
     /**
      * Trigger the 'Save' action.
      * This method will keep track of the last loaded file, and write to it if it exists.
      * Otherwise, it will trigger the 'Save As' action.
+     * @return A future completed with true once the database has been saved, false if the save failed or was
+     * abandoned
      */
-    private void doSaveDatabase() {
+    private CompletableFuture<Boolean> doSaveDatabase() {
         if (controller.getLastLoadedFile() == null) {
-            doSaveToNewDatabase();
-        } else {
-            try {
-                controller.saveModelToFile(controller.getLastLoadedFile());
-            } catch (LoaderNotFoundException | WritingFailedException ex) {
-                notifyException(ex);
+            return doSaveToNewDatabase();
+        }
+
+        return saveInBackground(controller.getLastLoadedFile());
+    }
+
+    /**
+     * Save the database without blocking the interface. Errors are notified to the user.
+     * @param f The file to write data to
+     * @return A future completed with true once the database has been saved, false if the save has failed
+     */
+    private CompletableFuture<Boolean> saveInBackground(File f) {
+        try {
+            return controller.saveModelToFileAsync(f)
+                    .thenApply(v -> true)
+                    .exceptionally(ex -> {
+                        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                        SwingUtilities.invokeLater(() -> notifyException(cause instanceof Exception ?
+                                (Exception) cause : new RuntimeException(cause)));
+                        return false;
+                    });
+        } catch (LoaderNotFoundException ex) {
+            notifyException(ex);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * Trigger the 'Import CSV' action.
+     * The rows are imported in the background, and rejected rows are written next to the imported file.
+     */
+    private void doImportCsv() {
+        String[] types = { "Clients", "Cars", "Bikes", "Planes" };
+        Object type = JOptionPane.showInputDialog(frame, "What do the rows describe ?", "Import CSV",
+                JOptionPane.QUESTION_MESSAGE, null, types, types[0]);
+        if (type == null) {
+            return;
+        }
+
+        JFileChooser chooser = prepareCsvFileChooser();
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        CsvImporter<?> importer;
+        switch ((String) type) {
+            case "Clients":
+                importer = CsvImporter.forClients(controller.getClientController());
+                break;
+            case "Cars":
+                importer = CsvImporter.forCars(controller.getVehicleController());
+                break;
+            case "Bikes":
+                importer = CsvImporter.forBikes(controller.getVehicleController());
+                break;
+            default:
+                importer = CsvImporter.forPlanes(controller.getVehicleController());
+                break;
+        }
+
+        File source = chooser.getSelectedFile();
+        String baseName = source.getName().replaceFirst("\\.csv$", "");
+        File rejects = new File(source.getAbsoluteFile().getParentFile(), baseName + "-rejected.csv");
+
+        runInBackground(() -> importer.importFile(source, rejects).toString());
+    }
+
+    /**
+     * Trigger the 'Export CSV' action.
+     * The models are listed as they are now, and written in the background.
+     */
+    private void doExportCsv() {
+        String[] types = { "Clients", "Cars", "Bikes", "Planes", "Contracts" };
+        Object type = JOptionPane.showInputDialog(frame, "What do you want to export ?", "Export CSV",
+                JOptionPane.QUESTION_MESSAGE, null, types, types[0]);
+        if (type == null) {
+            return;
+        }
+
+        JFileChooser chooser = prepareCsvFileChooser();
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File target = chooser.getSelectedFile();
+
+        switch ((String) type) {
+            case "Clients":
+                exportInBackground(new CsvExporter<>(ClientModel.class),
+                        controller.getClientController().query().collect(Collectors.toList()), target);
+                break;
+            case "Cars":
+                exportInBackground(new CsvExporter<>(CarModel.class), vehiclesOfType(CarModel.class), target);
+                break;
+            case "Bikes":
+                exportInBackground(new CsvExporter<>(BikeModel.class), vehiclesOfType(BikeModel.class), target);
+                break;
+            case "Planes":
+                exportInBackground(new CsvExporter<>(PlaneModel.class), vehiclesOfType(PlaneModel.class), target);
+                break;
+            default:
+                exportInBackground(new CsvExporter<>(ContractModel.class),
+                        controller.getContractController().query().collect(Collectors.toList()), target);
+                break;
+        }
+    }
+
+    /**
+     * Trigger the 'Take Snapshot' action.
+     * The snapshot is written in the background.
+     */
+    private void doTakeSnapshot() {
+        controller.takeSnapshotAsync().whenComplete((snapshot, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex != null) {
+                notifyException(ex instanceof Exception ? (Exception) ex : new RuntimeException(ex));
+                return;
             }
+
+            JOptionPane.showMessageDialog(frame, "Snapshot of " + snapshot + " taken.", "Information",
+                    JOptionPane.INFORMATION_MESSAGE);
+        }));
+    }
+
+    /**
+     * Trigger the 'Restore Snapshot' action.
+     * The user picks one of the snapshots of the database, which replaces the working database.
+     */
+    private void doRestoreSnapshot() {
+        List<Snapshot> snapshots = controller.listSnapshots();
+        if (snapshots.isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "There is no snapshot of this database yet.", "Information",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
+
+        Object[] choices = snapshots.toArray();
+        Object snapshot = JOptionPane.showInputDialog(frame, "Restore the database as it was on:",
+                "Restore Snapshot", JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+        if (snapshot == null) {
+            return;
+        }
+
+        try {
+            controller.restoreSnapshot((Snapshot) snapshot);
+        } catch (LoadingFailedException ex) {
+            notifyException(ex);
+        }
+    }
+
+    /**
+     * Utility function giving a ready-to-open file chooser for CSV files.
+     * @return A file chooser to open/save CSV files
+     */
+    private static JFileChooser prepareCsvFileChooser() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setAcceptAllFileFilterUsed(false);
+        chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        chooser.addChoosableFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+
+        return chooser;
+    }
+
+    /**
+     * List the registered vehicles of a given type.
+     * @param type The vehicle type
+     * @param <T> The vehicle type
+     * @return The vehicles
+     */
+    private <T extends VehicleModel> List<T> vehiclesOfType(Class<T> type) {
+        return controller.getVehicleController()
+                .query()
+                .filter(type::isInstance)
+                .map(type::cast)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Write models to a CSV file without blocking the interface.
+     * @param exporter The exporter of the models
+     * @param models The models to export, which must not be changed meanwhile
+     * @param target The file to write to
+     * @param <T> The model type
+     */
+    private <T extends Model> void exportInBackground(CsvExporter<T> exporter, List<T> models, File target) {
+        runInBackground(() -> exporter.exportFile(models, target) + " rows exported to '" + target.getName() + "'.");
+    }
+
+    /**
+     * Run a long task without blocking the interface. Its outcome is shown to the user once done.
+     * @param task The task, returning a message for the user
+     */
+    private void runInBackground(BackgroundTask task) {
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((message, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                notifyException(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+                return;
+            }
+
+            JOptionPane.showMessageDialog(frame, message, "Information", JOptionPane.INFORMATION_MESSAGE);
+        }));
+    }
+
+    /**
+     * A long task, run by runInBackground().
+     */
+    @FunctionalInterface
+    private interface BackgroundTask {
+        String run() throws Exception;
     }
 }
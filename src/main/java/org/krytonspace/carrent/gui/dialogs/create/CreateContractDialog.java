@@ -6,6 +6,7 @@ import org.krytonspace.carrent.controllers.model.VehicleController;
 import org.krytonspace.carrent.gui.tablemodels.BaseTableModel;
 import org.krytonspace.carrent.models.ContractModel;
 import org.krytonspace.carrent.models.VehicleModel;
+import org.krytonspace.carrent.utils.EpochDays;
 import org.krytonspace.carrent.utils.ModelFieldPair;
 
 import javax.swing.*;
@@ -63,8 +64,8 @@ public class CreateContractDialog extends CreateModelDialog {
                     .findFirst();
 
             if (opt.isPresent()) {
-                // Compute the contract duration in days.
-                long diffDays = (end.getTime() - beg.getTime()) / (1000 * 60 * 60 * 24);
+                // Compute the contract duration in days, whatever the daylight saving time changes.
+                long diffDays = EpochDays.fromDate(end) - EpochDays.fromDate(beg);
 
                 if (diffDays <= 0) {
                     throw new InvalidDataException("The contract duration must be greater than 0 days.");
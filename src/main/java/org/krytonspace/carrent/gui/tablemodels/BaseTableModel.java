@@ -1,10 +1,9 @@
 package org.krytonspace.carrent.gui.tablemodels;
 
-import org.krytonspace.carrent.utils.ModelField;
+import org.krytonspace.carrent.utils.ModelAccessor;
 import org.krytonspace.carrent.utils.ModelFieldPair;
 
 import javax.swing.table.AbstractTableModel;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -60,32 +59,15 @@ public abstract class BaseTableModel extends AbstractTableModel {
 
     /**
      * Utility static method gathering display names and types of fields annotated
-     * with the ModelField annotation.
-     * This method looks for fields in class hierarchy, populating fields from
-     * root class to target class.
+     * with the ModelField annotation, from the accessor generated for the model.
+     * Fields are listed from root class to target class.
      *
      * @param modelClass The class to inspect
      * @return The list of (displayName, type) couples corresponding to each field in the specified class
+     * @throws IllegalArgumentException if no accessor has been generated for this class
      */
     public static List<ModelFieldPair> getModelFieldsInfo(Class<?> modelClass) {
-        if (modelClass != null) {
-
-            List<ModelFieldPair> cols = getModelFieldsInfo(modelClass.getSuperclass());
-
-            for (Field f : modelClass.getDeclaredFields()) {
-                if (f.isAnnotationPresent(ModelField.class)) {
-                    ModelField modelField = f.getAnnotation(ModelField.class);
-                    String displayName = modelField.name();
-                    Class<?> type = f.getType();
-
-                    cols.add(new ModelFieldPair(displayName, type));
-                }
-            }
-
-            return cols;
-        }
-
-        return new ArrayList<>();
+        return new ArrayList<>(ModelAccessor.forModel(modelClass).getColumns());
     }
 
 }
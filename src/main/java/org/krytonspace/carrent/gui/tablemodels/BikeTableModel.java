@@ -4,9 +4,10 @@ import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
 import org.krytonspace.carrent.controllers.model.VehicleController;
 import org.krytonspace.carrent.gui.Window;
 import org.krytonspace.carrent.models.BikeModel;
+import org.krytonspace.carrent.models.BikeModelAccessor;
 import org.krytonspace.carrent.models.Model;
 import org.krytonspace.carrent.models.VehicleModel;
-import org.krytonspace.carrent.utils.ModelFieldPair;
+import org.krytonspace.carrent.utils.ModelAccessor;
 
 import java.util.Comparator;
 import java.util.List;
@@ -18,7 +19,10 @@ import java.util.stream.Collectors;
  */
 public class BikeTableModel extends VehicleTableModel {
 
-    private static final List<ModelFieldPair> COLUMNS = getModelFieldsInfo(BikeModel.class);
+    /**
+     * Accessor of the bike columns.
+     */
+    private static final ModelAccessor<BikeModel> ACCESSOR = ModelAccessor.forModel(BikeModel.class);
 
     /**
      * A filter to apply to the cache.
@@ -71,43 +75,24 @@ public class BikeTableModel extends VehicleTableModel {
 
     @Override
     public int getColumnCount() {
-        return COLUMNS.size();
+        return ACCESSOR.getColumnCount();
     }
 
     @Override
     public String getColumnName(int column) {
-        return COLUMNS.get(column).getName();
+        return ACCESSOR.getColumnName(column);
     }
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        return COLUMNS.get(columnIndex).getType();
+        return ACCESSOR.getColumnType(columnIndex);
     }
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
         // Values are stored in the cache.
         if (!cache.isEmpty()) {
-            BikeModel bike = cache.get(rowIndex);
-
-            switch (columnIndex) {
-                case 0:
-                    return bike.getId();
-                case 1:
-                    return bike.getBrand();
-                case 2:
-                    return bike.getModel();
-                case 3:
-                    return bike.getCondition();
-                case 4:
-                    return bike.getRentPricePerDay();
-                case 5:
-                    return bike.getMaxSpeed();
-                case 6:
-                    return bike.getMileage();
-                case 7:
-                    return bike.getPower();
-            }
+            return ACCESSOR.get(cache.get(rowIndex), columnIndex);
         }
 
         return null;
@@ -122,25 +107,25 @@ public class BikeTableModel extends VehicleTableModel {
 
             try {
                 switch (columnIndex) {
-                    case 1:
+                    case BikeModelAccessor.BRAND:
                         controller.editVehicleBrand(bike, (String) aValue);
                         break;
-                    case 2:
+                    case BikeModelAccessor.MODEL:
                         controller.editVehicleModel(bike, (String) aValue);
                         break;
-                    case 3:
+                    case BikeModelAccessor.CONDITION:
                         controller.editVehicleCondition(bike, (VehicleModel.Condition) aValue);
                         break;
-                    case 4:
+                    case BikeModelAccessor.RENT_PRICE_PER_DAY:
                         controller.editVehicleRentPrice(bike, (Integer) aValue);
                         break;
-                    case 5:
+                    case BikeModelAccessor.MAX_SPEED:
                         controller.editVehicleMaxSpeed(bike, (Integer) aValue);
                         break;
-                    case 6:
+                    case BikeModelAccessor.MILEAGE:
                         controller.editBikeMileage(bike, (Integer) aValue);
                         break;
-                    case 7:
+                    case BikeModelAccessor.POWER:
                         controller.editBikePower(bike, (Integer) aValue);
                         break;
                 }
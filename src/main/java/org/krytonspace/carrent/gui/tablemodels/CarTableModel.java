@@ -4,9 +4,10 @@ import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
 import org.krytonspace.carrent.controllers.model.VehicleController;
 import org.krytonspace.carrent.gui.Window;
 import org.krytonspace.carrent.models.CarModel;
+import org.krytonspace.carrent.models.CarModelAccessor;
 import org.krytonspace.carrent.models.Model;
 import org.krytonspace.carrent.models.VehicleModel;
-import org.krytonspace.carrent.utils.ModelFieldPair;
+import org.krytonspace.carrent.utils.ModelAccessor;
 
 import java.util.Comparator;
 import java.util.List;
@@ -18,7 +19,10 @@ import java.util.stream.Collectors;
  */
 public class CarTableModel extends VehicleTableModel {
 
-    private static final List<ModelFieldPair> COLUMNS = getModelFieldsInfo(CarModel.class);
+    /**
+     * Accessor of the car columns.
+     */
+    private static final ModelAccessor<CarModel> ACCESSOR = ModelAccessor.forModel(CarModel.class);
 
     /**
      * A filter to apply to the cache.
@@ -70,45 +74,24 @@ public class CarTableModel extends VehicleTableModel {
 
     @Override
     public String getColumnName(int column) {
-        return COLUMNS.get(column).getName();
+        return ACCESSOR.getColumnName(column);
     }
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        return COLUMNS.get(columnIndex).getType();
+        return ACCESSOR.getColumnType(columnIndex);
     }
 
     @Override
     public int getColumnCount() {
-        return COLUMNS.size();
+        return ACCESSOR.getColumnCount();
     }
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
         // Values are stored in the cache.
         if (!cache.isEmpty()) {
-            CarModel car = cache.get(rowIndex);
-
-            switch (columnIndex) {
-                case 0:
-                    return car.getId();
-                case 1:
-                    return car.getBrand();
-                case 2:
-                    return car.getModel();
-                case 3:
-                    return car.getCondition();
-                case 4:
-                    return car.getRentPricePerDay();
-                case 5:
-                    return car.getMaxSpeed();
-                case 6:
-                    return car.getMileage();
-                case 7:
-                    return car.getPower();
-                case 8:
-                    return car.getSeatCount();
-            }
+            return ACCESSOR.get(cache.get(rowIndex), columnIndex);
         }
 
         return null;
@@ -123,28 +106,28 @@ public class CarTableModel extends VehicleTableModel {
 
             try {
                 switch (columnIndex) {
-                    case 1:
+                    case CarModelAccessor.BRAND:
                         controller.editVehicleBrand(car, (String) aValue);
                         break;
-                    case 2:
+                    case CarModelAccessor.MODEL:
                         controller.editVehicleModel(car, (String) aValue);
                         break;
-                    case 3:
+                    case CarModelAccessor.CONDITION:
                         controller.editVehicleCondition(car, (VehicleModel.Condition) aValue);
                         break;
-                    case 4:
+                    case CarModelAccessor.RENT_PRICE_PER_DAY:
                         controller.editVehicleRentPrice(car, (Integer) aValue);
                         break;
-                    case 5:
+                    case CarModelAccessor.MAX_SPEED:
                         controller.editVehicleMaxSpeed(car, (Integer) aValue);
                         break;
-                    case 6:
+                    case CarModelAccessor.MILEAGE:
                         controller.editCarMileage(car, (Integer) aValue);
                         break;
-                    case 7:
+                    case CarModelAccessor.POWER:
                         controller.editCarPower(car, (Integer) aValue);
                         break;
-                    case 8:
+                    case CarModelAccessor.SEAT_COUNT:
                         controller.editCarSeatCount(car, (Integer) aValue);
                         break;
                 }
@@ -7,8 +7,9 @@ import org.krytonspace.carrent.controllers.event.ModelListener;
 import org.krytonspace.carrent.controllers.model.ClientModelController;
 import org.krytonspace.carrent.gui.Window;
 import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ClientModelAccessor;
 import org.krytonspace.carrent.models.Model;
-import org.krytonspace.carrent.utils.ModelFieldPair;
+import org.krytonspace.carrent.utils.ModelAccessor;
 
 import java.util.Comparator;
 import java.util.Date;
@@ -21,7 +22,10 @@ import java.util.stream.Collectors;
  */
 public class ClientTableModel extends BaseTableModel {
 
-    private static final List<ModelFieldPair> COLUMNS = getModelFieldsInfo(ClientModel.class);
+    /**
+     * Accessor of the client columns.
+     */
+    private static final ModelAccessor<ClientModel> ACCESSOR = ModelAccessor.forModel(ClientModel.class);
     /**
      * The controller managing clients.
      */
@@ -48,6 +52,12 @@ public class ClientTableModel extends BaseTableModel {
                 updateCache();
             }
 
+            @Override
+            public void onModelsAdded(List<? extends Model> models) {
+                // A single update for the whole batch.
+                updateCache();
+            }
+
             @Override
             public void onModelRemoving(ModelEvent e) {
                 updateCache();
@@ -93,47 +103,24 @@ public class ClientTableModel extends BaseTableModel {
 
     @Override
     public int getColumnCount() {
-        return COLUMNS.size();
+        return ACCESSOR.getColumnCount();
     }
 
     @Override
     public String getColumnName(int columnIndex) {
-        return COLUMNS.get(columnIndex).getName();
+        return ACCESSOR.getColumnName(columnIndex);
     }
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        return COLUMNS.get(columnIndex).getType();
+        return ACCESSOR.getColumnType(columnIndex);
     }
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
         // Values are stored in the cache.
         if (!cache.isEmpty()) {
-            ClientModel client = cache.get(rowIndex);
-
-            switch (columnIndex) {
-                case 0:
-                    return client.getId();
-                case 1:
-                    return client.getLastName();
-                case 2:
-                    return client.getFirstName();
-                case 3:
-                    return client.getBirthDate();
-                case 4:
-                    return client.getAddress();
-                case 5:
-                    return client.getPostalCode();
-                case 6:
-                    return client.getCity();
-                case 7:
-                    return client.getLicenses();
-                case 8:
-                    return client.getEmailAddress();
-                case 9:
-                    return client.getPhoneNumber();
-            }
+            return ACCESSOR.get(cache.get(rowIndex), columnIndex);
         }
 
         return null;
@@ -148,31 +135,31 @@ public class ClientTableModel extends BaseTableModel {
 
             try {
                 switch (columnIndex) {
-                    case 1:
+                    case ClientModelAccessor.LAST_NAME:
                         controller.editClientLastName(client, (String) aValue);
                         break;
-                    case 2:
+                    case ClientModelAccessor.FIRST_NAME:
                         controller.editClientFirstName(client, (String) aValue);
                         break;
-                    case 3:
+                    case ClientModelAccessor.BIRTH_DATE:
                         controller.editClientBirthDate(client, (Date) aValue);
                         break;
-                    case 4:
+                    case ClientModelAccessor.ADDRESS:
                         controller.editClientAddress(client, (String) aValue);
                         break;
-                    case 5:
+                    case ClientModelAccessor.POSTAL_CODE:
                         controller.editClientPostalCode(client, (String) aValue);
                         break;
-                    case 6:
+                    case ClientModelAccessor.CITY:
                         controller.editClientCity(client, (String) aValue);
                         break;
-                    case 7:
+                    case ClientModelAccessor.LICENSES:
                         controller.editClientLicenses(client, (String) aValue);
                         break;
-                    case 8:
+                    case ClientModelAccessor.EMAIL_ADDRESS:
                         controller.editClientEmailAddress(client, (String) aValue);
                         break;
-                    case 9:
+                    case ClientModelAccessor.PHONE_NUMBER:
                         controller.editClientPhoneNumber(client, (String) aValue);
                         break;
                 }
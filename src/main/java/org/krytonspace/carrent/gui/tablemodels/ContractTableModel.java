@@ -7,8 +7,9 @@ import org.krytonspace.carrent.controllers.model.ContractController;
 import org.krytonspace.carrent.controllers.model.ContractModelController;
 import org.krytonspace.carrent.gui.Window;
 import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.ContractModelAccessor;
 import org.krytonspace.carrent.models.Model;
-import org.krytonspace.carrent.utils.ModelFieldPair;
+import org.krytonspace.carrent.utils.ModelAccessor;
 
 import java.util.Comparator;
 import java.util.Date;
@@ -21,14 +22,17 @@ import java.util.stream.Collectors;
  */
 public class ContractTableModel extends BaseTableModel {
 
-    private static final List<ModelFieldPair> COLUMNS = getModelFieldsInfo(ContractModel.class);
+    /**
+     * Accessor of the contract columns.
+     */
+    private static final ModelAccessor<ContractModel> ACCESSOR = ModelAccessor.forModel(ContractModel.class);
 
     /**
      * The controller managing contracts.
      */
     private final ContractController controller;
     /**
-     * A filter to apply to the cache.
+     * A filter to apply to the cache, or null to show every contract.
      */
     private Predicate<ContractModel> filter;
     /**
@@ -65,7 +69,7 @@ public class ContractTableModel extends BaseTableModel {
 
     /**
      * Apply a filter to this table model. This will trigger a cache update.
-     * @param filter The filter to apply.
+     * @param filter The filter to apply, or null to show every contract.
      */
     public void applyFilter(Predicate<ContractModel> filter) {
         this.filter = filter;
@@ -74,6 +78,14 @@ public class ContractTableModel extends BaseTableModel {
 
     @Override
     public void updateCache() {
+        if (filter == null) {
+            // Show every contract in registration order, straight from the database:
+            // contracts loaded on demand are then only read for the visible rows.
+            cache = controller.list();
+            fireTableDataChanged();
+            return;
+        }
+
         cache = controller
                 .query()
                 .filter(filter) // Apply custom filter
@@ -85,7 +97,7 @@ public class ContractTableModel extends BaseTableModel {
 
     @Override
     public void resetFilter() {
-        applyFilter(contract -> true);
+        applyFilter(null);
     }
 
     @Override
@@ -95,41 +107,24 @@ public class ContractTableModel extends BaseTableModel {
 
     @Override
     public int getColumnCount() {
-        return COLUMNS.size();
+        return ACCESSOR.getColumnCount();
     }
 
     @Override
     public String getColumnName(int columnIndex) {
-        return COLUMNS.get(columnIndex).getName();
+        return ACCESSOR.getColumnName(columnIndex);
     }
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        return COLUMNS.get(columnIndex).getType();
+        return ACCESSOR.getColumnType(columnIndex);
     }
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
         // Values are stored in the cache.
         if (!cache.isEmpty()) {
-            ContractModel contract = cache.get(rowIndex);
-
-            switch (columnIndex) {
-                case 0:
-                    return contract.getId();
-                case 1:
-                    return contract.getClientId();
-                case 2:
-                    return contract.getVehicleId();
-                case 3:
-                    return contract.getBeginDate();
-                case 4:
-                    return contract.getEndDate();
-                case 5:
-                    return contract.getPlannedMileage();
-                case 6:
-                    return contract.getPlannedPrice();
-            }
+            return ACCESSOR.get(cache.get(rowIndex), columnIndex);
         }
 
         return null;
@@ -144,16 +139,16 @@ public class ContractTableModel extends BaseTableModel {
 
             try {
                 switch (columnIndex) {
-                    case 3:
+                    case ContractModelAccessor.BEGIN_DATE:
                         controller.editContractDateBegin(contract, (Date) aValue);
                         break;
-                    case 4:
+                    case ContractModelAccessor.END_DATE:
                         controller.editContractDateEnd(contract, (Date) aValue);
                         break;
-                    case 5:
+                    case ContractModelAccessor.PLANNED_MILEAGE:
                         controller.editContractPlannedMileage(contract, (Integer) aValue);
                         break;
-                    case 6:
+                    case ContractModelAccessor.PLANNED_PRICE:
                         controller.editContractPlannedPrice(contract, (Integer) aValue);
                         break;
                 }
@@ -166,7 +161,7 @@ public class ContractTableModel extends BaseTableModel {
     @Override
     public boolean isCellEditable(int rowIndex, int columnIndex) {
         // Prohibit client and vehicle ID change. A contract is bound to a client and a vehicle.
-        if (columnIndex == 1 || columnIndex == 2) {
+        if (columnIndex == ContractModelAccessor.CLIENT_ID || columnIndex == ContractModelAccessor.VEHICLE_ID) {
             return false;
         }
 
@@ -5,8 +5,9 @@ import org.krytonspace.carrent.controllers.model.VehicleController;
 import org.krytonspace.carrent.gui.Window;
 import org.krytonspace.carrent.models.Model;
 import org.krytonspace.carrent.models.PlaneModel;
+import org.krytonspace.carrent.models.PlaneModelAccessor;
 import org.krytonspace.carrent.models.VehicleModel;
-import org.krytonspace.carrent.utils.ModelFieldPair;
+import org.krytonspace.carrent.utils.ModelAccessor;
 
 import java.util.Comparator;
 import java.util.List;
@@ -15,7 +16,10 @@ import java.util.stream.Collectors;
 
 public class PlaneTableModel extends VehicleTableModel {
 
-    private static final List<ModelFieldPair> COLUMNS = getModelFieldsInfo(PlaneModel.class);
+    /**
+     * Accessor of the plane columns.
+     */
+    private static final ModelAccessor<PlaneModel> ACCESSOR = ModelAccessor.forModel(PlaneModel.class);
 
     /**
      * A filter to apply to the cache.
@@ -68,42 +72,24 @@ public class PlaneTableModel extends VehicleTableModel {
 
     @Override
     public int getColumnCount() {
-        return COLUMNS.size();
+        return ACCESSOR.getColumnCount();
     }
 
     @Override
     public String getColumnName(int column) {
-        return COLUMNS.get(column).getName();
+        return ACCESSOR.getColumnName(column);
     }
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        return COLUMNS.get(columnIndex).getType();
+        return ACCESSOR.getColumnType(columnIndex);
     }
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
+        // Values are stored in the cache.
         if (!cache.isEmpty()) {
-            PlaneModel plane = cache.get(rowIndex);
-
-            switch (columnIndex) {
-                case 0:
-                    return plane.getId();
-                case 1:
-                    return plane.getBrand();
-                case 2:
-                    return plane.getModel();
-                case 3:
-                    return plane.getCondition();
-                case 4:
-                    return plane.getRentPricePerDay();
-                case 5:
-                    return plane.getMaxSpeed();
-                case 6:
-                    return plane.getHoursFlown();
-                case 7:
-                    return plane.getEngineCount();
-            }
+            return ACCESSOR.get(cache.get(rowIndex), columnIndex);
         }
 
         return null;
@@ -116,25 +102,25 @@ public class PlaneTableModel extends VehicleTableModel {
 
             try {
                 switch (columnIndex) {
-                    case 1:
+                    case PlaneModelAccessor.BRAND:
                         controller.editVehicleBrand(plane, (String) aValue);
                         break;
-                    case 2:
+                    case PlaneModelAccessor.MODEL:
                         controller.editVehicleModel(plane, (String) aValue);
                         break;
-                    case 3:
+                    case PlaneModelAccessor.CONDITION:
                         controller.editVehicleCondition(plane, (VehicleModel.Condition) aValue);
                         break;
-                    case 4:
+                    case PlaneModelAccessor.RENT_PRICE_PER_DAY:
                         controller.editVehicleRentPrice(plane, (Integer) aValue);
                         break;
-                    case 5:
+                    case PlaneModelAccessor.MAX_SPEED:
                         controller.editVehicleMaxSpeed(plane, (Integer) aValue);
                         break;
-                    case 6:
+                    case PlaneModelAccessor.HOURS_FLOWN:
                         controller.editPlaneHoursFlown(plane, (Integer) aValue);
                         break;
-                    case 7:
+                    case PlaneModelAccessor.ENGINE_COUNT:
                         controller.editPlaneEngineCount(plane, (Integer) aValue);
                         break;
                 }
@@ -4,6 +4,9 @@ import org.krytonspace.carrent.controllers.event.ModelEvent;
 import org.krytonspace.carrent.controllers.event.ModelListener;
 import org.krytonspace.carrent.controllers.model.VehicleController;
 import org.krytonspace.carrent.controllers.model.VehicleModelController;
+import org.krytonspace.carrent.models.Model;
+
+import java.util.List;
 
 /**
  * Base table model for vehicles.
@@ -21,6 +24,12 @@ public abstract class VehicleTableModel extends BaseTableModel {
                 updateCache();
             }
 
+            @Override
+            public void onModelsAdded(List<? extends Model> models) {
+                // A single update for the whole batch.
+                updateCache();
+            }
+
             @Override
             public void onModelRemoving(ModelEvent e) {
                 updateCache();
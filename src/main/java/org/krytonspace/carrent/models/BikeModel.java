@@ -11,6 +11,21 @@ public class BikeModel extends VehicleModel {
     @ModelField(name = "Power")
     private int power;
 
+    /**
+     * Constructor.
+     */
+    public BikeModel() {
+
+    }
+
+    /**
+     * Constructor, for a model standing in for another one, which keeps its internal ID.
+     * @param internalId The internal ID of the model stood in for
+     */
+    protected BikeModel(int internalId) {
+        super(internalId);
+    }
+
     public int getMileage() {
         return mileage;
     }
@@ -13,6 +13,21 @@ public class CarModel extends VehicleModel {
     @ModelField(name = "Seat count")
     private int seatCount;
 
+    /**
+     * Constructor.
+     */
+    public CarModel() {
+
+    }
+
+    /**
+     * Constructor, for a model standing in for another one, which keeps its internal ID.
+     * @param internalId The internal ID of the model stood in for
+     */
+    protected CarModel(int internalId) {
+        super(internalId);
+    }
+
     public int getMileage() {
         return mileage;
     }
@@ -1,12 +1,17 @@
 package org.krytonspace.carrent.models;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.krytonspace.carrent.utils.EpochDays;
 import org.krytonspace.carrent.utils.ModelField;
+import org.krytonspace.carrent.utils.StringPool;
 
+import java.time.LocalDate;
 import java.util.Date;
 
 /**
  * Model class holding data for a client.
+ * The birth date is held as a day count, see EpochDays.
  */
 public class ClientModel extends Model {
     @ModelField(name = "Last name")
@@ -17,7 +22,7 @@ public class ClientModel extends Model {
 
     @ModelField(name = "Date of birth")
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd/MM/yyyy")
-    private Date birthDate;
+    private int birthDate = EpochDays.NONE;
 
     @ModelField(name = "Address")
     private String address;
@@ -37,6 +42,21 @@ public class ClientModel extends Model {
     @ModelField(name = "Phone number")
     private String phoneNumber;
 
+    /**
+     * Constructor.
+     */
+    public ClientModel() {
+
+    }
+
+    /**
+     * Constructor, for a model standing in for another one, which keeps its internal ID.
+     * @param internalId The internal ID of the model stood in for
+     */
+    protected ClientModel(int internalId) {
+        super(internalId);
+    }
+
     public String getLastName() {
         return lastName;
     }
@@ -46,9 +66,27 @@ public class ClientModel extends Model {
     }
 
     public Date getBirthDate() {
+        return EpochDays.toDate(birthDate);
+    }
+
+    /**
+     * Getter
+     * @return The birth date, as a number of days since 1970-01-01, or EpochDays.NONE
+     */
+    @JsonIgnore
+    public int getBirthDateEpochDay() {
         return birthDate;
     }
 
+    /**
+     * Getter
+     * @return The birth date, or null
+     */
+    @JsonIgnore
+    public LocalDate getBirthLocalDate() {
+        return EpochDays.toLocalDate(birthDate);
+    }
+
     public String getAddress() {
         return address;
     }
@@ -82,6 +120,15 @@ public class ClientModel extends Model {
     }
 
     public void setBirthDate(Date birthDate) {
+        this.birthDate = EpochDays.fromDate(birthDate);
+    }
+
+    /**
+     * Setter
+     * @param birthDate The birth date, as a number of days since 1970-01-01, or EpochDays.NONE
+     */
+    @JsonIgnore
+    public void setBirthDateEpochDay(int birthDate) {
         this.birthDate = birthDate;
     }
 
@@ -108,4 +155,15 @@ public class ClientModel extends Model {
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
     }
+
+    /**
+     * Replace the fields taking few distinct values by their canonical instance.
+     * Subclasses which do not keep these fields in the object override it.
+     * @param pool The pool holding the canonical strings
+     */
+    public void canonicalizeStrings(StringPool pool) {
+        this.postalCode = pool.canonicalize(postalCode);
+        this.city = pool.canonicalize(city);
+        this.licenses = pool.canonicalize(licenses);
+    }
 }
@@ -1,11 +1,16 @@
 package org.krytonspace.carrent.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import org.krytonspace.carrent.utils.EpochDays;
 import org.krytonspace.carrent.utils.ModelField;
 
+import java.time.LocalDate;
 import java.util.Date;
 
 /**
  * Model class holding data for a contract.
+ * Dates are held as day counts, see EpochDays.
  */
 public class ContractModel extends Model {
     @ModelField(name = "Client ID")
@@ -13,14 +18,29 @@ public class ContractModel extends Model {
     @ModelField(name = "Vehicle ID")
     private String vehicleId;
     @ModelField(name = "Start date")
-    private Date begin;
+    private int begin = EpochDays.NONE;
     @ModelField(name = "End date")
-    private Date end;
+    private int end = EpochDays.NONE;
     @ModelField(name = "Planned mileage")
     private int plannedMileage;
     @ModelField(name = "Planned price")
     private int plannedPrice;
 
+    /**
+     * Constructor.
+     */
+    public ContractModel() {
+
+    }
+
+    /**
+     * Constructor, for a model standing in for another one, which keeps its internal ID.
+     * @param internalId The internal ID of the model stood in for
+     */
+    protected ContractModel(int internalId) {
+        super(internalId);
+    }
+
     public String getClientId() {
         return clientId;
     }
@@ -30,13 +50,49 @@ public class ContractModel extends Model {
     }
 
     public Date getBeginDate() {
-        return begin;
+        return EpochDays.toDate(begin);
     }
 
     public Date getEndDate() {
+        return EpochDays.toDate(end);
+    }
+
+    /**
+     * Getter
+     * @return The start date, as a number of days since 1970-01-01, or EpochDays.NONE
+     */
+    @JsonIgnore
+    public int getBeginEpochDay() {
+        return begin;
+    }
+
+    /**
+     * Getter
+     * @return The end date, as a number of days since 1970-01-01, or EpochDays.NONE
+     */
+    @JsonIgnore
+    public int getEndEpochDay() {
         return end;
     }
 
+    /**
+     * Getter
+     * @return The start date, or null
+     */
+    @JsonIgnore
+    public LocalDate getBeginLocalDate() {
+        return EpochDays.toLocalDate(begin);
+    }
+
+    /**
+     * Getter
+     * @return The end date, or null
+     */
+    @JsonIgnore
+    public LocalDate getEndLocalDate() {
+        return EpochDays.toLocalDate(end);
+    }
+
     public int getPlannedMileage() {
         return plannedMileage;
     }
@@ -53,11 +109,31 @@ public class ContractModel extends Model {
         this.vehicleId = vehicleId;
     }
 
+    @JsonSetter("beginDate")
     public void setBegin(Date begin) {
-        this.begin = begin;
+        this.begin = EpochDays.fromDate(begin);
     }
 
+    @JsonSetter("endDate")
     public void setEnd(Date end) {
+        this.end = EpochDays.fromDate(end);
+    }
+
+    /**
+     * Setter
+     * @param begin The start date, as a number of days since 1970-01-01, or EpochDays.NONE
+     */
+    @JsonIgnore
+    public void setBeginEpochDay(int begin) {
+        this.begin = begin;
+    }
+
+    /**
+     * Setter
+     * @param end The end date, as a number of days since 1970-01-01, or EpochDays.NONE
+     */
+    @JsonIgnore
+    public void setEndEpochDay(int end) {
         this.end = end;
     }
 
@@ -2,10 +2,18 @@ package org.krytonspace.carrent.models;
 
 import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonRootName;
+import org.krytonspace.carrent.utils.StringPool;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
 @JsonRootName(value = "database")
 public class DatabaseModel {
@@ -13,6 +21,16 @@ public class DatabaseModel {
     private List<VehicleModel> vehicles = new ArrayList<>();
     private List<ContractModel> contracts = new ArrayList<>();
 
+    /**
+     * The models shared with each snapshot of this database not released yet, see snapshot().
+     */
+    private final List<ModelCopies> snapshots = new ArrayList<>();
+
+    /**
+     * For a snapshot, the models it shares with the database it has been taken from.
+     */
+    private ModelCopies shared;
+
     @JsonGetter("clients")
     public List<ClientModel> getRegisteredClients() {
         return Collections.unmodifiableList(clients);
@@ -40,6 +58,14 @@ public class DatabaseModel {
         vehicles.add(model);
     }
 
+    public void registerClients(Collection<? extends ClientModel> models) {
+        clients.addAll(models);
+    }
+
+    public void registerVehicles(Collection<? extends VehicleModel> models) {
+        vehicles.addAll(models);
+    }
+
     public void unregisterClient(String clientId) {
         clients.removeIf(client -> client.getId().equals(clientId));
     }
@@ -52,6 +78,200 @@ public class DatabaseModel {
         vehicles.removeIf(vehicle -> vehicle.getId().equals(vehicleId));
     }
 
+    /**
+     * Replace each registered client, e.g. by a model holding the same data in another way.
+     * @param replacement The replacement of a client
+     */
+    public void replaceClients(UnaryOperator<ClientModel> replacement) {
+        clients.replaceAll(replacement);
+    }
+
+    /**
+     * Replace each registered vehicle, e.g. by a model holding the same data in another way.
+     * @param replacement The replacement of a vehicle
+     */
+    public void replaceVehicles(UnaryOperator<VehicleModel> replacement) {
+        vehicles.replaceAll(replacement);
+    }
+
+    /**
+     * Replace the list holding the contracts, e.g. by a list loading them on demand.
+     * @param storage The list holding the contracts from now on
+     */
+    public void setContractStorage(List<ContractModel> storage) {
+        this.contracts = storage;
+    }
+
+    /**
+     * Getter, for database handlers. The list must not be modified.
+     * @return The list holding the contracts
+     */
+    public List<ContractModel> getContractStorage() {
+        return contracts;
+    }
+
+    /**
+     * Notify that a registered model is about to be edited in place.
+     * Snapshots sharing the model copy it first, see snapshot(). Contracts loaded on demand may otherwise be
+     * dropped from memory, and read again without the changes.
+     * @param model The model
+     */
+    public void willEdit(Model model) {
+        snapshots.removeIf(ModelCopies::isReleased);
+        for (ModelCopies s : snapshots) {
+            s.willEdit(model);
+        }
+
+        if (model instanceof ContractModel && contracts instanceof LazyModelList) {
+            ((LazyModelList<ContractModel>) contracts).retain((ContractModel) model);
+        }
+    }
+
+    /**
+     * Make the registered clients and vehicles share the strings of their fields taking few distinct values.
+     * @param pool The pool holding the canonical strings
+     */
+    public void canonicalizeStrings(StringPool pool) {
+        for (ClientModel c : clients) {
+            c.canonicalizeStrings(pool);
+        }
+        for (VehicleModel v : vehicles) {
+            v.canonicalizeStrings(pool);
+        }
+    }
+
+    /**
+     * Create a shallow copy of this database: the lists are copied, the models are shared.
+     * @return The copy
+     */
+    public DatabaseModel copy() {
+        DatabaseModel copy = new DatabaseModel();
+        copy.setClients(new ArrayList<>(clients));
+        copy.setVehicles(new ArrayList<>(vehicles));
+        copy.setContracts(contracts instanceof LazyModelList ?
+                ((LazyModelList<ContractModel>) contracts).snapshot() :
+                new ArrayList<>(contracts));
+
+        return copy;
+    }
+
+    /**
+     * Create a copy of this database holding its data as it is now, which later edits do not show in,
+     * to be read on another thread, e.g. by a background save.
+     *
+     * Only the lists are copied: models are shared, and copied when about to be edited, see willEdit().
+     * Models read from the snapshot are copies, taken on the thread reading them, so that the cost of copying
+     * the database is not paid by the event dispatch thread. Copies are plain models, see ModelAccessor.copy().
+     * Contracts which are loaded on demand and not in memory are read from disk by the thread reading them.
+     *
+     * Edited models are copied until the snapshot is released, which must be done once it has been read.
+     * @return The snapshot
+     */
+    public DatabaseModel snapshot() {
+        ModelCopies copies = new ModelCopies();
+        snapshots.removeIf(ModelCopies::isReleased);
+        snapshots.add(copies);
+
+        DatabaseModel snapshot = new DatabaseModel();
+        snapshot.shared = copies;
+        snapshot.setClients(new SharedModels<>(new ArrayList<>(clients), copies));
+        snapshot.setVehicles(new SharedModels<>(new ArrayList<>(vehicles), copies));
+        snapshot.setContracts(contracts instanceof LazyModelList ?
+                ((LazyModelList<ContractModel>) contracts).snapshot(copies::read) :
+                new SharedModels<>(new ArrayList<>(contracts), copies));
+
+        return snapshot;
+    }
+
+    /**
+     * Release a snapshot, once read: the database it has been taken from stops copying edited models for it.
+     * Does nothing on a database which is not a snapshot.
+     */
+    public void release() {
+        if (shared != null) {
+            shared.release();
+        }
+    }
+
+    /**
+     * Apply a set of changes to the registered clients, in a single pass.
+     * @param changes The new state of each changed client, by ID. A null state removes the client.
+     */
+    public void applyClientChanges(Map<String, ClientModel> changes) {
+        applyChanges(clients, changes);
+    }
+
+    /**
+     * Apply a set of changes to the registered vehicles, in a single pass.
+     * @param changes The new state of each changed vehicle, by ID. A null state removes the vehicle.
+     */
+    public void applyVehicleChanges(Map<String, VehicleModel> changes) {
+        applyChanges(vehicles, changes);
+    }
+
+    /**
+     * Apply a set of changes to the registered contracts, in a single pass.
+     * @param changes The new state of each changed contract, by ID. A null state removes the contract.
+     */
+    public void applyContractChanges(Map<String, ContractModel> changes) {
+        applyChanges(contracts, changes);
+    }
+
+    /**
+     * Replace models in place, remove those whose new state is null,
+     * and register the remaining ones at the end of the list.
+     * @param list The list to change
+     * @param changes The new state of each changed model, by ID
+     * @param <T> The model type
+     */
+    private static <T extends Model> void applyChanges(List<T> list, Map<String, T> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Set<String> present = new HashSet<>();
+
+        list.replaceAll(m -> {
+            if (changes.containsKey(m.getId())) {
+                present.add(m.getId());
+                T state = changes.get(m.getId());
+                return state == null ? m : state;
+            }
+            return m;
+        });
+        list.removeIf(m -> changes.containsKey(m.getId()) && changes.get(m.getId()) == null);
+
+        for (Map.Entry<String, T> change : changes.entrySet()) {
+            if (change.getValue() != null && !present.contains(change.getKey())) {
+                list.add(change.getValue());
+            }
+        }
+    }
+
+    /**
+     * The list of models of a snapshot, reading them through the models it shares, see snapshot().
+     * @param <T> The model type
+     */
+    private static final class SharedModels<T extends Model> extends AbstractList<T> implements RandomAccess {
+        private final List<T> models;
+        private final ModelCopies copies;
+
+        private SharedModels(List<T> models, ModelCopies copies) {
+            this.models = models;
+            this.copies = copies;
+        }
+
+        @Override
+        public T get(int index) {
+            return copies.read(models.get(index));
+        }
+
+        @Override
+        public int size() {
+            return models.size();
+        }
+    }
+
     private void setClients(List<ClientModel> clients) {
         this.clients = clients;
     }
@@ -0,0 +1,377 @@
+package org.krytonspace.carrent.models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * List of models stored on disk by pages, and loaded page by page when accessed.
+ *
+ * Only a bounded number of loaded pages is kept in memory: the least recently used one
+ * is dropped when another page has to be loaded, and will be read again from disk if needed.
+ * Models read again are new instances, so a page whose content has to stay the same instances
+ * is pinned in memory: this is the case of changed pages (models added, removed or replaced),
+ * and of pages holding a model about to be edited, see retain(). The page each model has been read from
+ * is kept by ID, so that retaining a model dropped from memory only reads its own page again.
+ *
+ * Models added at the end of the list go to pages which only exist in memory.
+ *
+ * @param <T> The model type
+ */
+public class LazyModelList<T extends Model> extends AbstractList<T> {
+
+    /**
+     * Number of unpinned pages kept in memory.
+     */
+    public static final int CACHED_PAGES = 64;
+
+    /**
+     * Size of the pages holding added models.
+     */
+    private static final int NEW_PAGE_SIZE = 4096;
+
+    /**
+     * Reader of pages stored on disk.
+     * @param <T> The model type
+     */
+    public interface PageSource<T> {
+        /**
+         * Read a page.
+         * @param key The key of the page on disk
+         * @return The models of the page
+         * @throws IOException if the page could not be read
+         */
+        List<T> readPage(long key) throws IOException;
+    }
+
+    /**
+     * A page of the list.
+     * @param <T> The model type
+     */
+    public static final class Page<T> {
+        /**
+         * The key of the page on disk, or -1 for pages which only exist in memory.
+         */
+        private final long key;
+        /**
+         * The number of models of the page on disk.
+         */
+        private final int storedSize;
+        /**
+         * The page content, when pinned in memory.
+         */
+        private List<T> pinned;
+
+        private Page(long key, int storedSize, List<T> pinned) {
+            this.key = key;
+            this.storedSize = storedSize;
+            this.pinned = pinned;
+        }
+
+        /**
+         * Getter
+         * @return The key of the page on disk, or -1 for pages which only exist in memory
+         */
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * Check if the page content may differ from its content on disk.
+         * @return true if the page is pinned in memory
+         */
+        public boolean isPinned() {
+            return pinned != null;
+        }
+
+        private int size() {
+            return pinned != null ? pinned.size() : storedSize;
+        }
+    }
+
+    private final PageSource<T> source;
+    private final List<Page<T>> pages;
+
+    /**
+     * The function applied to models shared with another list when they are read, or null.
+     */
+    private final UnaryOperator<T> reader;
+
+    /**
+     * Pages whose models are shared with the list this one is a snapshot of.
+     */
+    private final Set<Page<T>> shared = new HashSet<>();
+
+    /**
+     * The page each model read from disk has been read from, by ID. Not copied by snapshots, which are not retained
+     * models of.
+     */
+    private final Map<String, Page<T>> pagesById = new HashMap<>();
+
+    /**
+     * Unpinned pages in memory, least recently used first.
+     */
+    private final LinkedHashMap<Page<T>, List<T>> cache;
+
+    /**
+     * Index of the first model of each page, plus the list size. Null when it must be computed again.
+     */
+    private int[] starts;
+
+    /**
+     * Constructor.
+     * @param source The reader of the pages
+     * @param keys The key of each page on disk, in order
+     * @param sizes The number of models of each page on disk
+     */
+    public LazyModelList(PageSource<T> source, long[] keys, int[] sizes) {
+        this.source = source;
+        this.reader = null;
+        this.pages = new ArrayList<>(keys.length);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < keys.length; i++) {
+            pages.add(new Page<>(keys[i], sizes[i], null));
+        }
+    }
+
+    private LazyModelList(LazyModelList<T> other, UnaryOperator<T> reader) {
+        this.source = other.source;
+        this.reader = reader;
+        this.pages = new ArrayList<>(other.pages.size());
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        for (Page<T> page : other.pages) {
+            Page<T> copy = new Page<>(page.key, page.storedSize, page.pinned == null ? null : new ArrayList<>(page.pinned));
+            pages.add(copy);
+
+            // Page contents read from disk are never modified, but their models may be once retained.
+            List<T> cached = other.cache.get(page);
+            if (cached != null) {
+                cache.put(copy, cached);
+            }
+            if ((copy.pinned != null || cached != null) && (other.reader == null || other.shared.contains(page))) {
+                shared.add(copy);
+            }
+        }
+    }
+
+    /**
+     * Create a copy of this list, which does not change when this list does.
+     * Pinned pages are copied, the others are shared until read again: models are shared.
+     * Models this list reads through a function, see snapshot(UnaryOperator), are read through it by the copy.
+     * @return The copy
+     */
+    public synchronized LazyModelList<T> snapshot() {
+        return new LazyModelList<>(this, reader);
+    }
+
+    /**
+     * Create a copy of this list, which does not change when this list does, sharing the models in memory
+     * as snapshot() does: shared models are read through a function, e.g. returning a copy of them as they were
+     * before being edited, see DatabaseModel.snapshot(). Models which are not in memory are read from disk when
+     * needed, by the thread reading the copy.
+     * @param reader The function applied to shared models when they are read from the copy
+     * @return The copy
+     */
+    public synchronized LazyModelList<T> snapshot(UnaryOperator<T> reader) {
+        return new LazyModelList<>(this, reader);
+    }
+
+    /**
+     * Getter
+     * @return The reader of the pages
+     */
+    public PageSource<T> getSource() {
+        return source;
+    }
+
+    /**
+     * Getter
+     * @return The pages of the list, in order
+     */
+    public synchronized List<Page<T>> getPages() {
+        return Collections.unmodifiableList(new ArrayList<>(pages));
+    }
+
+    /**
+     * Get the models of a page, loading it if needed.
+     * @param page A page of this list
+     * @return The models of the page, which must not be modified
+     */
+    public synchronized List<T> getPageContent(Page<T> page) {
+        List<T> content = content(page);
+        if (reader == null || !shared.contains(page)) {
+            return Collections.unmodifiableList(content);
+        }
+
+        List<T> read = new ArrayList<>(content.size());
+        for (T m : content) {
+            read.add(reader.apply(m));
+        }
+
+        return Collections.unmodifiableList(read);
+    }
+
+    /**
+     * Keep the page holding a model in memory, so that changes made to this instance are kept.
+     * If the page has been dropped from memory since the model was read, the model takes
+     * the place of the instance read again.
+     * @param m A model of this list
+     */
+    public synchronized void retain(T m) {
+        for (Page<T> page : pages) {
+            if (page.pinned != null && indexOfInstance(page.pinned, m) >= 0) {
+                return;
+            }
+        }
+
+        // Only the page the model has been read from is read again, if it has been dropped from memory.
+        Page<T> page = pagesById.get(m.getId());
+        if (page == null || page.pinned != null) {
+            return;
+        }
+        List<T> content = content(page);
+        if (indexOfInstance(content, m) >= 0) {
+            pin(page);
+            return;
+        }
+        for (int i = 0; i < content.size(); i++) {
+            if (content.get(i).getId().equals(m.getId())) {
+                pin(page).set(i, m);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized T get(int index) {
+        int page = pageOf(index);
+        T m = content(pages.get(page)).get(index - starts[page]);
+
+        return reader != null && shared.contains(pages.get(page)) ? reader.apply(m) : m;
+    }
+
+    @Override
+    public synchronized int size() {
+        return starts()[pages.size()];
+    }
+
+    @Override
+    public synchronized T set(int index, T element) {
+        int page = pageOf(index);
+        return pin(pages.get(page)).set(index - starts[page], element);
+    }
+
+    @Override
+    public synchronized void add(int index, T element) {
+        if (index == size()) {
+            Page<T> last = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+            if (last == null || last.key >= 0 || last.pinned.size() >= NEW_PAGE_SIZE) {
+                last = new Page<>(-1, 0, new ArrayList<>());
+                pages.add(last);
+            }
+            last.pinned.add(element);
+        } else {
+            int page = pageOf(index);
+            pin(pages.get(page)).add(index - starts[page], element);
+        }
+
+        starts = null;
+        modCount++;
+    }
+
+    @Override
+    public synchronized T remove(int index) {
+        int page = pageOf(index);
+        T removed = pin(pages.get(page)).remove(index - starts[page]);
+
+        starts = null;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        pages.clear();
+        cache.clear();
+        shared.clear();
+        pagesById.clear();
+        starts = null;
+        modCount++;
+    }
+
+    private int[] starts() {
+        if (starts == null) {
+            starts = new int[pages.size() + 1];
+            for (int i = 0; i < pages.size(); i++) {
+                starts[i + 1] = starts[i] + pages.get(i).size();
+            }
+        }
+
+        return starts;
+    }
+
+    private int pageOf(int index) {
+        int[] s = starts();
+        if (index < 0 || index >= s[pages.size()]) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + s[pages.size()]);
+        }
+
+        int found = Arrays.binarySearch(s, 0, pages.size(), index);
+        int page = found >= 0 ? found : -found - 2;
+        // Skip empty pages.
+        while (s[page + 1] <= index) {
+            page++;
+        }
+
+        return page;
+    }
+
+    private List<T> content(Page<T> page) {
+        if (page.pinned != null) {
+            return page.pinned;
+        }
+
+        List<T> content = cache.get(page);
+        if (content == null) {
+            try {
+                content = source.readPage(page.key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // Read again: the models are not shared anymore.
+            shared.remove(page);
+            for (T m : content) {
+                pagesById.put(m.getId(), page);
+            }
+
+            cache.put(page, content);
+            if (cache.size() > CACHED_PAGES) {
+                Iterator<Page<T>> eldest = cache.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        return content;
+    }
+
+    private List<T> pin(Page<T> page) {
+        if (page.pinned == null) {
+            page.pinned = new ArrayList<>(content(page));
+            cache.remove(page);
+        }
+
+        return page.pinned;
+    }
+
+    private static int indexOfInstance(List<?> list, Object o) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == o) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
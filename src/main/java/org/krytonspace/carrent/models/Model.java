@@ -12,9 +12,10 @@ public abstract class Model {
 
     /**
      * Internal model ID. Not stored on saves, restored by ModelFactory on load.
+     * Only assigned after creation when the model has been created while IDs were deferred.
      */
     @JsonIgnore
-    protected final int internalId;
+    protected int internalId;
 
     /**
      * Constructor.
@@ -24,6 +25,14 @@ public abstract class Model {
         this.internalId = ModelFactory.generateIdForModel(getClass());
     }
 
+    /**
+     * Constructor, for a model standing in for another one, which keeps its internal ID.
+     * @param internalId The internal ID of the model stood in for
+     */
+    protected Model(int internalId) {
+        this.internalId = internalId;
+    }
+
     public String getId() {
         return id;
     }
@@ -35,4 +44,12 @@ public abstract class Model {
     public int getInternalId() {
         return internalId;
     }
+
+    /**
+     * Give its internal ID to a model created while IDs were deferred, see ModelFactory.assignIds().
+     * @param internalId The internal ID
+     */
+    void assignInternalId(int internalId) {
+        this.internalId = internalId;
+    }
 }
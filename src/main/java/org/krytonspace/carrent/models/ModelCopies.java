@@ -0,0 +1,60 @@
+package org.krytonspace.carrent.models;
+
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The models a snapshot shares with the database it has been taken from, see DatabaseModel.snapshot().
+ *
+ * A shared model is copied when about to be edited, on the event dispatch thread, and the snapshot reads the
+ * copy from then on. Until then, the snapshot reads a copy of the model taken when it is read, on the thread
+ * reading it: both are done holding this object's lock, so that a model is never read while being edited.
+ */
+final class ModelCopies {
+
+    /**
+     * The state of each shared model before its first edit, by instance.
+     */
+    private final Map<Model, Model> copies = new IdentityHashMap<>();
+    private boolean released;
+
+    /**
+     * Copy a model about to be edited, unless it already has been.
+     * @param m The model
+     */
+    synchronized void willEdit(Model m) {
+        if (!released && !copies.containsKey(m)) {
+            copies.put(m, ModelAccessor.copyOf(m));
+        }
+    }
+
+    /**
+     * Read a shared model as it was when the snapshot has been taken.
+     * @param m The model
+     * @param <T> The model type
+     * @return A copy of the model
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T extends Model> T read(T m) {
+        Model copy = copies.get(m);
+        return copy != null ? (T) copy : ModelAccessor.copyOf(m);
+    }
+
+    /**
+     * Stop copying edited models: the snapshot must not be read anymore.
+     */
+    synchronized void release() {
+        released = true;
+        copies.clear();
+    }
+
+    /**
+     * Getter
+     * @return true if the snapshot has been released
+     */
+    synchronized boolean isReleased() {
+        return released;
+    }
+}
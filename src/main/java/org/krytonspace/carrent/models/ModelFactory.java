@@ -1,15 +1,35 @@
 package org.krytonspace.carrent.models;
 
 import java.lang.reflect.Modifier;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Factory class, holding counts for models and ensuring uniqueness of IDs (up to Integer.MAX_VALUE).
+ * IDs can be generated from any thread.
  */
 public final class ModelFactory {
 
-    private static final Map<Class<? extends Model>, Integer> MODEL_COUNTERS = new HashMap<>();
+    private static final Map<Class<? extends Model>, AtomicInteger> MODEL_COUNTERS = new ConcurrentHashMap<>();
+
+    /**
+     * The reservation the current thread draws IDs from, if any.
+     */
+    private static final ThreadLocal<Reservation> ACTIVE_RESERVATION = new ThreadLocal<>();
+
+    /**
+     * The reservation active while IDs are deferred, see deferIds().
+     */
+    private static final Reservation DEFERRED = new Reservation();
+
+    /**
+     * The internal ID of a model created while IDs are deferred, until it is assigned one.
+     */
+    private static final int UNASSIGNED_ID = -1;
 
     static {
         // Register default models on static initialization.
@@ -34,7 +54,7 @@ public final class ModelFactory {
      */
     public static <T extends Model> void registerNewModel(Class<T> modelClass) {
         if (!Modifier.isAbstract(modelClass.getModifiers())) {
-            MODEL_COUNTERS.put(modelClass, 0);
+            MODEL_COUNTERS.put(modelClass, new AtomicInteger(0));
         }
     }
 
@@ -45,10 +65,108 @@ public final class ModelFactory {
      * @return A unique ID for the model
      */
     public static <T extends Model> int generateIdForModel(Class<T> modelClass) {
-        int id = MODEL_COUNTERS.get(modelClass);
-        MODEL_COUNTERS.put(modelClass, id + 1);
+        Reservation reservation = ACTIVE_RESERVATION.get();
+        if (reservation == DEFERRED) {
+            return UNASSIGNED_ID;
+        }
+        if (reservation != null) {
+            int[] range = reservation.ranges.get(modelClass);
+            if (range != null && range[0] < range[1]) {
+                return range[0]++;
+            }
+        }
 
-        return id;
+        return MODEL_COUNTERS.get(modelClass).getAndIncrement();
+    }
+
+    /**
+     * Reserve consecutive IDs for models to be created later, possibly by another thread.
+     * Models created from reserved IDs keep the order of the reservations, whatever the order
+     * of their creation: this lets models be loaded in parallel, and still be sorted as in the file.
+     * @param count The number of IDs to reserve for each model class
+     * @param modelClasses The model classes to reserve IDs for
+     * @return The reservation
+     */
+    public static Reservation reserveIds(int count, Collection<Class<? extends Model>> modelClasses) {
+        Reservation reservation = new Reservation();
+        for (Class<? extends Model> modelClass : modelClasses) {
+            int start = MODEL_COUNTERS.get(modelClass).getAndAdd(count);
+            reservation.ranges.put(modelClass, new int[] { start, start + count, start });
+        }
+
+        return reservation;
+    }
+
+    /**
+     * Make the models created by the current thread wait for their IDs, until Reservation.deactivate() is called.
+     * They are given IDs by assignIds() once created: this lets models whose types are not known beforehand,
+     * e.g. vehicles read from a file, be created in parallel without reserving IDs for every type they could have.
+     */
+    public static void deferIds() {
+        ACTIVE_RESERVATION.set(DEFERRED);
     }
 
+    /**
+     * Give IDs to models created while IDs were deferred, reserving as many consecutive IDs as there are models
+     * of each type. Models keep the order of the calls, and their order in each call, whatever the order of their
+     * creation: calls made in file order sort the models as in the file.
+     * @param models The models created while IDs were deferred
+     */
+    public static void assignIds(List<? extends Model> models) {
+        Map<Class<? extends Model>, int[]> next = new HashMap<>();
+        for (Model m : models) {
+            next.computeIfAbsent(m.getClass(), modelClass -> new int[1])[0]++;
+        }
+        for (Map.Entry<Class<? extends Model>, int[]> count : next.entrySet()) {
+            int[] id = count.getValue();
+            id[0] = MODEL_COUNTERS.get(count.getKey()).getAndAdd(id[0]);
+        }
+
+        for (Model m : models) {
+            m.assignInternalId(next.get(m.getClass())[0]++);
+        }
+    }
+
+    /**
+     * A set of reserved IDs, to be used by a single thread.
+     */
+    public static final class Reservation {
+        /**
+         * The next ID, the end and the start of the range, by model class.
+         */
+        private final Map<Class<? extends Model>, int[]> ranges = new HashMap<>();
+
+        private Reservation() {
+        }
+
+        /**
+         * Create a reservation of the same IDs again, for models created anew from the same data:
+         * models read again from a file then get back the IDs they had when first read.
+         * @return The new reservation
+         */
+        public Reservation reuse() {
+            Reservation copy = new Reservation();
+            for (Map.Entry<Class<? extends Model>, int[]> range : ranges.entrySet()) {
+                int[] r = range.getValue();
+                copy.ranges.put(range.getKey(), new int[] { r[2], r[1], r[2] });
+            }
+
+            return copy;
+        }
+
+        /**
+         * Make the models created by the current thread use these IDs, until deactivate() is called.
+         * Once a range is exhausted, IDs are generated as usual.
+         */
+        public void activate() {
+            ACTIVE_RESERVATION.set(this);
+        }
+
+        /**
+         * Make the models created by the current thread use generated IDs again.
+         */
+        public static void deactivate() {
+            ACTIVE_RESERVATION.remove();
+        }
+    }
 }
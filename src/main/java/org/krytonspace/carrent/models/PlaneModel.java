@@ -12,6 +12,21 @@ public class PlaneModel extends VehicleModel {
     @ModelField(name = "Engine count")
     private int engineCount;
 
+    /**
+     * Constructor.
+     */
+    public PlaneModel() {
+
+    }
+
+    /**
+     * Constructor, for a model standing in for another one, which keeps its internal ID.
+     * @param internalId The internal ID of the model stood in for
+     */
+    protected PlaneModel(int internalId) {
+        super(internalId);
+    }
+
     public int getHoursFlown() {
         return hoursFlown;
     }
@@ -3,6 +3,7 @@ package org.krytonspace.carrent.models;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import org.krytonspace.carrent.utils.ModelField;
+import org.krytonspace.carrent.utils.StringPool;
 
 /**
  * Model class holding data for a vehicle.
@@ -35,6 +36,21 @@ public abstract class VehicleModel extends Model {
     @ModelField(name = "Max speed")
     private int maxSpeed;
 
+    /**
+     * Constructor.
+     */
+    public VehicleModel() {
+
+    }
+
+    /**
+     * Constructor, for a model standing in for another one, which keeps its internal ID.
+     * @param internalId The internal ID of the model stood in for
+     */
+    protected VehicleModel(int internalId) {
+        super(internalId);
+    }
+
     public String getBrand() {
         return brand;
     }
@@ -75,6 +91,16 @@ public abstract class VehicleModel extends Model {
         this.maxSpeed = maxSpeed;
     }
 
+    /**
+     * Replace the fields taking few distinct values by their canonical instance.
+     * Subclasses which do not keep these fields in the object override it.
+     * @param pool The pool holding the canonical strings
+     */
+    public void canonicalizeStrings(StringPool pool) {
+        this.brand = pool.canonicalize(brand);
+        this.model = pool.canonicalize(model);
+    }
+
     public enum Condition {
         New,
         VeryGood,
@@ -0,0 +1,70 @@
+package org.krytonspace.carrent.models.offheap;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import org.krytonspace.carrent.models.BikeModel;
+import org.krytonspace.carrent.models.BikeModelAccessor;
+import org.krytonspace.carrent.utils.ModelAccessor;
+import org.krytonspace.carrent.utils.StringPool;
+
+/**
+ * Bike whose string fields are stored in a RecordArena, see OffHeapModels.
+ * Primitive and enum fields take no more room in the object than a reference, and are kept in it.
+ */
+@JsonTypeName("bike")
+public final class OffHeapBikeModel extends BikeModel {
+
+    /**
+     * The string columns, which come first.
+     */
+    private static final int SLOTS = BikeModelAccessor.MODEL + 1;
+
+    private final OffHeapRecord record;
+
+    /**
+     * Constructor.
+     * @param arena The arena to store the string fields in
+     * @param source The bike to copy, whose internal ID is kept
+     */
+    OffHeapBikeModel(RecordArena arena, BikeModel source) {
+        super(source.getInternalId());
+        this.record = new OffHeapRecord(arena, source.getId(),
+                OffHeapRecord.share(arena, source.getBrand()), OffHeapRecord.share(arena, source.getModel()));
+        // The other columns stay in the object.
+        OffHeapModels.copyColumns(ModelAccessor.forModel(BikeModel.class), source, this, SLOTS);
+    }
+
+    @Override
+    public String getId() {
+        return record.getString(BikeModelAccessor.ID);
+    }
+
+    @Override
+    public String getBrand() {
+        return record.getString(BikeModelAccessor.BRAND);
+    }
+
+    @Override
+    public String getModel() {
+        return record.getString(BikeModelAccessor.MODEL);
+    }
+
+    @Override
+    public void setId(String id) {
+        record.set(BikeModelAccessor.ID, id);
+    }
+
+    @Override
+    public void setBrand(String brand) {
+        record.setShared(BikeModelAccessor.BRAND, brand);
+    }
+
+    @Override
+    public void setModel(String model) {
+        record.setShared(BikeModelAccessor.MODEL, model);
+    }
+
+    @Override
+    public void canonicalizeStrings(StringPool pool) {
+        record.canonicalize(pool, BikeModelAccessor.BRAND, BikeModelAccessor.MODEL);
+    }
+}
@@ -0,0 +1,70 @@
+package org.krytonspace.carrent.models.offheap;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import org.krytonspace.carrent.models.CarModel;
+import org.krytonspace.carrent.models.CarModelAccessor;
+import org.krytonspace.carrent.utils.ModelAccessor;
+import org.krytonspace.carrent.utils.StringPool;
+
+/**
+ * Car whose string fields are stored in a RecordArena, see OffHeapModels.
+ * Primitive and enum fields take no more room in the object than a reference, and are kept in it.
+ */
+@JsonTypeName("car")
+public final class OffHeapCarModel extends CarModel {
+
+    /**
+     * The string columns, which come first.
+     */
+    private static final int SLOTS = CarModelAccessor.MODEL + 1;
+
+    private final OffHeapRecord record;
+
+    /**
+     * Constructor.
+     * @param arena The arena to store the string fields in
+     * @param source The car to copy, whose internal ID is kept
+     */
+    OffHeapCarModel(RecordArena arena, CarModel source) {
+        super(source.getInternalId());
+        this.record = new OffHeapRecord(arena, source.getId(),
+                OffHeapRecord.share(arena, source.getBrand()), OffHeapRecord.share(arena, source.getModel()));
+        // The other columns stay in the object.
+        OffHeapModels.copyColumns(ModelAccessor.forModel(CarModel.class), source, this, SLOTS);
+    }
+
+    @Override
+    public String getId() {
+        return record.getString(CarModelAccessor.ID);
+    }
+
+    @Override
+    public String getBrand() {
+        return record.getString(CarModelAccessor.BRAND);
+    }
+
+    @Override
+    public String getModel() {
+        return record.getString(CarModelAccessor.MODEL);
+    }
+
+    @Override
+    public void setId(String id) {
+        record.set(CarModelAccessor.ID, id);
+    }
+
+    @Override
+    public void setBrand(String brand) {
+        record.setShared(CarModelAccessor.BRAND, brand);
+    }
+
+    @Override
+    public void setModel(String model) {
+        record.setShared(CarModelAccessor.MODEL, model);
+    }
+
+    @Override
+    public void canonicalizeStrings(StringPool pool) {
+        record.canonicalize(pool, CarModelAccessor.BRAND, CarModelAccessor.MODEL);
+    }
+}
@@ -0,0 +1,125 @@
+package org.krytonspace.carrent.models.offheap;
+
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ClientModelAccessor;
+import org.krytonspace.carrent.utils.StringPool;
+
+/**
+ * Client whose string fields are stored in a RecordArena, one slot per column, see OffHeapModels.
+ * The birth date is a day count, which takes no more room in the object than a reference: it is kept in it,
+ * and its slot left empty.
+ */
+public final class OffHeapClientModel extends ClientModel {
+
+    private final OffHeapRecord record;
+
+    /**
+     * Constructor.
+     * @param arena The arena to store the fields in
+     * @param source The client to copy, whose internal ID is kept
+     */
+    OffHeapClientModel(RecordArena arena, ClientModel source) {
+        super(source.getInternalId());
+        this.record = new OffHeapRecord(arena, source.getId(), source.getLastName(), source.getFirstName(),
+                null, source.getAddress(), OffHeapRecord.share(arena, source.getPostalCode()),
+                OffHeapRecord.share(arena, source.getCity()), OffHeapRecord.share(arena, source.getLicenses()),
+                source.getEmailAddress(), source.getPhoneNumber());
+        setBirthDateEpochDay(source.getBirthDateEpochDay());
+    }
+
+    @Override
+    public String getId() {
+        return record.getString(ClientModelAccessor.ID);
+    }
+
+    @Override
+    public String getLastName() {
+        return record.getString(ClientModelAccessor.LAST_NAME);
+    }
+
+    @Override
+    public String getFirstName() {
+        return record.getString(ClientModelAccessor.FIRST_NAME);
+    }
+
+    @Override
+    public String getAddress() {
+        return record.getString(ClientModelAccessor.ADDRESS);
+    }
+
+    @Override
+    public String getPostalCode() {
+        return record.getString(ClientModelAccessor.POSTAL_CODE);
+    }
+
+    @Override
+    public String getCity() {
+        return record.getString(ClientModelAccessor.CITY);
+    }
+
+    @Override
+    public String getLicenses() {
+        return record.getString(ClientModelAccessor.LICENSES);
+    }
+
+    @Override
+    public String getEmailAddress() {
+        return record.getString(ClientModelAccessor.EMAIL_ADDRESS);
+    }
+
+    @Override
+    public String getPhoneNumber() {
+        return record.getString(ClientModelAccessor.PHONE_NUMBER);
+    }
+
+    @Override
+    public void setId(String id) {
+        record.set(ClientModelAccessor.ID, id);
+    }
+
+    @Override
+    public void setLastName(String lastName) {
+        record.set(ClientModelAccessor.LAST_NAME, lastName);
+    }
+
+    @Override
+    public void setFirstName(String firstName) {
+        record.set(ClientModelAccessor.FIRST_NAME, firstName);
+    }
+
+    @Override
+    public void setAddress(String address) {
+        record.set(ClientModelAccessor.ADDRESS, address);
+    }
+
+    @Override
+    public void setPostalCode(String postalCode) {
+        record.setShared(ClientModelAccessor.POSTAL_CODE, postalCode);
+    }
+
+    @Override
+    public void setCity(String city) {
+        record.setShared(ClientModelAccessor.CITY, city);
+    }
+
+    @Override
+    public void setLicenses(String licenses) {
+        record.setShared(ClientModelAccessor.LICENSES, licenses);
+    }
+
+    @Override
+    public void setEmailAddress(String emailAddress) {
+        record.set(ClientModelAccessor.EMAIL_ADDRESS, emailAddress);
+    }
+
+    @Override
+    public void setPhoneNumber(String phoneNumber) {
+        record.set(ClientModelAccessor.PHONE_NUMBER, phoneNumber);
+    }
+
+    @Override
+    public void canonicalizeStrings(StringPool pool) {
+        record.canonicalize(pool, ClientModelAccessor.POSTAL_CODE, ClientModelAccessor.CITY,
+                ClientModelAccessor.LICENSES);
+    }
+}
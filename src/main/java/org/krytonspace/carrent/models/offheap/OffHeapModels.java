@@ -0,0 +1,81 @@
+package org.krytonspace.carrent.models.offheap;
+
+import org.krytonspace.carrent.models.BikeModel;
+import org.krytonspace.carrent.models.CarModel;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.PlaneModel;
+import org.krytonspace.carrent.models.VehicleModel;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+/**
+ * Optional storage of the clients and vehicles of a database outside of the Java heap, for databases holding
+ * millions of them, whose strings and dates keep the garbage collector busy.
+ *
+ * Models are replaced by flyweights extending the model classes, which keep their fields in a RecordArena:
+ * the heap then only holds one small object per model, referenced by the lists of the database, instead of a
+ * dozen strings and dates. Controllers, table models and database handlers work on them as on other models.
+ * The fields of a flyweight are a record of the arena, see OffHeapRecord. Getters decode them on each call, so
+ * that reading a field is slower and allocates a short-lived string, but for the fields taking few distinct
+ * values, e.g. cities or vehicle brands, which are shared between records and read without being decoded.
+ * Setters rewrite the fields in the arena, see RecordArena.
+ *
+ * Setters are called on the event dispatch thread, and getters may be called on any thread: the address of
+ * the fields of a flyweight is volatile, and the arena synchronized. Background saves do not read flyweights
+ * anyway, but heap copies of them, see DatabaseModel.snapshot().
+ *
+ * Enabled by setting the "carrent.offHeapModels" system property to true, see DatabaseController.
+ */
+public final class OffHeapModels {
+
+    /**
+     * Can't create instances of this class.
+     */
+    private OffHeapModels() {
+
+    }
+
+    /**
+     * Move the clients and vehicles of a database into a new arena. Models registered later stay on the heap.
+     * @param model The database
+     * @return The arena holding the fields of the models
+     */
+    public static RecordArena moveOffHeap(DatabaseModel model) {
+        RecordArena arena = new RecordArena();
+        model.replaceClients(c -> c instanceof OffHeapClientModel ? c : new OffHeapClientModel(arena, c));
+        model.replaceVehicles(v -> moveOffHeap(arena, v));
+
+        return arena;
+    }
+
+    private static VehicleModel moveOffHeap(RecordArena arena, VehicleModel v) {
+        if (v instanceof OffHeapCarModel || v instanceof OffHeapBikeModel || v instanceof OffHeapPlaneModel) {
+            return v;
+        }
+
+        if (v instanceof CarModel) {
+            return new OffHeapCarModel(arena, (CarModel) v);
+        } else if (v instanceof BikeModel) {
+            return new OffHeapBikeModel(arena, (BikeModel) v);
+        } else if (v instanceof PlaneModel) {
+            return new OffHeapPlaneModel(arena, (PlaneModel) v);
+        }
+
+        // Other types of vehicles stay on the heap.
+        return v;
+    }
+
+    /**
+     * Copy the columns of a model into another one, from a given column on.
+     * @param accessor The accessor of the models
+     * @param source The model to copy
+     * @param target The model to copy into
+     * @param from The first column to copy
+     * @param <T> The model type
+     */
+    static <T> void copyColumns(ModelAccessor<T> accessor, T source, T target, int from) {
+        for (int i = from; i < accessor.getColumnCount(); i++) {
+            accessor.set(target, i, accessor.get(source, i));
+        }
+    }
+}
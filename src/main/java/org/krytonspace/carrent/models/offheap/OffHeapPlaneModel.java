@@ -0,0 +1,70 @@
+package org.krytonspace.carrent.models.offheap;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import org.krytonspace.carrent.models.PlaneModel;
+import org.krytonspace.carrent.models.PlaneModelAccessor;
+import org.krytonspace.carrent.utils.ModelAccessor;
+import org.krytonspace.carrent.utils.StringPool;
+
+/**
+ * Plane whose string fields are stored in a RecordArena, see OffHeapModels.
+ * Primitive and enum fields take no more room in the object than a reference, and are kept in it.
+ */
+@JsonTypeName("plane")
+public final class OffHeapPlaneModel extends PlaneModel {
+
+    /**
+     * The string columns, which come first.
+     */
+    private static final int SLOTS = PlaneModelAccessor.MODEL + 1;
+
+    private final OffHeapRecord record;
+
+    /**
+     * Constructor.
+     * @param arena The arena to store the string fields in
+     * @param source The plane to copy, whose internal ID is kept
+     */
+    OffHeapPlaneModel(RecordArena arena, PlaneModel source) {
+        super(source.getInternalId());
+        this.record = new OffHeapRecord(arena, source.getId(),
+                OffHeapRecord.share(arena, source.getBrand()), OffHeapRecord.share(arena, source.getModel()));
+        // The other columns stay in the object.
+        OffHeapModels.copyColumns(ModelAccessor.forModel(PlaneModel.class), source, this, SLOTS);
+    }
+
+    @Override
+    public String getId() {
+        return record.getString(PlaneModelAccessor.ID);
+    }
+
+    @Override
+    public String getBrand() {
+        return record.getString(PlaneModelAccessor.BRAND);
+    }
+
+    @Override
+    public String getModel() {
+        return record.getString(PlaneModelAccessor.MODEL);
+    }
+
+    @Override
+    public void setId(String id) {
+        record.set(PlaneModelAccessor.ID, id);
+    }
+
+    @Override
+    public void setBrand(String brand) {
+        record.setShared(PlaneModelAccessor.BRAND, brand);
+    }
+
+    @Override
+    public void setModel(String model) {
+        record.setShared(PlaneModelAccessor.MODEL, model);
+    }
+
+    @Override
+    public void canonicalizeStrings(StringPool pool) {
+        record.canonicalize(pool, PlaneModelAccessor.BRAND, PlaneModelAccessor.MODEL);
+    }
+}
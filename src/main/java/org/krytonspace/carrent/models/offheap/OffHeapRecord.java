@@ -0,0 +1,78 @@
+package org.krytonspace.carrent.models.offheap;
+
+import org.krytonspace.carrent.utils.StringPool;
+
+/**
+ * The fields of a flyweight: a record of a RecordArena, with one slot per column of the model, indexed by the
+ * column constants of its generated accessor. The flyweights of every model type delegate to it, their getters
+ * and setters only naming the slot they read or write.
+ *
+ * The address of the record changes when a setter appends it again, see RecordArena.set(): it is volatile, so
+ * that getters called on other threads than the event dispatch thread read the latest one.
+ */
+final class OffHeapRecord {
+
+    private final RecordArena arena;
+    private final int slotCount;
+    private volatile long address;
+
+    /**
+     * Constructor.
+     * @param arena The arena to store the record in
+     * @param slots The value of each slot: a String, or null
+     */
+    OffHeapRecord(RecordArena arena, Object... slots) {
+        this.arena = arena;
+        this.slotCount = slots.length;
+        this.address = arena.add(slots);
+    }
+
+    /**
+     * Share a string taking few distinct values in the arena, through the shared pool, see RecordArena.share().
+     * @param arena The arena
+     * @param s The string, or null
+     * @return The shared string equal to s, or s itself
+     */
+    static String share(RecordArena arena, String s) {
+        return arena.share(StringPool.getShared().canonicalize(s));
+    }
+
+    /**
+     * Read a string slot.
+     * @param slot The slot
+     * @return The string, or null
+     */
+    String getString(int slot) {
+        return arena.getString(address, slot);
+    }
+
+    /**
+     * Change a slot.
+     * @param slot The slot
+     * @param value The new value of the slot: a String, or null
+     */
+    void set(int slot, String value) {
+        address = arena.set(address, slotCount, slot, value);
+    }
+
+    /**
+     * Change a slot of a column taking few distinct values, sharing its new value in the arena.
+     * @param slot The slot
+     * @param value The new value of the slot, or null
+     */
+    void setShared(int slot, String value) {
+        set(slot, share(arena, value));
+    }
+
+    /**
+     * Replace the strings of slots by their canonical instance in a pool, sharing them in the arena.
+     * Mostly useful for strings stored in full because the arena already shared as many strings as it can.
+     * @param pool The pool holding the canonical strings
+     * @param slots The slots of the columns taking few distinct values
+     */
+    void canonicalize(StringPool pool, int... slots) {
+        for (int slot : slots) {
+            set(slot, arena.share(pool.canonicalize(getString(slot))));
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package org.krytonspace.carrent.models.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Storage of records outside of the Java heap, in direct byte buffers.
+ *
+ * A record is a fixed number of slots, each holding a string, a date or nothing, and is known by its address.
+ * Records are appended to chunks of a few megabytes. Changing a slot rewrites the record in place when its new
+ * version fits in the room reserved for it, which is the case of most edits, e.g. every column of a model being
+ * set to its current value or a field being corrected. A record which outgrows its room is appended again, with
+ * some room to spare, and the space of the previous version is only reclaimed with the whole arena, once it is
+ * no longer reachable.
+ *
+ * Strings taking few distinct values, e.g. cities or vehicle brands, can be shared between records, see share():
+ * slots holding them only refer to them, and are read back as the shared instance instead of being decoded.
+ *
+ * Layout of a record: the number of bytes reserved for its slots, then its slots in order, each a tag byte
+ * followed by the string length and its UTF-8 bytes, by the index of a shared string, or by the date as
+ * milliseconds. Records have few slots, which are skipped to find the one read.
+ *
+ * Records change in place, so reads are synchronized like writes: a reader never sees half a record.
+ */
+public class RecordArena {
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_DATE = 2;
+    private static final byte TAG_SHARED = 3;
+
+    /**
+     * The number of distinct strings shared between records at most.
+     */
+    private static final int MAX_SHARED_STRINGS = 1 << 16;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer current;
+    private long usedBytes;
+    private long reclaimableBytes;
+    private final List<String> sharedStrings = new ArrayList<>();
+    private final Map<String, Integer> sharedIndexes = new HashMap<>();
+
+    /**
+     * Append a record.
+     * @param slots The value of each slot: a String, a Date, or null
+     * @return The address of the record
+     * @throws IllegalArgumentException if a value is neither a String nor a Date
+     */
+    public synchronized long add(Object... slots) {
+        byte[][] strings = new byte[slots.length][];
+        int size = encode(slots, strings);
+
+        return append(slots, strings, size, size);
+    }
+
+    /**
+     * Share a string between the records holding it: slots set to it from now on only refer to it, and are read
+     * back as this instance. Meant for strings taking few distinct values, as each shared string stays on the
+     * heap with the arena. Their number is bounded: once it is reached, other strings are stored in full.
+     * @param s The string, or null
+     * @return The shared string equal to s, or s itself
+     */
+    public synchronized String share(String s) {
+        if (s == null) {
+            return null;
+        }
+
+        Integer index = sharedIndexes.get(s);
+        if (index != null) {
+            return sharedStrings.get(index);
+        }
+        if (sharedStrings.size() < MAX_SHARED_STRINGS) {
+            sharedIndexes.put(s, sharedStrings.size());
+            sharedStrings.add(s);
+        }
+
+        return s;
+    }
+
+    /**
+     * Change a slot of a record, in place if the new version of the record fits in the room reserved for it.
+     * @param address The address of the record
+     * @param slotCount The number of slots of the record
+     * @param slot The slot to change
+     * @param value The new value of the slot: a String, a Date, or null
+     * @return The address of the record, which is a new one if it has been appended again
+     * @throws IllegalArgumentException if the value is neither a String nor a Date
+     */
+    public synchronized long set(long address, int slotCount, int slot, Object value) {
+        Object[] slots = new Object[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = get(address, i);
+        }
+        // Unless a string stored in full has been shared since.
+        if (Objects.equals(slots[slot], value) && (slots[slot] == value || !sharedIndexes.containsKey(value))) {
+            return address;
+        }
+        slots[slot] = value;
+
+        byte[][] strings = new byte[slotCount][];
+        int size = encode(slots, strings);
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int room = chunk.getInt((int) address);
+
+        if (size <= room) {
+            write(chunk, (int) address + 4, slots, strings);
+            return address;
+        }
+
+        // Spare room for the next edits of the record, which will likely make it grow again.
+        reclaimableBytes += 4 + room;
+        return append(slots, strings, size, size + size / 4);
+    }
+
+    /**
+     * Read a string slot.
+     * @param address The address of the record
+     * @param slot The slot
+     * @return The string, or null
+     */
+    public synchronized String getString(long address, int slot) {
+        return (String) get(address, slot);
+    }
+
+    /**
+     * Read a date slot.
+     * @param address The address of the record
+     * @param slot The slot
+     * @return A new date, or null
+     */
+    public synchronized Date getDate(long address, int slot) {
+        return (Date) get(address, slot);
+    }
+
+    /**
+     * Getter
+     * @return The number of bytes taken by records, including their previous versions and spare room
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Getter
+     * @return The number of bytes taken by previous versions of records
+     */
+    public synchronized long getReclaimableBytes() {
+        return reclaimableBytes;
+    }
+
+    /**
+     * Compute the size of the slots of a record.
+     * @param slots The value of each slot
+     * @param strings Filled with the UTF-8 bytes of each string slot, but shared strings
+     * @return The number of bytes taken by the slots
+     * @throws IllegalArgumentException if a value is neither a String nor a Date
+     */
+    private int encode(Object[] slots, byte[][] strings) {
+        int size = 0;
+        for (int i = 0; i < slots.length; i++) {
+            Object value = slots[i];
+            if (value instanceof String && sharedIndexes.containsKey(value)) {
+                size += 1 + 4;
+            } else if (value instanceof String) {
+                strings[i] = ((String) value).getBytes(StandardCharsets.UTF_8);
+                size += 1 + 4 + strings[i].length;
+            } else if (value instanceof Date) {
+                size += 1 + 8;
+            } else if (value == null) {
+                size += 1;
+            } else {
+                throw new IllegalArgumentException("Unsupported slot value: " + value.getClass().getSimpleName());
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Append a record, reserving room for its slots.
+     * @return The address of the record
+     */
+    private long append(Object[] slots, byte[][] strings, int size, int room) {
+        ByteBuffer chunk = reserve(4 + room);
+        int start = chunk.position();
+
+        chunk.putInt(start, room);
+        write(chunk, start + 4, slots, strings);
+        chunk.position(start + 4 + room);
+        usedBytes += 4 + room;
+
+        return ((long) (chunks.length - 1) << 32) | start;
+    }
+
+    /**
+     * Write the slots of a record at a position of a chunk.
+     */
+    private void write(ByteBuffer chunk, int position, Object[] slots, byte[][] strings) {
+        for (int i = 0; i < slots.length; i++) {
+            Object value = slots[i];
+            if (value instanceof String && strings[i] == null) {
+                chunk.put(position, TAG_SHARED);
+                chunk.putInt(position + 1, sharedIndexes.get(value));
+                position += 5;
+            } else if (value instanceof String) {
+                chunk.put(position, TAG_STRING);
+                chunk.putInt(position + 1, strings[i].length);
+                // The position of the chunk is the end of the last record, which may follow this one.
+                ByteBuffer view = chunk.duplicate();
+                view.position(position + 5);
+                view.put(strings[i]);
+                position += 5 + strings[i].length;
+            } else if (value instanceof Date) {
+                chunk.put(position, TAG_DATE);
+                chunk.putLong(position + 1, ((Date) value).getTime());
+                position += 9;
+            } else {
+                chunk.put(position, TAG_NULL);
+                position++;
+            }
+        }
+    }
+
+    private Object get(long address, int slot) {
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int position = skip(address, slot);
+
+        switch (chunk.get(position)) {
+            case TAG_STRING:
+                byte[] bytes = new byte[chunk.getInt(position + 1)];
+                ByteBuffer view = chunk.duplicate();
+                view.position(position + 5);
+                view.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case TAG_SHARED:
+                return sharedStrings.get(chunk.getInt(position + 1));
+            case TAG_DATE:
+                return new Date(chunk.getLong(position + 1));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Find the position of a slot of a record in its chunk.
+     * @param address The address of the record
+     * @param slot The slot, or the number of slots to find the end of the record
+     * @return The position
+     */
+    private int skip(long address, int slot) {
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int position = (int) address + 4;
+
+        for (int i = 0; i < slot; i++) {
+            switch (chunk.get(position)) {
+                case TAG_STRING:
+                    position += 5 + chunk.getInt(position + 1);
+                    break;
+                case TAG_SHARED:
+                    position += 5;
+                    break;
+                case TAG_DATE:
+                    position += 9;
+                    break;
+                default:
+                    position++;
+                    break;
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Get a chunk with room for a record, allocating a new one if the current one is full.
+     */
+    private ByteBuffer reserve(int size) {
+        if (current == null || current.remaining() < size) {
+            current = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, size));
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = current;
+            chunks = grown;
+        }
+
+        return current;
+    }
+}
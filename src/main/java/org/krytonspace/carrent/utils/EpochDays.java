@@ -0,0 +1,92 @@
+package org.krytonspace.carrent.utils;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Conversions between dates and day counts since 1970-01-01.
+ * Models hold dates as day counts, which is the precision of every date the application deals with:
+ * a date is an int in the model instead of an object of its own, and dates are compared as ints.
+ *
+ * Dates shown to and typed by the user are at the start of the day in the system time zone, see fromDate() and
+ * toDate(). Timestamps written to files are at the start of the day in the system time zone too, as earlier
+ * versions wrote them, so that they read the files written since in the same time zone. Timestamps are read back
+ * as the day starting the nearest to them, see fromMillis(): a file keeps its days when read in another time zone
+ * less than 12 hours apart from the one it has been written in.
+ */
+public final class EpochDays {
+
+    /**
+     * The day count denoting a missing date.
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    /**
+     * Can't create instances of this class.
+     */
+    private EpochDays() {
+
+    }
+
+    /**
+     * Convert a date to a day count.
+     * @param date The date to convert, or null
+     * @return The number of days since 1970-01-01 of the date in the system time zone, or NONE
+     */
+    public static int fromDate(Date date) {
+        return date == null ? NONE :
+                (int) Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Convert a timestamp read from a file to a day count.
+     * The day is the one starting the nearest to the timestamp in the system time zone: the start of a day in the
+     * system time zone gives that day, including in time zones ahead of UTC by more than 12 hours, and so does the
+     * start of a day in a time zone less than 12 hours apart.
+     * @param millis The number of milliseconds since 1970-01-01T00:00:00Z
+     * @return The number of days since 1970-01-01
+     */
+    public static int fromMillis(long millis) {
+        return (int) Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDateTime()
+                .plusHours(12).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Convert a local date to a day count.
+     * @param date The date to convert, or null
+     * @return The number of days since 1970-01-01, or NONE
+     */
+    public static int fromLocalDate(LocalDate date) {
+        return date == null ? NONE : (int) date.toEpochDay();
+    }
+
+    /**
+     * Convert a day count to a date, at the start of the day in the system time zone.
+     * @param epochDay The number of days since 1970-01-01, or NONE
+     * @return The corresponding date, or null
+     */
+    public static Date toDate(int epochDay) {
+        return epochDay == NONE ? null :
+                Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Convert a day count to a timestamp to write to a file, at the start of the day in the system time zone.
+     * @param epochDay The number of days since 1970-01-01
+     * @return The number of milliseconds since 1970-01-01T00:00:00Z
+     */
+    public static long toMillis(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Convert a day count to a local date.
+     * @param epochDay The number of days since 1970-01-01, or NONE
+     * @return The corresponding date, or null
+     */
+    public static LocalDate toLocalDate(int epochDay) {
+        return epochDay == NONE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
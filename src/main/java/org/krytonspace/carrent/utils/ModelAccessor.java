@@ -0,0 +1,246 @@
+package org.krytonspace.carrent.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typed access to the fields of a model annotated with ModelField, by column index.
+ *
+ * An accessor is generated at compile time for each model by ModelAccessorProcessor, as a class
+ * named after the model with the "Accessor" suffix, in the same package. It holds a constant for
+ * each column, named after the property in upper case, e.g. ClientModelAccessor.LAST_NAME.
+ * Columns are the fields in declaration order, base type fields first.
+ *
+ * Accessors set fields directly: edits made by the user must go through the controllers.
+ * @param <T> The model type
+ */
+public abstract class ModelAccessor<T> {
+
+    private static final Map<Class<?>, ModelAccessor<?>> ACCESSORS = new ConcurrentHashMap<>();
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String[] properties;
+    private final List<ModelFieldPair> columns;
+
+    /**
+     * Constructor.
+     * @param properties The property name of each column, as written in files
+     * @param names The display name of each column
+     * @param types The field type of each column
+     */
+    protected ModelAccessor(String[] properties, String[] names, Class<?>[] types) {
+        this.properties = properties;
+
+        List<ModelFieldPair> columns = new ArrayList<>(properties.length);
+        for (int i = 0; i < properties.length; i++) {
+            columns.add(new ModelFieldPair(names[i], types[i]));
+        }
+        this.columns = Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Get the accessor of a model type.
+     * Subclasses of a model without @ModelField fields of their own, which only change how fields are stored,
+     * share the accessor of the model.
+     * @param type The model type
+     * @param <T> The model type
+     * @return The accessor, shared by every caller
+     * @throws IllegalArgumentException if no accessor has been generated for this type or a base type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ModelAccessor<T> forModel(Class<T> type) {
+        return (ModelAccessor<T>) ACCESSORS.computeIfAbsent(type, t -> {
+            for (Class<?> c = t; c != null; c = c.getSuperclass()) {
+                try {
+                    Class<?> accessor = Class.forName(c.getName() + "Accessor", true, c.getClassLoader());
+                    return (ModelAccessor<?>) accessor.getDeclaredConstructor().newInstance();
+                } catch (ClassNotFoundException e) {
+                    // Try the base type.
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("No accessor for " + t.getSimpleName() + ": " + e);
+                }
+            }
+            throw new IllegalArgumentException("No accessor for " + t.getSimpleName());
+        });
+    }
+
+    /**
+     * Copy a model, see copy(Object).
+     * @param model The model
+     * @param <T> The model type
+     * @return The copy
+     * @throws IllegalArgumentException if no accessor has been generated for the model type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T copyOf(T model) {
+        return ((ModelAccessor<T>) forModel(model.getClass())).copy(model);
+    }
+
+    /**
+     * Compute a 64 bit hash of the content of a model, over its accessor and every column:
+     * two models with the same hash almost certainly hold the same data.
+     * Hashes are only meant to be compared within the same run of the application.
+     * @param model The model
+     * @return The hash
+     * @throws IllegalArgumentException if no accessor has been generated for the model type
+     */
+    @SuppressWarnings("unchecked")
+    public static long contentHash(Object model) {
+        ModelAccessor<Object> accessor = (ModelAccessor<Object>) forModel(model.getClass());
+        long hash = hash(FNV_OFFSET, accessor.getClass().getName());
+
+        for (int i = 0; i < accessor.getColumnCount(); i++) {
+            Object value = accessor.get(model, i);
+            if (value == null) {
+                hash = mix(hash, 0);
+            } else if (value instanceof String) {
+                hash = hash(mix(hash, 1), (String) value);
+            } else if (value instanceof Date) {
+                hash = mix(mix(hash, 2), ((Date) value).getTime());
+            } else if (value instanceof Number) {
+                hash = mix(mix(hash, 3), ((Number) value).longValue());
+            } else if (value instanceof Enum) {
+                hash = hash(mix(hash, 4), ((Enum<?>) value).name());
+            } else {
+                hash = mix(mix(hash, 5), value.hashCode());
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * FNV-1a over the characters of a string, followed by its length so that columns can not run together.
+     */
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+
+        return mix(hash, value.length());
+    }
+
+    /**
+     * FNV-1a over the bytes of a long.
+     */
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Getter
+     * @return The number of columns
+     */
+    public int getColumnCount() {
+        return properties.length;
+    }
+
+    /**
+     * Getter
+     * @return The display name and field type of each column
+     */
+    public List<ModelFieldPair> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Getter
+     * @param column The column index
+     * @return The display name of the column
+     */
+    public String getColumnName(int column) {
+        return columns.get(column).getName();
+    }
+
+    /**
+     * Getter
+     * @param column The column index
+     * @return The field type of the column
+     */
+    public Class<?> getColumnType(int column) {
+        return columns.get(column).getType();
+    }
+
+    /**
+     * Getter
+     * @param column The column index
+     * @return The property name of the column, as written in files
+     */
+    public String getPropertyName(int column) {
+        return properties[column];
+    }
+
+    /**
+     * Find a column by property name.
+     * @param property The property name, as written in files
+     * @return The column index, or -1 if the model has no such property
+     */
+    public int indexOf(String property) {
+        for (int i = 0; i < properties.length; i++) {
+            if (properties[i].equals(property)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the value of a column.
+     * @param model The model
+     * @param column The column index
+     * @return The field value, boxed if primitive
+     */
+    public abstract Object get(T model, int column);
+
+    /**
+     * Set the value of a column.
+     * @param model The model
+     * @param column The column index
+     * @param value The new field value, of the column type or its boxed type
+     */
+    public abstract void set(T model, int column, Object value);
+
+    /**
+     * Get the value of an int column, without boxing.
+     * Date columns held as day counts are int columns too, and give the day count, see EpochDays.
+     * @param model The model
+     * @param column The column index
+     * @return The field value
+     * @throws IllegalArgumentException if the column is not an int column
+     */
+    public int getInt(T model, int column) {
+        throw new IllegalArgumentException("Column '" + getPropertyName(column) + "' is not an int column");
+    }
+
+    /**
+     * Set the value of an int column, without boxing.
+     * @param model The model
+     * @param column The column index
+     * @param value The new field value
+     * @throws IllegalArgumentException if the column is not an int column
+     */
+    public void setInt(T model, int column, int value) {
+        throw new IllegalArgumentException("Column '" + getPropertyName(column) + "' is not an int column");
+    }
+
+    /**
+     * Copy every column of a model to a new model of the accessor type, which keeps the internal ID of the model.
+     * The copy holds the data of the model as it is now: it is not changed by later edits of the model,
+     * and is a plain model even if the model holds its data in another way.
+     * @param model The model
+     * @return The copy
+     */
+    public abstract T copy(T model);
+}
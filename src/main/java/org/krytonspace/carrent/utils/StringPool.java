@@ -0,0 +1,135 @@
+package org.krytonspace.carrent.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of canonical strings, for the fields of models which take few distinct values, e.g. cities or
+ * vehicle brands: models loaded or created with the same value then share one string instead of
+ * holding a copy each.
+ *
+ * The shared pool is used by every database handler on load, and by the controllers when models are added.
+ * It is bounded: once full, strings which are not in it yet are returned as they are. Its capacity is set by
+ * the "carrent.stringPoolCapacity" system property, 0 disabling it. Pools are thread safe.
+ */
+public final class StringPool {
+
+    /**
+     * The default number of distinct strings the shared pool holds.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final StringPool SHARED = new StringPool(
+            Integer.getInteger("carrent.stringPoolCapacity", DEFAULT_CAPACITY));
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param capacity The number of distinct strings the pool holds at most
+     */
+    public StringPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Getter
+     * @return The pool shared by the handlers and controllers
+     */
+    public static StringPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the canonical instance of a string, adding it to the pool if it is not full.
+     * @param s The string, or null
+     * @return The string of the pool equal to s, or s itself
+     */
+    public String canonicalize(String s) {
+        if (s == null || capacity <= 0) {
+            return s;
+        }
+
+        lookups.increment();
+        String canonical = strings.get(s);
+        if (canonical == null) {
+            // The bound is approximate when strings are added concurrently.
+            if (strings.size() >= capacity) {
+                return s;
+            }
+            canonical = strings.putIfAbsent(s, s);
+            if (canonical == null) {
+                return s;
+            }
+        }
+
+        hits.increment();
+        if (canonical != s) {
+            // The copy can be collected.
+            savedBytes.add(sizeOf(s));
+        }
+
+        return canonical;
+    }
+
+    /**
+     * Getter
+     * @return The number of distinct strings in the pool
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Getter
+     * @return The number of distinct strings the pool holds at most
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Getter
+     * @return The number of strings looked up so far
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * Getter
+     * @return The number of strings found in the pool so far
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Getter
+     * @return An estimate of the heap taken by the copies replaced by pooled strings so far, in bytes
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    /**
+     * Estimate the heap taken by a string: its object and its character array, with compressed references.
+     */
+    private static long sizeOf(String s) {
+        return 24 + ((16 + s.length() + 7) & ~7);
+    }
+
+    @Override
+    public String toString() {
+        long lookupCount = getLookups();
+        return String.format("%d/%d strings pooled, %.1f%% hits, %.1f MB saved",
+                size(),
+                capacity,
+                lookupCount == 0 ? 0.0 : getHits() * 100.0 / lookupCount,
+                getSavedBytes() / (1024.0 * 1024.0));
+    }
+}
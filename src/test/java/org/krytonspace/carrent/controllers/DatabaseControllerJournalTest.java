@@ -0,0 +1,141 @@
+package org.krytonspace.carrent.controllers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.controllers.event.DatabaseListener;
+import org.krytonspace.carrent.controllers.model.ClientController;
+import org.krytonspace.carrent.models.ClientModel;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Saves of a watched file whose journal grows past the compaction threshold.
+ */
+public class DatabaseControllerJournalTest {
+
+    private static final int CLIENT_COUNT = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseController controller;
+    private ClientController clients;
+
+    /**
+     * Code run on the event dispatch thread.
+     */
+    private interface EdtTask {
+        void run() throws Exception;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        onEdt(() -> {
+            controller = new DatabaseController();
+            clients = controller.getClientController();
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        onEdt(() -> controller.close());
+    }
+
+    @Test
+    public void compactionIsNotMergedBack() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json");
+        File journalFile = new File(file.getPath() + ".journal");
+        File previousJournalFile = new File(file.getPath() + ".journal.old");
+
+        onEdt(() -> {
+            List<ClientModel> created = new ArrayList<>();
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                created.add(clients.createClient("Name" + i, "First", "01/02/1990", i + " main street",
+                        "75001", "Paris", "B", "client" + i + "@example.com", "0102030405"));
+            }
+            clients.addClients(created);
+        });
+        onEdt(() -> controller.saveModelToFile(file));
+        // Let the watcher index the saved file.
+        controller.getWatcher().checkNow();
+
+        // Save until the journal grows past the threshold and is folded into the file.
+        long journalSize = 0;
+        for (int round = 0; journalFile.length() >= journalSize && !previousJournalFile.exists(); round++) {
+            assertTrue("The journal is never compacted", round < 100);
+            journalSize = journalFile.length();
+            String lastName = "Round" + round;
+            onEdt(() -> {
+                for (ClientModel client : clients.query().collect(Collectors.toList())) {
+                    clients.editClientLastName(client, lastName);
+                }
+            });
+            onEdt(() -> controller.saveModelToFile(file));
+        }
+
+        // Saves are synchronous: the compaction is done.
+        assertFalse(journalFile.exists());
+        assertFalse(previousJournalFile.exists());
+
+        // An edit left unsaved while the watcher looks at the compacted file.
+        AtomicInteger changeCount = new AtomicInteger();
+        onEdt(() -> {
+            controller.addDatabaseEventListener(new DatabaseListener() {
+                @Override
+                public void onDatabaseChanged() {
+                    changeCount.incrementAndGet();
+                }
+
+                @Override
+                public void onDatabaseLoading() {
+                }
+
+                @Override
+                public void onDatabaseLoaded() {
+                }
+
+                @Override
+                public void onDatabaseSaved() {
+                }
+            });
+            clients.editClientLastName(clients.query().findFirst().get(), "Pending");
+        });
+        // Let the watcher look at the compacted file, and the merges it may have scheduled run.
+        controller.getWatcher().checkNow();
+        onEdt(() -> { });
+
+        onEdt(() -> {
+            assertEquals("The compacted file has been merged back", 1, changeCount.get());
+            assertTrue(controller.hasUnsavedChanges());
+            assertEquals("Pending", clients.query().findFirst().get().getLastName());
+        });
+    }
+
+    private static void onEdt(EdtTask task) throws Exception {
+        Throwable[] error = new Throwable[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                task.run();
+            } catch (Exception | AssertionError e) {
+                error[0] = e;
+            }
+        });
+
+        if (error[0] instanceof AssertionError) {
+            throw (AssertionError) error[0];
+        }
+        if (error[0] != null) {
+            throw (Exception) error[0];
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.krytonspace.carrent.controllers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.controllers.event.DatabaseListener;
+import org.krytonspace.carrent.controllers.model.ClientController;
+import org.krytonspace.carrent.database.ChangeSet;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Changes made to the synced file by another program, merged into a database with unsaved changes.
+ */
+public class DatabaseControllerMergeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String watchFile;
+    private DatabaseController controller;
+    private ClientController clients;
+
+    /**
+     * Code run on the event dispatch thread.
+     */
+    private interface EdtTask {
+        void run() throws Exception;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // Changes are merged by the test, not by the watcher.
+        watchFile = System.setProperty("carrent.watchFile", "false");
+        onEdt(() -> {
+            controller = new DatabaseController();
+            clients = controller.getClientController();
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        onEdt(() -> controller.close());
+        if (watchFile == null) {
+            System.clearProperty("carrent.watchFile");
+        } else {
+            System.setProperty("carrent.watchFile", watchFile);
+        }
+    }
+
+    @Test
+    public void keepsUnsavedChangesOfTheSameModels() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json");
+        List<String> statuses = new ArrayList<>();
+
+        onEdt(() -> {
+            clients.addClients(Arrays.asList(
+                    clients.createClient("Doe", "John", "01/02/1990", "1 main street", "75001", "Paris", "B",
+                            "john@example.com", "0102030405"),
+                    clients.createClient("Roe", "Jane", "01/02/1990", "2 main street", "75001", "Paris", "B",
+                            "jane@example.com", "0102030405")));
+        });
+        onEdt(() -> controller.saveModelToFile(file));
+        onEdt(() -> {
+            controller.addDatabaseEventListener(new DatabaseListener() {
+                @Override
+                public void onDatabaseChanged() {
+                }
+
+                @Override
+                public void onDatabaseLoading() {
+                }
+
+                @Override
+                public void onDatabaseLoaded() {
+                }
+
+                @Override
+                public void onDatabaseSaved() {
+                }
+
+                @Override
+                public void onStatusChanged(String status) {
+                    statuses.add(status);
+                }
+            });
+            clients.editClientLastName(clients.query().findFirst().get(), "Edited here");
+        });
+
+        onEdt(() -> {
+            List<ClientModel> registered = clients.query().collect(Collectors.toList());
+            ChangeSet merged = new ChangeSet();
+            for (ClientModel client : registered) {
+                ClientModel changed = ModelAccessor.copyOf(client);
+                changed.setLastName("Edited by another program");
+                merged.put(changed);
+            }
+            controller.mergeFileChanges(file.getAbsoluteFile(), merged);
+        });
+        // Let the listeners record the merge.
+        onEdt(() -> { });
+
+        onEdt(() -> {
+            List<ClientModel> registered = clients.query().collect(Collectors.toList());
+            assertEquals("Edited here", registered.get(0).getLastName());
+            assertEquals("Edited by another program", registered.get(1).getLastName());
+            assertTrue(controller.hasUnsavedChanges());
+            assertTrue(statuses.get(statuses.size() - 1).contains("kept 1 unsaved"));
+        });
+    }
+
+    private static void onEdt(EdtTask task) throws Exception {
+        Throwable[] error = new Throwable[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                task.run();
+            } catch (Exception | AssertionError e) {
+                error[0] = e;
+            }
+        });
+
+        if (error[0] instanceof AssertionError) {
+            throw (AssertionError) error[0];
+        }
+        if (error[0] != null) {
+            throw (Exception) error[0];
+        }
+    }
+}
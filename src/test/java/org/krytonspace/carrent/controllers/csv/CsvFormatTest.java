@@ -0,0 +1,61 @@
+package org.krytonspace.carrent.controllers.csv;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * CSV records written with quoted fields, and read back, line breaks included.
+ */
+public class CsvFormatTest {
+
+    private static final String[] FIELDS = {
+            "plain", "", "with, comma", "with \"quotes\"", "\"", "line\nbreak", " spaces ", "Besançon", ",\"\n,"
+    };
+
+    @Test
+    public void readsBackWhatIsWritten() throws IOException {
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < FIELDS.length; i++) {
+            CsvFormat.appendField(record, FIELDS[i], i == 0);
+        }
+
+        BufferedReader reader = new BufferedReader(new StringReader(record + "\nnext,record\n"));
+        assertArrayEquals(FIELDS, CsvFormat.split(CsvFormat.readRecord(reader)));
+        assertArrayEquals(new String[] {"next", "record"}, CsvFormat.split(CsvFormat.readRecord(reader)));
+        assertNull(CsvFormat.readRecord(reader));
+    }
+
+    @Test
+    public void quotesOnlyWhenNeeded() {
+        StringBuilder record = new StringBuilder();
+        CsvFormat.appendField(record, "plain", true);
+        CsvFormat.appendField(record, null, false);
+        CsvFormat.appendField(record, "a,b", false);
+        CsvFormat.appendField(record, "say \"hi\"", false);
+
+        assertEquals("plain,,\"a,b\",\"say \"\"hi\"\"\"", record.toString());
+    }
+
+    @Test
+    public void splitsEmptyFields() {
+        assertArrayEquals(new String[] {""}, CsvFormat.split(""));
+        assertArrayEquals(new String[] {"", "", ""}, CsvFormat.split(",,"));
+        assertArrayEquals(new String[] {"a", "", "b", ""}, CsvFormat.split("a,,b,"));
+        assertArrayEquals(new String[] {"", "b"}, CsvFormat.split("\"\",b"));
+    }
+
+    @Test
+    public void readsUnterminatedQuoteToTheEnd() throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader("a,\"open\nfield\nto the end"));
+
+        String record = CsvFormat.readRecord(reader);
+        assertEquals("a,\"open\nfield\nto the end", record);
+        assertArrayEquals(new String[] {"a", "open\nfield\nto the end"}, CsvFormat.split(record));
+        assertNull(CsvFormat.readRecord(reader));
+    }
+}
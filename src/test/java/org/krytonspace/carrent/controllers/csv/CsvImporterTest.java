@@ -0,0 +1,102 @@
+package org.krytonspace.carrent.controllers.csv;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.controllers.exceptions.InvalidDataException;
+import org.krytonspace.carrent.controllers.model.ClientModelController;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Clients exported to CSV files and imported again, with rows rejected by the checks.
+ */
+public class CsvImporterTest {
+
+    /**
+     * More than two chunks of rows.
+     */
+    private static final int CLIENT_COUNT = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void importsWhatIsExported() throws Exception {
+        ClientModelController source = new ClientModelController(new DatabaseModel());
+        List<ClientModel> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            clients.add(source.createClient("Doe " + i, "John", "01/02/1990",
+                    i + " rue de la Paix, \"bâtiment B\"\n2e étage", "75001", "Paris", "A,B",
+                    "john" + i + "@example.com", "0102030405"));
+        }
+        File file = folder.newFile("clients.csv");
+        assertEquals(CLIENT_COUNT, new CsvExporter<>(ClientModel.class).exportFile(clients, file));
+
+        DatabaseModel target = new DatabaseModel();
+        File rejects = new File(folder.getRoot(), "clients.rejects.csv");
+        ImportSummary summary = CsvImporter.forClients(new ClientModelController(target)).importFile(file, rejects);
+
+        assertEquals(CLIENT_COUNT, summary.getRowCount());
+        assertEquals(CLIENT_COUNT, summary.getImportedCount());
+        assertEquals(0, summary.getRejectedCount());
+        assertFalse(rejects.exists());
+
+        // In file order, with new IDs.
+        List<ClientModel> imported = target.getRegisteredClients();
+        assertEquals(CLIENT_COUNT, imported.size());
+        ModelAccessor<ClientModel> accessor = ModelAccessor.forModel(ClientModel.class);
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            assertNotEquals(clients.get(i).getId(), imported.get(i).getId());
+            for (int column = 1; column < accessor.getColumnCount(); column++) {
+                assertEquals(accessor.getPropertyName(column),
+                        accessor.get(clients.get(i), column), accessor.get(imported.get(i), column));
+            }
+        }
+    }
+
+    @Test
+    public void writesRejectedRows() throws Exception {
+        File file = folder.newFile("clients.csv");
+        String header = "id,lastName,firstName,birthDate,address,postalCode,city,licenses,emailAddress,phoneNumber";
+        String valid = ",Doe,John,01/02/1990,\"1, main street\",75001,Paris,B,john@example.com,0102030405";
+        String badPostalCode = ",Doe,John,01/02/1990,1 main street,123,Paris,B,john@example.com,0102030405";
+        String missingField = ",Doe,John,01/02/1990,1 main street,75001,Paris,B,john@example.com";
+        Files.write(file.toPath(), (header + "\n" + valid + "\n" + badPostalCode + "\n\n" + missingField + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        DatabaseModel target = new DatabaseModel();
+        File rejects = new File(folder.getRoot(), "clients.rejects.csv");
+        ImportSummary summary = CsvImporter.forClients(new ClientModelController(target)).importFile(file, rejects);
+
+        assertEquals(3, summary.getRowCount());
+        assertEquals(1, summary.getImportedCount());
+        assertEquals(2, summary.getRejectedCount());
+        assertEquals("1, main street", target.getRegisteredClients().get(0).getAddress());
+
+        List<String> lines = Files.readAllLines(rejects.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals(header + ",rejection", lines.get(0));
+        assertTrue(lines.get(1).startsWith(badPostalCode + ","));
+        assertEquals(CsvFormat.split(badPostalCode).length + 1, CsvFormat.split(lines.get(1)).length);
+        assertTrue(lines.get(2).startsWith(missingField + ","));
+    }
+
+    @Test(expected = InvalidDataException.class)
+    public void rejectsFileWithoutRequiredColumn() throws Exception {
+        File file = folder.newFile("clients.csv");
+        Files.write(file.toPath(), "id,lastName\n,Doe\n".getBytes(StandardCharsets.UTF_8));
+
+        CsvImporter.forClients(new ClientModelController(new DatabaseModel()))
+                .importFile(file, new File(folder.getRoot(), "clients.rejects.csv"));
+    }
+}
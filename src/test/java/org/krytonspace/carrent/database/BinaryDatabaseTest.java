@@ -0,0 +1,73 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Databases written to binary files, and read back whole or torn.
+ */
+public class BinaryDatabaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatIsWritten() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crdb");
+        DatabaseModel model = SampleDatabases.create(500, 300, 2000);
+        new BinaryDatabase(file.getPath()).save(model);
+
+        for (FileDatabase.ReadMode mode : FileDatabase.ReadMode.values()) {
+            BinaryDatabase handler = new BinaryDatabase(file.getPath());
+            handler.setReadMode(mode);
+            SampleDatabases.assertSameContent(model, handler.load());
+        }
+    }
+
+    @Test
+    public void readsBackEmptyDatabase() throws Exception {
+        File file = new File(folder.getRoot(), "empty.crdb");
+        new BinaryDatabase(file.getPath()).save(new DatabaseModel());
+
+        SampleDatabases.assertSameContent(new DatabaseModel(), new BinaryDatabase(file.getPath()).load());
+    }
+
+    @Test
+    public void failsOnTornFile() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crdb");
+        new BinaryDatabase(file.getPath()).save(SampleDatabases.create(50, 50, 50));
+        long length = file.length();
+
+        // Cut at the header, in the dictionary, in the records and in the trailer.
+        for (long cut : new long[] {3, 12, length / 2, length - 1}) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(cut);
+            }
+
+            try {
+                new BinaryDatabase(file.getPath()).load();
+                fail("Loaded a file cut at " + cut + " bytes out of " + length);
+            } catch (LoadingFailedException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test(expected = LoadingFailedException.class)
+    public void failsOnOtherFormat() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crdb");
+        Files.write(file.toPath(), "{\"clients\":[]}".getBytes(StandardCharsets.UTF_8));
+
+        new BinaryDatabase(file.getPath()).load();
+    }
+}
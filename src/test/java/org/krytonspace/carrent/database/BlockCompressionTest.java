@@ -0,0 +1,160 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Content written to block compressed containers and read back from any position,
+ * and databases written to compressed files.
+ */
+public class BlockCompressionTest {
+
+    private static final int BLOCK_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsFromAnyPosition() throws Exception {
+        byte[] content = content(10 * BLOCK_SIZE + 123);
+        File file = write(content, BLOCK_SIZE);
+
+        try (BlockCompressedFile container = new BlockCompressedFile(file)) {
+            assertEquals(content.length, container.length());
+
+            for (long position : new long[] {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, 5 * BLOCK_SIZE + 17, content.length - 1}) {
+                try (InputStream in = container.openStream(position)) {
+                    byte[] read = readAll(in);
+                    assertArrayEquals("From " + position,
+                            Arrays.copyOfRange(content, (int) position, content.length), read);
+                }
+            }
+            try (InputStream in = container.openStream(content.length)) {
+                assertEquals(-1, in.read());
+            }
+        }
+        // Repeated content compresses.
+        assertTrue(file.length() < content.length / 2);
+    }
+
+    @Test
+    public void readsEmptyContent() throws Exception {
+        File file = write(new byte[0], BLOCK_SIZE);
+
+        try (BlockCompressedFile container = new BlockCompressedFile(file);
+             InputStream in = container.openStream(0)) {
+            assertEquals(0, container.length());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void rejectsTornContainer() throws Exception {
+        File file = write(content(3 * BLOCK_SIZE), BLOCK_SIZE);
+        long length = file.length();
+
+        for (long cut : new long[] {length - 1, length / 2, 2}) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(cut);
+            }
+
+            try (BlockCompressedFile ignored = new BlockCompressedFile(file)) {
+                fail("Opened a container cut at " + cut + " bytes out of " + length);
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        File file = folder.newFile("agency.crdz");
+        Files.write(file.toPath(), "Not a container, but long enough to have a trailer".getBytes(StandardCharsets.UTF_8));
+
+        new BlockCompressedFile(file).close();
+    }
+
+    @Test
+    public void readsBackCompressedDatabases() throws Exception {
+        DatabaseModel model = SampleDatabases.create(300, 300, 1000);
+
+        for (String name : new String[] {"agency.crdz", "agency.crdb.gz", "agency.json.gz", "agency.xml.gz"}) {
+            File file = new File(folder.getRoot(), name);
+            DatabaseHandlers.getHandlerForFile(file.getPath()).save(model);
+
+            byte[] header = new byte[4];
+            try (InputStream in = new FileInputStream(file)) {
+                assertEquals(4, in.read(header));
+            }
+            if (name.endsWith(".gz")) {
+                assertEquals(name, 0x1F, header[0] & 0xFF);
+                assertEquals(name, 0x8B, header[1] & 0xFF);
+            } else {
+                assertEquals(name, "CRBZ", new String(header, StandardCharsets.US_ASCII));
+            }
+
+            SampleDatabases.assertSameContent(model, DatabaseHandlers.getHandlerForFile(file.getPath()).load());
+        }
+    }
+
+    @Test(expected = LoadingFailedException.class)
+    public void failsOnTornCompressedDatabase() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json.gz");
+        DatabaseHandlers.getHandlerForFile(file.getPath()).save(SampleDatabases.create(100, 100, 100));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+
+        DatabaseHandlers.getHandlerForFile(file.getPath()).load();
+    }
+
+    private File write(byte[] content, int blockSize) throws IOException {
+        File file = folder.newFile();
+        try (OutputStream out = new FileOutputStream(file);
+             BlockCompressedOutputStream compressed = new BlockCompressedOutputStream(out, blockSize)) {
+            // Written in pieces not aligned with the blocks.
+            for (int offset = 0; offset < content.length; offset += 333) {
+                compressed.write(content, offset, Math.min(333, content.length - offset));
+            }
+        }
+
+        return file;
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ("CarRent " + (i / 64)).charAt(i % 8);
+        }
+
+        return content;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[777];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+
+        return out.toByteArray();
+    }
+}
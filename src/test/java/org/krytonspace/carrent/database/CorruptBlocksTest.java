@@ -0,0 +1,143 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Binary databases with a damaged block, failing the load or skipped.
+ */
+public class CorruptBlocksTest {
+
+    private static final String[] SECTIONS = {"dictionary", "clients", "vehicles", "contracts"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void failsOnCorruptBlock() throws Exception {
+        File file = save(SampleDatabases.create(100, 100, 20000));
+        corrupt(file, findBlocks(file).get(3).get(1)[0] + 100);
+
+        try {
+            new BinaryDatabase(file.getPath()).load();
+            fail("Loaded a corrupt block");
+        } catch (LoadingFailedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("block 1 of the contracts section"));
+        }
+    }
+
+    @Test
+    public void skipsCorruptBlock() throws Exception {
+        DatabaseModel model = SampleDatabases.create(100, 100, 20000);
+        File file = save(model);
+        List<int[]> contractBlocks = findBlocks(file).get(3);
+        assertTrue(contractBlocks.size() > 2);
+        int[] damaged = contractBlocks.get(1);
+        corrupt(file, damaged[0] + damaged[1] / 2);
+
+        BinaryDatabase handler = new BinaryDatabase(file.getPath());
+        handler.setSkipCorruptBlocks(true);
+        DatabaseModel loaded = handler.load();
+
+        // The records of the block are lost, and only them.
+        List<ContractModel> expected = new ArrayList<>(model.getRegisteredContracts());
+        int first = contractBlocks.get(0)[2];
+        expected.subList(first, first + damaged[2]).clear();
+        SampleDatabases.assertSameModels(model.getRegisteredClients(), loaded.getRegisteredClients());
+        SampleDatabases.assertSameModels(model.getRegisteredVehicles(), loaded.getRegisteredVehicles());
+        SampleDatabases.assertSameModels(expected, loaded.getRegisteredContracts());
+
+        assertEquals(damaged[2], handler.getSkippedRecordCount());
+        assertEquals(1, handler.getSkippedParts().size());
+        assertEquals(handler.getSkippedParts(), handler.getLastLoadSummary().getSkippedParts());
+    }
+
+    @Test
+    public void neverSkipsDictionary() throws Exception {
+        File file = save(SampleDatabases.create(100, 100, 1000));
+        int[] dictionary = findBlocks(file).get(0).get(0);
+        corrupt(file, dictionary[0] + dictionary[1] / 2);
+
+        BinaryDatabase handler = new BinaryDatabase(file.getPath());
+        handler.setSkipCorruptBlocks(true);
+        try {
+            handler.load();
+            fail("Loaded a corrupt dictionary");
+        } catch (LoadingFailedException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void neverSkipsBlockHeader() throws Exception {
+        File file = save(SampleDatabases.create(100, 100, 20000));
+        corrupt(file, findBlocks(file).get(3).get(1)[0] - 10);
+
+        BinaryDatabase handler = new BinaryDatabase(file.getPath());
+        handler.setSkipCorruptBlocks(true);
+        try {
+            handler.load();
+            fail("Loaded a block with a corrupt header");
+        } catch (LoadingFailedException e) {
+            // Expected.
+        }
+    }
+
+    private File save(DatabaseModel model) throws Exception {
+        File file = new File(folder.getRoot(), "agency.crdb");
+        new BinaryDatabase(file.getPath()).save(model);
+
+        return file;
+    }
+
+    /**
+     * Find the blocks of each section: the offset and length of the payload, and the record count.
+     */
+    private static List<List<int[]>> findBlocks(File file) throws Exception {
+        byte[] content = Files.readAllBytes(file.toPath());
+        List<List<int[]>> sections = new ArrayList<>();
+
+        // Magic bytes and version
+        int position = 5;
+        for (String section : SECTIONS) {
+            List<int[]> blocks = new ArrayList<>();
+            int remaining = getInt(content, position);
+            position += 8;
+            while (remaining > 0) {
+                int recordCount = getInt(content, position);
+                int length = getInt(content, position + 4);
+                blocks.add(new int[] {position + 16, length, recordCount});
+                position += 16 + length;
+                remaining -= recordCount;
+            }
+            // Trailer
+            position += 8;
+            sections.add(blocks);
+        }
+        assertEquals(content.length, position);
+
+        return sections;
+    }
+
+    private static void corrupt(File file, int offset) throws Exception {
+        byte[] content = Files.readAllBytes(file.toPath());
+        content[offset] ^= 0x5A;
+        Files.write(file.toPath(), content);
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 |
+                (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+}
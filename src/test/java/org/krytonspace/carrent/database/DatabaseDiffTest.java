@@ -0,0 +1,108 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.VehicleModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Differences between two databases, in memory or in files of different formats.
+ */
+public class DatabaseDiffTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsNothingBetweenSameEntries() {
+        DatabaseDiff diff = DatabaseDiff.compare(SampleDatabases.create(100, 100, 1000),
+                SampleDatabases.create(100, 100, 1000));
+
+        assertTrue(diff.isEmpty());
+        assertEquals("0 added, 0 removed, 0 changed", diff.toString());
+    }
+
+    @Test
+    public void findsAddedRemovedAndChangedEntries() {
+        DatabaseModel first = SampleDatabases.create(100, 100, 1000);
+        DatabaseModel second = SampleDatabases.create(100, 100, 1000);
+        edit(second);
+
+        DatabaseDiff diff = DatabaseDiff.compare(first, second);
+
+        assertEquals(Collections.singletonList("CON-added"), ids(diff.getAdded()));
+        assertEquals(Collections.singletonList("V-BRAND-7"), diff.getRemoved());
+        assertEquals(Collections.singletonList("CLI-3"), ids(diff.getChanged()));
+        assertEquals("1 added, 1 removed, 1 changed", diff.toString());
+
+        // The changes turn the first database into the second one.
+        ChangeSet changes = diff.getChanges();
+        assertEquals(3, changes.size());
+        assertEquals("Besançon", changes.getClientChanges().get("CLI-3").getCity());
+        assertTrue(changes.getVehicleChanges().containsKey("V-BRAND-7"));
+        assertNull(changes.getVehicleChanges().get("V-BRAND-7"));
+        assertSame(diff.getAdded().get(0), changes.getContractChanges().get("CON-added"));
+
+        // The other way around.
+        DatabaseDiff reverse = DatabaseDiff.compare(second, first);
+        assertEquals(Collections.singletonList("CON-added"), reverse.getRemoved());
+        assertEquals(Collections.singletonList("V-BRAND-7"), ids(reverse.getAdded()));
+        assertEquals(Collections.singletonList("CLI-3"), ids(reverse.getChanged()));
+    }
+
+    @Test
+    public void comparesFilesOfDifferentFormats() throws Exception {
+        File first = new File(folder.getRoot(), "north.crdb");
+        File second = new File(folder.getRoot(), "south.json");
+        DatabaseHandlers.getHandlerForFile(first.getPath()).save(SampleDatabases.create(100, 100, 1000));
+        DatabaseModel edited = SampleDatabases.create(100, 100, 1000);
+        edit(edited);
+        DatabaseHandlers.getHandlerForFile(second.getPath()).save(edited);
+
+        DatabaseDiff diff = DatabaseDiff.compare(first.getPath(), second.getPath());
+        assertEquals(Collections.singletonList("CON-added"), ids(diff.getAdded()));
+        assertEquals(Collections.singletonList("V-BRAND-7"), diff.getRemoved());
+        assertEquals(Collections.singletonList("CLI-3"), ids(diff.getChanged()));
+
+        assertTrue(DatabaseDiff.compare(first.getPath(), first.getPath()).isEmpty());
+    }
+
+    /**
+     * Change a client, remove a vehicle and add a contract.
+     */
+    private static void edit(DatabaseModel model) {
+        ClientModel client = model.getRegisteredClients().get(3);
+        client.setCity("Besançon");
+
+        VehicleModel vehicle = model.getRegisteredVehicles().get(7);
+        model.unregisterVehicle(vehicle.getId());
+
+        ContractModel contract = new ContractModel();
+        contract.setId("CON-added");
+        contract.setClientId("CLI-1");
+        contract.setVehicleId("V-BRAND-1");
+        contract.setBeginEpochDay(17500);
+        contract.setEndEpochDay(17510);
+        model.registerContract(contract);
+    }
+
+    private static List<String> ids(List<? extends Model> models) {
+        List<String> ids = new ArrayList<>();
+        for (Model m : models) {
+            ids.add(m.getId());
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,129 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Dates written to JSON and XML files under a time zone, and read back under another.
+ */
+public class DateInterchangeTest {
+
+    private static final LocalDate BIRTH = LocalDate.of(1990, 2, 1);
+    private static final LocalDate BEGIN = LocalDate.of(2017, 7, 14);
+    private static final LocalDate END = LocalDate.of(2017, 7, 20);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeZone defaultZone;
+
+    @Before
+    public void saveDefaultZone() {
+        defaultZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void restoreDefaultZone() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    @Test
+    public void jsonRoundTripKeepsDays() throws Exception {
+        roundTrip("agency.json");
+    }
+
+    @Test
+    public void xmlRoundTripKeepsDays() throws Exception {
+        roundTrip("agency.xml");
+    }
+
+    @Test
+    public void timestampsAtLocalMidnightKeepTheirDay() throws Exception {
+        // Written by an earlier version in Paris: the start of the day there, 2017-07-13T22:00:00Z.
+        long parisMidnight = startOfDay(BEGIN, "Europe/Paris");
+        File file = new File(folder.getRoot(), "legacy.json");
+        Files.write(file.toPath(), ("{\"clients\":[],\"vehicles\":[],\"contracts\":[{\"id\":\"CON-1\"," +
+                "\"beginDate\":" + parisMidnight + ",\"endDate\":null}]}").getBytes(StandardCharsets.UTF_8));
+
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        DatabaseModel model = DatabaseHandlers.getHandlerForFile(file.getPath()).load();
+
+        assertEquals(BEGIN, model.getRegisteredContracts().get(0).getBeginLocalDate());
+    }
+
+    @Test
+    public void timestampsAtLocalMidnightFarAheadOfUtcKeepTheirDay() throws Exception {
+        // Written and read in Kiritimati, 14 hours ahead of UTC: the start of the day there, 2017-07-13T10:00:00Z.
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+        File file = new File(folder.getRoot(), "kiritimati.json");
+        DatabaseHandlers.getHandlerForFile(file.getPath()).save(createDatabase());
+
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content, content.contains(String.valueOf(startOfDay(BEGIN, "Pacific/Kiritimati"))));
+
+        DatabaseModel model = DatabaseHandlers.getHandlerForFile(file.getPath()).load();
+        assertEquals(BEGIN, model.getRegisteredContracts().get(0).getBeginLocalDate());
+        assertEquals(END, model.getRegisteredContracts().get(0).getEndLocalDate());
+    }
+
+    private void roundTrip(String fileName) throws Exception {
+        File file = new File(folder.getRoot(), fileName);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        DatabaseHandlers.getHandlerForFile(file.getPath()).save(createDatabase());
+
+        // The file holds the timestamps earlier versions wrote: the start of the days in the time zone of the writer.
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content, content.contains(String.valueOf(startOfDay(BEGIN, "America/New_York"))));
+        assertTrue(content, content.contains("01/02/1990"));
+
+        // Read in time zones less than 12 hours apart from the one of the writer.
+        for (String zone : new String[] {"America/New_York", "America/Los_Angeles", "Europe/Paris", "UTC"}) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            DatabaseModel model = DatabaseHandlers.getHandlerForFile(file.getPath()).load();
+
+            ContractModel contract = model.getRegisteredContracts().get(0);
+            assertEquals(zone, BEGIN, contract.getBeginLocalDate());
+            assertEquals(zone, END, contract.getEndLocalDate());
+            assertEquals(zone, BIRTH, model.getRegisteredClients().get(0).getBirthLocalDate());
+        }
+    }
+
+    private static long startOfDay(LocalDate date, String zone) {
+        return date.atStartOfDay(ZoneId.of(zone)).toInstant().toEpochMilli();
+    }
+
+    private static DatabaseModel createDatabase() {
+        DatabaseModel model = new DatabaseModel();
+
+        ClientModel client = new ClientModel();
+        client.setId("CLI-1");
+        client.setLastName("Doe");
+        client.setBirthDateEpochDay((int) BIRTH.toEpochDay());
+        model.registerClient(client);
+
+        ContractModel contract = new ContractModel();
+        contract.setId("CON-1");
+        contract.setClientId("CLI-1");
+        contract.setBeginEpochDay((int) BEGIN.toEpochDay());
+        contract.setEndEpochDay((int) END.toEpochDay());
+        model.registerContract(contract);
+
+        return model;
+    }
+}
@@ -0,0 +1,67 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Databases saved with their contracts in a log-structured store, and saved again by appending changes.
+ */
+public class LsmDatabaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatIsWritten() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crlsm");
+        DatabaseModel model = SampleDatabases.create(100, 100, 5000);
+        new LsmDatabase(file.getPath()).save(model);
+
+        SampleDatabases.assertSameContent(model, new LsmDatabase(file.getPath()).load());
+        assertTrue(new LsmDatabase(file.getPath()).getStoreDirectory().isDirectory());
+    }
+
+    @Test
+    public void savesChangesWithoutRewritingFile() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crlsm");
+        DatabaseModel model = SampleDatabases.create(100, 100, 5000);
+        LsmDatabase handler = new LsmDatabase(file.getPath());
+        handler.save(model);
+        long modified = file.lastModified();
+        long length = file.length();
+
+        ChangeSet changes = new ChangeSet();
+        ContractModel edited = model.getRegisteredContracts().get(2500);
+        edited.setPlannedPrice(12345);
+        changes.put(edited);
+        ContractModel removed = model.getRegisteredContracts().get(7);
+        model.unregisterContract(removed.getId());
+        changes.remove(removed);
+        handler.saveChanges(model, changes);
+
+        // Only contracts changed: the file holding clients and vehicles is left as is.
+        assertEquals(modified, file.lastModified());
+        assertEquals(length, file.length());
+        SampleDatabases.assertSameContent(model, new LsmDatabase(file.getPath()).load());
+
+        ClientModel client = model.getRegisteredClients().get(3);
+        client.setCity("Besançon");
+        changes = new ChangeSet();
+        changes.put(client);
+        handler.saveChanges(model, changes);
+        SampleDatabases.assertSameContent(model, new LsmDatabase(file.getPath()).load());
+
+        // Saved whole again, over the previous store.
+        model.unregisterContract(model.getRegisteredContracts().get(0).getId());
+        handler.save(model);
+        SampleDatabases.assertSameContent(model, new LsmDatabase(file.getPath()).load());
+    }
+}
@@ -0,0 +1,106 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Databases saved as pages, and saved again by updating the pages in place.
+ */
+public class PagedDatabaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatIsWritten() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crpg");
+
+        for (DatabaseModel model : new DatabaseModel[] {
+                SampleDatabases.create(0, 0, 0), SampleDatabases.create(300, 300, 3000)}) {
+            new PagedDatabase(file.getPath()).save(model);
+            SampleDatabases.assertSameContent(model, new PagedDatabase(file.getPath()).load());
+        }
+    }
+
+    @Test
+    public void savesChangesInPlace() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crpg");
+        DatabaseModel model = SampleDatabases.create(100, 100, 3000);
+        PagedDatabase handler = new PagedDatabase(file.getPath());
+        handler.save(model);
+        long length = file.length();
+
+        ChangeSet changes = new ChangeSet();
+        ContractModel edited = model.getRegisteredContracts().get(1500);
+        edited.setPlannedPrice(12345);
+        changes.put(edited);
+        ContractModel removed = model.getRegisteredContracts().get(10);
+        model.unregisterContract(removed.getId());
+        changes.remove(removed);
+        ClientModel added = new ClientModel();
+        added.setId("CLI-added");
+        added.setFirstName("Zoé");
+        added.setLastName("Added");
+        model.registerClient(added);
+        changes.put(added);
+        handler.saveChanges(model, changes);
+
+        // A few pages have been changed or added, and the log is gone.
+        assertTrue(file.length() < length + 8 * 4096);
+        assertFalse(new File(file.getPath() + ".wal").exists());
+        // Edited models keep their place, new ones come last.
+        SampleDatabases.assertSameContent(model, new PagedDatabase(file.getPath()).load());
+    }
+
+    @Test
+    public void rewritesFileFullOfOldRecords() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crpg");
+        DatabaseModel model = SampleDatabases.create(10, 10, 100);
+        PagedDatabase handler = new PagedDatabase(file.getPath());
+        handler.save(model);
+        long length = file.length();
+
+        ContractModel edited = model.getRegisteredContracts().get(50);
+        for (int i = 0; i < 2000; i++) {
+            edited.setPlannedMileage(i);
+            ChangeSet changes = new ChangeSet();
+            changes.put(edited);
+            handler.saveChanges(model, changes);
+        }
+
+        // Every record written over another one would take far more.
+        assertTrue(file.length() < 3 * length);
+        SampleDatabases.assertSameContent(model, new PagedDatabase(file.getPath()).load());
+    }
+
+    @Test(expected = LoadingFailedException.class)
+    public void rejectsOtherFiles() throws Exception {
+        File file = folder.newFile("agency.crpg");
+        Files.write(file.toPath(), "Not a paged database".getBytes(StandardCharsets.UTF_8));
+
+        new PagedDatabase(file.getPath()).load();
+    }
+
+    @Test(expected = LoadingFailedException.class)
+    public void failsOnTornFile() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crpg");
+        new PagedDatabase(file.getPath()).save(SampleDatabases.create(100, 100, 1000));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+
+        new PagedDatabase(file.getPath()).load();
+    }
+}
@@ -0,0 +1,137 @@
+package org.krytonspace.carrent.database;
+
+import org.krytonspace.carrent.models.BikeModel;
+import org.krytonspace.carrent.models.CarModel;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.PlaneModel;
+import org.krytonspace.carrent.models.VehicleModel;
+import org.krytonspace.carrent.utils.EpochDays;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Databases written and read back by the tests of the file formats.
+ */
+public final class SampleDatabases {
+
+    /**
+     * Can't create instances of this class.
+     */
+    private SampleDatabases() {
+
+    }
+
+    /**
+     * Create a database whose models use every kind of value: missing values, non ASCII strings,
+     * every vehicle type and condition, missing dates.
+     * @param clientCount The number of clients
+     * @param vehicleCount The number of vehicles
+     * @param contractCount The number of contracts
+     * @return The database
+     */
+    public static DatabaseModel create(int clientCount, int vehicleCount, int contractCount) {
+        DatabaseModel model = new DatabaseModel();
+
+        for (int i = 0; i < clientCount; i++) {
+            ClientModel client = new ClientModel();
+            client.setId("CLI-" + i);
+            client.setLastName(i % 7 == 0 ? "Lefèvre-Ørsted " + i : "Doe " + i);
+            client.setFirstName(i % 5 == 0 ? null : "John");
+            client.setBirthDateEpochDay(i % 11 == 0 ? EpochDays.NONE : 7000 + i);
+            client.setAddress(i + " rue de la Paix");
+            client.setPostalCode("750" + (i % 20));
+            client.setCity(i % 2 == 0 ? "Paris" : "Lyon");
+            client.setLicenses("AB");
+            client.setEmailAddress("client" + i + "@example.com");
+            client.setPhoneNumber("01020304" + (i % 100));
+            model.registerClient(client);
+        }
+
+        VehicleModel.Condition[] conditions = VehicleModel.Condition.values();
+        for (int i = 0; i < vehicleCount; i++) {
+            VehicleModel vehicle;
+            switch (i % 3) {
+                case 0:
+                    CarModel car = new CarModel();
+                    car.setMileage(i * 1000);
+                    car.setPower(90 + i % 50);
+                    car.setSeatCount(2 + i % 6);
+                    vehicle = car;
+                    break;
+                case 1:
+                    BikeModel bike = new BikeModel();
+                    bike.setMileage(i * 100);
+                    bike.setPower(i % 3 == 0 ? 0 : 125);
+                    vehicle = bike;
+                    break;
+                default:
+                    PlaneModel plane = new PlaneModel();
+                    plane.setHoursFlown(Integer.MAX_VALUE - i);
+                    plane.setEngineCount(1 + i % 4);
+                    vehicle = plane;
+                    break;
+            }
+            vehicle.setId("V-BRAND-" + i);
+            vehicle.setBrand(i % 4 == 0 ? "Škoda" : "Brand");
+            vehicle.setModel("Model " + i);
+            vehicle.setCondition(conditions[i % conditions.length]);
+            vehicle.setRentPricePerDay(i % 9 == 0 ? -1 : 40 + i);
+            vehicle.setMaxSpeed(120 + i);
+            model.registerVehicle(vehicle);
+        }
+
+        for (int i = 0; i < contractCount; i++) {
+            ContractModel contract = new ContractModel();
+            contract.setId("CON-" + i);
+            contract.setClientId("CLI-" + (clientCount == 0 ? 0 : i % clientCount));
+            contract.setVehicleId("V-BRAND-" + (vehicleCount == 0 ? 0 : i % vehicleCount));
+            contract.setBeginEpochDay(17000 + i);
+            contract.setEndEpochDay(i % 6 == 0 ? EpochDays.NONE : 17000 + i + i % 30);
+            contract.setPlannedMileage(i * 10);
+            contract.setPlannedPrice(i % 8 == 0 ? 0 : 100 + i);
+            model.registerContract(contract);
+        }
+
+        return model;
+    }
+
+    /**
+     * Check that two databases hold the same models, in the same order, with the same values.
+     * @param expected The database written
+     * @param actual The database read back
+     */
+    public static void assertSameContent(DatabaseModel expected, DatabaseModel actual) {
+        assertSameModels(expected.getRegisteredClients(), actual.getRegisteredClients());
+        assertSameModels(expected.getRegisteredVehicles(), actual.getRegisteredVehicles());
+        assertSameModels(expected.getRegisteredContracts(), actual.getRegisteredContracts());
+    }
+
+    /**
+     * Check that two lists hold the same models, in the same order, with the same values.
+     * @param expected The models written
+     * @param actual The models read back
+     */
+    @SuppressWarnings("unchecked")
+    public static void assertSameModels(List<? extends Model> expected, List<? extends Model> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            Model e = expected.get(i);
+            Model a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getId(), e.getClass(), a.getClass());
+
+            ModelAccessor<Model> accessor = (ModelAccessor<Model>) ModelAccessor.forModel(e.getClass());
+            for (int column = 0; column < accessor.getColumnCount(); column++) {
+                assertEquals(e.getId() + " " + accessor.getPropertyName(column),
+                        accessor.get(e, column), accessor.get(a, column));
+            }
+        }
+    }
+}
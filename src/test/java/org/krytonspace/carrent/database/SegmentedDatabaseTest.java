@@ -0,0 +1,144 @@
+package org.krytonspace.carrent.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+import org.krytonspace.carrent.models.ContractModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.LazyModelList;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Databases saved as segments, and saved again by only rewriting the segments holding changes.
+ */
+public class SegmentedDatabaseTest {
+
+    private static final int CONTRACT_COUNT = SegmentedDatabase.SEGMENT_SIZE * 2 + 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatIsWritten() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crseg");
+        DatabaseModel model = SampleDatabases.create(100, 100, CONTRACT_COUNT);
+        new SegmentedDatabase(file.getPath()).save(model);
+
+        SampleDatabases.assertSameContent(model, new SegmentedDatabase(file.getPath()).load());
+        // Clients, vehicles and three segments of contracts.
+        assertEquals(5, segments(file).size());
+    }
+
+    @Test
+    public void rewritesOnlyChangedSegments() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crseg");
+        DatabaseModel model = SampleDatabases.create(100, 100, CONTRACT_COUNT);
+        SegmentedDatabase handler = new SegmentedDatabase(file.getPath());
+        handler.save(model);
+        Set<String> before = segments(file);
+
+        ContractModel edited = model.getRegisteredContracts().get(SegmentedDatabase.SEGMENT_SIZE + 10);
+        edited.setPlannedPrice(12345);
+        ChangeSet changes = new ChangeSet();
+        changes.put(edited);
+        handler.saveChanges(model, changes);
+
+        Set<String> after = segments(file);
+        Set<String> added = new HashSet<>(after);
+        added.removeAll(before);
+        assertEquals(1, added.size());
+        // The previous segments stay as long as the backup manifest references them.
+        assertTrue(after.containsAll(before));
+        SampleDatabases.assertSameContent(model, new SegmentedDatabase(file.getPath()).load());
+
+        // Saving nothing writes nothing.
+        long modified = file.lastModified();
+        handler.saveChanges(model, new ChangeSet());
+        assertEquals(after, segments(file));
+        assertEquals(modified, file.lastModified());
+    }
+
+    @Test
+    public void keepsOrderWhenModelsAreRemovedAndAdded() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crseg");
+        DatabaseModel model = SampleDatabases.create(10, 10, CONTRACT_COUNT);
+        SegmentedDatabase handler = new SegmentedDatabase(file.getPath());
+        handler.save(model);
+
+        ChangeSet changes = new ChangeSet();
+        // The first model of the second segment: its segment merges into the previous one.
+        for (int index : new int[] {SegmentedDatabase.SEGMENT_SIZE, 5}) {
+            ContractModel removed = model.getRegisteredContracts().get(index);
+            model.unregisterContract(removed.getId());
+            changes.remove(ContractModel.class, removed.getId());
+        }
+        ContractModel added = new ContractModel();
+        added.setId("CON-added");
+        added.setClientId("CLI-1");
+        added.setVehicleId("V-BRAND-1");
+        added.setBeginEpochDay(17500);
+        added.setEndEpochDay(17510);
+        model.registerContract(added);
+        changes.put(added);
+
+        handler.saveChanges(model, changes);
+        SampleDatabases.assertSameContent(model, new SegmentedDatabase(file.getPath()).load());
+
+        // Saved again over the merged segments.
+        ContractModel edited = model.getRegisteredContracts().get(SegmentedDatabase.SEGMENT_SIZE);
+        edited.setPlannedMileage(42);
+        changes = new ChangeSet();
+        changes.put(edited);
+        handler.saveChanges(model, changes);
+        SampleDatabases.assertSameContent(model, new SegmentedDatabase(file.getPath()).load());
+    }
+
+    @Test
+    public void savesChangesOfLazyContracts() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crseg");
+        DatabaseModel expected = SampleDatabases.create(10, 10, CONTRACT_COUNT);
+        new SegmentedDatabase(file.getPath()).save(expected);
+
+        SegmentedDatabase handler = new SegmentedDatabase(file.getPath());
+        handler.setLazyContracts(true);
+        DatabaseModel model = handler.load();
+        assertTrue(model.getContractStorage() instanceof LazyModelList);
+        SampleDatabases.assertSameContent(expected, model);
+
+        ContractModel edited = model.getRegisteredContracts().get(3);
+        model.willEdit(edited);
+        edited.setPlannedPrice(999);
+        expected.getRegisteredContracts().get(3).setPlannedPrice(999);
+        ChangeSet changes = new ChangeSet();
+        changes.put(edited);
+        handler.saveChanges(model, changes);
+
+        SampleDatabases.assertSameContent(expected, new SegmentedDatabase(file.getPath()).load());
+    }
+
+    @Test(expected = LoadingFailedException.class)
+    public void failsOnMissingSegment() throws Exception {
+        File file = new File(folder.getRoot(), "agency.crseg");
+        new SegmentedDatabase(file.getPath()).save(SampleDatabases.create(10, 10, 10));
+
+        File[] segments = new File(file.getPath() + ".segments").listFiles();
+        assertNotNull(segments);
+        assertTrue(segments[0].delete());
+
+        new SegmentedDatabase(file.getPath()).load();
+    }
+
+    private static Set<String> segments(File file) {
+        String[] names = new File(file.getPath() + ".segments").list();
+        assertNotNull(names);
+
+        return new HashSet<>(Arrays.asList(names));
+    }
+}
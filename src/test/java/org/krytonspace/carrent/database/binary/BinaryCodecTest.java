@@ -0,0 +1,129 @@
+package org.krytonspace.carrent.database.binary;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Primitive values written by a BinaryEncoder, and read back by a BinaryDecoder.
+ */
+public class BinaryCodecTest {
+
+    private static final int[] INTS = {
+            0, 1, 63, 64, 127, 128, 255, 16383, 16384, 2097151, 2097152,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, -1, -64, -65, -1000000};
+    private static final long[] LONGS = {
+            0, 1, 127, 128, 1L << 35, (1L << 56) - 1, 1L << 56, Long.MAX_VALUE, Long.MIN_VALUE, -1};
+
+    @Test
+    public void readsBackWhatIsWritten() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Buffers of the smallest size, so that values straddle them.
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 0);
+        String[] strings = {"", "Doe", "Lefèvre-Ørsted", "日本語", "🚗", repeat('x', 100)};
+
+        for (int value : INTS) {
+            encoder.writeVarInt(value);
+            encoder.writeSignedVarInt(value);
+        }
+        for (long value : LONGS) {
+            encoder.writeVarLong(value);
+        }
+        for (String value : strings) {
+            encoder.writeString(value);
+        }
+        encoder.writeByte(0xFF);
+        encoder.flush();
+
+        BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(bytes.toByteArray()), 0);
+        for (int value : INTS) {
+            assertEquals(value, decoder.readVarInt());
+            assertEquals(value, decoder.readSignedVarInt());
+        }
+        for (long value : LONGS) {
+            assertEquals(value, decoder.readVarLong());
+        }
+        for (String value : strings) {
+            assertEquals(value, decoder.readString());
+        }
+        assertEquals(0xFF, decoder.readByte());
+        try {
+            decoder.readByte();
+            fail("Read past the end");
+        } catch (EOFException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void writesSmallValuesShort() throws IOException {
+        assertEquals(1, encodedVarInt(0));
+        assertEquals(1, encodedVarInt(127));
+        assertEquals(2, encodedVarInt(128));
+        assertEquals(3, encodedVarInt(2097151));
+        // Unsigned: negative values take every byte.
+        assertEquals(5, encodedVarInt(-1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 16);
+        encoder.writeSignedVarInt(-1);
+        encoder.writeSignedVarInt(-64);
+        encoder.flush();
+        assertArrayEquals(new byte[] {1, 127}, bytes.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsVarIntLongerThanFiveBytes() throws IOException {
+        byte[] bytes = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+        new BinaryDecoder(new ByteArrayInputStream(bytes), 16).readVarInt();
+    }
+
+    @Test(expected = EOFException.class)
+    public void failsOnTornVarInt() throws IOException {
+        new BinaryDecoder(new ByteArrayInputStream(new byte[] {(byte) 0x80, (byte) 0x80}), 16).readVarInt();
+    }
+
+    @Test
+    public void failsOnStringLongerThanTheStream() throws IOException {
+        // A length of 2^31 - 1 bytes, followed by a few bytes: the end of the stream is reached, nothing more.
+        byte[] bytes = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a', 'b', 'c'};
+        try {
+            new BinaryDecoder(new ByteArrayInputStream(bytes), 16).readString();
+            fail("Read a string longer than the stream");
+        } catch (EOFException e) {
+            // Expected.
+        }
+
+        // A negative length.
+        bytes = new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        try {
+            new BinaryDecoder(new ByteArrayInputStream(bytes), 16).readString();
+            fail("Read a string of negative length");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    private static int encodedVarInt(int value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 16);
+        encoder.writeVarInt(value);
+        encoder.flush();
+
+        return bytes.size();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+}
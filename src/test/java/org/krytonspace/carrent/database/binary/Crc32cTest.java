@@ -0,0 +1,61 @@
+package org.krytonspace.carrent.database.binary;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import static org.junit.Assert.*;
+
+/**
+ * CRC-32C of known values, computed by the JDK and by the table driven implementation.
+ */
+public class Crc32cTest {
+
+    @Test
+    public void computesKnownValues() {
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+        for (Checksum checksum : new Checksum[] {new Crc32c(), Crc32c.create()}) {
+            assertEquals(0xE3069283, Crc32c.compute(checksum, check, 0, check.length));
+            assertEquals(0, Crc32c.compute(checksum, check, 0, 0));
+            // RFC 3720, B.4: 32 bytes of zeros.
+            assertEquals(0x8A9136AA, Crc32c.compute(checksum, new byte[32], 0, 32));
+        }
+    }
+
+    @Test
+    public void matchesJdkImplementation() {
+        Random random = new Random(42);
+        byte[] bytes = new byte[4096];
+        random.nextBytes(bytes);
+        Checksum jdk = Crc32c.create();
+        Crc32c table = new Crc32c();
+
+        for (int i = 0; i < 1000; i++) {
+            int offset = random.nextInt(bytes.length);
+            int length = random.nextInt(bytes.length - offset + 1);
+            assertEquals(Crc32c.compute(jdk, bytes, offset, length), Crc32c.compute(table, bytes, offset, length));
+        }
+    }
+
+    @Test
+    public void updatesInPieces() {
+        byte[] bytes = new byte[1000];
+        new Random(42).nextBytes(bytes);
+        int whole = Crc32c.compute(new Crc32c(), bytes, 0, bytes.length);
+
+        Crc32c pieces = new Crc32c();
+        pieces.update(bytes, 0, 13);
+        for (int i = 13; i < 20; i++) {
+            pieces.update(bytes[i]);
+        }
+        pieces.update(bytes, 20, bytes.length - 20);
+        assertEquals(whole, (int) pieces.getValue());
+
+        pieces.reset();
+        pieces.update(bytes, 0, bytes.length);
+        assertEquals(whole, (int) pieces.getValue());
+    }
+}
@@ -0,0 +1,143 @@
+package org.krytonspace.carrent.database.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.ChangeSet;
+import org.krytonspace.carrent.database.DatabaseHandler;
+import org.krytonspace.carrent.database.DatabaseHandlers;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Journals replayed over the database file they have been started for, or over another version of it.
+ */
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysOverItsDatabaseFile() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json");
+        DatabaseHandler handler = DatabaseHandlers.getHandlerForFile(file.getPath());
+        handler.save(database("Doe"));
+
+        Journal journal = new Journal(file);
+        journal.commit(renamed("Journaled"));
+
+        DatabaseModel model = handler.load();
+        assertTrue(journal.replay(model));
+        assertEquals("Journaled", model.getRegisteredClients().get(0).getLastName());
+        assertFalse(journal.setAsideStale());
+        assertTrue(journal.verify().isEmpty());
+    }
+
+    @Test
+    public void leavesOutJournalOfRewrittenFile() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json");
+        File journalFile = new File(file.getPath() + ".journal");
+        DatabaseHandler handler = DatabaseHandlers.getHandlerForFile(file.getPath());
+        handler.save(database("Doe"));
+
+        Journal journal = new Journal(file);
+        journal.commit(renamed("Journaled"));
+
+        // Another program rewrites the file while the application is closed.
+        handler.save(database("Rewritten by another program"));
+
+        DatabaseModel model = handler.load();
+        assertFalse(journal.replay(model));
+        assertEquals("Rewritten by another program", model.getRegisteredClients().get(0).getLastName());
+        assertEquals(1, journal.verify().size());
+        // Replaying leaves the journal as it is, setting it aside moves it.
+        assertTrue(journalFile.exists());
+
+        assertTrue(journal.setAsideStale());
+        assertFalse(journalFile.exists());
+        assertTrue(new File(file.getPath() + ".journal.stale").exists());
+        assertTrue(Journal.load(handler, file).getRegisteredClients().get(0).getLastName().startsWith("Rewritten"));
+    }
+
+    @Test
+    public void stopsAtEntryLongerThanTheFile() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json");
+        File journalFile = new File(file.getPath() + ".journal");
+        DatabaseHandler handler = DatabaseHandlers.getHandlerForFile(file.getPath());
+        handler.save(database("Doe"));
+
+        Journal journal = new Journal(file);
+        journal.commit(renamed("Journaled"));
+        long length = journalFile.length();
+
+        // Lengths of 2^31 - 1 and -1 bytes, followed by a few bytes.
+        for (byte[] garbage : new byte[][] {
+                {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 1, 2, 3, 4, 5},
+                {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 1, 2, 3, 4, 5}}) {
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                raf.setLength(length);
+                raf.seek(length);
+                raf.write(garbage);
+            }
+
+            DatabaseModel model = handler.load();
+            assertTrue(journal.replay(model));
+            assertEquals("Journaled", model.getRegisteredClients().get(0).getLastName());
+            // Reading leaves the torn entry in place.
+            assertEquals(length + garbage.length, journalFile.length());
+        }
+    }
+
+    @Test
+    public void cutsTornEndBeforeAppending() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json");
+        File journalFile = new File(file.getPath() + ".journal");
+        DatabaseHandler handler = DatabaseHandlers.getHandlerForFile(file.getPath());
+        handler.save(database("Doe"));
+
+        Journal journal = new Journal(file);
+        journal.commit(renamed("Journaled"));
+        long length = journalFile.length();
+        // An entry cut short by a crash.
+        journal.commit(renamed("Torn"));
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        journal.cutTornEnd();
+        assertEquals(length, journalFile.length());
+
+        journal.commit(renamed("Appended"));
+        DatabaseModel model = handler.load();
+        assertTrue(journal.replay(model));
+        assertEquals("Appended", model.getRegisteredClients().get(0).getLastName());
+    }
+
+    private static DatabaseModel database(String lastName) {
+        DatabaseModel model = new DatabaseModel();
+        model.registerClient(client(lastName));
+
+        return model;
+    }
+
+    private static ChangeSet renamed(String lastName) {
+        ChangeSet changes = new ChangeSet();
+        changes.put(client(lastName));
+
+        return changes;
+    }
+
+    private static ClientModel client(String lastName) {
+        ClientModel client = new ClientModel();
+        client.setId("CLI-1");
+        client.setLastName(lastName);
+        client.setFirstName("John");
+
+        return client;
+    }
+}
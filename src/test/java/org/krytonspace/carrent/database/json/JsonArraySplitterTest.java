@@ -0,0 +1,157 @@
+package org.krytonspace.carrent.database.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+import org.krytonspace.carrent.database.exceptions.LoadingFailedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JSON databases split into chunks of array elements, read in pieces of any size,
+ * with strings holding brackets, commas and escapes.
+ */
+public class JsonArraySplitterTest {
+
+    private static final int CHUNK_SIZE = 100;
+    private static final int ELEMENT_COUNT = 2000;
+
+    private static final String[] TRICKY = {
+            "plain", "a,b", "]", "[", "}", "{", "\"", "\\", "\\\"],", "\\\\", "],[{,}]", "Besançon €😀", ""
+    };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void splitsBetweenElements() throws Exception {
+        ObjectNode root = MAPPER.createObjectNode();
+        ArrayNode clients = root.putArray("clients");
+        for (int i = 0; i < ELEMENT_COUNT; i++) {
+            ObjectNode element = clients.addObject();
+            element.put("id", "CLI-" + i);
+            element.put("note", TRICKY[i % TRICKY.length]);
+            element.putArray("tags").add(i).addArray().add("]").add(TRICKY[(i + 1) % TRICKY.length]);
+            element.putObject("nested").put("x", "}");
+        }
+        root.putArray("vehicles");
+        root.putNull("contracts");
+        ArrayNode numbers = root.putArray("numbers");
+        for (int i = 0; i < ELEMENT_COUNT; i++) {
+            numbers.add(i);
+        }
+
+        for (boolean pretty : new boolean[] {false, true}) {
+            byte[] json = pretty ? MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(root) :
+                    MAPPER.writeValueAsBytes(root);
+
+            JsonArraySplitter splitter = new JsonArraySplitter(trickle(json), CHUNK_SIZE);
+            assertEquals("clients", splitter.nextSection());
+            assertEquals(elements(clients), readSection(splitter));
+            assertEquals("vehicles", splitter.nextSection());
+            assertNull(splitter.nextChunk());
+            assertEquals("contracts", splitter.nextSection());
+            assertNull(splitter.nextChunk());
+            assertEquals("numbers", splitter.nextSection());
+            assertEquals(elements(numbers), readSection(splitter));
+            assertNull(splitter.nextSection());
+        }
+    }
+
+    @Test
+    public void skipsChunksLeftInSection() throws Exception {
+        byte[] json = "{\"clients\":[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16],\"vehicles\":[\"],\"]}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        JsonArraySplitter splitter = new JsonArraySplitter(trickle(json), 4);
+        assertEquals("clients", splitter.nextSection());
+        assertNotNull(splitter.nextChunk());
+        assertEquals("vehicles", splitter.nextSection());
+        assertEquals(Arrays.asList("\"],\""), readSection(splitter));
+        assertNull(splitter.nextSection());
+    }
+
+    @Test
+    public void failsOnTornDocument() throws Exception {
+        byte[] json = "{\"clients\":[{\"id\":\"CLI-1\"},{\"id\":\"CLI-2\"},{\"id\":\"CLI-3\"}]}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        for (int cut = 0; cut < json.length; cut++) {
+            JsonArraySplitter splitter = new JsonArraySplitter(
+                    new ByteArrayInputStream(Arrays.copyOf(json, cut)), CHUNK_SIZE);
+            try {
+                while (splitter.nextSection() != null) {
+                    readSection(splitter);
+                }
+                fail("Split a document cut at " + cut + " bytes out of " + json.length);
+            } catch (LoadingFailedException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void rejectsOtherDocuments() throws Exception {
+        for (String json : new String[] {"[1,2]", "{\"clients\":{}}", "{\"clients\":1}", "{clients:[]}", ""}) {
+            JsonArraySplitter splitter = new JsonArraySplitter(
+                    new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), CHUNK_SIZE);
+            try {
+                splitter.nextSection();
+                fail("Split '" + json + "'");
+            } catch (LoadingFailedException e) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Read the chunks of a section, checking each one is a valid array, and return the elements as JSON.
+     */
+    private static List<String> readSection(JsonArraySplitter splitter) throws IOException, LoadingFailedException {
+        List<String> elements = new ArrayList<>();
+        JsonArraySplitter.Chunk chunk;
+        while ((chunk = splitter.nextChunk()) != null) {
+            JsonNode array = MAPPER.readTree(new ByteArrayInputStream(chunk.getData(), 0, chunk.getLength()));
+            assertTrue(array.isArray());
+            assertEquals(array.size(), chunk.getCount());
+            for (JsonNode element : array) {
+                elements.add(MAPPER.writeValueAsString(element));
+            }
+        }
+
+        return elements;
+    }
+
+    private static List<String> elements(ArrayNode array) throws IOException {
+        List<String> elements = new ArrayList<>();
+        for (JsonNode element : array) {
+            elements.add(MAPPER.writeValueAsString(element));
+        }
+
+        return elements;
+    }
+
+    /**
+     * A stream giving a few bytes at a time, so that reads end anywhere: in strings, escapes or characters.
+     */
+    private static InputStream trickle(byte[] content) {
+        Random random = new Random(42);
+        return new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1 + random.nextInt(7)));
+            }
+        };
+    }
+}
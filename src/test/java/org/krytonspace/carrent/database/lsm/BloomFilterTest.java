@@ -0,0 +1,78 @@
+package org.krytonspace.carrent.database.lsm;
+
+import org.junit.Test;
+import org.krytonspace.carrent.database.binary.BinaryDecoder;
+import org.krytonspace.carrent.database.binary.BinaryEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bloom filters of contract IDs, asked for IDs added or not, and read back.
+ */
+public class BloomFilterTest {
+
+    private static final int KEY_COUNT = 10000;
+
+    @Test
+    public void findsEveryAddedKey() {
+        BloomFilter filter = filter();
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertTrue("CON-" + i, filter.mightContain("CON-" + i));
+        }
+    }
+
+    @Test
+    public void rejectsMostOtherKeys() {
+        BloomFilter filter = filter();
+
+        int falsePositives = 0;
+        for (int i = KEY_COUNT; i < 2 * KEY_COUNT; i++) {
+            if (filter.mightContain("CON-" + i)) {
+                falsePositives++;
+            }
+        }
+        // About 1% with 10 bits per key.
+        assertTrue(falsePositives + " false positives", falsePositives < KEY_COUNT * 3 / 100);
+
+        assertFalse(new BloomFilter(0).mightContain("CON-1"));
+    }
+
+    @Test
+    public void readsBackWhatIsWritten() throws IOException {
+        BloomFilter filter = filter();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 4096);
+        filter.write(encoder);
+        encoder.flush();
+
+        BloomFilter read = BloomFilter.read(new BinaryDecoder(new ByteArrayInputStream(bytes.toByteArray()), 4096));
+        for (int i = 0; i < 2 * KEY_COUNT; i++) {
+            assertEquals(filter.mightContain("CON-" + i), read.mightContain("CON-" + i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedFilter() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEncoder encoder = new BinaryEncoder(bytes, 16);
+        encoder.writeByte(7);
+        encoder.writeVarInt(0);
+        encoder.flush();
+
+        BloomFilter.read(new BinaryDecoder(new ByteArrayInputStream(bytes.toByteArray()), 16));
+    }
+
+    private static BloomFilter filter() {
+        BloomFilter filter = new BloomFilter(KEY_COUNT);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            filter.add("CON-" + i);
+        }
+
+        return filter;
+    }
+}
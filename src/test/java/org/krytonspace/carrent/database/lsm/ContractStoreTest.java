@@ -0,0 +1,165 @@
+package org.krytonspace.carrent.database.lsm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.SampleDatabases;
+import org.krytonspace.carrent.models.ContractModel;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Contracts changed and removed in a log-structured store, across memtable flushes and merges of runs.
+ */
+public class ContractStoreTest {
+
+    private static final int CONTRACT_COUNT = 6000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsLatestStateAcrossMerges() throws Exception {
+        ContractStore store = ContractStore.open(folder.newFolder("agency.crlsm.contracts"));
+        Map<String, ContractModel> expected = new LinkedHashMap<>();
+
+        // Each round fills the memtable once: ten runs are written, and merged down in the background.
+        for (int round = 0; round < 10; round++) {
+            Map<String, ContractModel> changes = new LinkedHashMap<>();
+            for (int j = 0; j < ContractStore.MEMTABLE_SIZE; j++) {
+                int i = (round * 1000 + j) % CONTRACT_COUNT;
+                String id = "CON-" + i;
+                if (i % 5 == round % 5 && expected.containsKey(id)) {
+                    changes.put(id, null);
+                    expected.remove(id);
+                } else {
+                    ContractModel contract = contract(i, round);
+                    changes.put(id, contract);
+                    expected.put(id, contract);
+                }
+            }
+            store.apply(changes);
+        }
+
+        waitForMerges(store);
+        assertEquals(Collections.emptyList(), store.takeProblems());
+        SampleDatabases.assertSameModels(new ArrayList<>(expected.values()), scan(store));
+    }
+
+    @Test
+    public void removalsShadowOlderRuns() throws Exception {
+        ContractStore store = ContractStore.open(folder.newFolder("agency.crlsm.contracts"));
+        Map<String, ContractModel> changes = new LinkedHashMap<>();
+        for (int i = 0; i < ContractStore.MEMTABLE_SIZE; i++) {
+            changes.put("CON-" + i, contract(i, 0));
+        }
+        store.apply(changes);
+        assertEquals(1, store.getRunCount());
+
+        // Removed, then added again: it is now the last contract.
+        store.apply(Collections.singletonMap("CON-1", (ContractModel) null));
+        store.apply(Collections.singletonMap("CON-2", (ContractModel) null));
+        ContractModel added = contract(2, 1);
+        store.apply(Collections.singletonMap("CON-2", added));
+        ContractModel edited = contract(3, 1);
+        store.apply(Collections.singletonMap("CON-3", edited));
+
+        List<ContractModel> expected = new ArrayList<>(changes.values());
+        expected.remove(1);
+        expected.remove(1);
+        expected.set(1, edited);
+        expected.add(added);
+        SampleDatabases.assertSameModels(expected, scan(store));
+
+        // Replaced at once: nothing of the previous runs is left.
+        store.replaceAll(Collections.singletonList(contract(9, 2)));
+        assertEquals(Collections.singletonList("CON-9"), ids(scan(store)));
+    }
+
+    @Test
+    public void replaysLogLeftByCrash() throws Exception {
+        File directory = folder.newFolder("agency.crlsm.contracts");
+        ContractStore store = ContractStore.open(directory);
+        List<ContractModel> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ContractModel contract = contract(i, 0);
+            store.apply(Collections.singletonMap(contract.getId(), contract));
+            expected.add(contract);
+        }
+
+        // Stores are shared by directory: a copy stands for the directory left by a crash.
+        File copy = copy(directory, "copy.crlsm.contracts");
+        SampleDatabases.assertSameModels(expected, scan(ContractStore.open(copy)));
+
+        // A frame torn while written is cut off.
+        File torn = copy(directory, "torn.crlsm.contracts");
+        try (OutputStream out = new FileOutputStream(new File(torn, "memtable.log"), true)) {
+            out.write(new byte[] {0, 0, 1, 0, 1, 2, 3, 4, 5, 6});
+        }
+        ContractStore reopened = ContractStore.open(torn);
+        SampleDatabases.assertSameModels(expected, scan(reopened));
+
+        ContractModel added = contract(100, 0);
+        reopened.apply(Collections.singletonMap(added.getId(), added));
+        expected.add(added);
+        SampleDatabases.assertSameModels(expected, scan(ContractStore.open(copy(torn, "again.crlsm.contracts"))));
+    }
+
+    private static ContractModel contract(int i, int version) {
+        ContractModel contract = new ContractModel();
+        contract.setId("CON-" + i);
+        contract.setClientId("CLI-" + i % 10);
+        contract.setVehicleId("V-BRAND-" + i % 10);
+        contract.setBeginEpochDay(17000 + i);
+        contract.setEndEpochDay(17000 + i + version);
+        contract.setPlannedPrice(version);
+
+        return contract;
+    }
+
+    private static List<ContractModel> scan(ContractStore store) throws IOException {
+        List<ContractModel> contracts = new ArrayList<>();
+        store.scan(contracts::add);
+
+        return contracts;
+    }
+
+    private static List<String> ids(List<ContractModel> contracts) {
+        List<String> ids = new ArrayList<>();
+        for (ContractModel contract : contracts) {
+            ids.add(contract.getId());
+        }
+
+        return ids;
+    }
+
+    private File copy(File directory, String name) throws IOException {
+        File copy = folder.newFolder(name);
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        for (File f : files) {
+            Files.copy(f.toPath(), new File(copy, f.getName()).toPath());
+        }
+
+        return copy;
+    }
+
+    private static void waitForMerges(ContractStore store) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (store.getRunCount() > ContractStore.MAX_RUNS) {
+            assertTrue("Runs still not merged", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
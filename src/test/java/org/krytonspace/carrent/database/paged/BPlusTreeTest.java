@@ -0,0 +1,172 @@
+package org.krytonspace.carrent.database.paged;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * B+trees of model IDs, updated key by key or built at once, held by a buffer pool smaller than the tree.
+ */
+public class BPlusTreeTest {
+
+    private static final int KEY_COUNT = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PagedFile file;
+    private BufferPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new PagedFile(new File(folder.getRoot(), "tree.crpg"));
+        pool = new BufferPool(file, 8);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        file.close();
+    }
+
+    @Test
+    public void splitsNodesAsKeysAreAdded() throws IOException {
+        BPlusTree tree = BPlusTree.create(pool);
+        int firstRoot = tree.getRoot();
+        List<String> keys = keys();
+        Collections.shuffle(keys, new Random(42));
+
+        for (int i = 0; i < keys.size(); i++) {
+            tree.put(keys.get(i), value(keys.get(i)));
+        }
+
+        // Leaves and internal nodes have been split: the root has moved up.
+        assertNotEquals(firstRoot, tree.getRoot());
+        for (String key : keys) {
+            assertEquals(key, value(key), tree.get(key));
+        }
+        assertEquals(-1, tree.get("CON-missing"));
+        assertEquals(-1, tree.get(""));
+
+        // Values of existing keys are replaced.
+        tree.put(keys.get(0), 7);
+        assertEquals(7, tree.get(keys.get(0)));
+    }
+
+    @Test
+    public void removesKeys() throws IOException {
+        BPlusTree tree = BPlusTree.create(pool);
+        List<String> keys = keys();
+        for (String key : keys) {
+            tree.put(key, value(key));
+        }
+
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertEquals(value(keys.get(i)), tree.remove(keys.get(i)));
+        }
+        assertEquals(-1, tree.remove(keys.get(0)));
+
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i), i % 2 == 0 ? -1 : value(keys.get(i)), tree.get(keys.get(i)));
+        }
+
+        // Emptied leaves are not merged, and take keys again.
+        for (int i = 1; i < keys.size(); i += 2) {
+            tree.remove(keys.get(i));
+        }
+        for (String key : keys) {
+            assertEquals(-1, tree.get(key));
+        }
+        tree.put(keys.get(100), 100);
+        assertEquals(100, tree.get(keys.get(100)));
+    }
+
+    @Test
+    public void buildsTreeOfSortedKeys() throws IOException {
+        List<String> keys = keys();
+        Collections.sort(keys);
+        List<Long> values = new ArrayList<>();
+        for (String key : keys) {
+            values.add(value(key));
+        }
+
+        int firstPage = file.allocate();
+        List<ByteBuffer> pages = BPlusTree.build(keys, values, firstPage);
+        for (int i = 1; i < pages.size(); i++) {
+            file.allocate();
+        }
+        for (int i = 0; i < pages.size(); i++) {
+            file.write(firstPage + i, pages.get(i));
+        }
+
+        BPlusTree tree = new BPlusTree(pool, firstPage + pages.size() - 1);
+        for (String key : keys) {
+            assertEquals(key, value(key), tree.get(key));
+        }
+
+        // Leaves come first, in key order.
+        List<Long> read = new ArrayList<>();
+        for (ByteBuffer page : pages) {
+            if (page.get(0) != BPlusTree.LEAF) {
+                break;
+            }
+            BPlusTree.forEachValue(page, read::add);
+        }
+        assertEquals(values, read);
+
+        // Built trees are updated like the others.
+        tree.put("CON-added", 1);
+        tree.remove(keys.get(0));
+        assertEquals(1, tree.get("CON-added"));
+        assertEquals(-1, tree.get(keys.get(0)));
+        assertEquals(value(keys.get(1)), tree.get(keys.get(1)));
+    }
+
+    @Test
+    public void buildsEmptyTree() throws IOException {
+        int firstPage = file.allocate();
+        List<ByteBuffer> pages = BPlusTree.build(Collections.<String>emptyList(), Collections.<Long>emptyList(),
+                firstPage);
+        assertEquals(1, pages.size());
+        file.write(firstPage, pages.get(0));
+
+        BPlusTree tree = new BPlusTree(pool, firstPage);
+        assertEquals(-1, tree.get("CON-1"));
+        tree.put("CON-1", 1);
+        assertEquals(1, tree.get("CON-1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTooLongKey() throws IOException {
+        StringBuilder key = new StringBuilder();
+        while (key.length() <= BPlusTree.MAX_KEY_SIZE) {
+            key.append("CON-");
+        }
+
+        BPlusTree.create(pool).put(key.toString(), 1);
+    }
+
+    private static List<String> keys() {
+        List<String> keys = new ArrayList<>(KEY_COUNT);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add("CON-" + i);
+        }
+
+        return keys;
+    }
+
+    private static long value(String key) {
+        return Long.parseLong(key.substring(4)) * 31 + 5;
+    }
+}
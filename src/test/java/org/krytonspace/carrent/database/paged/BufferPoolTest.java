@@ -0,0 +1,116 @@
+package org.krytonspace.carrent.database.paged;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pages of a paged file cached by a buffer pool holding fewer pages than the file.
+ */
+public class BufferPoolTest {
+
+    private static final int CAPACITY = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PagedFile file;
+    private BufferPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new PagedFile(new File(folder.getRoot(), "pool.crpg"));
+        pool = new BufferPool(file, CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        file.close();
+    }
+
+    @Test
+    public void writesBackEvictedPages() throws IOException {
+        for (int i = 0; i < CAPACITY * 3; i++) {
+            int page = pool.allocate();
+            assertEquals(i, page);
+            ByteBuffer data = pool.pin(page);
+            data.putInt(0, 1000 + page);
+            pool.unpin(page, true);
+            pool.unpin(page, true);
+        }
+
+        // The first pages have been evicted, and written to the file on the way.
+        ByteBuffer buffer = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        file.read(0, buffer);
+        assertEquals(1000, buffer.getInt(0));
+
+        for (int page = 0; page < CAPACITY * 3; page++) {
+            ByteBuffer data = pool.pin(page);
+            assertEquals(1000 + page, data.getInt(0));
+            pool.unpin(page, false);
+        }
+
+        pool.flush();
+        for (int page = 0; page < CAPACITY * 3; page++) {
+            file.read(page, buffer);
+            assertEquals(1000 + page, buffer.getInt(0));
+        }
+    }
+
+    @Test
+    public void keepsPinnedPages() throws IOException {
+        for (int i = 0; i < CAPACITY * 2; i++) {
+            pool.unpin(pool.allocate(), true);
+        }
+        pool.flush();
+
+        ByteBuffer pinned = pool.pin(0);
+        pinned.putInt(0, 42);
+        // Every other page goes through the pool while page 0 stays pinned.
+        for (int round = 0; round < 3; round++) {
+            for (int page = 1; page < CAPACITY * 2; page++) {
+                pool.pin(page);
+                pool.unpin(page, false);
+            }
+        }
+        assertEquals(42, pinned.getInt(0));
+        pool.unpin(0, true);
+
+        ByteBuffer buffer = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        pool.flush();
+        file.read(0, buffer);
+        assertEquals(42, buffer.getInt(0));
+    }
+
+    @Test
+    public void failsWhenEveryPageIsPinned() throws IOException {
+        for (int i = 0; i < CAPACITY; i++) {
+            pool.allocate();
+        }
+
+        try {
+            pool.allocate();
+            fail("Allocated a page while every page is pinned");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        pool.unpin(2, false);
+        assertEquals(CAPACITY, pool.allocate());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUnpinningPageNotPinned() throws IOException {
+        int page = pool.allocate();
+        pool.unpin(page, true);
+        pool.unpin(page, true);
+    }
+}
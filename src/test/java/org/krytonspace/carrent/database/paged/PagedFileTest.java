@@ -0,0 +1,179 @@
+package org.krytonspace.carrent.database.paged;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pages written through the write-ahead log of a paged file, committed, dropped, or left by a crash.
+ */
+public class PagedFileTest {
+
+    private static final int RECORD_SIZE = 4 + PagedFile.PAGE_SIZE + 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsCommittedPages() throws IOException {
+        File path = new File(folder.getRoot(), "agency.crpg");
+        File log = new File(path.getPath() + ".wal");
+
+        try (PagedFile file = new PagedFile(path)) {
+            file.write(file.allocate(), page(1));
+            file.write(file.allocate(), page(2));
+            // Read back from the log before the commit, not from the file.
+            assertEquals(0, path.length());
+            assertEquals(2, read(file, 1));
+            assertTrue(log.exists());
+
+            file.commit();
+            assertFalse(log.exists());
+            assertEquals(2 * PagedFile.PAGE_SIZE, path.length());
+
+            // Written again: the last image wins.
+            file.write(0, page(3));
+            file.write(0, page(4));
+            file.commit();
+        }
+
+        try (PagedFile file = new PagedFile(path)) {
+            assertEquals(2, file.getPageCount());
+            assertEquals(4, read(file, 0));
+            assertEquals(2, read(file, 1));
+        }
+    }
+
+    @Test
+    public void dropsPagesNotCommitted() throws IOException {
+        File path = new File(folder.getRoot(), "agency.crpg");
+
+        try (PagedFile file = new PagedFile(path)) {
+            file.write(file.allocate(), page(1));
+            file.commit();
+
+            file.write(0, page(2));
+            file.write(file.allocate(), page(3));
+            file.rollback();
+            assertEquals(1, file.getPageCount());
+            assertEquals(1, read(file, 0));
+
+            file.write(0, page(4));
+            // Closed without commit.
+        }
+
+        try (PagedFile file = new PagedFile(path)) {
+            assertEquals(1, file.getPageCount());
+            assertEquals(1, read(file, 0));
+        }
+        assertFalse(new File(path.getPath() + ".wal").exists());
+    }
+
+    @Test
+    public void recoversCommitLeftInTheLog() throws IOException {
+        File path = new File(folder.getRoot(), "agency.crpg");
+        try (PagedFile file = new PagedFile(path)) {
+            file.write(file.allocate(), page(1));
+            file.commit();
+        }
+
+        // A crash after the commit record has been forced to disk, before the pages have been copied.
+        writeLog(path, record(0, page(5)), record(1, page(6)), commitRecord(2), record(0, page(7)));
+
+        PagedFile.recover(path);
+        assertFalse(new File(path.getPath() + ".wal").exists());
+        try (PagedFile file = new PagedFile(path)) {
+            // The page written after the commit record is dropped.
+            assertEquals(2, file.getPageCount());
+            assertEquals(5, read(file, 0));
+            assertEquals(6, read(file, 1));
+        }
+    }
+
+    @Test
+    public void dropsLogWithTornCommit() throws IOException {
+        File path = new File(folder.getRoot(), "agency.crpg");
+        try (PagedFile file = new PagedFile(path)) {
+            file.write(file.allocate(), page(1));
+            file.commit();
+        }
+
+        // A crash while the commit record was written: the last record is torn.
+        ByteBuffer torn = commitRecord(2);
+        torn.put(10, (byte) (torn.get(10) + 1));
+        writeLog(path, record(0, page(5)), record(1, page(6)), torn);
+
+        try (PagedFile file = new PagedFile(path)) {
+            assertFalse(new File(path.getPath() + ".wal").exists());
+            assertEquals(1, file.getPageCount());
+            assertEquals(1, read(file, 0));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsPagesOutOfTheFile() throws IOException {
+        try (PagedFile file = new PagedFile(new File(folder.getRoot(), "agency.crpg"))) {
+            file.write(0, page(1));
+        }
+    }
+
+    private static ByteBuffer page(int value) {
+        ByteBuffer page = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        page.putInt(0, value);
+        page.putInt(PagedFile.PAGE_SIZE - 4, value);
+
+        return page;
+    }
+
+    private static int read(PagedFile file, int page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        file.read(page, buffer);
+        assertEquals(buffer.getInt(0), buffer.getInt(PagedFile.PAGE_SIZE - 4));
+
+        return buffer.getInt(0);
+    }
+
+    /**
+     * A log record as PagedFile writes it: the page number, the page, and the CRC32 of both.
+     */
+    private static ByteBuffer record(int page, ByteBuffer content) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(page);
+        record.put(content.array());
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        return record;
+    }
+
+    private static ByteBuffer commitRecord(long pageCount) {
+        ByteBuffer content = ByteBuffer.allocate(PagedFile.PAGE_SIZE);
+        content.putLong(0, pageCount);
+
+        return record(-1, content);
+    }
+
+    private static void writeLog(File path, ByteBuffer... records) throws IOException {
+        File log = new File(path.getPath() + ".wal");
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.krytonspace.carrent.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Snapshots sharing their models with the database they have been taken from.
+ */
+public class DatabaseModelSnapshotTest {
+
+    @Test
+    public void keepsModelsAsTheyWereBeforeEdits() {
+        DatabaseModel model = new DatabaseModel();
+        ClientModel client = client("CLI-1", "Doe");
+        model.registerClient(client);
+
+        DatabaseModel snapshot = model.snapshot();
+        model.willEdit(client);
+        client.setLastName("Edited");
+        model.willEdit(client);
+        client.setLastName("Edited twice");
+        model.registerClient(client("CLI-2", "Added"));
+
+        assertEquals(1, snapshot.getRegisteredClients().size());
+        assertEquals("Doe", snapshot.getRegisteredClients().get(0).getLastName());
+        // Reads are copies: the working database is not read by the thread writing the snapshot.
+        assertNotSame(client, snapshot.getRegisteredClients().get(0));
+        snapshot.release();
+    }
+
+    @Test
+    public void readsModelsNotEditedAsTheyAre() {
+        DatabaseModel model = new DatabaseModel();
+        model.registerClient(client("CLI-1", "Doe"));
+
+        DatabaseModel snapshot = model.snapshot();
+        snapshot.release();
+        // Released snapshots are not copied into anymore.
+        ClientModel client = model.getRegisteredClients().get(0);
+        model.willEdit(client);
+        client.setLastName("Edited");
+
+        DatabaseModel next = model.snapshot();
+        assertEquals("Edited", next.getRegisteredClients().get(0).getLastName());
+        next.release();
+    }
+
+    private static ClientModel client(String id, String lastName) {
+        ClientModel client = new ClientModel();
+        client.setId(id);
+        client.setLastName(lastName);
+        client.setFirstName("John");
+
+        return client;
+    }
+}
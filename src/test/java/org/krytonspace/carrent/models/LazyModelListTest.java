@@ -0,0 +1,123 @@
+package org.krytonspace.carrent.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lists of models read from disk page by page, and dropped from memory when not used.
+ */
+public class LazyModelListTest {
+
+    private static final int PAGE_COUNT = LazyModelList.CACHED_PAGES * 2;
+    private static final int PAGE_SIZE = 3;
+
+    /**
+     * Pages of contracts, counting the pages read.
+     */
+    private static final class CountingSource implements LazyModelList.PageSource<ContractModel> {
+        private final List<Long> reads = new ArrayList<>();
+
+        @Override
+        public List<ContractModel> readPage(long key) {
+            reads.add(key);
+            List<ContractModel> page = new ArrayList<>();
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                page.add(contract("CON-" + (key * PAGE_SIZE + i), "CLI-1"));
+            }
+
+            return page;
+        }
+    }
+
+    @Test
+    public void readsPagesWhenAccessed() {
+        CountingSource source = new CountingSource();
+        LazyModelList<ContractModel> list = list(source);
+
+        assertEquals(PAGE_COUNT * PAGE_SIZE, list.size());
+        assertTrue(source.reads.isEmpty());
+
+        assertEquals("CON-4", list.get(4).getId());
+        assertEquals("CON-5", list.get(5).getId());
+        assertEquals(1, source.reads.size());
+    }
+
+    @Test
+    public void readsTheLeastRecentlyUsedPagesAgain() {
+        CountingSource source = new CountingSource();
+        LazyModelList<ContractModel> list = list(source);
+
+        ContractModel first = list.get(0);
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i);
+        }
+        assertEquals(PAGE_COUNT, source.reads.size());
+
+        // The first page has been dropped: its models are read again, as new instances.
+        assertNotSame(first, list.get(0));
+        assertEquals(PAGE_COUNT + 1, source.reads.size());
+    }
+
+    @Test
+    public void keepsRetainedModelsEdited() {
+        CountingSource source = new CountingSource();
+        LazyModelList<ContractModel> list = list(source);
+
+        ContractModel retained = list.get(1);
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i);
+        }
+        source.reads.clear();
+
+        // Dropped from memory since read: only its page is read again, and the model takes its place.
+        list.retain(retained);
+        retained.setClientId("CLI-2");
+        assertEquals(1, source.reads.size());
+        assertEquals(0L, (long) source.reads.get(0));
+
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i);
+        }
+        assertSame(retained, list.get(1));
+        assertEquals("CLI-2", list.get(1).getClientId());
+        assertTrue(list.getPages().get(0).isPinned());
+    }
+
+    @Test
+    public void snapshotsKeepTheirContent() {
+        LazyModelList<ContractModel> list = list(new CountingSource());
+        list.get(0);
+
+        LazyModelList<ContractModel> snapshot = list.snapshot();
+        list.remove(0);
+        list.add(contract("CON-new", "CLI-1"));
+
+        assertEquals("CON-0", snapshot.get(0).getId());
+        assertEquals(PAGE_COUNT * PAGE_SIZE, snapshot.size());
+        assertEquals("CON-new", list.get(list.size() - 1).getId());
+        assertFalse(snapshot.getPages().get(0).isPinned());
+    }
+
+    private static LazyModelList<ContractModel> list(CountingSource source) {
+        long[] keys = new long[PAGE_COUNT];
+        int[] sizes = new int[PAGE_COUNT];
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            keys[i] = i;
+            sizes[i] = PAGE_SIZE;
+        }
+
+        return new LazyModelList<>(source, keys, sizes);
+    }
+
+    private static ContractModel contract(String id, String clientId) {
+        ContractModel contract = new ContractModel();
+        contract.setId(id);
+        contract.setClientId(clientId);
+
+        return contract;
+    }
+}
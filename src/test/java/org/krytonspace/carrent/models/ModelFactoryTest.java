@@ -0,0 +1,69 @@
+package org.krytonspace.carrent.models;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * IDs of models created on other threads than the one registering them, e.g. read from a file in parallel.
+ */
+public class ModelFactoryTest {
+
+    @Test
+    public void givesDeferredIdsPerTypeInOrder() {
+        ModelFactory.deferIds();
+        List<VehicleModel> second;
+        List<VehicleModel> first;
+        try {
+            // Created out of order, like chunks parsed in parallel.
+            second = Arrays.asList(new BikeModel(), new CarModel());
+            first = Arrays.asList(new CarModel(), new PlaneModel(), new CarModel());
+        } finally {
+            ModelFactory.Reservation.deactivate();
+        }
+
+        int car = new CarModel().getInternalId() + 1;
+        int bike = new BikeModel().getInternalId() + 1;
+        int plane = new PlaneModel().getInternalId() + 1;
+        ModelFactory.assignIds(first);
+        ModelFactory.assignIds(second);
+
+        assertEquals(car, first.get(0).getInternalId());
+        assertEquals(plane, first.get(1).getInternalId());
+        assertEquals(car + 1, first.get(2).getInternalId());
+        assertEquals(bike, second.get(0).getInternalId());
+        assertEquals(car + 2, second.get(1).getInternalId());
+        // No ID is reserved for a type without models: every type goes on from the IDs it used.
+        assertEquals(car + 3, new CarModel().getInternalId());
+        assertEquals(bike + 1, new BikeModel().getInternalId());
+        assertEquals(plane + 1, new PlaneModel().getInternalId());
+    }
+
+    @Test
+    public void reusesReservedIds() {
+        ModelFactory.Reservation reservation = ModelFactory.reserveIds(2,
+                Collections.<Class<? extends Model>>singletonList(ContractModel.class));
+
+        reservation.activate();
+        int first;
+        try {
+            first = new ContractModel().getInternalId();
+            assertEquals(first + 1, new ContractModel().getInternalId());
+            // Once the range is exhausted, IDs are generated as usual.
+            assertEquals(first + 2, new ContractModel().getInternalId());
+        } finally {
+            ModelFactory.Reservation.deactivate();
+        }
+
+        reservation.reuse().activate();
+        try {
+            assertEquals(first, new ContractModel().getInternalId());
+        } finally {
+            ModelFactory.Reservation.deactivate();
+        }
+    }
+}
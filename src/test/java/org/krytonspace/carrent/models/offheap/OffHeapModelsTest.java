@@ -0,0 +1,103 @@
+package org.krytonspace.carrent.models.offheap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.DatabaseDiff;
+import org.krytonspace.carrent.database.DatabaseHandlers;
+import org.krytonspace.carrent.database.SampleDatabases;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+import org.krytonspace.carrent.models.Model;
+import org.krytonspace.carrent.models.VehicleModel;
+import org.krytonspace.carrent.utils.ModelAccessor;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Clients and vehicles moved off the heap, read, edited and saved like the others.
+ */
+public class OffHeapModelsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsValuesOfMovedModels() {
+        DatabaseModel expected = SampleDatabases.create(300, 300, 100);
+        DatabaseModel model = SampleDatabases.create(300, 300, 100);
+        OffHeapModels.moveOffHeap(model);
+
+        assertMoved(expected.getRegisteredClients(), model.getRegisteredClients());
+        assertMoved(expected.getRegisteredVehicles(), model.getRegisteredVehicles());
+        assertTrue(DatabaseDiff.compare(expected, model).isEmpty());
+
+        // Moved again: nothing changes.
+        ClientModel client = model.getRegisteredClients().get(0);
+        OffHeapModels.moveOffHeap(model);
+        assertSame(client, model.getRegisteredClients().get(0));
+    }
+
+    @Test
+    public void editsMovedModels() {
+        DatabaseModel model = SampleDatabases.create(10, 10, 10);
+        OffHeapModels.moveOffHeap(model);
+
+        ClientModel client = model.getRegisteredClients().get(3);
+        int internalId = client.getInternalId();
+        client.setCity("Saint-Rémy-de-Provence");
+        client.setLastName(null);
+        client.setBirthDate(new Date(0));
+        client.setId("CLI-edited");
+        assertEquals("Saint-Rémy-de-Provence", client.getCity());
+        assertNull(client.getLastName());
+        assertEquals(new Date(0), client.getBirthDate());
+        assertEquals("CLI-edited", client.getId());
+        assertEquals(internalId, client.getInternalId());
+
+        VehicleModel vehicle = model.getRegisteredVehicles().get(4);
+        vehicle.setBrand("Brand with a much longer name than before");
+        vehicle.setRentPricePerDay(77);
+        assertEquals("Brand with a much longer name than before", vehicle.getBrand());
+        assertEquals(77, vehicle.getRentPricePerDay());
+    }
+
+    @Test
+    public void savesMovedModels() throws Exception {
+        DatabaseModel expected = SampleDatabases.create(300, 300, 100);
+        DatabaseModel model = SampleDatabases.create(300, 300, 100);
+        OffHeapModels.moveOffHeap(model);
+
+        for (String name : new String[] {"agency.json", "agency.xml", "agency.crdb"}) {
+            File file = new File(folder.getRoot(), name);
+            DatabaseHandlers.getHandlerForFile(file.getPath()).save(model);
+            // Read back as plain models.
+            SampleDatabases.assertSameContent(expected, DatabaseHandlers.getHandlerForFile(file.getPath()).load());
+        }
+    }
+
+    /**
+     * Check that models are flyweights of the same type, holding the same values.
+     */
+    @SuppressWarnings("unchecked")
+    private static void assertMoved(List<? extends Model> expected, List<? extends Model> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            Model e = expected.get(i);
+            Model a = actual.get(i);
+            assertNotEquals(e.getClass(), a.getClass());
+            assertTrue(e.getClass().isInstance(a));
+
+            ModelAccessor<Model> accessor = (ModelAccessor<Model>) ModelAccessor.forModel(e.getClass());
+            for (int column = 0; column < accessor.getColumnCount(); column++) {
+                assertEquals(e.getId() + " " + accessor.getPropertyName(column),
+                        accessor.get(e, column), accessor.get(a, column));
+            }
+        }
+    }
+}
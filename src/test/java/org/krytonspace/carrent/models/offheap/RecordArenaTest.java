@@ -0,0 +1,101 @@
+package org.krytonspace.carrent.models.offheap;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records stored in an arena, read back, changed in place or appended again.
+ */
+public class RecordArenaTest {
+
+    @Test
+    public void readsBackWhatIsAdded() {
+        RecordArena arena = new RecordArena();
+        Date date = new Date(631152000000L);
+        long first = arena.add("CLI-1", null, date, "", "Besançon €😀");
+        long second = arena.add("CLI-2", "Lyon", null, "x", null);
+
+        assertEquals("CLI-1", arena.getString(first, 0));
+        assertNull(arena.getString(first, 1));
+        assertEquals(date, arena.getDate(first, 2));
+        assertNotSame(arena.getDate(first, 2), arena.getDate(first, 2));
+        assertEquals("", arena.getString(first, 3));
+        assertEquals("Besançon €😀", arena.getString(first, 4));
+
+        assertEquals("CLI-2", arena.getString(second, 0));
+        assertEquals("Lyon", arena.getString(second, 1));
+        assertNull(arena.getDate(second, 2));
+        assertNull(arena.getString(second, 4));
+    }
+
+    @Test
+    public void fillsSeveralChunks() {
+        RecordArena arena = new RecordArena();
+        long[] addresses = new long[200000];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = arena.add("CLI-" + i, "Street number " + i, new Date(i));
+        }
+
+        // Records of more than one chunk.
+        assertTrue(arena.getUsedBytes() > 4 * 1024 * 1024);
+        assertNotEquals(addresses[0] >>> 32, addresses[addresses.length - 1] >>> 32);
+        for (int i = 0; i < addresses.length; i++) {
+            assertEquals("CLI-" + i, arena.getString(addresses[i], 0));
+            assertEquals("Street number " + i, arena.getString(addresses[i], 1));
+            assertEquals(i, arena.getDate(addresses[i], 2).getTime());
+        }
+    }
+
+    @Test
+    public void changesRecordsInPlaceWhenTheyFit() {
+        RecordArena arena = new RecordArena();
+        long address = arena.add("CLI-1", "Paris", "12 rue de la Paix");
+        long next = arena.add("CLI-2", "Lyon", "1 place Bellecour");
+        long used = arena.getUsedBytes();
+
+        assertEquals(address, arena.set(address, 3, 1, "Nice"));
+        assertEquals(address, arena.set(address, 3, 2, null));
+        assertEquals(used, arena.getUsedBytes());
+        assertEquals("Nice", arena.getString(address, 1));
+        assertNull(arena.getString(address, 2));
+
+        // Grown past its room: appended again, with the next record left as is.
+        long moved = arena.set(address, 3, 1, "Saint-Rémy-de-Provence, Bouches-du-Rhône");
+        assertNotEquals(address, moved);
+        assertTrue(arena.getReclaimableBytes() > 0);
+        assertEquals("CLI-1", arena.getString(moved, 0));
+        assertEquals("Saint-Rémy-de-Provence, Bouches-du-Rhône", arena.getString(moved, 1));
+        assertNull(arena.getString(moved, 2));
+        assertEquals("CLI-2", arena.getString(next, 0));
+        assertEquals("1 place Bellecour", arena.getString(next, 2));
+
+        // Room has been spared for the next edits.
+        assertEquals(moved, arena.set(moved, 3, 2, "1 rue"));
+    }
+
+    @Test
+    public void sharesStrings() {
+        RecordArena arena = new RecordArena();
+        String city = arena.share(new String("Paris"));
+        assertSame(city, arena.share(new String("Paris")));
+        assertNull(arena.share(null));
+
+        long shared = arena.add("CLI-1", new String("Paris"));
+        assertSame(city, arena.getString(shared, 1));
+
+        // Stored in full before being shared, then set to the shared string.
+        long full = arena.add("CLI-2", "Lyon");
+        assertNotSame(arena.getString(full, 1), arena.getString(full, 1));
+        String lyon = arena.share("Lyon");
+        full = arena.set(full, 2, 1, lyon);
+        assertSame(lyon, arena.getString(full, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherValues() {
+        new RecordArena().add("CLI-1", 42);
+    }
+}
@@ -0,0 +1,113 @@
+package org.krytonspace.carrent.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.krytonspace.carrent.database.DatabaseHandlers;
+import org.krytonspace.carrent.database.SampleDatabases;
+import org.krytonspace.carrent.models.ClientModel;
+import org.krytonspace.carrent.models.DatabaseModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Strings shared through pools, bounded or not, from one or several threads.
+ */
+public class StringPoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sharesEqualStrings() {
+        StringPool pool = new StringPool(100);
+        String paris = new String("Paris");
+
+        assertSame(paris, pool.canonicalize(paris));
+        assertSame(paris, pool.canonicalize(new String("Paris")));
+        assertSame(paris, pool.canonicalize(paris));
+        assertNull(pool.canonicalize(null));
+
+        assertEquals(1, pool.size());
+        assertEquals(3, pool.getLookups());
+        assertEquals(2, pool.getHits());
+        // Only the copy can be collected.
+        assertTrue(pool.getSavedBytes() > 0);
+    }
+
+    @Test
+    public void staysWithinCapacity() {
+        StringPool pool = new StringPool(2);
+        String paris = pool.canonicalize(new String("Paris"));
+        pool.canonicalize("Lyon");
+
+        String nice = new String("Nice");
+        assertSame(nice, pool.canonicalize(nice));
+        assertNotSame(nice, pool.canonicalize(new String("Nice")));
+        assertEquals(2, pool.size());
+        // Strings already pooled are still shared.
+        assertSame(paris, pool.canonicalize(new String("Paris")));
+
+        StringPool disabled = new StringPool(0);
+        String lyon = new String("Lyon");
+        assertSame(lyon, disabled.canonicalize(lyon));
+        assertNotSame(lyon, disabled.canonicalize(new String("Lyon")));
+        assertEquals(0, disabled.size());
+        assertEquals(0, disabled.getLookups());
+    }
+
+    @Test
+    public void sharesStringsAcrossThreads() throws Exception {
+        StringPool pool = new StringPool(1000);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<String[]>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < 8; t++) {
+                results.add(threads.submit((Callable<String[]>) () -> {
+                    String[] canonical = new String[100];
+                    for (int round = 0; round < 100; round++) {
+                        for (int i = 0; i < canonical.length; i++) {
+                            String s = pool.canonicalize(new String("City " + i));
+                            assertTrue(canonical[i] == null || canonical[i] == s);
+                            canonical[i] = s;
+                        }
+                    }
+                    return canonical;
+                }));
+            }
+
+            String[] first = results.get(0).get();
+            for (Future<String[]> result : results) {
+                for (int i = 0; i < first.length; i++) {
+                    assertSame(first[i], result.get()[i]);
+                }
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertEquals(100, pool.size());
+        assertEquals(8 * 100 * 100, pool.getLookups());
+        assertEquals(8 * 100 * 100 - 100, pool.getHits());
+    }
+
+    @Test
+    public void sharesValuesOfLoadedModels() throws Exception {
+        File file = new File(folder.getRoot(), "agency.json");
+        DatabaseHandlers.getHandlerForFile(file.getPath()).save(SampleDatabases.create(100, 100, 0));
+
+        DatabaseModel model = DatabaseHandlers.getHandlerForFile(file.getPath()).load();
+        List<ClientModel> clients = model.getRegisteredClients();
+        for (int i = 2; i < clients.size(); i++) {
+            assertSame(clients.get(i % 2).getCity(), clients.get(i).getCity());
+        }
+    }
+}